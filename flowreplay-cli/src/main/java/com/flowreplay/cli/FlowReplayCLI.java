@@ -1,54 +1,88 @@
 package com.flowreplay.cli;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.flowreplay.core.comparator.ComparisonConfig;
 import com.flowreplay.core.comparator.ComparisonConfigLoader;
 import com.flowreplay.core.comparator.Comparator;
-import com.flowreplay.core.model.ComparisonResult;
-import com.flowreplay.core.model.Difference;
+import com.flowreplay.core.comparator.ParallelComparisonStage;
+import com.flowreplay.core.metrics.LatencyHistogram;
 import com.flowreplay.core.model.ReplayResult;
+import com.flowreplay.core.model.ResponseData;
 import com.flowreplay.core.model.TrafficRecord;
 import com.flowreplay.core.recorder.SimpleTrafficRecorder;
 import com.flowreplay.core.recorder.TrafficRecorder;
+import com.flowreplay.core.parser.ServiceNameParser;
+import com.flowreplay.core.parser.ServiceNameParserFactory;
+import com.flowreplay.core.replayer.AmplifiedReplayer;
+import com.flowreplay.core.replayer.CapacitySearchReplayer;
+import com.flowreplay.core.replayer.HttpReplayClient;
+import com.flowreplay.core.replayer.MultiTargetReplayer;
+import com.flowreplay.core.replayer.NettyHttp2ReplayClient;
+import com.flowreplay.core.replayer.NettyHttpReplayClient;
+import com.flowreplay.core.replayer.OpenLoopReplayer;
+import com.flowreplay.core.replayer.ReplayPlan;
+import com.flowreplay.core.replayer.SessionKeyExtractor;
+import com.flowreplay.core.replayer.SessionParallelReplayer;
 import com.flowreplay.core.replayer.TrafficReplayer;
 import com.flowreplay.core.report.ComparisonReport;
 import com.flowreplay.core.report.HtmlReportGenerator;
+import com.flowreplay.core.report.MultiTargetReport;
+import com.flowreplay.core.report.MultiTargetReportGenerator;
+import com.flowreplay.core.report.PerformanceGate;
 import com.flowreplay.core.storage.FileStorage;
 import com.flowreplay.core.storage.QueryCriteria;
+import com.flowreplay.core.storage.ReplayResultCache;
+import com.flowreplay.core.storage.RunStore;
 import com.flowreplay.core.storage.TrafficStorage;
 import com.flowreplay.proxy.HttpProxyServer;
 import com.flowreplay.proxy.TcpProxyServer;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 /**
  * FlowReplay command line tool.
  */
 public class FlowReplayCLI {
 
+    private static final String REPLAY_MODE_SEQUENTIAL = "sequential";
+    private static final String REPLAY_MODE_CONCURRENT = "concurrent";
+    private static final String REPLAY_MODE_SESSION = "session";
+    private static final String REPLAY_MODE_AMPLIFY = "amplify";
+    private static final String REPLAY_MODE_OPEN_LOOP = "open-loop";
+    private static final String REPLAY_MODE_CAPACITY = "capacity";
+    private static final String REPLAY_CLIENT_JDK = "jdk";
+    private static final String REPLAY_CLIENT_NETTY = "netty";
+    private static final String REPLAY_CLIENT_H2C = "h2c";
+    private static final String REPORT_FORMAT_HTML = "html";
+    private static final String REPORT_FORMAT_SHARDED = "sharded";
+    private static final String DEFAULT_RESULT_CACHE_FILE = "replay-result-cache.jsonl";
+    private static final String DEFAULT_RUN_DIR = "./replay-runs";
+    private static final String DEFAULT_RUN_STORE = "./replay-store";
+    private static final String GATE_BASELINE_RECORDED = "recorded";
+    private static final String GATE_BASELINE_PREVIOUS = "previous";
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_GATE_FAILED = 1;
+    private static final int EXIT_ERROR = 2;
+
     public static void main(String[] args) {
         if (args.length == 0) {
             printUsage();
@@ -59,8 +93,15 @@ public class FlowReplayCLI {
         switch (command) {
             case "record" -> handleRecord(args, false);
             case "record-replay", "rr" -> handleRecord(args, true);
-            case "replay" -> handleReplay(args);
+            case "replay" -> {
+                // 门禁未通过或回放失败时以非零退出码结束，供 CI 判断
+                int exitCode = handleReplay(args);
+                if (exitCode != EXIT_OK) {
+                    System.exit(exitCode);
+                }
+            }
             case "report-from-cache", "report-cache" -> handleReportFromCache(args);
+            case "runs" -> handleRuns(args);
             case "compare" -> handleCompare(args);
             default -> {
                 System.err.println("Unknown command: " + command);
@@ -91,7 +132,10 @@ public class FlowReplayCLI {
             options.reportPath(),
             options.configPath(),
             options.serviceParser(),
-            options.liveReportCachePath()
+            options.liveReportCachePath(),
+            options.cacheDurability(),
+            options.reportFormat(),
+            options.liveLimits()
         );
 
         System.out.println("Starting " + options.protocol().toUpperCase() + " proxy on port " + options.port());
@@ -99,6 +143,11 @@ public class FlowReplayCLI {
         System.out.println("Output: " + options.output());
         if (liveReplaySupport.enabled()) {
             System.out.println("Live replay enabled: " + options.replayTarget());
+            System.out.println(
+                "Live replay queue: capacity=" + options.liveLimits().capacity()
+                    + ", concurrency=" + options.liveLimits().concurrency()
+                    + ", overflow=" + options.liveLimits().policy().optionName()
+            );
             if (liveReplaySupport.compareEnabled()) {
                 System.out.println("Live comparison enabled");
                 if (options.reportPath() != null) {
@@ -161,114 +210,680 @@ public class FlowReplayCLI {
         }
     }
 
-    private static void handleReplay(String[] args) {
-        String input = "./recordings";
-        String target = "http://localhost:8080";
-        boolean enableCompare = false;
-        String reportPath = null;
-        String configPath = null;
-        String serviceParser = null;
-        String replayMode = "sequential";
-
+    private static int handleReplay(String[] args) {
+        ReplayCommandOptions options;
+        Path runDirectory = null;
+        boolean resume = false;
         try {
-            for (int i = 1; i < args.length; i++) {
-                switch (args[i]) {
-                    case "--input" -> input = requireOptionValue(args, ++i, "--input");
-                    case "--target" -> target = requireOptionValue(args, ++i, "--target");
-                    case "--compare" -> enableCompare = true;
-                    case "--report" -> reportPath = requireOptionValue(args, ++i, "--report");
-                    case "--config" -> configPath = requireOptionValue(args, ++i, "--config");
-                    case "--service-parser" -> serviceParser = requireOptionValue(args, ++i, "--service-parser");
-                    case "--mode" -> replayMode = requireOptionValue(args, ++i, "--mode");
-                    default -> {
-                        if (args[i].startsWith("--")) {
-                            throw new IllegalArgumentException("Unknown option for replay: " + args[i]);
-                        }
-                    }
-                }
+            options = parseReplayOptions(args);
+            if (options.resumeRunId() != null) {
+                // 按原运行参数继续
+                runDirectory = Paths.get(options.runDir()).resolve(options.resumeRunId());
+                args = ReplayRunCheckpoint.readMetadata(runDirectory).args().toArray(String[]::new);
+                options = parseReplayOptions(args);
+                resume = true;
+            } else if (options.runDir() != null) {
+                runDirectory = Paths.get(options.runDir()).resolve(ReplayRunCheckpoint.newRunId());
             }
         } catch (IllegalArgumentException e) {
             System.err.println("Invalid replay arguments: " + e.getMessage());
             printUsage();
-            return;
+            return EXIT_ERROR;
+        } catch (UncheckedIOException e) {
+            System.err.println("Failed to resume replay run: " + e.getMessage());
+            return EXIT_ERROR;
         }
 
-        System.out.println("Replaying traffic from: " + input);
-        System.out.println("Target: " + target);
-        System.out.println("Replay mode: " + replayMode);
-
-        if (!"sequential".equalsIgnoreCase(replayMode) && !"concurrent".equalsIgnoreCase(replayMode)) {
-            System.err.println("Invalid replay mode: " + replayMode + " (supported: sequential|concurrent)");
-            return;
+        System.out.println("Replaying traffic from: " + options.input());
+        System.out.println((options.targets().size() > 1 ? "Targets: " : "Target: ") + String.join(", ", options.targets()));
+        System.out.println("Replay mode: " + options.replayMode());
+        if (REPLAY_CLIENT_NETTY.equals(options.replayClient())) {
+            System.out.println("Replay client: netty (pool=" + options.poolSize() + ", pipelining=" + options.pipelining() + ")");
+        } else if (REPLAY_CLIENT_H2C.equals(options.replayClient())) {
+            System.out.println("Replay client: h2c (" + options.http2Settings().mode().optionName()
+                + ", connections<=" + options.poolSize() + ", max streams=" + options.http2Settings().maxConcurrentStreams() + ")");
         }
 
         try {
-            TrafficStorage storage = new FileStorage(input);
-            List<TrafficRecord> records = storage.query(
+            TrafficStorage storage = new FileStorage(options.input());
+            List<TrafficRecord> storedRecords = storage.query(
                 QueryCriteria.builder().limit(Integer.MAX_VALUE).build()
             );
 
-            System.out.println("Found " + records.size() + " records");
-            if (records.isEmpty()) {
+            System.out.println("Found " + storedRecords.size() + " records");
+            if (storedRecords.isEmpty()) {
                 System.out.println("No records found, nothing to replay.");
-                return;
+                return EXIT_OK;
+            }
+            // 增量回放只回放缓存中没有、上次未通过或目标已变更的记录
+            ReplayResultCache resultCache = options.incremental() != null
+                ? ReplayResultCache.open(Paths.get(options.resultCachePath()))
+                : null;
+            ReplayResultCache.Selection selection = resultCache != null
+                ? selectIncrementalRecords(resultCache, storedRecords, options)
+                : null;
+            List<TrafficRecord> records = selection != null ? selection.toReplay() : storedRecords;
+            if (records.isEmpty()) {
+                System.out.println("All records already verified on build " + options.incremental().buildId() + ", nothing to replay.");
+                printIncrementalSummary(selection);
+                return EXIT_OK;
             }
 
-            boolean sequentialMode = !"concurrent".equalsIgnoreCase(replayMode);
-            TrafficReplayer replayer = new TrafficReplayer(target, sequentialMode);
-            List<ReplayResult> results = replayer.replay(records);
-
-            long successCount = results.stream().filter(ReplayResult::success).count();
-            System.out.println("Replay completed: " + successCount + "/" + results.size() + " succeeded");
+            boolean sequentialMode = !REPLAY_MODE_CONCURRENT.equals(options.replayMode());
+            if (options.targets().size() > 1) {
+                runMultiTargetReplay(records, options, sequentialMode);
+                return EXIT_OK;
+            }
+            // 可恢复运行跳过上次已完成的记录，seqs 为待回放记录在全部记录中的序号
+            ReplayRunCheckpoint run = runDirectory != null
+                ? openReplayRun(runDirectory, resume, args, records.size(), options.enableCompare())
+                : null;
+            int[] seqs = run != null ? pendingSeqs(records, run.completedRecordIds()) : null;
+            List<TrafficRecord> pending = seqs != null ? Arrays.stream(seqs).mapToObj(records::get).toList() : records;
+            String runId = run != null ? run.runId() : ReplayRunCheckpoint.newRunId();
+            ReplayPlan plan = prepareReplayPlan(storedRecords, options);
+            Instant startedAt = Instant.now();
+            try (run;
+                 HttpReplayClient httpReplayClient = createHttpReplayClient(options);
+                 TrafficReplayer replayer = new TrafficReplayer(options.target(), sequentialMode, httpReplayClient)) {
+                replayer.usePlan(plan);
+                SessionParallelReplayer sessionReplayer = REPLAY_MODE_SESSION.equals(options.replayMode())
+                    ? new SessionParallelReplayer(replayer, SessionKeyExtractor.parse(options.sessionKey()))
+                    : null;
+                OpenLoopReplayer openLoopReplayer = REPLAY_MODE_OPEN_LOOP.equals(options.replayMode())
+                    ? new OpenLoopReplayer(replayer, options.targetRps(), options.speed())
+                    : null;
+
+                if (options.amplification() != null) {
+                    runAmplifiedReplay(replayer, pending, options);
+                    printTransportSummary(httpReplayClient, replayer);
+                    return EXIT_OK;
+                }
+                if (options.capacitySearch() != null) {
+                    runCapacitySearch(replayer, pending, options);
+                    printTransportSummary(httpReplayClient, replayer);
+                    return EXIT_OK;
+                }
 
-            if (enableCompare) {
-                System.out.println("\nStarting comparison...");
+                if (!options.enableCompare()) {
+                    TrafficReplayer.ReplayListener toRun = run != null
+                        ? (index, result) -> run.recordReplayed(seqs[index], pending.get(index), result)
+                        : null;
+                    List<ReplayResult> results = replayRecords(replayer, sessionReplayer, openLoopReplayer, pending, toRun);
+                    long wallMillis = Duration.between(startedAt, Instant.now()).toMillis();
+                    long successCount = results.stream().filter(ReplayResult::success).count();
+                    System.out.println("Replay completed: " + successCount + "/" + results.size() + " succeeded");
+                    printSessionReplayStats(sessionReplayer);
+                    printOpenLoopStats(openLoopReplayer);
+                    printTransportSummary(httpReplayClient, replayer);
+                    printReplayRunSummary(run, false);
+                    if (run != null && run.resumedCount() > 0 && (options.runStore() != null || options.gate() != null)) {
+                        System.out.println("Note: without --compare the run store and gate only cover records replayed in this attempt");
+                    }
+                    return finishReplayRun(options, runId, startedAt, wallMillis, pending.size(), visitor -> {
+                        for (int i = 0; i < results.size(); i++) {
+                            ReplayResult result = results.get(i);
+                            visitor.visit(pending.get(i), result.response(), result.duration(), result.success(), null);
+                        }
+                    });
+                }
 
-                List<ComparisonConfig> configs = configPath != null
-                    ? ComparisonConfigLoader.load(configPath)
+                List<ComparisonConfig> configs = options.configPath() != null
+                    ? ComparisonConfigLoader.load(options.configPath())
                     : ComparisonConfigLoader.loadDefault();
-
                 Comparator comparator = new Comparator(configs);
-                List<ComparisonReport> comparisonReports = new ArrayList<>();
-
-                for (int i = 0; i < records.size(); i++) {
-                    TrafficRecord record = records.get(i);
-                    ReplayResult replayResult = results.get(i);
-                    java.time.Instant replayTimestamp = java.time.Instant.now();
 
-                    if (replayResult.success()) {
-                        ComparisonResult comparisonResult = comparator.compare(record, replayResult.response());
-                        comparisonReports.add(new ComparisonReport(record, replayResult.response(), comparisonResult, replayResult.duration(), replayTimestamp));
-                    } else {
-                        ComparisonResult failedResult = new ComparisonResult(
-                            false,
-                            List.of(new Difference("replay", "error", "success", "failed: " + replayResult.errorMessage())),
-                            Map.of()
-                        );
-                        comparisonReports.add(new ComparisonReport(record, null, failedResult, replayResult.duration(), replayTimestamp));
-                    }
+                List<ComparisonReport> comparisonReports;
+                long wallMillis;
+                ParallelComparisonStage.ComparedListener toRun = run != null
+                    ? (index, report) -> run.recordCompared(seqs[index], report)
+                    : null;
+                try (ParallelComparisonStage compareStage = new ParallelComparisonStage(comparator, options.compareThreads(), pending.size(), toRun)) {
+                    // 每条记录回放完成后立即进入比对阶段
+                    TrafficReplayer.ReplayListener toCompareStage = (index, result) -> compareStage.submit(index, pending.get(index), result);
+                    List<ReplayResult> results = replayRecords(replayer, sessionReplayer, openLoopReplayer, pending, toCompareStage);
+                    // 回放耗时只算派发到全部回放完成，不含等待比对和生成报告
+                    wallMillis = Duration.between(startedAt, Instant.now()).toMillis();
+
+                    long successCount = results.stream().filter(ReplayResult::success).count();
+                    System.out.println("Replay completed: " + successCount + "/" + results.size() + " succeeded");
+                    printSessionReplayStats(sessionReplayer);
+                    printOpenLoopStats(openLoopReplayer);
+
+                    System.out.println("\nWaiting for comparison stage (" + options.compareThreads() + " threads)...");
+                    comparisonReports = compareStage.await();
+                    printComparisonStageStats(compareStage);
                 }
+                printTransportSummary(httpReplayClient, replayer);
 
                 long matchedCount = comparisonReports.stream()
                     .filter(r -> r.result().matched())
                     .count();
                 System.out.println("Comparison completed: " + matchedCount + "/" + comparisonReports.size() + " matched");
+                if (resultCache != null) {
+                    updateResultCache(resultCache, comparisonReports, options);
+                    printIncrementalSummary(selection);
+                }
+                printReplayRunSummary(run, true);
+                int exitCode = finishReplayRun(options, runId, startedAt, wallMillis, pending.size(), visitor -> {
+                    Consumer<ComparisonReport> visit = report -> visitor.visit(report.record(), report.replayedResponse(),
+                        report.replayDuration(), report.replayedResponse() != null, report.result().matched());
+                    if (run != null) {
+                        // 包含恢复前已完成的记录
+                        try (SortedCacheReader runReports = LiveReportCacheStore.openSorted(run.reportsPath().toString())) {
+                            runReports.forEachRemaining(visit);
+                        }
+                    } else {
+                        comparisonReports.forEach(visit);
+                    }
+                });
 
-                if (reportPath != null) {
+                if (options.reportPath() != null) {
                     System.out.println("\nGenerating HTML report...");
-                    if (serviceParser != null) {
-                        System.out.println("Using service parser: " + serviceParser);
+                    if (options.serviceParser() != null) {
+                        System.out.println("Using service parser: " + options.serviceParser());
                     }
                     HtmlReportGenerator reportGenerator = new HtmlReportGenerator();
-                    reportGenerator.generateReport(comparisonReports, reportPath, serviceParser);
-                    System.out.println("Report generated: " + reportPath);
+                    if (run != null) {
+                        // 报告包含恢复前已完成的记录
+                        try (SortedCacheReader runReports = LiveReportCacheStore.openSorted(run.reportsPath().toString())) {
+                            writeReport(reportGenerator, runReports, options.reportPath(), options.serviceParser(), options.reportFormat());
+                        }
+                    } else {
+                        writeReport(reportGenerator, comparisonReports.iterator(), options.reportPath(), options.serviceParser(), options.reportFormat());
+                    }
+                    System.out.println("Report generated: " + options.reportPath());
                 }
+                return exitCode;
             }
 
         } catch (Exception e) {
             System.err.println("Failed to replay: " + e.getMessage());
             e.printStackTrace();
+            return EXIT_ERROR;
+        }
+    }
+
+    // 容量探测反复回放同一批记录，回放前在内存中编译一次请求模板
+    private static ReplayPlan prepareReplayPlan(List<TrafficRecord> records, ReplayCommandOptions options) {
+        if (options.capacitySearch() == null) {
+            return null;
+        }
+        long startNanos = System.nanoTime();
+        ReplayPlan plan = ReplayPlan.compile(records, options.target());
+        System.out.println(String.format("Replay plan: %d HTTP requests compiled in %.1f ms%s",
+            plan.size(),
+            (System.nanoTime() - startNanos) / 1_000_000.0,
+            plan.getInvalidCount() > 0 ? ", " + plan.getInvalidCount() + " invalid (reported as failures)" : ""));
+        return plan;
+    }
+
+    private static ReplayRunCheckpoint openReplayRun(Path runDirectory, boolean resume, String[] args, int totalRecords, boolean compare) {
+        ReplayRunCheckpoint run;
+        if (resume) {
+            run = ReplayRunCheckpoint.resume(runDirectory, compare);
+            System.out.println("Resuming replay run " + run.runId() + ": " + run.resumedCount() + "/" + totalRecords
+                + " records already completed (" + runDirectory + ")");
+        } else {
+            ReplayRunCheckpoint.RunMetadata metadata = new ReplayRunCheckpoint.RunMetadata(
+                runDirectory.getFileName().toString(), List.of(args), totalRecords, Instant.now());
+            run = ReplayRunCheckpoint.start(runDirectory, metadata, compare);
+            System.out.println("Replay run: " + run.runId() + " (" + runDirectory + ")");
         }
+        // Ctrl-C 或进程被终止时写入最终检查点
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (!run.isClosed()) {
+                run.close();
+                System.out.println("\nReplay interrupted at " + run.completed() + "/" + totalRecords + " records, checkpoint saved. Resume with: "
+                    + "flowreplay replay --resume " + run.runId() + " --run-dir " + runDirectory.getParent());
+            }
+        }, "replay-run-shutdown"));
+        return run;
+    }
+
+    // 未完成记录在全部记录中的序号
+    private static int[] pendingSeqs(List<TrafficRecord> records, Set<String> completedRecordIds) {
+        return IntStream.range(0, records.size())
+            .filter(i -> !completedRecordIds.contains(records.get(i).id()))
+            .toArray();
+    }
+
+    private static void printReplayRunSummary(ReplayRunCheckpoint run, boolean compare) {
+        if (run == null) {
+            return;
+        }
+        StringBuilder summary = new StringBuilder("Replay run ").append(run.runId()).append(": ")
+            .append(run.completed()).append(" records completed, ")
+            .append(run.succeeded()).append(" succeeded");
+        if (compare) {
+            summary.append(", ").append(run.matched()).append(" matched");
+        }
+        if (run.resumedCount() > 0) {
+            summary.append(" (").append(run.resumedCount()).append(" from previous attempts)");
+        }
+        System.out.println(summary);
+    }
+
+    /**
+     * 一条回放结果（运行结果库和性能门禁共用）
+     */
+    private interface ReplayedRecordVisitor {
+        void visit(TrafficRecord record, ResponseData response, long durationMillis, boolean success, Boolean matched);
+    }
+
+    // 回放结束后写入运行结果库并执行性能门禁，返回退出码；wallMillis 为回放耗时（不含比对），吞吐量按它计算
+    private static int finishReplayRun(ReplayCommandOptions options, String runId, Instant startedAt, long wallMillis, int replayed,
+                                       Consumer<ReplayedRecordVisitor> results) {
+        GateOptions gate = options.gate();
+        if (options.runStore() == null && gate == null) {
+            return EXIT_OK;
+        }
+        RunStore store = options.runStore() != null ? RunStore.open(Paths.get(options.runStore())) : null;
+        boolean recordedBaseline = gate != null && GATE_BASELINE_RECORDED.equals(gate.baseline());
+        // 存储的基线在写入本次运行之前确定，previous 即上一次运行
+        RunStore.RunSummary baseline = gate != null && !recordedBaseline ? findGateBaseline(store, gate.baseline()) : null;
+        RunStore.Summarizer recorded = recordedBaseline ? new RunStore.Summarizer() : null;
+        ServiceNameParser serviceNameParser = ServiceNameParserFactory.getParser(options.serviceParser());
+
+        RunStore.RunSummary summary;
+        try (RunStore.Recorder recorder = store != null
+                 ? store.newRun(runId, startedAt, options.buildId(), options.target(), options.replayMode())
+                 : null) {
+            RunStore.Summarizer summarizer = new RunStore.Summarizer();
+            RunStore.RecordSink sink = recorder != null ? recorder : summarizer;
+            results.accept((record, response, durationMillis, success, matched) -> {
+                String service = serviceNameParser.parseServiceName(record);
+                sink.add(service, latencyMicros(response, durationMillis), response != null ? response.statusCode() : 0, success, matched);
+                if (recorded != null && record.response() != null) {
+                    // 录制时只有毫秒精度
+                    recorded.add(service, record.response().duration() * 1_000, record.response().statusCode(), true, null);
+                }
+            });
+            summary = recorder != null
+                ? recorder.commit(wallMillis)
+                : summarizer.summarize(runId, startedAt, wallMillis, options.buildId(), options.target(), options.replayMode());
+        }
+        if (store != null) {
+            System.out.println(String.format("Run stored: %s (%d records, %d services) in %s",
+                summary.runId(), summary.overall().requests(), summary.byService().size(), store.getDirectory()));
+        }
+        if (gate == null) {
+            return EXIT_OK;
+        }
+
+        if (recorded != null) {
+            baseline = recorded.summarize(GATE_BASELINE_RECORDED, startedAt, 0, null, null, null);
+        }
+        double throughputRps = wallMillis > 0 ? replayed * 1000.0 / wallMillis : 0.0;
+        PerformanceGate.Result result = PerformanceGate.evaluate(summary, baseline,
+            recordedBaseline ? GATE_BASELINE_RECORDED : baseline.runId(), throughputRps, gate.thresholds());
+        printGateResult(result);
+        writeGateReport(result, gate.reportPath());
+        return result.passed() ? EXIT_OK : EXIT_GATE_FAILED;
+    }
+
+    private static RunStore.RunSummary findGateBaseline(RunStore store, String baseline) {
+        if (GATE_BASELINE_PREVIOUS.equals(baseline)) {
+            List<RunStore.RunSummary> last = store.list(1);
+            if (last.isEmpty()) {
+                throw new IllegalArgumentException("No previous run in " + store.getDirectory() + " to use as gate baseline");
+            }
+            return last.get(0);
+        }
+        return store.find(baseline)
+            .orElseThrow(() -> new IllegalArgumentException("Gate baseline run not found: " + baseline));
+    }
+
+    private static void printGateResult(PerformanceGate.Result result) {
+        System.out.println(String.format("\nPerformance gate %s (baseline: %s, %d requests, %.1f req/s)",
+            result.passed() ? "PASSED" : "FAILED", result.baseline(), result.requests(), result.throughputRps()));
+        for (PerformanceGate.Violation violation : result.violations()) {
+            String service = RunStore.ALL_SERVICES.equals(violation.service()) ? "(all services)" : violation.service();
+            String detail = switch (violation.check()) {
+                case PerformanceGate.CHECK_P99_INCREASE -> String.format("p99 %.2f ms vs baseline %.2f ms (max +%.1f%%)",
+                    violation.actual() / 1000.0, violation.baseline() / 1000.0, violation.threshold());
+                case PerformanceGate.CHECK_THROUGHPUT -> String.format("%.1f req/s (min %.1f)", violation.actual(), violation.threshold());
+                default -> String.format("%.2f%% (max %.2f%%)", violation.actual(), violation.threshold());
+            };
+            System.out.println(String.format("  %-14s %-24s %s", violation.check(), service, detail));
+        }
+        if (!result.skippedServices().isEmpty()) {
+            System.out.println("  " + result.skippedServices().size() + " services with fewer than "
+                + PerformanceGate.MIN_SERVICE_SAMPLES + " requests only count towards the overall checks");
+        }
+    }
+
+    // 机器可读的门禁结果，未指定文件时输出到标准输出（单行 JSON）
+    private static void writeGateReport(PerformanceGate.Result result, String reportPath) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        try {
+            if (reportPath == null) {
+                System.out.println(objectMapper.writeValueAsString(result));
+                return;
+            }
+            Path path = Paths.get(reportPath);
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(path.toFile(), result);
+            System.out.println("Gate result written: " + reportPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write gate result: " + reportPath, e);
+        }
+    }
+
+    // 传输层记录了微秒耗时时优先使用
+    private static long latencyMicros(ResponseData response, long durationMillis) {
+        Object micros = response != null ? response.metadata().get("durationMicros") : null;
+        return micros instanceof Number number ? number.longValue() : durationMillis * 1_000;
+    }
+
+    private static ReplayResultCache.Selection selectIncrementalRecords(ReplayResultCache resultCache, List<TrafficRecord> records,
+                                                                        ReplayCommandOptions options) {
+        ReplayResultCache.Policy policy = options.incremental();
+        ServiceNameParser serviceNameParser = ServiceNameParserFactory.getParser(options.serviceParser());
+        ReplayResultCache.Selection selection = resultCache.select(records, policy, serviceNameParser::parseServiceName);
+        System.out.println(String.format(
+            "Incremental replay (build %s, cache %s, %d entries): %d to replay, %d skipped",
+            policy.buildId(), options.resultCachePath(), resultCache.size(), selection.toReplay().size(), selection.skipped()));
+        System.out.println(String.format(
+            "  replaying: %d new, %d previously failing, %d changed, %d sampled, %d not GET/HEAD/OPTIONS",
+            selection.uncached(), selection.previouslyFailed(), selection.changed(), selection.sampled(), selection.ineligible()));
+        return selection;
+    }
+
+    // 写回本次比对结论，跳过的记录保持原条目
+    private static void updateResultCache(ReplayResultCache resultCache, List<ComparisonReport> comparisonReports,
+                                          ReplayCommandOptions options) {
+        String buildId = options.incremental().buildId();
+        ServiceNameParser serviceNameParser = ServiceNameParserFactory.getParser(options.serviceParser());
+        for (ComparisonReport report : comparisonReports) {
+            resultCache.put(report.record(), buildId, report.result().matched(), report.replayDuration(),
+                serviceNameParser.parseServiceName(report.record()));
+        }
+        resultCache.save();
+        System.out.println("Result cache updated: " + resultCache.size() + " entries (" + options.resultCachePath() + ")");
+    }
+
+    private static void printIncrementalSummary(ReplayResultCache.Selection selection) {
+        System.out.println(String.format(
+            "Cache hit rate: %.1f%% (%d/%d), time saved: %.2f s (sum of cached replay durations)",
+            selection.hitRate() * 100,
+            selection.skipped() + selection.sampled(),
+            selection.total(),
+            selection.savedMillis() / 1000.0
+        ));
+    }
+
+    private static List<ReplayResult> replayRecords(TrafficReplayer replayer, SessionParallelReplayer sessionReplayer,
+                                                    OpenLoopReplayer openLoopReplayer, List<TrafficRecord> records,
+                                                    TrafficReplayer.ReplayListener listener) {
+        if (sessionReplayer != null) {
+            return sessionReplayer.replay(records, listener);
+        }
+        if (openLoopReplayer != null) {
+            return openLoopReplayer.replay(records, listener);
+        }
+        return replayer.replay(records, listener);
+    }
+
+    private static void printOpenLoopStats(OpenLoopReplayer openLoopReplayer) {
+        if (openLoopReplayer == null) {
+            return;
+        }
+        System.out.println(String.format(
+            "Open-loop replay: scheduled=%.1f ms, wall=%.1f ms, max dispatch lag=%.2f ms",
+            openLoopReplayer.getScheduledMillis(),
+            openLoopReplayer.getWallMillis(),
+            openLoopReplayer.getMaxDispatchLagMillis()
+        ));
+        LatencyHistogram raw = openLoopReplayer.getRawHistogram();
+        LatencyHistogram corrected = openLoopReplayer.getCorrectedHistogram();
+        System.out.println("  latency (ms)      raw   corrected");
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            System.out.println(String.format(
+                "  p%-6s %12.2f %11.2f",
+                percentile == 99.9 ? "99.9" : String.valueOf((int) percentile),
+                raw.getValueAtPercentile(percentile) / 1000.0,
+                corrected.getValueAtPercentile(percentile) / 1000.0
+            ));
+        }
+        System.out.println(String.format("  %-7s %12.2f %11.2f", "max", raw.getMaxMicros() / 1000.0, corrected.getMaxMicros() / 1000.0));
+    }
+
+    private static void printSessionReplayStats(SessionParallelReplayer sessionReplayer) {
+        if (sessionReplayer == null) {
+            return;
+        }
+        System.out.println(String.format(
+            "Session replay: %d partitions (largest=%d, unkeyed=%d), recorded timestamp inversions=%d",
+            sessionReplayer.getPartitionCount(),
+            sessionReplayer.getLargestPartitionSize(),
+            sessionReplayer.getUnkeyedCount(),
+            sessionReplayer.getTimestampInversions()
+        ));
+        System.out.println(String.format(
+            "  wall=%.1f ms, sequential estimate=%.1f ms, speedup=%.2fx (critical path %.1f ms)",
+            sessionReplayer.getWallMillis(),
+            sessionReplayer.getSerialMillis(),
+            sessionReplayer.getSpeedup(),
+            sessionReplayer.getCriticalPathMillis()
+        ));
+    }
+
+    private static void runAmplifiedReplay(TrafficReplayer replayer, List<TrafficRecord> records, ReplayCommandOptions options) {
+        AmplifiedReplayer.Config config = options.amplification();
+        System.out.println(String.format(
+            "Amplifying %d records x%d over %d virtual clients (target rps=%s, jitter=%d ms, rewrite keys=%s)",
+            records.size(), config.factor(), config.virtualClients(),
+            config.targetRps() > 0 ? String.valueOf(config.targetRps()) : "unlimited",
+            config.jitterMillis(), config.rewriteKeys().isEmpty() ? "none" : String.join(",", config.rewriteKeys())
+        ));
+        AmplifiedReplayer.Summary summary = new AmplifiedReplayer(replayer, config).replay(
+            records,
+            Duration.ofSeconds(options.progressIntervalSeconds()),
+            progress -> System.out.println(String.format(
+                "  [%6.1fs] %d/%d done, %.1f req/s, p50=%.2f ms, p99=%.2f ms, max=%.2f ms, failed=%d",
+                progress.elapsedSeconds(),
+                progress.completed(),
+                progress.total(),
+                progress.intervalRps(),
+                progress.p50Micros() / 1000.0,
+                progress.p99Micros() / 1000.0,
+                progress.maxMicros() / 1000.0,
+                progress.failed()
+            ))
+        );
+        System.out.println("Replay completed: " + summary.succeeded() + "/" + summary.total() + " succeeded");
+        System.out.println(String.format(
+            "Amplified replay: wall=%.1f s, achieved %.1f req/s, mean=%.2f ms, p50=%.2f ms, p99=%.2f ms, max=%.2f ms",
+            summary.wallSeconds(),
+            summary.achievedRps(),
+            summary.meanMicros() / 1000.0,
+            summary.p50Micros() / 1000.0,
+            summary.p99Micros() / 1000.0,
+            summary.maxMicros() / 1000.0
+        ));
+    }
+
+    private static void runCapacitySearch(TrafficReplayer replayer, List<TrafficRecord> records, ReplayCommandOptions options) {
+        CapacitySearchReplayer.Config config = options.capacitySearch();
+        System.out.println(String.format(
+            "Capacity search (%s): start=%.1f rps, max=%.1f rps, step=%d s, p99 SLO=%.1f ms, max error rate=%.2f%%",
+            config.strategy().name().toLowerCase(),
+            config.startRps(),
+            config.maxRps(),
+            config.stepDuration().toSeconds(),
+            config.p99SloMicros() / 1000.0,
+            config.maxErrorRate() * 100
+        ));
+        CapacitySearchReplayer.Result result = new CapacitySearchReplayer(
+            replayer, ServiceNameParserFactory.getParser(options.serviceParser()), config
+        ).search(records, step -> System.out.println(String.format(
+            "  step %2d: target=%.1f rps, achieved=%.1f rps, p50=%.2f ms, p99=%.2f ms, errors=%.2f%% -> %s",
+            step.step(),
+            step.targetRps(),
+            step.achievedRps(),
+            step.p50Micros() / 1000.0,
+            step.p99Micros() / 1000.0,
+            step.errorRate() * 100,
+            step.withinSlo() ? "ok" : step.aborted() ? "violated (aborted early)" : "violated"
+        )));
+
+        System.out.println(String.format("Max sustainable throughput: %.1f req/s", result.maxSustainableRps()));
+        // 按接口输出吞吐-耗时曲线，按目标速率排序
+        List<CapacitySearchReplayer.Step> curve = result.steps().stream()
+            .sorted(java.util.Comparator.comparingDouble(CapacitySearchReplayer.Step::targetRps))
+            .toList();
+        Set<String> services = new TreeSet<>();
+        curve.forEach(step -> services.addAll(step.services().keySet()));
+        System.out.println("Throughput vs latency by service:");
+        for (String service : services) {
+            System.out.println("  " + service);
+            System.out.println("    target rps  achieved rps    p50 ms    p99 ms  errors");
+            for (CapacitySearchReplayer.Step step : curve) {
+                CapacitySearchReplayer.ServicePoint point = step.services().get(service);
+                if (point == null) {
+                    continue;
+                }
+                System.out.println(String.format(
+                    "    %10.1f  %12.1f  %8.2f  %8.2f  %6d",
+                    step.targetRps(),
+                    point.achievedRps(),
+                    point.p50Micros() / 1000.0,
+                    point.p99Micros() / 1000.0,
+                    point.errors()
+                ));
+            }
+        }
+    }
+
+    // 记录只读取一次，每条记录同时发往所有目标；每个目标使用独立的回放客户端
+    private static void runMultiTargetReplay(List<TrafficRecord> records, ReplayCommandOptions options, boolean sequentialMode) throws Exception {
+        List<String> targets = options.targets();
+        List<HttpReplayClient> httpReplayClients = new ArrayList<>();
+        List<TrafficReplayer> replayers = new ArrayList<>();
+        try {
+            for (String target : targets) {
+                HttpReplayClient httpReplayClient = createHttpReplayClient(options, target);
+                httpReplayClients.add(httpReplayClient);
+                replayers.add(new TrafficReplayer(target, sequentialMode, httpReplayClient));
+            }
+            MultiTargetReplayer multiTargetReplayer = new MultiTargetReplayer(replayers, sequentialMode);
+
+            Comparator comparator = null;
+            if (options.enableCompare()) {
+                List<ComparisonConfig> configs = options.configPath() != null
+                    ? ComparisonConfigLoader.load(options.configPath())
+                    : ComparisonConfigLoader.loadDefault();
+                comparator = new Comparator(configs);
+            }
+            MultiTargetReport[] comparisonReports = new MultiTargetReport[records.size()];
+            Comparator targetComparator = comparator;
+            multiTargetReplayer.replay(records, targetComparator == null ? null
+                : (index, results) -> comparisonReports[index] = targetComparator.compareTargets(records.get(index), results));
+
+            System.out.println("Replay completed:");
+            for (int i = 0; i < targets.size(); i++) {
+                LatencyHistogram latency = multiTargetReplayer.getLatencyHistogram(i);
+                System.out.println(String.format(
+                    "  [%s] %s: %d/%d succeeded, avg=%.2f ms, p50=%.2f ms, p99=%.2f ms",
+                    (char) ('A' + i),
+                    targets.get(i),
+                    multiTargetReplayer.getSuccessCount(i),
+                    records.size(),
+                    latency.getMeanMicros() / 1000.0,
+                    latency.getValueAtPercentile(50) / 1000.0,
+                    latency.getValueAtPercentile(99) / 1000.0
+                ));
+            }
+            if (comparator != null) {
+                for (int i = 0; i < targets.size(); i++) {
+                    final int target = i;
+                    long matched = Arrays.stream(comparisonReports)
+                        .filter(report -> report.targetReports().get(target).result().matched())
+                        .count();
+                    String line = "Comparison [" + (char) ('A' + i) + "]: " + matched + "/" + records.size() + " matched";
+                    if (i > 0) {
+                        long consistent = Arrays.stream(comparisonReports)
+                            .map(report -> report.againstFirstTarget().get(target - 1))
+                            .filter(result -> result != null && result.matched())
+                            .count();
+                        line += ", " + consistent + "/" + records.size() + " consistent with A";
+                    }
+                    System.out.println(line);
+                }
+            }
+            System.out.println(String.format(
+                "Target start skew: avg=%.1f us, max=%.1f us",
+                multiTargetReplayer.getAvgStartSkewMicros(),
+                multiTargetReplayer.getMaxStartSkewMicros()
+            ));
+            for (int i = 0; i < targets.size(); i++) {
+                printTransportSummary(httpReplayClients.get(i), replayers.get(i));
+            }
+
+            if (comparator != null && options.reportPath() != null) {
+                System.out.println("\nGenerating multi-target HTML report...");
+                new MultiTargetReportGenerator().generateReport(targets, List.of(comparisonReports), options.reportPath(), options.serviceParser());
+                System.out.println("Report generated: " + options.reportPath());
+            }
+        } finally {
+            for (TrafficReplayer replayer : replayers) {
+                replayer.close();
+            }
+            for (HttpReplayClient httpReplayClient : httpReplayClients) {
+                if (httpReplayClient != null) {
+                    httpReplayClient.close();
+                }
+            }
+        }
+    }
+
+    private static HttpReplayClient createHttpReplayClient(ReplayCommandOptions options) {
+        return createHttpReplayClient(options, options.target());
+    }
+
+    // jdk 客户端返回 null，由 TrafficReplayer 使用内置的 HttpClient
+    private static HttpReplayClient createHttpReplayClient(ReplayCommandOptions options, String target) {
+        if (REPLAY_CLIENT_NETTY.equals(options.replayClient())) {
+            return new NettyHttpReplayClient(target, options.poolSize(), options.pipelining());
+        }
+        if (REPLAY_CLIENT_H2C.equals(options.replayClient())) {
+            return new NettyHttp2ReplayClient(target, options.poolSize(), options.http2Settings());
+        }
+        return null;
+    }
+
+    private static void printTransportSummary(HttpReplayClient httpReplayClient, TrafficReplayer replayer) {
+        String summary = httpReplayClient != null ? httpReplayClient.summary() : null;
+        if (summary != null) {
+            System.out.println(summary);
+        }
+        String tcpSummary = replayer.tcpSummary();
+        if (tcpSummary != null) {
+            System.out.println(tcpSummary);
+        }
+    }
+
+    private static void printComparisonStageStats(ParallelComparisonStage compareStage) {
+        System.out.println(String.format(
+            "Compare throughput: %d records in %.1f ms (%.1f records/s, busy %.1f ms)",
+            compareStage.getComparedCount(),
+            compareStage.getElapsedMillis(),
+            compareStage.getThroughput(),
+            compareStage.getBusyMillis()
+        ));
+        compareStage.getStrategyTimings().snapshot().forEach((strategy, timing) ->
+            System.out.println(String.format(
+                "  strategy %-16s calls=%d, total=%.1f ms, avg=%.1f us",
+                strategy,
+                timing.calls(),
+                timing.totalMillis(),
+                timing.avgMicros()
+            ))
+        );
     }
 
     private static void handleCompare(String[] args) {
@@ -276,6 +891,65 @@ public class FlowReplayCLI {
         System.out.println("Use replay --compare to compare recorded vs replayed responses.");
     }
 
+    private static void handleRuns(String[] args) {
+        RunsCommandOptions options;
+        try {
+            options = parseRunsOptions(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid runs arguments: " + e.getMessage());
+            printUsage();
+            return;
+        }
+
+        try {
+            RunStore store = RunStore.open(Paths.get(options.storePath()));
+            List<RunStore.RunSummary> runs = store.list(options.last());
+            if (runs.isEmpty()) {
+                System.out.println("No runs found in " + options.storePath());
+                return;
+            }
+            RunHistoryPrinter printer = new RunHistoryPrinter(System.out);
+            printer.printRuns(runs);
+            printer.printServiceTrends(runs, options.service());
+
+            // 默认对比最近两次运行
+            RunStore.RunSummary candidate = options.candidateRunId() != null
+                ? findRun(store, runs, options.candidateRunId())
+                : runs.get(runs.size() - 1);
+            RunStore.RunSummary baseline = options.baselineRunId() != null
+                ? findRun(store, runs, options.baselineRunId())
+                : previousRun(runs, candidate);
+            if (baseline == null) {
+                System.out.println("\nOnly one run available, nothing to compare.");
+                return;
+            }
+            printer.printRegressions(baseline, candidate, store.findRegressions(baseline.runId(), candidate.runId()));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Failed to query runs: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // 先在已加载的最近运行中查找，找不到再读取完整索引
+    private static RunStore.RunSummary findRun(RunStore store, List<RunStore.RunSummary> runs, String runId) {
+        return runs.stream()
+            .filter(run -> run.runId().equals(runId))
+            .findFirst()
+            .or(() -> store.find(runId))
+            .orElseThrow(() -> new IllegalArgumentException("Run not found: " + runId));
+    }
+
+    private static RunStore.RunSummary previousRun(List<RunStore.RunSummary> runs, RunStore.RunSummary candidate) {
+        for (int i = runs.size() - 1; i > 0; i--) {
+            if (runs.get(i).runId().equals(candidate.runId())) {
+                return runs.get(i - 1);
+            }
+        }
+        return null;
+    }
+
     private static void handleReportFromCache(String[] args) {
         ReportFromCacheOptions options;
         try {
@@ -287,16 +961,31 @@ public class FlowReplayCLI {
         }
 
         try {
-            List<ComparisonReport> reports = LiveReportCacheStore.readReports(options.cachePath());
-            if (reports.isEmpty()) {
-                System.out.println("No cached comparison data found: " + options.cachePath());
-                return;
-            }
+            long startNanos = System.nanoTime();
+            try (SortedCacheReader reports = LiveReportCacheStore.openSorted(options.cachePath())) {
+                if (!reports.hasNext()) {
+                    System.out.println("No cached comparison data found: " + options.cachePath());
+                    return;
+                }
 
-            HtmlReportGenerator reportGenerator = new HtmlReportGenerator();
-            reportGenerator.generateReport(reports, options.reportPath(), options.serviceParser());
-            System.out.println("Report generated from cache: " + options.reportPath());
-            System.out.println("Cached records used: " + reports.size());
+                HtmlReportGenerator reportGenerator = new HtmlReportGenerator();
+                writeReport(reportGenerator, reports, options.reportPath(), options.serviceParser(), options.reportFormat());
+                double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1_000_000_000.0;
+                System.out.println("Report generated from cache: " + options.reportPath());
+                System.out.println("Cached records used: " + reports.getRecordCount()
+                    + " (" + reports.getStrategy().name().toLowerCase()
+                    + (reports.getRunCount() > 0 ? ", runs=" + reports.getRunCount() : "") + ")");
+                if (reports.getSkippedLineCount() > 0) {
+                    System.out.println("Skipped unreadable cache lines: " + reports.getSkippedLineCount()
+                        + " (incomplete trailing write)");
+                }
+                System.out.println(String.format(
+                    "Throughput: %.0f records/s, %.2f MB/s (%.2f s)",
+                    reports.getRecordCount() / seconds,
+                    reports.getByteCount() / 1024.0 / 1024.0 / seconds,
+                    seconds
+                ));
+            }
         } catch (Exception e) {
             System.err.println("Failed to generate report from cache: " + e.getMessage());
             e.printStackTrace();
@@ -315,6 +1004,14 @@ public class FlowReplayCLI {
         String configPath = null;
         String serviceParser = null;
         String liveReportCachePath = null;
+        LiveReportCacheStore.Durability cacheDurability = LiveReportCacheStore.Durability.BATCH;
+        String reportFormat = REPORT_FORMAT_HTML;
+        LiveReplayQueue.Limits defaultLimits = LiveReplayQueue.Limits.defaults();
+        int liveQueue = defaultLimits.capacity();
+        int liveConcurrency = defaultLimits.concurrency();
+        LiveReplayQueue.OverflowPolicy liveOverflow = defaultLimits.policy();
+        int liveSample = defaultLimits.samplePercent();
+        long liveShedLatency = defaultLimits.shedLatencyMillis();
 
         for (int i = 1; i < args.length; i++) {
             switch (args[i]) {
@@ -332,6 +1029,13 @@ public class FlowReplayCLI {
                 case "--config" -> configPath = requireOptionValue(args, ++i, "--config");
                 case "--service-parser" -> serviceParser = requireOptionValue(args, ++i, "--service-parser");
                 case "--cache" -> liveReportCachePath = requireOptionValue(args, ++i, "--cache");
+                case "--cache-durability" -> cacheDurability = LiveReportCacheStore.Durability.parse(requireOptionValue(args, ++i, "--cache-durability"));
+                case "--live-queue" -> liveQueue = Integer.parseInt(requireOptionValue(args, ++i, "--live-queue"));
+                case "--live-concurrency" -> liveConcurrency = Integer.parseInt(requireOptionValue(args, ++i, "--live-concurrency"));
+                case "--live-overflow" -> liveOverflow = LiveReplayQueue.OverflowPolicy.parse(requireOptionValue(args, ++i, "--live-overflow"));
+                case "--live-sample" -> liveSample = Integer.parseInt(requireOptionValue(args, ++i, "--live-sample"));
+                case "--live-shed-latency" -> liveShedLatency = Long.parseLong(requireOptionValue(args, ++i, "--live-shed-latency"));
+                case "--report-format" -> reportFormat = parseReportFormat(requireOptionValue(args, ++i, "--report-format"));
                 default -> {
                     if (args[i].startsWith("--")) {
                         throw new IllegalArgumentException("Unknown option for record: " + args[i]);
@@ -380,7 +1084,10 @@ public class FlowReplayCLI {
             reportPath,
             configPath,
             serviceParser,
-            liveReportCachePath
+            liveReportCachePath,
+            cacheDurability,
+            reportFormat,
+            new LiveReplayQueue.Limits(liveQueue, liveConcurrency, liveOverflow, liveSample, liveShedLatency)
         );
     }
 
@@ -388,12 +1095,14 @@ public class FlowReplayCLI {
         String cachePath = null;
         String reportPath = null;
         String serviceParser = null;
+        String reportFormat = REPORT_FORMAT_HTML;
 
         for (int i = 1; i < args.length; i++) {
             switch (args[i]) {
                 case "--cache" -> cachePath = requireOptionValue(args, ++i, "--cache");
                 case "--report" -> reportPath = requireOptionValue(args, ++i, "--report");
                 case "--service-parser" -> serviceParser = requireOptionValue(args, ++i, "--service-parser");
+                case "--report-format" -> reportFormat = parseReportFormat(requireOptionValue(args, ++i, "--report-format"));
                 default -> {
                     if (args[i].startsWith("--")) {
                         throw new IllegalArgumentException("Unknown option for report-from-cache: " + args[i]);
@@ -409,7 +1118,402 @@ public class FlowReplayCLI {
             throw new IllegalArgumentException("--report is required");
         }
 
-        return new ReportFromCacheOptions(cachePath, reportPath, serviceParser);
+        return new ReportFromCacheOptions(cachePath, reportPath, serviceParser, reportFormat);
+    }
+
+    static RunsCommandOptions parseRunsOptions(String[] args) {
+        String storePath = DEFAULT_RUN_STORE;
+        int last = 10;
+        String service = null;
+        String candidateRunId = null;
+        String baselineRunId = null;
+
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--store" -> storePath = requireOptionValue(args, ++i, "--store");
+                case "--last" -> last = Integer.parseInt(requireOptionValue(args, ++i, "--last"));
+                case "--service" -> service = requireOptionValue(args, ++i, "--service");
+                case "--run" -> candidateRunId = requireOptionValue(args, ++i, "--run");
+                case "--baseline" -> baselineRunId = requireOptionValue(args, ++i, "--baseline");
+                default -> {
+                    if (args[i].startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option for runs: " + args[i]);
+                    }
+                }
+            }
+        }
+
+        if (last < 1) {
+            throw new IllegalArgumentException("--last must be >= 1");
+        }
+        return new RunsCommandOptions(storePath, last, service, candidateRunId, baselineRunId);
+    }
+
+    static ReplayCommandOptions parseReplayOptions(String[] args) {
+        String input = "./recordings";
+        List<String> targets = new ArrayList<>();
+        boolean enableCompare = false;
+        String reportPath = null;
+        String configPath = null;
+        String serviceParser = null;
+        String replayMode = REPLAY_MODE_SEQUENTIAL;
+        String sessionKey = null;
+        int factor = AmplifiedReplayer.Config.DEFAULT_FACTOR;
+        int virtualClients = AmplifiedReplayer.Config.DEFAULT_VIRTUAL_CLIENTS;
+        long jitterMillis = 0;
+        double targetRps = 0;
+        boolean targetRpsSet = false;
+        double speed = 1.0;
+        boolean speedSet = false;
+        CapacitySearchReplayer.Strategy searchStrategy = CapacitySearchReplayer.Strategy.BINARY;
+        double startRps = CapacitySearchReplayer.Config.DEFAULT_START_RPS;
+        double maxRps = CapacitySearchReplayer.Config.DEFAULT_MAX_RPS;
+        long stepSeconds = CapacitySearchReplayer.Config.DEFAULT_STEP_DURATION.toSeconds();
+        double sloP99Millis = CapacitySearchReplayer.Config.DEFAULT_P99_SLO_MICROS / 1000.0;
+        double maxErrorPercent = CapacitySearchReplayer.Config.DEFAULT_MAX_ERROR_RATE * 100;
+        int maxSteps = CapacitySearchReplayer.Config.DEFAULT_MAX_STEPS;
+        boolean capacityOptionSet = false;
+        List<String> rewriteKeys = new ArrayList<>();
+        long progressIntervalSeconds = 5;
+        boolean amplifyOptionSet = false;
+        String replayClient = REPLAY_CLIENT_JDK;
+        int poolSize = NettyHttpReplayClient.DEFAULT_POOL_SIZE;
+        int pipelining = 1;
+        NettyHttp2ReplayClient.Settings http2Defaults = NettyHttp2ReplayClient.Settings.defaults();
+        NettyHttp2ReplayClient.Mode h2cMode = http2Defaults.mode();
+        int maxStreams = http2Defaults.maxConcurrentStreams();
+        int streamWindow = http2Defaults.initialWindowSize();
+        int connectionWindow = http2Defaults.connectionWindowSize();
+        boolean http2OptionSet = false;
+        int compareThreads = Runtime.getRuntime().availableProcessors();
+        String reportFormat = REPORT_FORMAT_HTML;
+        boolean incremental = false;
+        String buildId = null;
+        String resultCachePath = null;
+        Set<String> changedServices = new TreeSet<>();
+        double incrementalSamplePercent = 0;
+        boolean incrementalOptionSet = false;
+        String runDir = null;
+        String resumeRunId = null;
+        String runStore = null;
+        Double maxP99Increase = null;
+        Double maxMismatchRate = null;
+        Double maxErrorRate = null;
+        Double minThroughput = null;
+        String gateBaseline = GATE_BASELINE_RECORDED;
+        String gateReportPath = null;
+        boolean gateOptionSet = false;
+
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--input" -> input = requireOptionValue(args, ++i, "--input");
+                case "--target" -> {
+                    for (String target : requireOptionValue(args, ++i, "--target").split(",")) {
+                        if (!target.isBlank()) {
+                            targets.add(target.trim());
+                        }
+                    }
+                }
+                case "--compare" -> enableCompare = true;
+                case "--report" -> reportPath = requireOptionValue(args, ++i, "--report");
+                case "--config" -> configPath = requireOptionValue(args, ++i, "--config");
+                case "--service-parser" -> serviceParser = requireOptionValue(args, ++i, "--service-parser");
+                case "--mode" -> replayMode = requireOptionValue(args, ++i, "--mode").toLowerCase();
+                case "--session-key" -> sessionKey = requireOptionValue(args, ++i, "--session-key");
+                case "--factor" -> {
+                    factor = Integer.parseInt(requireOptionValue(args, ++i, "--factor"));
+                    amplifyOptionSet = true;
+                }
+                case "--virtual-clients" -> {
+                    virtualClients = Integer.parseInt(requireOptionValue(args, ++i, "--virtual-clients"));
+                    amplifyOptionSet = true;
+                }
+                case "--jitter-ms" -> {
+                    jitterMillis = Long.parseLong(requireOptionValue(args, ++i, "--jitter-ms"));
+                    amplifyOptionSet = true;
+                }
+                case "--target-rps" -> {
+                    targetRps = Double.parseDouble(requireOptionValue(args, ++i, "--target-rps"));
+                    targetRpsSet = true;
+                }
+                case "--speed" -> {
+                    speed = Double.parseDouble(requireOptionValue(args, ++i, "--speed"));
+                    speedSet = true;
+                }
+                case "--rewrite-key" -> {
+                    for (String key : requireOptionValue(args, ++i, "--rewrite-key").split(",")) {
+                        if (!key.isBlank()) {
+                            rewriteKeys.add(key.trim());
+                        }
+                    }
+                    amplifyOptionSet = true;
+                }
+                case "--progress-interval" -> {
+                    progressIntervalSeconds = Long.parseLong(requireOptionValue(args, ++i, "--progress-interval"));
+                    amplifyOptionSet = true;
+                }
+                case "--search" -> {
+                    searchStrategy = CapacitySearchReplayer.Strategy.parse(requireOptionValue(args, ++i, "--search"));
+                    capacityOptionSet = true;
+                }
+                case "--start-rps" -> {
+                    startRps = Double.parseDouble(requireOptionValue(args, ++i, "--start-rps"));
+                    capacityOptionSet = true;
+                }
+                case "--max-rps" -> {
+                    maxRps = Double.parseDouble(requireOptionValue(args, ++i, "--max-rps"));
+                    capacityOptionSet = true;
+                }
+                case "--step-seconds" -> {
+                    stepSeconds = Long.parseLong(requireOptionValue(args, ++i, "--step-seconds"));
+                    capacityOptionSet = true;
+                }
+                case "--slo-p99-ms" -> {
+                    sloP99Millis = Double.parseDouble(requireOptionValue(args, ++i, "--slo-p99-ms"));
+                    capacityOptionSet = true;
+                }
+                case "--max-error-pct" -> {
+                    maxErrorPercent = Double.parseDouble(requireOptionValue(args, ++i, "--max-error-pct"));
+                    capacityOptionSet = true;
+                }
+                case "--max-steps" -> {
+                    maxSteps = Integer.parseInt(requireOptionValue(args, ++i, "--max-steps"));
+                    capacityOptionSet = true;
+                }
+                case "--client" -> replayClient = requireOptionValue(args, ++i, "--client").toLowerCase();
+                case "--pool-size" -> poolSize = Integer.parseInt(requireOptionValue(args, ++i, "--pool-size"));
+                case "--pipelining" -> pipelining = Integer.parseInt(requireOptionValue(args, ++i, "--pipelining"));
+                case "--h2c-mode" -> {
+                    h2cMode = NettyHttp2ReplayClient.Mode.parse(requireOptionValue(args, ++i, "--h2c-mode"));
+                    http2OptionSet = true;
+                }
+                case "--max-streams" -> {
+                    maxStreams = Integer.parseInt(requireOptionValue(args, ++i, "--max-streams"));
+                    http2OptionSet = true;
+                }
+                case "--stream-window" -> {
+                    streamWindow = Integer.parseInt(requireOptionValue(args, ++i, "--stream-window"));
+                    http2OptionSet = true;
+                }
+                case "--connection-window" -> {
+                    connectionWindow = Integer.parseInt(requireOptionValue(args, ++i, "--connection-window"));
+                    http2OptionSet = true;
+                }
+                case "--compare-threads" -> compareThreads = Integer.parseInt(requireOptionValue(args, ++i, "--compare-threads"));
+                case "--report-format" -> reportFormat = parseReportFormat(requireOptionValue(args, ++i, "--report-format"));
+                case "--incremental" -> incremental = true;
+                case "--build-id" -> buildId = requireOptionValue(args, ++i, "--build-id");
+                case "--result-cache" -> {
+                    resultCachePath = requireOptionValue(args, ++i, "--result-cache");
+                    incrementalOptionSet = true;
+                }
+                case "--changed-services" -> {
+                    for (String service : requireOptionValue(args, ++i, "--changed-services").split(",")) {
+                        if (!service.isBlank()) {
+                            changedServices.add(service.trim());
+                        }
+                    }
+                    incrementalOptionSet = true;
+                }
+                case "--incremental-sample" -> {
+                    incrementalSamplePercent = Double.parseDouble(requireOptionValue(args, ++i, "--incremental-sample"));
+                    incrementalOptionSet = true;
+                }
+                case "--run-dir" -> runDir = requireOptionValue(args, ++i, "--run-dir");
+                case "--resume" -> resumeRunId = requireOptionValue(args, ++i, "--resume");
+                case "--run-store" -> runStore = requireOptionValue(args, ++i, "--run-store");
+                case "--max-p99-increase" -> maxP99Increase = Double.valueOf(requireOptionValue(args, ++i, "--max-p99-increase"));
+                case "--max-mismatch-rate" -> maxMismatchRate = Double.valueOf(requireOptionValue(args, ++i, "--max-mismatch-rate"));
+                case "--max-error-rate" -> maxErrorRate = Double.valueOf(requireOptionValue(args, ++i, "--max-error-rate"));
+                case "--min-throughput" -> minThroughput = Double.valueOf(requireOptionValue(args, ++i, "--min-throughput"));
+                case "--gate-baseline" -> {
+                    gateBaseline = requireOptionValue(args, ++i, "--gate-baseline");
+                    gateOptionSet = true;
+                }
+                case "--gate-report" -> {
+                    gateReportPath = requireOptionValue(args, ++i, "--gate-report");
+                    gateOptionSet = true;
+                }
+                default -> {
+                    if (args[i].startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option for replay: " + args[i]);
+                    }
+                }
+            }
+        }
+
+        // 与 record 一致：指定报告即启用比对（amplify/capacity 模式下仍按 --report 报错）
+        if (reportPath != null && !enableCompare) {
+            enableCompare = true;
+        }
+        if (!REPLAY_MODE_SEQUENTIAL.equals(replayMode) && !REPLAY_MODE_CONCURRENT.equals(replayMode)
+            && !REPLAY_MODE_SESSION.equals(replayMode) && !REPLAY_MODE_AMPLIFY.equals(replayMode)
+            && !REPLAY_MODE_OPEN_LOOP.equals(replayMode) && !REPLAY_MODE_CAPACITY.equals(replayMode)) {
+            throw new IllegalArgumentException("Invalid replay mode: " + replayMode + " (supported: sequential|concurrent|session|amplify|open-loop|capacity)");
+        }
+        if (REPLAY_MODE_SESSION.equals(replayMode) && sessionKey == null) {
+            throw new IllegalArgumentException("--mode session requires --session-key <header:name|cookie:name|esb:field|connection>");
+        }
+        if (sessionKey != null && !REPLAY_MODE_SESSION.equals(replayMode)) {
+            throw new IllegalArgumentException("--session-key requires --mode session");
+        }
+        if (sessionKey != null) {
+            SessionKeyExtractor.parse(sessionKey);
+        }
+        AmplifiedReplayer.Config amplification = null;
+        if (REPLAY_MODE_AMPLIFY.equals(replayMode)) {
+            if (enableCompare || reportPath != null) {
+                throw new IllegalArgumentException("--mode amplify does not support --compare/--report");
+            }
+            if (progressIntervalSeconds < 1) {
+                throw new IllegalArgumentException("--progress-interval must be >= 1");
+            }
+            amplification = new AmplifiedReplayer.Config(factor, virtualClients, jitterMillis, targetRps, rewriteKeys);
+        } else if (amplifyOptionSet) {
+            throw new IllegalArgumentException("--factor/--virtual-clients/--jitter-ms/--rewrite-key/--progress-interval require --mode amplify");
+        }
+        if (targetRpsSet && !REPLAY_MODE_AMPLIFY.equals(replayMode) && !REPLAY_MODE_OPEN_LOOP.equals(replayMode)) {
+            throw new IllegalArgumentException("--target-rps requires --mode amplify or --mode open-loop");
+        }
+        if (speedSet && !REPLAY_MODE_OPEN_LOOP.equals(replayMode)) {
+            throw new IllegalArgumentException("--speed requires --mode open-loop");
+        }
+        CapacitySearchReplayer.Config capacitySearch = null;
+        if (REPLAY_MODE_CAPACITY.equals(replayMode)) {
+            if (enableCompare || reportPath != null) {
+                throw new IllegalArgumentException("--mode capacity does not support --compare/--report");
+            }
+            capacitySearch = new CapacitySearchReplayer.Config(
+                searchStrategy,
+                startRps,
+                maxRps,
+                Duration.ofSeconds(stepSeconds),
+                (long) (sloP99Millis * 1000),
+                maxErrorPercent / 100,
+                maxSteps
+            );
+        } else if (capacityOptionSet) {
+            throw new IllegalArgumentException("--search/--start-rps/--max-rps/--step-seconds/--slo-p99-ms/--max-error-pct/--max-steps require --mode capacity");
+        }
+        if (targetRps < 0) {
+            throw new IllegalArgumentException("--target-rps must be >= 0");
+        }
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("--speed must be > 0");
+        }
+        if (!REPLAY_CLIENT_JDK.equals(replayClient) && !REPLAY_CLIENT_NETTY.equals(replayClient) && !REPLAY_CLIENT_H2C.equals(replayClient)) {
+            throw new IllegalArgumentException("Invalid replay client: " + replayClient + " (supported: jdk|netty|h2c)");
+        }
+        if (http2OptionSet && !REPLAY_CLIENT_H2C.equals(replayClient)) {
+            throw new IllegalArgumentException("--h2c-mode/--max-streams/--stream-window/--connection-window require --client h2c");
+        }
+        NettyHttp2ReplayClient.Settings http2Settings = new NettyHttp2ReplayClient.Settings(h2cMode, maxStreams, streamWindow, connectionWindow);
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("--pool-size must be >= 1");
+        }
+        if (pipelining < 1) {
+            throw new IllegalArgumentException("--pipelining must be >= 1");
+        }
+        if (compareThreads < 1) {
+            throw new IllegalArgumentException("--compare-threads must be >= 1");
+        }
+        if (targets.isEmpty()) {
+            targets.add("http://localhost:8080");
+        }
+        if (targets.size() > 1) {
+            if (!REPLAY_MODE_SEQUENTIAL.equals(replayMode) && !REPLAY_MODE_CONCURRENT.equals(replayMode)) {
+                throw new IllegalArgumentException("Multiple --target values require --mode sequential|concurrent");
+            }
+            if (!REPORT_FORMAT_HTML.equals(reportFormat)) {
+                throw new IllegalArgumentException("Multiple --target values only support --report-format html");
+            }
+        }
+        ReplayResultCache.Policy incrementalPolicy = null;
+        if (incremental) {
+            if (!enableCompare) {
+                throw new IllegalArgumentException("--incremental requires --compare");
+            }
+            if (buildId == null) {
+                throw new IllegalArgumentException("--incremental requires --build-id <id>");
+            }
+            if (targets.size() > 1 || REPLAY_MODE_AMPLIFY.equals(replayMode) || REPLAY_MODE_CAPACITY.equals(replayMode)) {
+                throw new IllegalArgumentException("--incremental requires a single --target and --mode sequential|concurrent|session|open-loop");
+            }
+            incrementalPolicy = new ReplayResultCache.Policy(buildId, changedServices, incrementalSamplePercent);
+            if (resultCachePath == null) {
+                resultCachePath = Paths.get(input).resolve(DEFAULT_RESULT_CACHE_FILE).toString();
+            }
+        } else if (incrementalOptionSet) {
+            throw new IllegalArgumentException("--result-cache/--changed-services/--incremental-sample require --incremental");
+        }
+        if (buildId != null && !incremental && runStore == null) {
+            throw new IllegalArgumentException("--build-id requires --incremental or --run-store");
+        }
+        if (runStore != null && (targets.size() > 1 || REPLAY_MODE_AMPLIFY.equals(replayMode) || REPLAY_MODE_CAPACITY.equals(replayMode))) {
+            throw new IllegalArgumentException("--run-store requires a single --target and --mode sequential|concurrent|session|open-loop");
+        }
+        // 任一门禁阈值即启用门禁
+        PerformanceGate.Thresholds gateThresholds = new PerformanceGate.Thresholds(maxP99Increase, maxMismatchRate, maxErrorRate, minThroughput);
+        GateOptions gate = null;
+        if (!gateThresholds.isEmpty()) {
+            if (targets.size() > 1 || REPLAY_MODE_AMPLIFY.equals(replayMode) || REPLAY_MODE_CAPACITY.equals(replayMode)) {
+                throw new IllegalArgumentException("gate thresholds require a single --target and --mode sequential|concurrent|session|open-loop");
+            }
+            if (maxMismatchRate != null && !enableCompare) {
+                throw new IllegalArgumentException("--max-mismatch-rate requires --compare");
+            }
+            if (!GATE_BASELINE_RECORDED.equals(gateBaseline) && runStore == null) {
+                throw new IllegalArgumentException("--gate-baseline " + gateBaseline + " requires --run-store");
+            }
+            gate = new GateOptions(gateThresholds, gateBaseline, gateReportPath);
+        } else if (gateOptionSet) {
+            throw new IllegalArgumentException("--gate-baseline/--gate-report require --max-p99-increase, --max-mismatch-rate, --max-error-rate or --min-throughput");
+        }
+        if (resumeRunId != null) {
+            // 恢复时沿用原运行参数，只允许指定运行目录
+            if (args.length != (runDir != null ? 5 : 3)) {
+                throw new IllegalArgumentException("--resume only accepts --run-dir, the original replay options are reused");
+            }
+            if (runDir == null) {
+                runDir = DEFAULT_RUN_DIR;
+            }
+        } else if (runDir != null) {
+            if (targets.size() > 1 || REPLAY_MODE_AMPLIFY.equals(replayMode) || REPLAY_MODE_CAPACITY.equals(replayMode)) {
+                throw new IllegalArgumentException("--run-dir requires a single --target and --mode sequential|concurrent|session|open-loop");
+            }
+            if (incremental) {
+                throw new IllegalArgumentException("--run-dir cannot be combined with --incremental");
+            }
+        }
+
+        return new ReplayCommandOptions(
+            input,
+            List.copyOf(targets),
+            enableCompare,
+            reportPath,
+            configPath,
+            serviceParser,
+            replayMode,
+            sessionKey,
+            amplification,
+            progressIntervalSeconds,
+            targetRps,
+            speed,
+            capacitySearch,
+            replayClient,
+            poolSize,
+            pipelining,
+            http2Settings,
+            compareThreads,
+            reportFormat,
+            incrementalPolicy,
+            resultCachePath,
+            runDir,
+            resumeRunId,
+            runStore,
+            buildId,
+            gate
+        );
     }
 
     private static String buildDefaultLiveCachePath(String output) {
@@ -419,6 +1523,31 @@ public class FlowReplayCLI {
         return cachePath.toString();
     }
 
+    private static String parseReportFormat(String value) {
+        String format = value.toLowerCase();
+        if (!REPORT_FORMAT_HTML.equals(format) && !REPORT_FORMAT_SHARDED.equals(format)) {
+            throw new IllegalArgumentException("Invalid report format: " + value + " (supported: html|sharded)");
+        }
+        return format;
+    }
+
+    /**
+     * 按报告格式输出：html 为单文件，sharded 为按需加载的报告目录（reportPath 作为目录）
+     */
+    static void writeReport(
+        HtmlReportGenerator reportGenerator,
+        Iterator<ComparisonReport> reports,
+        String reportPath,
+        String serviceParser,
+        String reportFormat
+    ) throws IOException {
+        if (REPORT_FORMAT_SHARDED.equals(reportFormat)) {
+            reportGenerator.generateShardedReport(reports, reportPath, serviceParser);
+        } else {
+            reportGenerator.generateReport(reports, reportPath, serviceParser);
+        }
+    }
+
     private static HostPort parseHostPort(String target, int defaultPort) {
         if (target == null || target.isBlank()) {
             throw new IllegalArgumentException("target must not be empty");
@@ -471,21 +1600,68 @@ public class FlowReplayCLI {
         System.out.println("FlowReplay - Traffic Recording and Replay Tool");
         System.out.println();
         System.out.println("Usage:");
-        System.out.println("  flowreplay record [--port <port>] [--target <host:port>] [--output <path>] [--protocol http|tcp] [--protocol-parser <parser>] [--replay-target <url|host:port>] [--compare] [--report <path>] [--cache <path>] [--config <path>] [--service-parser <parser>]");
-        System.out.println("  flowreplay record-replay|rr [--port <port>] [--target <host:port>] [--output <path>] --replay-target <url|host:port> [--protocol http|tcp] [--protocol-parser <parser>] [--compare] [--report <path>] [--cache <path>] [--config <path>] [--service-parser <parser>]");
-        System.out.println("  flowreplay replay --input <path> --target <url|host:port> [--compare] [--report <path>] [--config <path>] [--service-parser <parser>] [--mode <mode>]");
-        System.out.println("  flowreplay report-from-cache --cache <path> --report <path> [--service-parser <parser>]");
+        System.out.println("  flowreplay record [--port <port>] [--target <host:port>] [--output <path>] [--protocol http|tcp] [--protocol-parser <parser>] [--replay-target <url|host:port>] [--compare] [--report <path>] [--cache <path>] [--cache-durability batch|flush|fsync] [--live-queue <n>] [--live-concurrency <n>] [--live-overflow <policy>] [--live-sample <percent>] [--live-shed-latency <ms>] [--config <path>] [--service-parser <parser>] [--report-format html|sharded]");
+        System.out.println("  flowreplay record-replay|rr [--port <port>] [--target <host:port>] [--output <path>] --replay-target <url|host:port> [--protocol http|tcp] [--protocol-parser <parser>] [--compare] [--report <path>] [--cache <path>] [--cache-durability batch|flush|fsync] [--live-queue <n>] [--live-concurrency <n>] [--live-overflow <policy>] [--live-sample <percent>] [--live-shed-latency <ms>] [--config <path>] [--service-parser <parser>] [--report-format html|sharded]");
+        System.out.println("  flowreplay replay --input <path> --target <url|host:port>[,<url|host:port>...] [--compare] [--report <path>] [--config <path>] [--service-parser <parser>] [--mode <mode>] [--session-key <key>] [--factor <n>] [--virtual-clients <n>] [--jitter-ms <ms>] [--target-rps <n>] [--speed <x>] [--rewrite-key <key>] [--progress-interval <s>] [--search aimd|binary] [--start-rps <n>] [--max-rps <n>] [--step-seconds <s>] [--slo-p99-ms <ms>] [--max-error-pct <percent>] [--max-steps <n>] [--client jdk|netty|h2c] [--pool-size <n>] [--pipelining <depth>] [--h2c-mode <mode>] [--max-streams <n>] [--stream-window <bytes>] [--connection-window <bytes>] [--compare-threads <n>] [--report-format html|sharded] [--incremental --build-id <id>] [--result-cache <path>] [--changed-services <a,b>] [--incremental-sample <percent>] [--run-dir <dir>] [--run-store <dir> [--build-id <id>]] [--max-p99-increase <percent>] [--max-mismatch-rate <percent>] [--max-error-rate <percent>] [--min-throughput <rps>] [--gate-baseline <recorded|previous|runId>] [--gate-report <path>]");
+        System.out.println("  flowreplay replay --resume <runId> [--run-dir <dir>]");
+        System.out.println("  flowreplay runs [--store <dir>] [--last <n>] [--service <name>] [--run <runId>] [--baseline <runId>]");
+        System.out.println("  flowreplay report-from-cache --cache <path> --report <path> [--service-parser <parser>] [--report-format html|sharded]");
         System.out.println("  flowreplay compare (not implemented, use replay --compare)");
         System.out.println();
         System.out.println("Key parameters:");
         System.out.println("  --replay-target <url|host:port>  Enable live replay while recording");
         System.out.println("  --replay <url|host:port>         Alias of --replay-target");
+        System.out.println("  --target <url>[,<url>...]        Replay target; several targets are replayed in one pass and compared side by side");
         System.out.println("  --compare                        Compare recorded and replayed responses");
         System.out.println("  --report <path>                  HTML report output path (auto-enables --compare)");
+        System.out.println("  --report-format html|sharded     Single HTML file or lazily loaded report directory (default: html)");
         System.out.println("  --cache <path>                   Cache live comparison data to JSONL");
+        System.out.println("  --cache-durability <mode>        Cache flush mode: batch|flush|fsync (default: batch)");
+        System.out.println("  --live-queue <n>                 Live replay queue capacity (default: 10000)");
+        System.out.println("  --live-concurrency <n>           Live replay workers (default: 200)");
+        System.out.println("  --live-overflow <policy>         block|drop-newest|drop-oldest|sample (default: drop-newest)");
+        System.out.println("  --live-sample <percent>          Percent of records kept while shedding with sample policy (default: 100)");
+        System.out.println("  --live-shed-latency <ms>         Start shedding when replay latency exceeds this (default: 0, queue depth only)");
         System.out.println("  --config <path>                  Comparison config YAML");
-        System.out.println("  --mode <mode>                    Replay mode: sequential|concurrent (default: sequential)");
+        System.out.println("  --mode <mode>                    Replay mode: sequential|concurrent|session|amplify|open-loop|capacity (default: sequential)");
+        System.out.println("  --session-key <key>              Session partition key for --mode session: header:<name>|cookie:<name>|esb:<field>|connection");
+        System.out.println("  --factor <n>                     Copies of each record sent by --mode amplify (default: 1)");
+        System.out.println("  --virtual-clients <n>            Concurrent virtual clients for --mode amplify (default: 64)");
+        System.out.println("  --jitter-ms <ms>                 Random delay added before each amplified send (default: 0)");
+        System.out.println("  --target-rps <n>                 Total request rate for --mode amplify|open-loop (default: 0, unlimited / recorded pace)");
+        System.out.println("  --search aimd|binary             Rate adjustment for --mode capacity (default: binary)");
+        System.out.println("  --start-rps <n> / --max-rps <n>  Capacity search rate range (default: 10 / 100000)");
+        System.out.println("  --step-seconds <s>               Duration of each capacity step (default: 10)");
+        System.out.println("  --slo-p99-ms <ms>                p99 latency SLO for --mode capacity (default: 500)");
+        System.out.println("  --max-error-pct <percent>        Error rate SLO for --mode capacity (default: 1)");
+        System.out.println("  --max-steps <n>                  Max capacity steps (default: 20)");
+        System.out.println("  --speed <x>                      Recorded-pace multiplier for --mode open-loop without --target-rps (default: 1.0)");
+        System.out.println("  --rewrite-key <key>              Per-copy key rewrite, repeatable: header:<name>|cookie:<name>|esb:<field>|query:<name>");
+        System.out.println("  --progress-interval <s>          Live throughput/latency report interval for --mode amplify (default: 5)");
+        System.out.println("  --client <jdk|netty|h2c>         HTTP replay transport (default: jdk); netty keeps a bounded keep-alive pool, h2c multiplexes HTTP/2 streams");
+        System.out.println("  --pool-size <n>                  Max connections per target for --client netty|h2c (default: 64)");
+        System.out.println("  --pipelining <depth>             HTTP/1.1 pipelining depth per connection for --client netty (default: 1, off)");
+        System.out.println("  --h2c-mode <mode>                h2c connection setup: prior-knowledge|upgrade (default: prior-knowledge)");
+        System.out.println("  --max-streams <n>                Max concurrent HTTP/2 streams per connection (default: 100)");
+        System.out.println("  --stream-window <bytes>          HTTP/2 stream flow-control window (default: 1048576)");
+        System.out.println("  --connection-window <bytes>      HTTP/2 connection flow-control window (default: 16777216)");
+        System.out.println("  --compare-threads <n>            Replay comparison worker threads (default: CPU cores)");
         System.out.println("  --service-parser <parser>        Report parser: uri|esb (default: uri)");
+        System.out.println("  --incremental                    Skip idempotent requests already verified on the same --build-id (requires --compare)");
+        System.out.println("  --build-id <id>                  Build/version of the replay target, part of the result cache key and recorded in the run store");
+        System.out.println("  --result-cache <path>            Replay result cache file (default: <input>/replay-result-cache.jsonl)");
+        System.out.println("  --changed-services <a,b>         Services changed in this build; verified records of other services are skipped on a new build");
+        System.out.println("  --incremental-sample <percent>   Percent of cache hits still replayed as a spot check (default: 0)");
+        System.out.println("  --run-dir <dir>                  Persist progress checkpoints and partial results under <dir>/<runId> so the run can be resumed");
+        System.out.println("  --resume <runId>                 Continue an interrupted run without re-sending completed records (default --run-dir: ./replay-runs)");
+        System.out.println("  --run-store <dir>                Append per-record results and per-service histograms to a run store for 'flowreplay runs'");
+        System.out.println("  --max-p99-increase <percent>     Gate: fail when overall or per-service p99 grows more than this vs the baseline");
+        System.out.println("  --max-mismatch-rate <percent>    Gate: fail when overall or per-service mismatch rate exceeds this (requires --compare)");
+        System.out.println("  --max-error-rate <percent>       Gate: fail when overall or per-service error rate (failures and 5xx) exceeds this");
+        System.out.println("  --min-throughput <rps>           Gate: fail when replay throughput is below this");
+        System.out.println("  --gate-baseline <b>              recorded (default, recorded durations), previous or a run id from --run-store");
+        System.out.println("  --gate-report <path>             Write the gate result as JSON (default: single JSON line on stdout); exit code 1 on violations, 2 on errors");
+        System.out.println("  runs --store <dir>               Run history, per-service latency/match-rate trends and significant p95/p99 regressions (default: ./replay-store)");
         System.out.println();
         System.out.println("Examples:");
         System.out.println("  flowreplay record --port 8080 --target localhost:8081 --output ./recordings");
@@ -493,7 +1669,21 @@ public class FlowReplayCLI {
         System.out.println("  flowreplay rr --port 8080 --target localhost:8081 --output ./recordings --replay-target http://localhost:9090 --compare --report ./live-report.html");
         System.out.println("  flowreplay record --port 8080 --target localhost:8081 --output ./recordings --replay http://localhost:9090");
         System.out.println("  flowreplay replay --input ./recordings --target http://localhost:9090 --mode concurrent");
+        System.out.println("  flowreplay replay --input ./recordings --target http://localhost:9090 --mode session --session-key header:X-Session-Id");
+        System.out.println("  flowreplay replay --input ./recordings --target http://localhost:9090 --mode amplify --factor 10 --target-rps 500 --rewrite-key header:X-Request-Id");
+        System.out.println("  flowreplay replay --input ./recordings --target http://localhost:9090 --mode open-loop --speed 2 --client netty");
+        System.out.println("  flowreplay replay --input ./recordings --target http://localhost:9090 --mode capacity --slo-p99-ms 200 --client netty --service-parser esb");
+        System.out.println("  flowreplay replay --input ./recordings --target http://localhost:9090 --mode concurrent --client netty --pool-size 32");
+        System.out.println("  flowreplay replay --input ./recordings --target http://localhost:9090 --mode concurrent --client h2c --max-streams 200");
         System.out.println("  flowreplay replay --input ./recordings --target http://localhost:9090 --compare --report ./report.html");
+        System.out.println("  flowreplay replay --input ./recordings --target http://old:9090,http://new:9090 --mode concurrent --compare --report ./ab-report.html");
+        System.out.println("  flowreplay replay --input ./recordings --target http://localhost:9090 --report ./report-dir --report-format sharded");
+        System.out.println("  flowreplay replay --input ./recordings --target http://localhost:9090 --compare --incremental --build-id 1.4.2 --incremental-sample 5");
+        System.out.println("  flowreplay replay --input ./recordings --target http://localhost:9090 --compare --report ./report.html --run-dir ./replay-runs");
+        System.out.println("  flowreplay replay --resume run-20260303-120000-000 --run-dir ./replay-runs");
+        System.out.println("  flowreplay replay --input ./recordings --target http://localhost:9090 --compare --run-store ./replay-store --build-id 1.4.2");
+        System.out.println("  flowreplay runs --store ./replay-store --last 20 --service /api/order");
+        System.out.println("  flowreplay replay --input ./recordings --target http://localhost:9090 --compare --max-p99-increase 20 --max-mismatch-rate 1 --max-error-rate 0.5 --gate-report ./gate.json");
         System.out.println("  flowreplay report-from-cache --cache ./recordings/live-report-cache-20260303-120000.jsonl --report ./manual-report.html");
     }
 
@@ -521,296 +1711,75 @@ public class FlowReplayCLI {
         String reportPath,
         String configPath,
         String serviceParser,
-        String liveReportCachePath
+        String liveReportCachePath,
+        LiveReportCacheStore.Durability cacheDurability,
+        String reportFormat,
+        LiveReplayQueue.Limits liveLimits
     ) {
     }
 
-    record ReportFromCacheOptions(
-        String cachePath,
+    record ReplayCommandOptions(
+        String input,
+        List<String> targets,
+        boolean enableCompare,
         String reportPath,
-        String serviceParser
+        String configPath,
+        String serviceParser,
+        String replayMode,
+        String sessionKey,
+        AmplifiedReplayer.Config amplification,
+        long progressIntervalSeconds,
+        double targetRps,
+        double speed,
+        CapacitySearchReplayer.Config capacitySearch,
+        String replayClient,
+        int poolSize,
+        int pipelining,
+        NettyHttp2ReplayClient.Settings http2Settings,
+        int compareThreads,
+        String reportFormat,
+        ReplayResultCache.Policy incremental,
+        String resultCachePath,
+        String runDir,
+        String resumeRunId,
+        String runStore,
+        String buildId,
+        GateOptions gate
     ) {
+        /**
+         * 第一个目标，单目标回放时即唯一目标
+         */
+        String target() {
+            return targets.get(0);
+        }
     }
 
-    record CachedComparisonReport(
-        String sessionId,
-        long seq,
-        ComparisonReport report
+    /**
+     * 性能门禁参数
+     * @param baseline recorded（录制耗时）、previous（运行结果库中的上一次运行）或运行 ID
+     * @param reportPath JSON 结果文件，为 null 时输出到标准输出
+     */
+    record GateOptions(
+        PerformanceGate.Thresholds thresholds,
+        String baseline,
+        String reportPath
     ) {
     }
 
-    private static final class LiveReplaySupport implements AutoCloseable {
-        private final boolean enabled;
-        private final boolean compareEnabled;
-        private final String replayTarget;
-        private final String reportPath;
-        private final String serviceParser;
-        private final String liveReportCachePath;
-        private final TrafficReplayer replayer;
-        private final ExecutorService executor;
-        private final Comparator comparator;
-        private final HtmlReportGenerator reportGenerator;
-        private final LiveReportCacheStore cacheStore;
-        private final Map<Long, ComparisonReport> comparisonReports;
-        private final AtomicLong total = new AtomicLong();
-        private final AtomicLong succeeded = new AtomicLong();
-        private final AtomicLong failed = new AtomicLong();
-        private final AtomicLong matched = new AtomicLong();
-        private final AtomicLong sequence = new AtomicLong();
-        private final AtomicBoolean closed = new AtomicBoolean(false);
-        private final String cacheSessionId;
-
-        private LiveReplaySupport(
-            String replayTarget,
-            boolean enableCompare,
-            String reportPath,
-            String configPath,
-            String serviceParser,
-            String liveReportCachePath
-        ) {
-            this.replayTarget = replayTarget;
-            this.enabled = replayTarget != null && !replayTarget.isBlank();
-            this.compareEnabled = enabled && enableCompare;
-            this.reportPath = reportPath;
-            this.serviceParser = serviceParser;
-            this.liveReportCachePath = liveReportCachePath;
-            this.cacheSessionId = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")
-                .format(Instant.now().atZone(ZoneId.systemDefault()));
-            if (enabled) {
-                this.replayer = new TrafficReplayer(replayTarget, true);
-                this.executor = Executors.newVirtualThreadPerTaskExecutor();
-                if (compareEnabled) {
-                    List<ComparisonConfig> configs = configPath != null
-                        ? ComparisonConfigLoader.load(configPath)
-                        : ComparisonConfigLoader.loadDefault();
-                    this.comparator = new Comparator(configs);
-                    this.reportGenerator = new HtmlReportGenerator();
-                    this.comparisonReports = new ConcurrentHashMap<>();
-                    this.cacheStore = LiveReportCacheStore.openForAppend(liveReportCachePath);
-                } else {
-                    this.comparator = null;
-                    this.reportGenerator = null;
-                    this.comparisonReports = null;
-                    this.cacheStore = null;
-                }
-            } else {
-                this.replayer = null;
-                this.executor = null;
-                this.comparator = null;
-                this.reportGenerator = null;
-                this.comparisonReports = null;
-                this.cacheStore = null;
-            }
-        }
-
-        private boolean enabled() {
-            return enabled;
-        }
-
-        private boolean compareEnabled() {
-            return compareEnabled;
-        }
-
-        private void submit(TrafficRecord record) {
-            if (!enabled || closed.get()) {
-                return;
-            }
-
-            long seq = sequence.incrementAndGet();
-            executor.submit(() -> {
-                try {
-                    ReplayResult replayResult = replayer.replay(List.of(record)).get(0);
-                    total.incrementAndGet();
-                    if (replayResult.success()) {
-                        succeeded.incrementAndGet();
-                    } else {
-                        failed.incrementAndGet();
-                        System.err.println("Live replay failed, recordId=" + record.id() + ", error=" + replayResult.errorMessage());
-                    }
-                    if (compareEnabled) {
-                        ComparisonReport report = buildComparisonReport(record, replayResult);
-                        comparisonReports.put(seq, report);
-                        cacheReport(seq, report);
-                        if (report.result().matched()) {
-                            matched.incrementAndGet();
-                        }
-                    }
-                } catch (Exception e) {
-                    total.incrementAndGet();
-                    failed.incrementAndGet();
-                    String errorMessage = e.getMessage() != null ? e.getMessage() : e.toString();
-                    System.err.println("Live replay exception, recordId=" + record.id() + ", error=" + errorMessage);
-                    if (compareEnabled) {
-                        ReplayResult failedReplayResult = ReplayResult.failure(record.id(), 0, errorMessage);
-                        ComparisonReport report = buildComparisonReport(record, failedReplayResult);
-                        comparisonReports.put(seq, report);
-                        cacheReport(seq, report);
-                    }
-                }
-            });
-        }
-
-        private ComparisonReport buildComparisonReport(TrafficRecord record, ReplayResult replayResult) {
-            Instant replayTimestamp = Instant.now();
-            if (replayResult.success()) {
-                ComparisonResult comparisonResult = comparator.compare(record, replayResult.response());
-                return new ComparisonReport(record, replayResult.response(), comparisonResult, replayResult.duration(), replayTimestamp);
-            }
-            ComparisonResult failedResult = new ComparisonResult(
-                false,
-                List.of(new Difference("replay", "error", "success", "failed: " + replayResult.errorMessage())),
-                Map.of()
-            );
-            return new ComparisonReport(record, null, failedResult, replayResult.duration(), replayTimestamp);
-        }
-
-        private void cacheReport(long seq, ComparisonReport report) {
-            try {
-                cacheStore.append(cacheSessionId, seq, report);
-            } catch (Exception e) {
-                System.err.println("Failed to persist live report cache, seq=" + seq + ", error=" + e.getMessage());
-            }
-        }
-
-        @Override
-        public void close() {
-            if (!enabled || !closed.compareAndSet(false, true)) {
-                return;
-            }
-
-            executor.shutdown();
-            try {
-                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
-                    executor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                executor.shutdownNow();
-            }
-
-            System.out.println(
-                "Live replay summary to " + replayTarget + ": "
-                    + succeeded.get() + "/" + total.get() + " succeeded, failed=" + failed.get()
-            );
-
-            if (compareEnabled) {
-                try {
-                    cacheStore.close();
-                } catch (Exception e) {
-                    System.err.println("Failed to close live report cache: " + e.getMessage());
-                }
-
-                long compared = comparisonReports.size();
-                System.out.println(
-                    "Live comparison summary: "
-                        + matched.get() + "/" + compared + " matched"
-                );
-                System.out.println("Live comparison cache saved: " + liveReportCachePath);
-
-                if (reportPath != null) {
-                    try {
-                        List<ComparisonReport> orderedReports = comparisonReports.entrySet()
-                            .stream()
-                            .sorted(Map.Entry.comparingByKey())
-                            .map(Map.Entry::getValue)
-                            .toList();
-                        reportGenerator.generateReport(orderedReports, reportPath, serviceParser);
-                        System.out.println("Live report generated: " + reportPath);
-                    } catch (Exception e) {
-                        System.err.println("Failed to generate live report: " + e.getMessage());
-                    }
-                }
-            }
-        }
+    record RunsCommandOptions(
+        String storePath,
+        int last,
+        String service,
+        String candidateRunId,
+        String baselineRunId
+    ) {
     }
 
-    private static final class LiveReportCacheStore implements AutoCloseable {
-        private final Path cachePath;
-        private final ObjectMapper objectMapper;
-        private final BufferedWriter writer;
-        private final Object writeLock = new Object();
-
-        private LiveReportCacheStore(Path cachePath, ObjectMapper objectMapper, BufferedWriter writer) {
-            this.cachePath = cachePath;
-            this.objectMapper = objectMapper;
-            this.writer = writer;
-        }
-
-        static LiveReportCacheStore openForAppend(String cachePath) {
-            try {
-                Path path = Paths.get(cachePath);
-                Path parent = path.getParent();
-                if (parent != null) {
-                    Files.createDirectories(parent);
-                }
-                ObjectMapper objectMapper = new ObjectMapper();
-                objectMapper.registerModule(new JavaTimeModule());
-                BufferedWriter writer = Files.newBufferedWriter(
-                    path,
-                    StandardCharsets.UTF_8,
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.APPEND
-                );
-                return new LiveReportCacheStore(path, objectMapper, writer);
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to open live report cache: " + cachePath, e);
-            }
-        }
-
-        static List<ComparisonReport> readReports(String cachePath) {
-            Path path = Paths.get(cachePath);
-            if (!Files.exists(path)) {
-                return List.of();
-            }
-            ObjectMapper objectMapper = new ObjectMapper();
-            objectMapper.registerModule(new JavaTimeModule());
-            List<CachedComparisonReport> cached = new ArrayList<>();
-            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    if (line.isBlank()) {
-                        continue;
-                    }
-                    cached.add(objectMapper.readValue(line, CachedComparisonReport.class));
-                }
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to read cache file: " + cachePath, e);
-            }
-            return cached.stream()
-                .sorted((a, b) -> {
-                    String sessionA = a.sessionId() == null ? "" : a.sessionId();
-                    String sessionB = b.sessionId() == null ? "" : b.sessionId();
-                    int sessionCmp = sessionA.compareTo(sessionB);
-                    if (sessionCmp != 0) {
-                        return sessionCmp;
-                    }
-                    return Long.compare(a.seq(), b.seq());
-                })
-                .map(CachedComparisonReport::report)
-                .toList();
-        }
-
-        void append(String sessionId, long seq, ComparisonReport report) {
-            synchronized (writeLock) {
-                try {
-                    writer.write(objectMapper.writeValueAsString(new CachedComparisonReport(sessionId, seq, report)));
-                    writer.newLine();
-                    writer.flush();
-                } catch (IOException e) {
-                    throw new RuntimeException("Failed to append live report cache: " + cachePath, e);
-                }
-            }
-        }
-
-        @Override
-        public void close() {
-            synchronized (writeLock) {
-                try {
-                    writer.close();
-                } catch (IOException e) {
-                    throw new RuntimeException("Failed to close live report cache: " + cachePath, e);
-                }
-            }
-        }
+    record ReportFromCacheOptions(
+        String cachePath,
+        String reportPath,
+        String serviceParser,
+        String reportFormat
+    ) {
     }
 }
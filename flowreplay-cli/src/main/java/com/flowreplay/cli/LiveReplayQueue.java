@@ -0,0 +1,242 @@
+package com.flowreplay.cli;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 实时回放的有界提交队列
+ * 录制代理线程只做一次非阻塞（或短时限阻塞）入队，回放跟不上时按溢出策略丢弃，保证不拖慢生产代理。
+ * 除队列满外，队列深度超过高水位或回放耗时（EWMA）超过阈值时也会提前进入削峰状态。
+ */
+final class LiveReplayQueue<T> {
+    // BLOCK 策略的最长等待时间，超时后丢弃，避免阻塞代理 IO 线程
+    static final long BLOCK_TIMEOUT_MILLIS = 100;
+    // 队列深度达到容量的该比例时开始削峰
+    private static final double HIGH_WATERMARK = 0.8;
+    // 削峰状态下回落到该比例以下才恢复（迟滞，避免来回抖动）
+    private static final double LOW_WATERMARK = 0.5;
+    // 超过该时间没有新的回放耗时样本，认为耗时信号已过期（削峰把流量全挡住时也能恢复）
+    private static final long LATENCY_STALE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 溢出策略
+     */
+    enum OverflowPolicy {
+        // 等待空位（最长 BLOCK_TIMEOUT_MILLIS），超时丢弃新记录；削峰状态下不等待，队列满直接丢弃
+        BLOCK,
+        // 丢弃新记录
+        DROP_NEWEST,
+        // 丢弃队首最旧的记录，为新记录腾出空间
+        DROP_OLDEST,
+        // 按百分比采样新记录
+        SAMPLE;
+
+        static OverflowPolicy parse(String value) {
+            for (OverflowPolicy policy : values()) {
+                if (policy.optionName().equalsIgnoreCase(value)) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException("Invalid live overflow policy: " + value + " (supported: block|drop-newest|drop-oldest|sample)");
+        }
+
+        String optionName() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    /**
+     * 队列参数
+     *
+     * @param capacity          队列容量
+     * @param concurrency       回放并发数
+     * @param policy            溢出策略
+     * @param samplePercent     SAMPLE 策略削峰时保留的百分比（1-100）
+     * @param shedLatencyMillis 回放耗时超过该值时开始削峰，0 表示只按队列深度判断
+     */
+    record Limits(
+        int capacity,
+        int concurrency,
+        OverflowPolicy policy,
+        int samplePercent,
+        long shedLatencyMillis
+    ) {
+        static final int DEFAULT_CAPACITY = 10_000;
+        static final int DEFAULT_CONCURRENCY = 200;
+
+        Limits {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("--live-queue must be > 0");
+            }
+            if (concurrency <= 0) {
+                throw new IllegalArgumentException("--live-concurrency must be > 0");
+            }
+            if (samplePercent < 1 || samplePercent > 100) {
+                throw new IllegalArgumentException("--live-sample must be between 1 and 100");
+            }
+            if (shedLatencyMillis < 0) {
+                throw new IllegalArgumentException("--live-shed-latency must be >= 0");
+            }
+        }
+
+        static Limits defaults() {
+            return new Limits(DEFAULT_CAPACITY, DEFAULT_CONCURRENCY, OverflowPolicy.DROP_NEWEST, 100, 0);
+        }
+    }
+
+    private final LinkedBlockingDeque<T> queue;
+    private final Limits limits;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final long shedLatencyMicros;
+    private final AtomicLong latencyEwmaMicros = new AtomicLong();
+    private volatile long lastLatencyNanos;
+    private final AtomicBoolean shedding = new AtomicBoolean(false);
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong droppedNewest = new AtomicLong();
+    private final AtomicLong droppedOldest = new AtomicLong();
+    private final AtomicLong sampledOut = new AtomicLong();
+    private final AtomicLong sheddingEpisodes = new AtomicLong();
+
+    LiveReplayQueue(Limits limits) {
+        this.limits = limits;
+        this.queue = new LinkedBlockingDeque<>(limits.capacity());
+        this.highWatermark = Math.max(1, (int) (limits.capacity() * HIGH_WATERMARK));
+        this.lowWatermark = (int) (limits.capacity() * LOW_WATERMARK);
+        this.shedLatencyMicros = TimeUnit.MILLISECONDS.toMicros(limits.shedLatencyMillis());
+    }
+
+    /**
+     * 提交一条记录，返回是否被接受（不抛异常，不无限阻塞）
+     */
+    boolean offer(T item) {
+        boolean shed = updateShedding();
+        if (limits.policy() == OverflowPolicy.SAMPLE && shed
+            && ThreadLocalRandom.current().nextInt(100) >= limits.samplePercent()) {
+            sampledOut.incrementAndGet();
+            return false;
+        }
+        boolean added = switch (limits.policy()) {
+            case BLOCK -> shed ? queue.offerLast(item) : offerBlocking(item);
+            case DROP_NEWEST -> !shed && queue.offerLast(item);
+            case DROP_OLDEST -> offerEvictingOldest(item, shed);
+            case SAMPLE -> queue.offerLast(item);
+        };
+        if (added) {
+            accepted.incrementAndGet();
+        } else {
+            droppedNewest.incrementAndGet();
+        }
+        return added;
+    }
+
+    /**
+     * 取出下一条记录，超时返回 null
+     */
+    T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.pollFirst(timeout, unit);
+    }
+
+    /**
+     * 记录一次回放耗时，用于按耗时削峰（EWMA，权重 1/8）
+     */
+    void recordLatency(long micros) {
+        latencyEwmaMicros.accumulateAndGet(micros, (ewma, sample) -> ewma == 0 ? sample : ewma + (sample - ewma) / 8);
+        lastLatencyNanos = System.nanoTime();
+    }
+
+    /**
+     * 取出队列中剩余的记录（停止时未处理的部分）
+     */
+    List<T> drainRemaining() {
+        List<T> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        return remaining;
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    boolean isShedding() {
+        return shedding.get();
+    }
+
+    long getLatencyEwmaMicros() {
+        return latencyEwmaMicros.get();
+    }
+
+    long getAcceptedCount() {
+        return accepted.get();
+    }
+
+    /**
+     * 因队列满或削峰被拒绝的新记录数（BLOCK 策略下为等待超时或削峰时队列满的数量）
+     */
+    long getDroppedNewestCount() {
+        return droppedNewest.get();
+    }
+
+    /**
+     * DROP_OLDEST 策略下被挤出队列的旧记录数
+     */
+    long getDroppedOldestCount() {
+        return droppedOldest.get();
+    }
+
+    /**
+     * SAMPLE 策略下削峰时未被采样的记录数
+     */
+    long getSampledOutCount() {
+        return sampledOut.get();
+    }
+
+    long getSheddingEpisodes() {
+        return sheddingEpisodes.get();
+    }
+
+    private boolean offerBlocking(T item) {
+        if (queue.offerLast(item)) {
+            return true;
+        }
+        try {
+            return queue.offerLast(item, BLOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean offerEvictingOldest(T item, boolean shed) {
+        if (shed && queue.pollFirst() != null) {
+            droppedOldest.incrementAndGet();
+        }
+        while (!queue.offerLast(item)) {
+            if (queue.pollFirst() != null) {
+                droppedOldest.incrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    // 按队列深度与回放耗时更新削峰状态，带迟滞
+    private boolean updateShedding() {
+        int depth = queue.size();
+        boolean latencyHigh = shedLatencyMicros > 0
+            && latencyEwmaMicros.get() >= shedLatencyMicros
+            && System.nanoTime() - lastLatencyNanos < LATENCY_STALE_NANOS;
+        if (shedding.get()) {
+            if (depth <= lowWatermark && !latencyHigh) {
+                shedding.set(false);
+            }
+        } else if ((depth >= highWatermark || latencyHigh) && shedding.compareAndSet(false, true)) {
+            sheddingEpisodes.incrementAndGet();
+        }
+        return shedding.get();
+    }
+}
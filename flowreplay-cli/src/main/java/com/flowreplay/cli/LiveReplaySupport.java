@@ -0,0 +1,362 @@
+package com.flowreplay.cli;
+
+import com.flowreplay.core.comparator.ComparisonConfig;
+import com.flowreplay.core.comparator.ComparisonConfigLoader;
+import com.flowreplay.core.comparator.Comparator;
+import com.flowreplay.core.model.ReplayResult;
+import com.flowreplay.core.model.TrafficRecord;
+import com.flowreplay.core.parser.ServiceNameParserFactory;
+import com.flowreplay.core.replayer.TrafficReplayer;
+import com.flowreplay.core.report.ComparisonReport;
+import com.flowreplay.core.report.ConcurrentStatisticsAggregator;
+import com.flowreplay.core.report.HtmlReportGenerator;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * 录制时的实时回放与比对
+ * 录制记录进入有界队列，由固定数量的回放线程消费，回放跟不上时按溢出策略丢弃并计数。
+ * 按消息切分的 TCP 记录按源连接地址的哈希进入某个回放线程专属的队列，同一源连接的消息按录制顺序串行回放。
+ * 比对结果不在内存中累积：统计实时聚合，完整结果追加写入缓存文件，
+ * 内存中只保留最近的少量失败样本用于控制台输出，最终报告从缓存流式生成。
+ */
+final class LiveReplaySupport implements AutoCloseable {
+    // 内存中保留的最近失败样本数
+    static final int RECENT_FAILURE_LIMIT = 100;
+    // 控制台输出的失败样本数
+    private static final int PRINTED_FAILURE_LIMIT = 10;
+    // 从缓存生成报告时的重排窗口（按完成顺序写入，与 seq 只有局部乱序）
+    private static final int REPORT_REORDER_WINDOW = 10_000;
+    // 停止时等待队列处理完成的最长时间
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+    // 共享队列为空时的等待时间，之后回头检查本线程的会话队列
+    private static final long SHARED_POLL_MILLIS = 10;
+
+    private final boolean enabled;
+    private final boolean compareEnabled;
+    private final String replayTarget;
+    private final String reportPath;
+    private final String serviceParser;
+    private final String liveReportCachePath;
+    private final String reportFormat;
+    private final TrafficReplayer replayer;
+    private final LiveReplayQueue.Limits limits;
+    private final LiveReplayQueue<TrafficRecord> queue;
+    // 每个回放线程一个 TCP 会话队列，下标与线程一一对应
+    private final List<LiveReplayQueue<TrafficRecord>> conversationLanes = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final Comparator comparator;
+    private final HtmlReportGenerator reportGenerator;
+    private final LiveReportCacheStore cacheStore;
+    private final ArrayDeque<ComparisonReport> recentFailures = new ArrayDeque<>();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong cacheFailures = new AtomicLong();
+    private final ConcurrentStatisticsAggregator statistics;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final String cacheSessionId;
+
+    LiveReplaySupport(
+        String replayTarget,
+        boolean enableCompare,
+        String reportPath,
+        String configPath,
+        String serviceParser,
+        String liveReportCachePath,
+        LiveReportCacheStore.Durability cacheDurability,
+        String reportFormat,
+        LiveReplayQueue.Limits limits
+    ) {
+        this.replayTarget = replayTarget;
+        this.enabled = replayTarget != null && !replayTarget.isBlank();
+        this.compareEnabled = enabled && enableCompare;
+        this.reportPath = reportPath;
+        this.serviceParser = serviceParser;
+        this.liveReportCachePath = liveReportCachePath;
+        this.reportFormat = reportFormat;
+        this.limits = limits;
+        this.cacheSessionId = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")
+            .format(Instant.now().atZone(ZoneId.systemDefault()));
+        if (enabled) {
+            this.replayer = new TrafficReplayer(replayTarget, true);
+            this.queue = new LiveReplayQueue<>(limits);
+            if (compareEnabled) {
+                List<ComparisonConfig> configs = configPath != null
+                    ? ComparisonConfigLoader.load(configPath)
+                    : ComparisonConfigLoader.loadDefault();
+                this.comparator = new Comparator(configs);
+                this.reportGenerator = new HtmlReportGenerator();
+                this.statistics = new ConcurrentStatisticsAggregator(ServiceNameParserFactory.getParser(serviceParser));
+                this.cacheStore = LiveReportCacheStore.openForAppend(liveReportCachePath, cacheDurability);
+            } else {
+                this.comparator = null;
+                this.reportGenerator = null;
+                this.statistics = null;
+                this.cacheStore = null;
+            }
+        } else {
+            this.replayer = null;
+            this.queue = null;
+            this.comparator = null;
+            this.reportGenerator = null;
+            this.statistics = null;
+            this.cacheStore = null;
+        }
+        if (enabled) {
+            LiveReplayQueue.Limits laneLimits = new LiveReplayQueue.Limits(
+                Math.max(1, limits.capacity() / limits.concurrency()), 1, limits.policy(), limits.samplePercent(), limits.shedLatencyMillis());
+            for (int i = 0; i < limits.concurrency(); i++) {
+                LiveReplayQueue<TrafficRecord> lane = new LiveReplayQueue<>(laneLimits);
+                conversationLanes.add(lane);
+                workers.add(Thread.ofVirtual().name("live-replay-", i).start(() -> runWorker(lane)));
+            }
+        }
+    }
+
+    boolean enabled() {
+        return enabled;
+    }
+
+    boolean compareEnabled() {
+        return compareEnabled;
+    }
+
+    /**
+     * 提交一条录制记录（在代理 IO 线程上调用，只做入队，不会长时间阻塞）
+     */
+    void submit(TrafficRecord record) {
+        if (!enabled || closed.get()) {
+            return;
+        }
+        // seq 在回放线程取出时分配，被丢弃的记录不占用序号
+        String conversationKey = TrafficReplayer.tcpConversationKey(record);
+        if (conversationKey != null) {
+            // 同一源连接的消息在同一个代理 IO 线程上按顺序提交，进入同一个回放线程即可保持顺序
+            conversationLanes.get(Math.floorMod(conversationKey.hashCode(), conversationLanes.size())).offer(record);
+            return;
+        }
+        queue.offer(record);
+    }
+
+    private void runWorker(LiveReplayQueue<TrafficRecord> lane) {
+        while (true) {
+            LiveReplayQueue<TrafficRecord> source = lane;
+            TrafficRecord record;
+            try {
+                record = lane.poll(0, TimeUnit.MILLISECONDS);
+                if (record == null) {
+                    source = queue;
+                    record = queue.poll(SHARED_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (record == null) {
+                if (closed.get() && lane.size() == 0) {
+                    return;
+                }
+                continue;
+            }
+            replay(sequence.incrementAndGet(), record, source);
+        }
+    }
+
+    private void replay(long seq, TrafficRecord record, LiveReplayQueue<TrafficRecord> source) {
+        long startNanos = System.nanoTime();
+        try {
+            ReplayResult replayResult = replayer.replay(record);
+            source.recordLatency((System.nanoTime() - startNanos) / 1000);
+            total.incrementAndGet();
+            if (replayResult.success()) {
+                succeeded.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+                System.err.println("Live replay failed, recordId=" + record.id() + ", error=" + replayResult.errorMessage());
+            }
+            if (compareEnabled) {
+                handleComparison(seq, comparator.compareReplay(record, replayResult));
+            }
+        } catch (Exception e) {
+            source.recordLatency((System.nanoTime() - startNanos) / 1000);
+            total.incrementAndGet();
+            failed.incrementAndGet();
+            String errorMessage = e.getMessage() != null ? e.getMessage() : e.toString();
+            System.err.println("Live replay exception, recordId=" + record.id() + ", error=" + errorMessage);
+            if (compareEnabled) {
+                ReplayResult failedReplayResult = ReplayResult.failure(record.id(), 0, errorMessage);
+                handleComparison(seq, comparator.compareReplay(record, failedReplayResult));
+            }
+        }
+    }
+
+    private void handleComparison(long seq, ComparisonReport report) {
+        statistics.record(report);
+        if (!report.result().matched()) {
+            rememberFailure(report);
+        }
+        try {
+            cacheStore.append(cacheSessionId, seq, report);
+        } catch (Exception e) {
+            // 缓存写入失败时结果只保留在统计中，最终报告会缺失该条
+            cacheFailures.incrementAndGet();
+            System.err.println("Failed to persist live report cache, seq=" + seq + ", error=" + e.getMessage());
+        }
+    }
+
+    private void rememberFailure(ComparisonReport report) {
+        synchronized (recentFailures) {
+            if (recentFailures.size() == RECENT_FAILURE_LIMIT) {
+                recentFailures.pollFirst();
+            }
+            recentFailures.addLast(report);
+        }
+    }
+
+    List<ComparisonReport> recentFailures() {
+        synchronized (recentFailures) {
+            return new ArrayList<>(recentFailures);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!enabled || !closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        // 先处理完队列中已接受的记录，超时后剩余记录计为停止时丢弃
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS);
+        try {
+            for (Thread worker : workers) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis > 0) {
+                    worker.join(remainingMillis);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long abandoned = queue.drainRemaining().size()
+            + conversationLanes.stream().mapToLong(lane -> lane.drainRemaining().size()).sum();
+        long inFlight = workers.stream().filter(Thread::isAlive).count();
+        workers.forEach(Thread::interrupt);
+
+        System.out.println(
+            "Live replay summary to " + replayTarget + ": "
+                + succeeded.get() + "/" + total.get() + " succeeded, failed=" + failed.get()
+        );
+        long rejected = sumQueues(LiveReplayQueue::getDroppedNewestCount);
+        long evicted = sumQueues(LiveReplayQueue::getDroppedOldestCount);
+        long sampledOut = sumQueues(LiveReplayQueue::getSampledOutCount);
+        long dropped = rejected + evicted + sampledOut + abandoned;
+        if (dropped > 0 || inFlight > 0) {
+            System.out.println(
+                "Live replay dropped " + dropped + " records (policy=" + limits.policy().optionName()
+                    + ", rejected=" + rejected
+                    + ", evicted=" + evicted
+                    + ", sampled-out=" + sampledOut
+                    + ", unfinished-at-shutdown=" + abandoned
+                    + ", in-flight-at-shutdown=" + inFlight
+                    + ", shedding-episodes=" + sumQueues(LiveReplayQueue::getSheddingEpisodes) + ")"
+            );
+        }
+        String tcpSummary = replayer.tcpSummary();
+        if (tcpSummary != null) {
+            System.out.println("Live replay " + tcpSummary);
+        }
+        replayer.close();
+
+        if (compareEnabled) {
+            try {
+                cacheStore.close();
+            } catch (Exception e) {
+                System.err.println("Failed to close live report cache: " + e.getMessage());
+            }
+            cacheFailures.addAndGet(cacheStore.getFailedCount());
+
+            printComparisonSummary();
+            System.out.println("Live comparison cache saved: " + liveReportCachePath);
+            if (reportPath != null) {
+                generateReport();
+            }
+        }
+    }
+
+    // 共享队列与各会话队列的计数之和
+    private long sumQueues(ToLongFunction<LiveReplayQueue<TrafficRecord>> counter) {
+        return counter.applyAsLong(queue) + conversationLanes.stream().mapToLong(counter).sum();
+    }
+
+    private void printComparisonSummary() {
+        ConcurrentStatisticsAggregator.Snapshot snapshot = statistics.snapshot();
+        System.out.println(
+            "Live comparison summary: "
+                + snapshot.matchedCount() + "/" + snapshot.totalCount() + " matched"
+        );
+        snapshot.services().forEach((serviceName, stats) ->
+            System.out.println(String.format(
+                "  %s: %d/%d matched, replay p50=%.2f ms, p95=%.2f ms, p99=%.2f ms",
+                serviceName,
+                stats.getMatchedCount(),
+                stats.getTotalCount(),
+                stats.getReplayPercentile(50),
+                stats.getReplayPercentile(95),
+                stats.getReplayPercentile(99)
+            ))
+        );
+
+        List<ComparisonReport> failures = recentFailures();
+        if (!failures.isEmpty()) {
+            System.out.println("Recent mismatches:");
+            failures.subList(Math.max(0, failures.size() - PRINTED_FAILURE_LIMIT), failures.size())
+                .forEach(report -> System.out.println(
+                    "  " + report.record().id() + " " + report.record().request().uri()
+                        + ", differences=" + report.result().differences().size()
+                ));
+        }
+    }
+
+    private void generateReport() {
+        LiveReportCacheStore.SessionReader reports;
+        try {
+            reports = LiveReportCacheStore.openSession(liveReportCachePath, cacheSessionId, REPORT_REORDER_WINDOW);
+        } catch (Exception e) {
+            // 缓存不可读时退化为只输出内存中保留的失败样本
+            System.err.println("Live report cache unavailable: " + e.getMessage());
+            try {
+                FlowReplayCLI.writeReport(reportGenerator, recentFailures().iterator(), reportPath, serviceParser, reportFormat);
+                System.err.println("Live report only contains recent mismatches: " + reportPath);
+            } catch (Exception reportError) {
+                System.err.println("Failed to generate live report: " + reportError.getMessage());
+            }
+            return;
+        }
+
+        try (reports) {
+            FlowReplayCLI.writeReport(reportGenerator, reports, reportPath, serviceParser, reportFormat);
+            System.out.println("Live report generated: " + reportPath);
+            if (reports.getOutOfOrderCount() > 0) {
+                System.err.println("Live report contains " + reports.getOutOfOrderCount() + " out-of-order results");
+            }
+            if (reports.getSkippedLineCount() > 0) {
+                System.err.println("Live report skipped " + reports.getSkippedLineCount() + " unreadable cache lines");
+            }
+            if (cacheFailures.get() > 0) {
+                System.err.println("Live report is missing " + cacheFailures.get() + " results that failed to persist");
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to generate live report: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package com.flowreplay.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.flowreplay.core.report.ComparisonReport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 实时比对结果缓存（JSONL，每行一条 {sessionId, seq, report}）
+ * 写入采用组提交：调用线程在锁外完成序列化后入队，由单个写线程批量写入，
+ * 按批大小或时间间隔刷盘，刷盘语义由 {@link Durability} 决定。
+ */
+final class LiveReportCacheStore implements AutoCloseable {
+    // 批量写入达到该字节数立即刷盘
+    static final int FLUSH_BYTES = 256 * 1024;
+    // BATCH 模式下最长刷盘间隔
+    static final long FLUSH_INTERVAL_MILLIS = 200;
+    // 写队列容量，写线程跟不上时 append 阻塞
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final Entry CLOSE = new Entry(new byte[0], null);
+
+    private final Path cachePath;
+    private final ObjectMapper objectMapper;
+    private final FileChannel channel;
+    private final Durability durability;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writerThread;
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile IOException failure;
+    private volatile boolean closed;
+    // 以下字段只由写线程访问
+    private byte[] buffer = new byte[FLUSH_BYTES];
+    private int bufferSize;
+
+    /**
+     * 刷盘语义
+     */
+    enum Durability {
+        // 按大小/时间批量刷盘，append 不等待落盘，进程崩溃最多丢失一个刷盘间隔的数据
+        BATCH,
+        // append 等待所在批次写入操作系统（进程崩溃不丢数据）
+        FLUSH,
+        // append 等待所在批次 fsync 到磁盘（机器掉电不丢数据）
+        FSYNC;
+
+        static Durability parse(String value) {
+            for (Durability durability : values()) {
+                if (durability.name().equalsIgnoreCase(value)) {
+                    return durability;
+                }
+            }
+            throw new IllegalArgumentException("Invalid cache durability: " + value + " (supported: batch|flush|fsync)");
+        }
+    }
+
+    private LiveReportCacheStore(Path cachePath, ObjectMapper objectMapper, FileChannel channel, Durability durability) {
+        this.cachePath = cachePath;
+        this.objectMapper = objectMapper;
+        this.channel = channel;
+        this.durability = durability;
+        this.writerThread = new Thread(this::runWriter, "live-report-cache-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    static LiveReportCacheStore openForAppend(String cachePath) {
+        return openForAppend(cachePath, Durability.BATCH);
+    }
+
+    static LiveReportCacheStore openForAppend(String cachePath, Durability durability) {
+        try {
+            Path path = Paths.get(cachePath);
+            Path parent = path.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            ObjectMapper objectMapper = newObjectMapper();
+            repairTornTail(path, objectMapper);
+            FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND
+            );
+            return new LiveReportCacheStore(path, objectMapper, channel, durability);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open live report cache: " + cachePath, e);
+        }
+    }
+
+    // 上次进程崩溃可能留下没有换行结尾的末尾行：完整的补上换行，写了一半的截掉，避免与本次追加的第一行拼接
+    private static void repairTornTail(Path path, ObjectMapper objectMapper) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size == 0 || readFully(channel, size - 1, 1)[0] == '\n') {
+                return;
+            }
+            // 从末尾向前找最后一个换行
+            long tailStart = size;
+            while (tailStart > 0) {
+                int length = (int) Math.min(8192, tailStart);
+                byte[] chunk = readFully(channel, tailStart - length, length);
+                int newline = length - 1;
+                while (newline >= 0 && chunk[newline] != '\n') {
+                    newline--;
+                }
+                if (newline >= 0) {
+                    tailStart = tailStart - length + newline + 1;
+                    break;
+                }
+                tailStart -= length;
+            }
+            byte[] tail = readFully(channel, tailStart, Math.toIntExact(size - tailStart));
+            boolean complete;
+            try {
+                objectMapper.readValue(tail, CachedComparisonReport.class);
+                complete = true;
+            } catch (IOException e) {
+                complete = false;
+            }
+            if (complete) {
+                channel.write(ByteBuffer.wrap(new byte[]{'\n'}), size);
+            } else {
+                channel.truncate(tailStart);
+            }
+            channel.force(true);
+        }
+    }
+
+    private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of live report cache");
+            }
+        }
+        return buffer.array();
+    }
+
+    static List<ComparisonReport> readReports(String cachePath) {
+        List<ComparisonReport> reports = new ArrayList<>();
+        try (SortedCacheReader reader = openSorted(cachePath)) {
+            reader.forEachRemaining(reports::add);
+        }
+        return reports;
+    }
+
+    /**
+     * 按 (sessionId, seq) 顺序流式读取整个缓存文件，用于从缓存生成报告
+     */
+    static SortedCacheReader openSorted(String cachePath) {
+        return openSorted(cachePath, SortedCacheReader.DEFAULT_CHUNK_BYTES);
+    }
+
+    static SortedCacheReader openSorted(String cachePath, long chunkBytes) {
+        return SortedCacheReader.open(cachePath, newObjectMapper(), chunkBytes);
+    }
+
+    /**
+     * 流式读取某个会话的比对结果，按 seq 顺序返回
+     * 结果按完成顺序写入，与 seq 只有局部乱序，用大小为 reorderWindow 的小顶堆重排即可，内存与窗口大小相当
+     */
+    static SessionReader openSession(String cachePath, String sessionId, int reorderWindow) {
+        try {
+            BufferedReader reader = Files.newBufferedReader(Paths.get(cachePath), StandardCharsets.UTF_8);
+            return new SessionReader(reader, newObjectMapper(), sessionId, reorderWindow);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read cache file: " + cachePath, e);
+        }
+    }
+
+    /**
+     * 追加一条比对结果（可被任意线程并发调用），序列化在调用线程完成
+     * BATCH 模式下写入失败会在后续 append/close 时抛出
+     */
+    void append(String sessionId, long seq, ComparisonReport report) {
+        checkWritable();
+        byte[] line;
+        try {
+            line = objectMapper.writeValueAsBytes(new CachedComparisonReport(sessionId, seq, report));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to serialize live report cache entry, seq=" + seq, e);
+        }
+
+        CompletableFuture<Void> committed = durability == Durability.BATCH ? null : new CompletableFuture<>();
+        try {
+            queue.put(new Entry(line, committed));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while appending live report cache: " + cachePath, e);
+        }
+        if (committed != null) {
+            try {
+                committed.join();
+            } catch (CompletionException e) {
+                throw new RuntimeException("Failed to append live report cache: " + cachePath, e.getCause());
+            }
+        }
+    }
+
+    /**
+     * 写入失败的记录数（BATCH 模式下失败不会反馈给 append 调用方）
+     */
+    long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(CLOSE);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close live report cache: " + cachePath, e);
+        }
+        if (failure != null) {
+            throw new RuntimeException("Failed to append live report cache: " + cachePath, failure);
+        }
+    }
+
+    private void checkWritable() {
+        if (closed) {
+            throw new IllegalStateException("Live report cache already closed: " + cachePath);
+        }
+        if (failure != null) {
+            throw new RuntimeException("Failed to append live report cache: " + cachePath, failure);
+        }
+    }
+
+    // 写线程：攒批后统一写入，FLUSH/FSYNC 模式下队列取空即提交，BATCH 模式按大小或时间提交
+    private void runWriter() {
+        List<Entry> batch = new ArrayList<>();
+        long deadline = 0;
+        while (true) {
+            Entry entry;
+            try {
+                if (batch.isEmpty()) {
+                    entry = queue.take();
+                    deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS);
+                } else if (durability == Durability.BATCH) {
+                    entry = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } else {
+                    entry = queue.poll();
+                }
+            } catch (InterruptedException e) {
+                entry = CLOSE;
+            }
+
+            if (entry == CLOSE) {
+                commit(batch);
+                return;
+            }
+            if (entry != null) {
+                addToBuffer(entry.line());
+                batch.add(entry);
+            }
+            if (entry == null || bufferSize >= FLUSH_BYTES || System.nanoTime() - deadline >= 0) {
+                commit(batch);
+            }
+        }
+    }
+
+    private void addToBuffer(byte[] line) {
+        int required = bufferSize + line.length + 1;
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+        }
+        System.arraycopy(line, 0, buffer, bufferSize, line.length);
+        bufferSize += line.length;
+        buffer[bufferSize++] = '\n';
+    }
+
+    private void commit(List<Entry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        IOException error = failure;
+        if (error == null) {
+            try {
+                ByteBuffer data = ByteBuffer.wrap(buffer, 0, bufferSize);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                if (durability == Durability.FSYNC) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                failure = e;
+                error = e;
+            }
+        }
+        if (error != null) {
+            failedCount.addAndGet(batch.size());
+        }
+        for (Entry entry : batch) {
+            if (entry.committed() != null) {
+                if (error == null) {
+                    entry.committed().complete(null);
+                } else {
+                    entry.committed().completeExceptionally(error);
+                }
+            }
+        }
+        batch.clear();
+        bufferSize = 0;
+        if (buffer.length > FLUSH_BYTES * 4) {
+            // 偶发的超大记录不长期占用内存
+            buffer = new byte[FLUSH_BYTES];
+        }
+    }
+
+    private static ObjectMapper newObjectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        return objectMapper;
+    }
+
+    private record Entry(byte[] line, CompletableFuture<Void> committed) {
+    }
+
+    record CachedComparisonReport(
+        String sessionId,
+        long seq,
+        ComparisonReport report
+    ) {
+    }
+
+    /**
+     * 单会话有序读取器
+     */
+    static final class SessionReader implements Iterator<ComparisonReport>, AutoCloseable {
+        private final BufferedReader reader;
+        private final ObjectMapper objectMapper;
+        private final String sessionId;
+        private final int reorderWindow;
+        private final PriorityQueue<CachedComparisonReport> pending =
+            new PriorityQueue<>(Comparator.comparingLong(CachedComparisonReport::seq));
+        private long nextSeq = 1;   // 会话内 seq 从 1 开始连续递增
+        private long outOfOrder;
+        private long skippedLines;
+        private boolean exhausted;
+
+        private SessionReader(BufferedReader reader, ObjectMapper objectMapper, String sessionId, int reorderWindow) {
+            this.reader = reader;
+            this.objectMapper = objectMapper;
+            this.sessionId = sessionId;
+            this.reorderWindow = Math.max(1, reorderWindow);
+        }
+
+        @Override
+        public boolean hasNext() {
+            // 堆顶不是期望的 seq 时继续读取，直到窗口满或文件读完
+            while (!exhausted && pending.size() < reorderWindow
+                && (pending.isEmpty() || pending.peek().seq() > nextSeq)) {
+                CachedComparisonReport cached = readNext();
+                if (cached == null) {
+                    exhausted = true;
+                } else {
+                    pending.add(cached);
+                }
+            }
+            return !pending.isEmpty();
+        }
+
+        @Override
+        public ComparisonReport next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            CachedComparisonReport cached = pending.poll();
+            if (cached.seq() < nextSeq) {
+                // 超出重排窗口的迟到记录，只能按到达顺序输出
+                outOfOrder++;
+            }
+            nextSeq = Math.max(nextSeq, cached.seq() + 1);
+            return cached.report();
+        }
+
+        /**
+         * 超出重排窗口、未能按 seq 顺序输出的记录数
+         */
+        long getOutOfOrderCount() {
+            return outOfOrder;
+        }
+
+        /**
+         * 无法解析而跳过的行数（崩溃时写了一半的行）
+         */
+        long getSkippedLineCount() {
+            return skippedLines;
+        }
+
+        private CachedComparisonReport readNext() {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    CachedComparisonReport cached;
+                    try {
+                        cached = objectMapper.readValue(line, CachedComparisonReport.class);
+                    } catch (IOException e) {
+                        // 写了一半的行只跳过这一行，后续追加的记录照常读取
+                        skippedLines++;
+                        continue;
+                    }
+                    if (sessionId.equals(cached.sessionId())) {
+                        return cached;
+                    }
+                }
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.flowreplay.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.flowreplay.core.model.ReplayResult;
+import com.flowreplay.core.model.TrafficRecord;
+import com.flowreplay.core.report.ComparisonReport;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 可恢复的回放运行目录
+ * run.json 保存运行参数；progress.jsonl 每行一条已完成记录；启用比对时 reports.jsonl 保存比对结果（与实时缓存格式相同）；
+ * checkpoint.json 定期原子更新运行进度。比对结果写入操作系统后才追加进度行，进度行是"已完成"的唯一依据，
+ * 进程崩溃最多重发一个检查点间隔内完成的记录。
+ */
+final class ReplayRunCheckpoint implements AutoCloseable {
+    static final String RUN_FILE = "run.json";
+    static final String PROGRESS_FILE = "progress.jsonl";
+    static final String REPORTS_FILE = "reports.jsonl";
+    static final String CHECKPOINT_FILE = "checkpoint.json";
+    // 进度刷盘和检查点更新间隔
+    static final long CHECKPOINT_INTERVAL_MILLIS = 1000;
+
+    private final Path directory;
+    private final RunMetadata metadata;
+    private final ObjectMapper objectMapper;
+    private final BufferedWriter progressWriter;
+    private final LiveReportCacheStore reportStore;
+    private final ScheduledExecutorService checkpointExecutor;
+    private final Set<String> completedRecordIds;
+    private final long resumedCount;
+    // 以下字段由 this 保护
+    private final BitSet completedSeqs;
+    private long committedPosition;
+    private long completed;
+    private long succeeded;
+    private long matched;
+    private boolean closed;
+
+    /**
+     * 运行参数，恢复时按原参数重新解析
+     */
+    record RunMetadata(String runId, List<String> args, int totalRecords, Instant createdAt) {
+    }
+
+    /**
+     * 单条记录的完成情况，matched 在未启用比对时为 null
+     */
+    record Progress(long seq, String recordId, boolean success, long durationMillis, Boolean matched, String error) {
+    }
+
+    /**
+     * 检查点，committedPosition 为从头开始连续完成的记录数
+     */
+    record Checkpoint(String runId, long totalRecords, long completed, long succeeded, long matched,
+                      long committedPosition, boolean finished, Instant updatedAt) {
+    }
+
+    private ReplayRunCheckpoint(Path directory, RunMetadata metadata, ObjectMapper objectMapper, boolean compare,
+                                List<Progress> previous) throws IOException {
+        this.directory = directory;
+        this.metadata = metadata;
+        this.objectMapper = objectMapper;
+        this.completedRecordIds = new HashSet<>();
+        this.completedSeqs = new BitSet();
+        for (Progress progress : previous) {
+            if (completedRecordIds.add(progress.recordId())) {
+                count(progress);
+            }
+        }
+        this.resumedCount = completed;
+        this.progressWriter = Files.newBufferedWriter(directory.resolve(PROGRESS_FILE), StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.reportStore = compare
+            ? LiveReportCacheStore.openForAppend(directory.resolve(REPORTS_FILE).toString(), LiveReportCacheStore.Durability.FLUSH)
+            : null;
+        this.checkpointExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replay-run-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.checkpointExecutor.scheduleWithFixedDelay(this::checkpointQuietly,
+            CHECKPOINT_INTERVAL_MILLIS, CHECKPOINT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    static String newRunId() {
+        return "run-" + DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").format(Instant.now().atZone(ZoneId.systemDefault()));
+    }
+
+    /**
+     * 创建新的运行目录
+     */
+    static ReplayRunCheckpoint start(Path directory, RunMetadata metadata, boolean compare) {
+        try {
+            if (Files.exists(directory.resolve(RUN_FILE))) {
+                throw new IllegalArgumentException("Replay run already exists: " + directory);
+            }
+            Files.createDirectories(directory);
+            ObjectMapper objectMapper = newObjectMapper();
+            writeAtomically(directory.resolve(RUN_FILE), objectMapper.writeValueAsBytes(metadata));
+            ReplayRunCheckpoint run = new ReplayRunCheckpoint(directory, metadata, objectMapper, compare, List.of());
+            run.checkpoint();
+            return run;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create replay run: " + directory, e);
+        }
+    }
+
+    static RunMetadata readMetadata(Path directory) {
+        Path runFile = directory.resolve(RUN_FILE);
+        if (!Files.exists(runFile)) {
+            throw new IllegalArgumentException("Replay run not found: " + directory);
+        }
+        try {
+            return newObjectMapper().readValue(runFile.toFile(), RunMetadata.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read replay run: " + runFile, e);
+        }
+    }
+
+    /**
+     * 从进度文件恢复：未写完的末行视为未完成，比对结果中没有对应进度行的条目被丢弃
+     */
+    static ReplayRunCheckpoint resume(Path directory, boolean compare) {
+        RunMetadata metadata = readMetadata(directory);
+        ObjectMapper objectMapper = newObjectMapper();
+        try {
+            List<Progress> previous = readProgress(directory.resolve(PROGRESS_FILE), objectMapper);
+            // 进度文件截断到最后一个完整行，避免与后续追加的行拼接
+            rewriteProgress(directory.resolve(PROGRESS_FILE), previous, objectMapper);
+            if (compare) {
+                BitSet committed = new BitSet();
+                previous.forEach(progress -> committed.set(Math.toIntExact(progress.seq())));
+                compactReports(directory.resolve(REPORTS_FILE), committed, objectMapper);
+            }
+            return new ReplayRunCheckpoint(directory, metadata, objectMapper, compare, previous);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to resume replay run: " + directory, e);
+        }
+    }
+
+    private static List<Progress> readProgress(Path path, ObjectMapper objectMapper) throws IOException {
+        List<Progress> progress = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return progress;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    progress.add(objectMapper.readValue(line, Progress.class));
+                } catch (IOException e) {
+                    // 崩溃时写了一半的行
+                    break;
+                }
+            }
+        }
+        return progress;
+    }
+
+    private static void rewriteProgress(Path path, List<Progress> progress, ObjectMapper objectMapper) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Progress entry : progress) {
+                writer.write(objectMapper.writeValueAsString(entry));
+                writer.newLine();
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // 只保留已提交且未重复的比对结果
+    private static void compactReports(Path path, BitSet committed, ObjectMapper objectMapper) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        BitSet kept = new BitSet();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int seq;
+                try {
+                    seq = Math.toIntExact(objectMapper.readTree(line).path("seq").asLong(-1));
+                } catch (IOException e) {
+                    continue;
+                }
+                if (seq >= 0 && committed.get(seq) && !kept.get(seq)) {
+                    kept.set(seq);
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 未启用比对时，记录回放完成
+     */
+    void recordReplayed(long seq, TrafficRecord record, ReplayResult result) {
+        appendProgress(new Progress(seq, record.id(), result.success(), result.duration(), null, result.errorMessage()));
+    }
+
+    /**
+     * 启用比对时，比对结果写入后再记录完成
+     */
+    void recordCompared(long seq, ComparisonReport report) {
+        reportStore.append(metadata.runId(), seq, report);
+        boolean success = report.replayedResponse() != null;
+        appendProgress(new Progress(seq, report.record().id(), success, report.replayDuration(),
+            report.result().matched(), null));
+    }
+
+    private void appendProgress(Progress progress) {
+        String line;
+        try {
+            line = objectMapper.writeValueAsString(progress);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize replay progress, seq=" + progress.seq(), e);
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                progressWriter.write(line);
+                progressWriter.newLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to append replay progress: " + directory, e);
+            }
+            count(progress);
+        }
+    }
+
+    private void count(Progress progress) {
+        completed++;
+        if (progress.success()) {
+            succeeded++;
+        }
+        if (Boolean.TRUE.equals(progress.matched())) {
+            matched++;
+        }
+        completedSeqs.set(Math.toIntExact(progress.seq()));
+        while (completedSeqs.get(Math.toIntExact(committedPosition))) {
+            committedPosition++;
+        }
+    }
+
+    /**
+     * 进度刷入操作系统并原子更新检查点
+     */
+    synchronized void checkpoint() {
+        if (closed) {
+            return;
+        }
+        writeCheckpoint(false);
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (Exception e) {
+            System.err.println("Failed to write replay checkpoint: " + e.getMessage());
+        }
+    }
+
+    private void writeCheckpoint(boolean finished) {
+        try {
+            progressWriter.flush();
+            Checkpoint checkpoint = new Checkpoint(metadata.runId(), metadata.totalRecords(), completed, succeeded, matched,
+                committedPosition, finished, Instant.now());
+            writeAtomically(directory.resolve(CHECKPOINT_FILE), objectMapper.writeValueAsBytes(checkpoint));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write replay checkpoint: " + directory, e);
+        }
+    }
+
+    private static void writeAtomically(Path path, byte[] content) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temp, content);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 上次运行已完成的记录，恢复时跳过
+     */
+    Set<String> completedRecordIds() {
+        return completedRecordIds;
+    }
+
+    String runId() {
+        return metadata.runId();
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    Path reportsPath() {
+        return directory.resolve(REPORTS_FILE);
+    }
+
+    long resumedCount() {
+        return resumedCount;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    synchronized long completed() {
+        return completed;
+    }
+
+    synchronized long succeeded() {
+        return succeeded;
+    }
+
+    synchronized long matched() {
+        return matched;
+    }
+
+    synchronized long committedPosition() {
+        return committedPosition;
+    }
+
+    /**
+     * 关闭并写入最终检查点；所有记录都已完成时标记为结束。可重复调用（Ctrl-C 时由关闭钩子调用）
+     */
+    @Override
+    public void close() {
+        checkpointExecutor.shutdownNow();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (reportStore != null) {
+                reportStore.close();
+            }
+            writeCheckpoint(completed >= metadata.totalRecords());
+            closed = true;
+            try {
+                progressWriter.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to close replay progress: " + directory, e);
+            }
+        }
+    }
+
+    private static ObjectMapper newObjectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        return objectMapper;
+    }
+}
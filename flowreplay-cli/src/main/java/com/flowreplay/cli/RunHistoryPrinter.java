@@ -0,0 +1,103 @@
+package com.flowreplay.cli;
+
+import com.flowreplay.core.storage.RunStore;
+
+import java.io.PrintStream;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 运行历史输出：运行列表、各接口的分位耗时和匹配率趋势、两次运行之间的显著回归
+ */
+final class RunHistoryPrinter {
+
+    private static final DateTimeFormatter TIME_FORMATTER =
+        DateTimeFormatter.ofPattern("MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final PrintStream out;
+
+    RunHistoryPrinter(PrintStream out) {
+        this.out = out;
+    }
+
+    void printRuns(List<RunStore.RunSummary> runs) {
+        out.println(String.format("%-28s %-14s %-12s %8s %8s %8s %9s %9s %9s",
+            "run", "started", "build", "records", "match", "errors", "p50(ms)", "p95(ms)", "p99(ms)"));
+        for (RunStore.RunSummary run : runs) {
+            RunStore.ServiceSummary overall = run.overall();
+            out.println(String.format("%-28s %-14s %-12s %8d %8s %7.2f%% %9.2f %9.2f %9.2f",
+                run.runId(),
+                TIME_FORMATTER.format(run.startedAt()),
+                run.buildId() != null ? run.buildId() : "-",
+                overall.requests(),
+                formatRate(overall.matchRate()),
+                overall.errorRate() * 100,
+                overall.p50Micros() / 1000.0,
+                overall.p95Micros() / 1000.0,
+                overall.p99Micros() / 1000.0));
+        }
+    }
+
+    /**
+     * 每个接口一段，每次运行一行；指定 service 时只输出该接口
+     */
+    void printServiceTrends(List<RunStore.RunSummary> runs, String service) {
+        Set<String> services = new TreeSet<>();
+        if (service != null) {
+            services.add(service);
+        } else {
+            runs.forEach(run -> services.addAll(run.byService().keySet()));
+        }
+        for (String name : services) {
+            out.println();
+            out.println("Service " + name + ":");
+            out.println(String.format("  %-28s %8s %8s %8s %9s %9s",
+                "run", "requests", "match", "errors", "p95(ms)", "p99(ms)"));
+            for (RunStore.RunSummary run : runs) {
+                RunStore.ServiceSummary summary = run.byService().get(name);
+                if (summary == null) {
+                    out.println(String.format("  %-28s %8s", run.runId(), "-"));
+                    continue;
+                }
+                out.println(String.format("  %-28s %8d %8s %7.2f%% %9.2f %9.2f",
+                    run.runId(),
+                    summary.requests(),
+                    formatRate(summary.matchRate()),
+                    summary.errorRate() * 100,
+                    summary.p95Micros() / 1000.0,
+                    summary.p99Micros() / 1000.0));
+            }
+        }
+    }
+
+    void printRegressions(RunStore.RunSummary baseline, RunStore.RunSummary candidate, List<RunStore.Regression> regressions) {
+        out.println();
+        out.println("Regressions of " + candidate.runId() + " vs baseline " + baseline.runId() + ":");
+        if (regressions.isEmpty()) {
+            out.println("  none (no significant p95/p99 increase, or too few samples to test)");
+            return;
+        }
+        for (RunStore.Regression regression : regressions) {
+            String service = RunStore.ALL_SERVICES.equals(regression.service()) ? "(all services)" : regression.service();
+            out.println(String.format(
+                "  %-24s p%-3d %8.2f ms -> %8.2f ms  above baseline p%d: %.2f%% -> %.2f%% (%d/%d, z=%.1f)",
+                service,
+                (int) regression.percentile(),
+                regression.baselineMicros() / 1000.0,
+                regression.candidateMicros() / 1000.0,
+                (int) regression.percentile(),
+                regression.baselineExceedRate() * 100,
+                regression.candidateExceedRate() * 100,
+                regression.exceedances(),
+                regression.samples(),
+                regression.zScore()));
+        }
+    }
+
+    private static String formatRate(double rate) {
+        return Double.isNaN(rate) ? "-" : String.format("%.2f%%", rate * 100);
+    }
+}
@@ -0,0 +1,478 @@
+package com.flowreplay.cli;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flowreplay.core.report.ComparisonReport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * 按 (sessionId, seq) 顺序流式读取实时比对缓存
+ * 先扫描一遍，只解析每行的 sessionId/seq，再按文件的有序程度选择读取方式：
+ * <ul>
+ *   <li>SORTED：整个文件已有序，直接顺序读取</li>
+ *   <li>SEQUENTIAL_SESSIONS：各会话内部有序，按会话依次过滤读取，无需排序</li>
+ *   <li>EXTERNAL_MERGE：按内存预算分块排序写入临时有序段，再多路归并</li>
+ * </ul>
+ * 报告 JSON 只在输出时反序列化，内存占用与分块大小相当，与缓存文件大小无关。
+ * 进程崩溃可能留下写了一半的行：扫描时最后一行完整校验，无法解析的行逐行跳过并计数，不影响其后的记录。
+ */
+final class SortedCacheReader implements Iterator<ComparisonReport>, AutoCloseable {
+    // 外部排序单个有序段的字节预算
+    static final long DEFAULT_CHUNK_BYTES = 32L * 1024 * 1024;
+    // 会话数超过该值时，逐会话过滤读取的遍数过多，改用外部排序
+    static final int MAX_SESSION_PASSES = 8;
+
+    private static final Comparator<KeyedLine> KEY_ORDER = Comparator
+        .comparing(KeyedLine::sessionId)
+        .thenComparingLong(KeyedLine::seq);
+
+    enum Strategy {
+        SORTED,
+        SEQUENTIAL_SESSIONS,
+        EXTERNAL_MERGE
+    }
+
+    private final Path cachePath;
+    private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
+    private final long chunkBytes;
+    private Strategy strategy;
+    private long recordCount;
+    private long skippedLines;
+    // 扫描覆盖的非空行数，以及其中无法解析的行序号；读取时只读这些行并跳过无法解析的行
+    private long lineLimit;
+    private final Set<Long> skippedOrdinals = new HashSet<>();
+    private long byteCount;
+    private int runCount;
+    private Path tempDir;
+    private Iterator<String> lines;
+    private ComparisonReport nextReport;
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    private SortedCacheReader(Path cachePath, ObjectMapper objectMapper, long chunkBytes) {
+        this.cachePath = cachePath;
+        this.objectMapper = objectMapper;
+        this.jsonFactory = objectMapper.getFactory();
+        this.chunkBytes = chunkBytes;
+    }
+
+    static SortedCacheReader open(String cachePath, ObjectMapper objectMapper, long chunkBytes) {
+        SortedCacheReader reader = new SortedCacheReader(Paths.get(cachePath), objectMapper, chunkBytes);
+        try {
+            reader.prepare();
+            return reader;
+        } catch (IOException e) {
+            reader.close();
+            throw new RuntimeException("Failed to read cache file: " + cachePath, e);
+        } catch (RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    Strategy getStrategy() {
+        return strategy;
+    }
+
+    long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * 无法解析而跳过的行数（崩溃时写了一半的行）
+     */
+    long getSkippedLineCount() {
+        return skippedLines;
+    }
+
+    /**
+     * 读取的数据量（按字符计，缓存内容基本为 ASCII，近似等于字节数）
+     */
+    long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * 外部排序生成的有序段数（其他读取方式为 0）
+     */
+    int getRunCount() {
+        return runCount;
+    }
+
+    @Override
+    public boolean hasNext() {
+        // 扫描只解析键：键完整但报告损坏的行（残行与下一行拼接）在反序列化时跳过
+        while (nextReport == null && lines.hasNext()) {
+            try {
+                nextReport = objectMapper.readValue(lines.next(), LiveReportCacheStore.CachedComparisonReport.class).report();
+            } catch (IOException e) {
+                skippedLines++;
+            }
+        }
+        return nextReport != null;
+    }
+
+    @Override
+    public ComparisonReport next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ComparisonReport report = nextReport;
+        nextReport = null;
+        return report;
+    }
+
+    @Override
+    public void close() {
+        for (AutoCloseable resource : resources) {
+            try {
+                resource.close();
+            } catch (Exception ignored) {
+                // 关闭失败不影响其余资源释放
+            }
+        }
+        resources.clear();
+        if (tempDir != null) {
+            try (Stream<Path> files = Files.list(tempDir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+                Files.deleteIfExists(tempDir);
+            } catch (IOException ignored) {
+                // 临时文件清理失败不影响报告
+            }
+            tempDir = null;
+        }
+    }
+
+    // 扫描一遍，判断有序程度并准备对应的行迭代器
+    private void prepare() throws IOException {
+        if (!Files.exists(cachePath)) {
+            strategy = Strategy.SORTED;
+            lines = List.<String>of().iterator();
+            return;
+        }
+
+        OrderScan scan = new OrderScan();
+        try (BufferedReader reader = Files.newBufferedReader(cachePath, StandardCharsets.UTF_8)) {
+            // 上一行暂不计入，确认不是末尾行（或末尾行完整）后才计入
+            KeyedLine pending = null;
+            long pendingOrdinal = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                long ordinal = lineLimit++;
+                KeyedLine key;
+                try {
+                    key = parseKey(line, true);
+                } catch (IOException e) {
+                    // 写了一半的行只跳过这一行，后续追加的记录照常读取
+                    skip(ordinal);
+                    continue;
+                }
+                if (pending != null) {
+                    accept(scan, pending);
+                }
+                pending = key;
+                pendingOrdinal = ordinal;
+            }
+            if (pending != null) {
+                if (!isComplete(pending.line())) {
+                    skip(pendingOrdinal);
+                } else {
+                    accept(scan, pending);
+                }
+            }
+        }
+
+        if (scan.fileSorted) {
+            strategy = Strategy.SORTED;
+            lines = sessionLines(null);
+        } else if (scan.sessionsSequential && scan.lastSeqBySession.size() <= MAX_SESSION_PASSES) {
+            strategy = Strategy.SEQUENTIAL_SESSIONS;
+            lines = concatSessions(new TreeSet<>(scan.lastSeqBySession.keySet()).iterator());
+        } else {
+            strategy = Strategy.EXTERNAL_MERGE;
+            lines = mergeRuns(writeSortedRuns());
+        }
+    }
+
+    private void accept(OrderScan scan, KeyedLine key) {
+        recordCount++;
+        byteCount += key.line().length() + 1;
+        Long lastSeq = scan.lastSeqBySession.put(key.sessionId(), key.seq());
+        if (lastSeq != null && key.seq() < lastSeq) {
+            scan.sessionsSequential = false;
+        }
+        if (scan.previous != null && KEY_ORDER.compare(scan.previous, key) > 0) {
+            scan.fileSorted = false;
+        }
+        scan.previous = key;
+    }
+
+    // 末尾行只解析键时可能恰好完整，需完整反序列化确认
+    private boolean isComplete(String line) {
+        try {
+            objectMapper.readValue(line, LiveReportCacheStore.CachedComparisonReport.class);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void skip(long ordinal) {
+        skippedOrdinals.add(ordinal);
+        skippedLines++;
+    }
+
+    // 顺序读取文件，sessionId 不为 null 时只返回该会话的行
+    private Iterator<String> sessionLines(String sessionId) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(cachePath, StandardCharsets.UTF_8);
+        resources.add(reader);
+        return new Iterator<>() {
+            private String nextLine;
+            private boolean done;
+            private long ordinal;  // 已读的非空行数，只读扫描覆盖的行
+
+            @Override
+            public boolean hasNext() {
+                if (nextLine != null) {
+                    return true;
+                }
+                if (done) {
+                    return false;
+                }
+                try {
+                    String line;
+                    while (ordinal < lineLimit && (line = reader.readLine()) != null) {
+                        if (line.isBlank() || skippedOrdinals.contains(ordinal++)) {
+                            continue;
+                        }
+                        if (sessionId == null || sessionId.equals(parseKey(line, false).sessionId())) {
+                            nextLine = line;
+                            return true;
+                        }
+                    }
+                    done = true;
+                    reader.close();
+                    return false;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String line = nextLine;
+                nextLine = null;
+                return line;
+            }
+        };
+    }
+
+    // 各会话内部已有序：按会话 ID 顺序逐个过滤读取
+    private Iterator<String> concatSessions(Iterator<String> sessionIds) {
+        return new Iterator<>() {
+            private Iterator<String> current = List.<String>of().iterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && sessionIds.hasNext()) {
+                    try {
+                        current = sessionLines(sessionIds.next());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    // 分块读取、块内排序后写入有序段（二进制：sessionId、seq、行长度、行内容）
+    private List<Path> writeSortedRuns() throws IOException {
+        Path parent = cachePath.toAbsolutePath().getParent();
+        tempDir = Files.createTempDirectory(parent, ".flowreplay-sort-");
+        List<Path> runs = new ArrayList<>();
+        List<KeyedLine> chunk = new ArrayList<>();
+        long chunkSize = 0;
+        long ordinal = 0;
+        try (BufferedReader reader = Files.newBufferedReader(cachePath, StandardCharsets.UTF_8)) {
+            String line;
+            while (ordinal < lineLimit && (line = reader.readLine()) != null) {
+                if (line.isBlank() || skippedOrdinals.contains(ordinal++)) {
+                    continue;
+                }
+                chunk.add(parseKey(line, true));
+                chunkSize += line.length();
+                if (chunkSize >= chunkBytes) {
+                    runs.add(writeRun(chunk, runs.size()));
+                    chunk.clear();
+                    chunkSize = 0;
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            runs.add(writeRun(chunk, runs.size()));
+        }
+        runCount = runs.size();
+        return runs;
+    }
+
+    private Path writeRun(List<KeyedLine> chunk, int index) throws IOException {
+        chunk.sort(KEY_ORDER);
+        Path run = tempDir.resolve(String.format("run-%05d.bin", index));
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+            for (KeyedLine keyedLine : chunk) {
+                byte[] bytes = keyedLine.line().getBytes(StandardCharsets.UTF_8);
+                out.writeUTF(keyedLine.sessionId());
+                out.writeLong(keyedLine.seq());
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+        return run;
+    }
+
+    // 多路归并：每个有序段只保留当前行，小顶堆按 (sessionId, seq) 取最小
+    private Iterator<String> mergeRuns(List<Path> runs) throws IOException {
+        PriorityQueue<RunCursor> heads = new PriorityQueue<>(Comparator.comparing(RunCursor::current, KEY_ORDER));
+        for (Path run : runs) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+            resources.add(in);
+            RunCursor cursor = new RunCursor(in);
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public String next() {
+                RunCursor cursor = heads.poll();
+                if (cursor == null) {
+                    throw new NoSuchElementException();
+                }
+                String line = cursor.current().line();
+                try {
+                    if (cursor.advance()) {
+                        heads.add(cursor);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return line;
+            }
+        };
+    }
+
+    // 只解析 sessionId 和 seq，遇到 report 字段直接跳过，不构建报告对象
+    private KeyedLine parseKey(String line, boolean keepLine) throws IOException {
+        String sessionId = null;
+        long seq = 0;
+        int found = 0;
+        try (JsonParser parser = jsonFactory.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Invalid cache line: expected JSON object");
+            }
+            // 序列化顺序为 sessionId、seq、report，两个键都读到即可停止
+            while (found < 2 && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if ("sessionId".equals(field)) {
+                    sessionId = parser.getValueAsString();
+                    found++;
+                } else if ("seq".equals(field)) {
+                    seq = parser.getLongValue();
+                    found++;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new KeyedLine(sessionId == null ? "" : sessionId, seq, keepLine ? line : null);
+    }
+
+    private record KeyedLine(String sessionId, long seq, String line) {
+    }
+
+    // 扫描过程中的有序程度统计
+    private static final class OrderScan {
+        private final Map<String, Long> lastSeqBySession = new HashMap<>();
+        private boolean fileSorted = true;
+        private boolean sessionsSequential = true;
+        private KeyedLine previous;
+    }
+
+    private static final class RunCursor {
+        private final DataInputStream in;
+        private KeyedLine current;
+
+        private RunCursor(DataInputStream in) {
+            this.in = in;
+        }
+
+        private KeyedLine current() {
+            return current;
+        }
+
+        private boolean advance() throws IOException {
+            String sessionId;
+            try {
+                sessionId = in.readUTF();
+            } catch (EOFException e) {
+                current = null;
+                in.close();
+                return false;
+            }
+            long seq = in.readLong();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            current = new KeyedLine(sessionId, seq, new String(bytes, StandardCharsets.UTF_8));
+            return true;
+        }
+    }
+}
@@ -1,9 +1,17 @@
 package com.flowreplay.cli;
 
+import com.flowreplay.core.replayer.CapacitySearchReplayer;
+import com.flowreplay.core.replayer.NettyHttp2ReplayClient;
 import org.junit.jupiter.api.Test;
 
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -67,6 +75,22 @@ class FlowReplayCLITest {
         assertEquals("./cache/live.jsonl", options.liveReportCachePath());
     }
 
+    @Test
+    void parsesLiveCacheDurability() {
+        String[] args = {
+            "record",
+            "--replay-target", "http://localhost:9090",
+            "--compare",
+            "--cache-durability", "FLUSH"
+        };
+
+        assertEquals(LiveReportCacheStore.Durability.FLUSH, FlowReplayCLI.parseRecordOptions(args, false).cacheDurability());
+        assertEquals(LiveReportCacheStore.Durability.BATCH, FlowReplayCLI.parseRecordOptions(
+            new String[]{"record", "--replay-target", "http://localhost:9090", "--compare"}, false).cacheDurability());
+        assertThrows(IllegalArgumentException.class, () -> FlowReplayCLI.parseRecordOptions(
+            new String[]{"record", "--replay-target", "http://localhost:9090", "--compare", "--cache-durability", "never"}, false));
+    }
+
     @Test
     void failsWhenCompareUsedWithoutReplayTarget() {
         String[] args = {"record", "--compare"};
@@ -132,4 +156,262 @@ class FlowReplayCLITest {
         );
         assertEquals("--cache is required", error.getMessage());
     }
+
+    @Test
+    void parsesReplayOptionsWithCompareThreads() {
+        String[] args = {
+            "replay",
+            "--input", "./records",
+            "--target", "http://localhost:9090",
+            "--mode", "concurrent",
+            "--compare",
+            "--compare-threads", "8"
+        };
+
+        FlowReplayCLI.ReplayCommandOptions options = FlowReplayCLI.parseReplayOptions(args);
+        assertEquals("./records", options.input());
+        assertEquals("http://localhost:9090", options.target());
+        assertEquals("concurrent", options.replayMode());
+        assertTrue(options.enableCompare());
+        assertEquals(8, options.compareThreads());
+    }
+
+    @Test
+    void autoEnablesCompareWhenReplayReportProvided() {
+        String[] args = {
+            "replay",
+            "--input", "./records",
+            "--target", "http://localhost:9090",
+            "--report", "./report-dir",
+            "--report-format", "sharded"
+        };
+
+        FlowReplayCLI.ReplayCommandOptions options = FlowReplayCLI.parseReplayOptions(args);
+        assertTrue(options.enableCompare());
+        assertEquals("./report-dir", options.reportPath());
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--mode", "amplify", "--report", "./r.html"}));
+    }
+
+    @Test
+    void failsWhenReplayModeUnknown() {
+        String[] args = {"replay", "--mode", "random"};
+
+        IllegalArgumentException error = assertThrows(
+            IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(args)
+        );
+        assertEquals("Invalid replay mode: random (supported: sequential|concurrent|session|amplify|open-loop|capacity)", error.getMessage());
+    }
+
+    @Test
+    void parsesSessionReplayModeAndRequiresSessionKey() {
+        String[] args = {"replay", "--mode", "session", "--session-key", "cookie:JSESSIONID"};
+
+        FlowReplayCLI.ReplayCommandOptions options = FlowReplayCLI.parseReplayOptions(args);
+        assertEquals("session", options.replayMode());
+        assertEquals("cookie:JSESSIONID", options.sessionKey());
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--mode", "session"}));
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--mode", "session", "--session-key", "body:x"}));
+    }
+
+    @Test
+    void parsesAmplifyReplayModeOptions() {
+        String[] args = {"replay", "--mode", "amplify", "--factor", "10", "--virtual-clients", "32", "--jitter-ms", "5",
+            "--target-rps", "500", "--rewrite-key", "header:X-Request-Id,esb:SerialNo", "--rewrite-key", "query:orderId"};
+
+        FlowReplayCLI.ReplayCommandOptions options = FlowReplayCLI.parseReplayOptions(args);
+        assertEquals("amplify", options.replayMode());
+        assertEquals(10, options.amplification().factor());
+        assertEquals(32, options.amplification().virtualClients());
+        assertEquals(5, options.amplification().jitterMillis());
+        assertEquals(500.0, options.amplification().targetRps());
+        assertEquals(List.of("header:X-Request-Id", "esb:SerialNo", "query:orderId"), options.amplification().rewriteKeys());
+        assertNull(FlowReplayCLI.parseReplayOptions(new String[]{"replay"}).amplification());
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--factor", "10"}));
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--mode", "amplify", "--compare"}));
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--mode", "amplify", "--rewrite-key", "body:x"}));
+    }
+
+    @Test
+    void parsesOpenLoopReplayModeOptions() {
+        FlowReplayCLI.ReplayCommandOptions options = FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--mode", "open-loop", "--speed", "2.5"});
+        assertEquals("open-loop", options.replayMode());
+        assertEquals(2.5, options.speed());
+        assertEquals(0.0, options.targetRps());
+        assertEquals(300.0, FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--mode", "open-loop", "--target-rps", "300"}).targetRps());
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--speed", "2"}));
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--mode", "concurrent", "--target-rps", "100"}));
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--mode", "open-loop", "--speed", "0"}));
+    }
+
+    @Test
+    void parsesCapacitySearchOptions() {
+        String[] args = {"replay", "--mode", "capacity", "--search", "AIMD", "--start-rps", "50", "--max-rps", "2000",
+            "--step-seconds", "5", "--slo-p99-ms", "200", "--max-error-pct", "0.5", "--max-steps", "12"};
+
+        FlowReplayCLI.ReplayCommandOptions options = FlowReplayCLI.parseReplayOptions(args);
+        assertEquals(CapacitySearchReplayer.Strategy.AIMD, options.capacitySearch().strategy());
+        assertEquals(50.0, options.capacitySearch().startRps());
+        assertEquals(2000.0, options.capacitySearch().maxRps());
+        assertEquals(Duration.ofSeconds(5), options.capacitySearch().stepDuration());
+        assertEquals(200_000, options.capacitySearch().p99SloMicros());
+        assertEquals(0.005, options.capacitySearch().maxErrorRate(), 1e-9);
+        assertEquals(12, options.capacitySearch().maxSteps());
+        assertEquals(CapacitySearchReplayer.Strategy.BINARY,
+            FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--mode", "capacity"}).capacitySearch().strategy());
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--slo-p99-ms", "100"}));
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--mode", "capacity", "--start-rps", "100", "--max-rps", "10"}));
+    }
+
+    @Test
+    void parsesMultipleReplayTargets() {
+        String[] args = {"replay", "--target", "http://old:9090,http://new:9090", "--target", "http://canary:9090", "--mode", "concurrent"};
+
+        FlowReplayCLI.ReplayCommandOptions options = FlowReplayCLI.parseReplayOptions(args);
+        assertEquals(List.of("http://old:9090", "http://new:9090", "http://canary:9090"), options.targets());
+        assertEquals("http://old:9090", options.target());
+        assertEquals(List.of("http://localhost:8080"), FlowReplayCLI.parseReplayOptions(new String[]{"replay"}).targets());
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--target", "http://a,http://b", "--mode", "open-loop"}));
+    }
+
+    @Test
+    void parsesIncrementalReplayOptions() {
+        String[] args = {"replay", "--input", "./rec", "--compare", "--incremental", "--build-id", "1.4.2",
+            "--changed-services", "/order,/pay", "--incremental-sample", "5"};
+
+        FlowReplayCLI.ReplayCommandOptions options = FlowReplayCLI.parseReplayOptions(args);
+        assertEquals("1.4.2", options.incremental().buildId());
+        assertEquals(Set.of("/order", "/pay"), options.incremental().changedServices());
+        assertEquals(5.0, options.incremental().samplePercent());
+        assertEquals(Paths.get("./rec").resolve("replay-result-cache.jsonl").toString(), options.resultCachePath());
+        assertNull(FlowReplayCLI.parseReplayOptions(new String[]{"replay"}).incremental());
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--incremental", "--build-id", "1"}));
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--compare", "--incremental"}));
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--build-id", "1"}));
+    }
+
+    @Test
+    void parsesResumableReplayRunOptions() {
+        FlowReplayCLI.ReplayCommandOptions options = FlowReplayCLI.parseReplayOptions(
+            new String[]{"replay", "--compare", "--run-dir", "./runs"});
+        assertEquals("./runs", options.runDir());
+        assertNull(options.resumeRunId());
+
+        FlowReplayCLI.ReplayCommandOptions resume = FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--resume", "run-1"});
+        assertEquals("run-1", resume.resumeRunId());
+        assertEquals("./replay-runs", resume.runDir());
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--resume", "run-1", "--mode", "concurrent"}));
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--run-dir", "./runs", "--mode", "amplify"}));
+    }
+
+    @Test
+    void parsesRunStoreOptions() {
+        FlowReplayCLI.ReplayCommandOptions options = FlowReplayCLI.parseReplayOptions(
+            new String[]{"replay", "--compare", "--run-store", "./store", "--build-id", "1.4.2"});
+        assertEquals("./store", options.runStore());
+        assertEquals("1.4.2", options.buildId());
+        assertNull(options.incremental());
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--build-id", "1.4.2"}));
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--run-store", "./store", "--mode", "amplify"}));
+
+        FlowReplayCLI.RunsCommandOptions runs = FlowReplayCLI.parseRunsOptions(
+            new String[]{"runs", "--last", "5", "--service", "/api/order", "--baseline", "run-1"});
+        assertEquals("./replay-store", runs.storePath());
+        assertEquals(5, runs.last());
+        assertEquals("/api/order", runs.service());
+        assertEquals("run-1", runs.baselineRunId());
+        assertNull(runs.candidateRunId());
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseRunsOptions(new String[]{"runs", "--last", "0"}));
+    }
+
+    @Test
+    void parsesPerformanceGateOptions() {
+        FlowReplayCLI.ReplayCommandOptions options = FlowReplayCLI.parseReplayOptions(new String[]{
+            "replay", "--compare", "--max-p99-increase", "20", "--max-mismatch-rate", "1", "--gate-report", "./gate.json"});
+        assertEquals(20.0, options.gate().thresholds().maxP99IncreasePercent());
+        assertEquals(1.0, options.gate().thresholds().maxMismatchPercent());
+        assertNull(options.gate().thresholds().minThroughputRps());
+        assertEquals("recorded", options.gate().baseline());
+        assertEquals("./gate.json", options.gate().reportPath());
+        assertNull(FlowReplayCLI.parseReplayOptions(new String[]{"replay"}).gate());
+
+        FlowReplayCLI.ReplayCommandOptions stored = FlowReplayCLI.parseReplayOptions(new String[]{
+            "replay", "--min-throughput", "50", "--run-store", "./store", "--gate-baseline", "previous"});
+        assertEquals("previous", stored.gate().baseline());
+        assertThrows(IllegalArgumentException.class, () -> FlowReplayCLI.parseReplayOptions(
+            new String[]{"replay", "--min-throughput", "50", "--gate-baseline", "previous"}));
+        assertThrows(IllegalArgumentException.class, () -> FlowReplayCLI.parseReplayOptions(
+            new String[]{"replay", "--max-mismatch-rate", "1"}));
+        assertThrows(IllegalArgumentException.class, () -> FlowReplayCLI.parseReplayOptions(
+            new String[]{"replay", "--gate-report", "./gate.json"}));
+    }
+
+    @Test
+    void parsesNettyReplayClientOptions() {
+        String[] args = {"replay", "--client", "NETTY", "--pool-size", "16", "--pipelining", "4"};
+
+        FlowReplayCLI.ReplayCommandOptions options = FlowReplayCLI.parseReplayOptions(args);
+        assertEquals("netty", options.replayClient());
+        assertEquals(16, options.poolSize());
+        assertEquals(4, options.pipelining());
+        assertEquals("jdk", FlowReplayCLI.parseReplayOptions(new String[]{"replay"}).replayClient());
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--client", "okhttp"}));
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--pipelining", "0"}));
+    }
+
+    @Test
+    void parsesH2cReplayClientOptions() {
+        String[] args = {"replay", "--client", "h2c", "--h2c-mode", "upgrade", "--max-streams", "250", "--stream-window", "65535", "--connection-window", "1048576"};
+
+        FlowReplayCLI.ReplayCommandOptions options = FlowReplayCLI.parseReplayOptions(args);
+        assertEquals("h2c", options.replayClient());
+        assertEquals(NettyHttp2ReplayClient.Mode.UPGRADE, options.http2Settings().mode());
+        assertEquals(250, options.http2Settings().maxConcurrentStreams());
+        assertEquals(65535, options.http2Settings().initialWindowSize());
+        assertEquals(1048576, options.http2Settings().connectionWindowSize());
+        assertThrows(IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(new String[]{"replay", "--max-streams", "10"}));
+    }
+
+    @Test
+    void parsesShardedReportFormat() {
+        String[] args = {"report-from-cache", "--cache", "./cache.jsonl", "--report", "./report-dir", "--report-format", "SHARDED"};
+
+        FlowReplayCLI.ReportFromCacheOptions options = FlowReplayCLI.parseReportFromCacheOptions(args);
+        assertEquals("sharded", options.reportFormat());
+        assertEquals("html", FlowReplayCLI.parseReplayOptions(new String[]{"replay"}).reportFormat());
+    }
+
+    @Test
+    void failsWhenReportFormatUnknown() {
+        String[] args = {"replay", "--report-format", "pdf"};
+
+        IllegalArgumentException error = assertThrows(
+            IllegalArgumentException.class,
+            () -> FlowReplayCLI.parseReplayOptions(args)
+        );
+        assertEquals("Invalid report format: pdf (supported: html|sharded)", error.getMessage());
+    }
 }
@@ -0,0 +1,96 @@
+package com.flowreplay.cli;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LiveReplayQueueTest {
+
+    @Test
+    void dropNewestStartsSheddingAtHighWatermark() {
+        LiveReplayQueue<Integer> queue = queue(10, LiveReplayQueue.OverflowPolicy.DROP_NEWEST, 100, 0);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(i);
+        }
+
+        assertEquals(8, queue.size());
+        assertEquals(8, queue.getAcceptedCount());
+        assertEquals(2, queue.getDroppedNewestCount());
+        assertTrue(queue.isShedding());
+        assertEquals(1, queue.getSheddingEpisodes());
+
+        // 回落到低水位以下才恢复
+        queue.drainRemaining();
+        assertTrue(queue.offer(99));
+        assertFalse(queue.isShedding());
+    }
+
+    @Test
+    void dropOldestKeepsNewestRecords() {
+        LiveReplayQueue<Integer> queue = queue(4, LiveReplayQueue.OverflowPolicy.DROP_OLDEST, 100, 0);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.offer(i));
+        }
+
+        List<Integer> remaining = queue.drainRemaining();
+        assertEquals(List.of(7, 8, 9), remaining.subList(remaining.size() - 3, remaining.size()));
+        assertEquals(10 - remaining.size(), queue.getDroppedOldestCount());
+        assertEquals(0, queue.getDroppedNewestCount());
+    }
+
+    @Test
+    void sampleKeepsConfiguredShareWhileShedding() {
+        LiveReplayQueue<Integer> queue = queue(1_000_000, LiveReplayQueue.OverflowPolicy.SAMPLE, 25, 10);
+        queue.recordLatency(TimeUnit.MILLISECONDS.toMicros(50));
+        for (int i = 0; i < 10_000; i++) {
+            queue.offer(i);
+        }
+
+        assertTrue(queue.isShedding());
+        assertEquals(10_000, queue.getAcceptedCount() + queue.getSampledOutCount());
+        assertEquals(2_500, queue.getAcceptedCount(), 300);
+    }
+
+    @Test
+    void blockFailsFastWhileShedding() {
+        LiveReplayQueue<Integer> queue = queue(2, LiveReplayQueue.OverflowPolicy.BLOCK, 100, 0);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+
+        // 队列已满并处于削峰状态：不在代理 IO 线程上等待
+        long startNanos = System.nanoTime();
+        assertFalse(queue.offer(3));
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        assertTrue(queue.isShedding());
+        assertTrue(waitedMillis < LiveReplayQueue.BLOCK_TIMEOUT_MILLIS / 2, "waited " + waitedMillis + " ms");
+        assertEquals(1, queue.getDroppedNewestCount());
+    }
+
+    @Test
+    void blockStillAcceptsWhileSheddingOnLatencyWithRoomLeft() {
+        LiveReplayQueue<Integer> queue = queue(100, LiveReplayQueue.OverflowPolicy.BLOCK, 100, 10);
+        queue.recordLatency(TimeUnit.MILLISECONDS.toMicros(50));
+
+        assertTrue(queue.offer(1));
+        assertTrue(queue.isShedding());
+        assertEquals(1, queue.getAcceptedCount());
+    }
+
+    @Test
+    void parsesPolicyAndValidatesLimits() {
+        assertEquals(LiveReplayQueue.OverflowPolicy.DROP_OLDEST, LiveReplayQueue.OverflowPolicy.parse("drop-oldest"));
+        assertThrows(IllegalArgumentException.class, () -> LiveReplayQueue.OverflowPolicy.parse("drop"));
+        assertThrows(IllegalArgumentException.class,
+            () -> new LiveReplayQueue.Limits(10, 1, LiveReplayQueue.OverflowPolicy.SAMPLE, 0, 0));
+    }
+
+    private static LiveReplayQueue<Integer> queue(int capacity, LiveReplayQueue.OverflowPolicy policy, int samplePercent, long shedLatencyMillis) {
+        return new LiveReplayQueue<>(new LiveReplayQueue.Limits(capacity, 1, policy, samplePercent, shedLatencyMillis));
+    }
+}
@@ -0,0 +1,113 @@
+package com.flowreplay.cli;
+
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import com.flowreplay.core.model.TrafficRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LiveReplaySupportTest {
+
+    private final List<List<String>> messagesByConnection = new CopyOnWriteArrayList<>();
+    private ServerSocket server;
+
+    @AfterEach
+    void stopServer() throws Exception {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void replaysEachTcpConversationInOrderOverOneConnection() throws Exception {
+        String target = startServer();
+        int clients = 20;
+        int messages = 5;
+        LiveReplayQueue.Limits limits = new LiveReplayQueue.Limits(10_000, 8, LiveReplayQueue.OverflowPolicy.BLOCK, 100, 0);
+        try (LiveReplaySupport live = new LiveReplaySupport(target, false, null, null, null, null, null, null, limits)) {
+            // 各连接的消息连续到达，空闲的回放线程会同时取到同一连接的多条消息
+            for (int client = 0; client < clients; client++) {
+                for (int message = 0; message < messages; message++) {
+                    live.submit(record("10.0.0." + client + ":5000", message, message == messages - 1));
+                }
+            }
+        }
+
+        // 会话结束后连接归还连接池，可被下一个会话复用：每个连接上依次是若干个完整、有序的会话
+        int received = 0;
+        for (List<String> connection : messagesByConnection) {
+            assertEquals(0, connection.size() % messages, connection.toString());
+            for (int start = 0; start < connection.size(); start += messages) {
+                String client = connection.get(start).substring(0, connection.get(start).indexOf('#'));
+                List<String> expected = new ArrayList<>();
+                for (int message = 0; message < messages; message++) {
+                    expected.add(client + "#" + message);
+                }
+                assertEquals(expected, connection.subList(start, start + messages));
+            }
+            received += connection.size();
+        }
+        assertEquals(clients * messages, received);
+    }
+
+    private static TrafficRecord record(String clientAddress, int messageIndex, boolean lastMessage) {
+        String message = clientAddress + "#" + messageIndex;
+        return new TrafficRecord(
+            message,
+            "SOCKET",
+            Instant.now(),
+            new RequestData("raw", "upstream", Map.of(), message.getBytes(StandardCharsets.UTF_8), Map.of()),
+            new ResponseData(0, Map.of(), ("ack:" + message).getBytes(StandardCharsets.UTF_8), 0, Map.of()),
+            Map.of("clientAddress", clientAddress, "messageIndex", messageIndex, "lastMessage", lastMessage)
+        );
+    }
+
+    // 每读到一条消息回复 ack:<消息>，按连接记录收到的消息
+    private String startServer() throws Exception {
+        server = new ServerSocket(0);
+        Thread.ofVirtual().start(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    List<String> received = Collections.synchronizedList(new ArrayList<>());
+                    messagesByConnection.add(received);
+                    Thread.ofVirtual().start(() -> serve(socket, received));
+                } catch (Exception e) {
+                    return;
+                }
+            }
+        });
+        return "127.0.0.1:" + server.getLocalPort();
+    }
+
+    private static void serve(Socket socket, List<String> received) {
+        try (socket) {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            byte[] buffer = new byte[1024];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                String message = new String(buffer, 0, bytesRead, StandardCharsets.UTF_8);
+                received.add(message);
+                out.write(("ack:" + message).getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (Exception e) {
+            // 客户端断开
+        }
+    }
+}
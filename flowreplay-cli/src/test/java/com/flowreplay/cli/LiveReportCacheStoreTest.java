@@ -0,0 +1,256 @@
+package com.flowreplay.cli;
+
+import com.flowreplay.core.model.ComparisonResult;
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import com.flowreplay.core.model.TrafficRecord;
+import com.flowreplay.core.report.ComparisonReport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LiveReportCacheStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void streamsSessionInSequenceOrderWithinReorderWindow() throws Exception {
+        String cachePath = tempDir.resolve("live.jsonl").toString();
+        try (LiveReportCacheStore store = LiveReportCacheStore.openForAppend(cachePath)) {
+            // 按完成顺序写入，穿插另一个会话的结果
+            long[] completionOrder = {2, 1, 3, 5, 4, 6};
+            for (long seq : completionOrder) {
+                store.append("s1", seq, report("r" + seq));
+                store.append("s0", seq, report("other" + seq));
+            }
+        }
+
+        List<String> ids = new ArrayList<>();
+        try (LiveReportCacheStore.SessionReader reader = LiveReportCacheStore.openSession(cachePath, "s1", 4)) {
+            reader.forEachRemaining(report -> ids.add(report.record().id()));
+            assertEquals(0, reader.getOutOfOrderCount());
+        }
+        assertEquals(List.of("r1", "r2", "r3", "r4", "r5", "r6"), ids);
+    }
+
+    @Test
+    void countsResultsArrivingBeyondReorderWindow() throws Exception {
+        String cachePath = tempDir.resolve("late.jsonl").toString();
+        try (LiveReportCacheStore store = LiveReportCacheStore.openForAppend(cachePath)) {
+            for (long seq : new long[]{2, 3, 4, 5, 1}) {
+                store.append("s1", seq, report("r" + seq));
+            }
+        }
+
+        List<String> ids = new ArrayList<>();
+        try (LiveReportCacheStore.SessionReader reader = LiveReportCacheStore.openSession(cachePath, "s1", 2)) {
+            reader.forEachRemaining(report -> ids.add(report.record().id()));
+            assertEquals(1, reader.getOutOfOrderCount());
+        }
+        assertEquals(List.of("r2", "r3", "r4", "r5", "r1"), ids);
+    }
+
+    @Test
+    void groupCommitsConcurrentAppendsInEveryDurabilityMode() throws Exception {
+        for (LiveReportCacheStore.Durability durability : LiveReportCacheStore.Durability.values()) {
+            String cachePath = tempDir.resolve("group-" + durability + ".jsonl").toString();
+            LiveReportCacheStore store = LiveReportCacheStore.openForAppend(cachePath, durability);
+            AtomicLong sequence = new AtomicLong();
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                threads.add(Thread.ofVirtual().start(() -> {
+                    for (int i = 0; i < 250; i++) {
+                        long seq = sequence.incrementAndGet();
+                        store.append("s1", seq, report("r" + seq));
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            store.close();
+            store.close();
+
+            assertEquals(0, store.getFailedCount());
+            assertThrows(IllegalStateException.class, () -> store.append("s1", 0, report("late")));
+            List<ComparisonReport> reports = LiveReportCacheStore.readReports(cachePath);
+            assertEquals(2000, reports.size(), durability.name());
+            assertEquals("r1", reports.get(0).record().id());
+            assertEquals("r2000", reports.get(1999).record().id());
+        }
+    }
+
+    @Test
+    void sortsWholeCacheWithStrategyMatchingInputOrder() throws Exception {
+        // 已有序
+        String sorted = writeCache("sorted.jsonl", new String[]{"a", "a", "b"}, new long[]{1, 2, 1});
+        assertSortedOutput(sorted, 1 << 20, SortedCacheReader.Strategy.SORTED, List.of("a1", "a2", "b1"));
+
+        // 会话交错，但会话内有序
+        String interleaved = writeCache("interleaved.jsonl", new String[]{"b", "a", "b", "a"}, new long[]{1, 1, 2, 2});
+        assertSortedOutput(interleaved, 1 << 20, SortedCacheReader.Strategy.SEQUENTIAL_SESSIONS, List.of("a1", "a2", "b1", "b2"));
+
+        // 会话内乱序，分块很小时产生多个有序段再归并
+        Random random = new Random(7);
+        List<Long> seqs = new ArrayList<>();
+        for (long seq = 1; seq <= 300; seq++) {
+            seqs.add(seq);
+        }
+        Collections.shuffle(seqs, random);
+        String[] sessions = new String[600];
+        long[] order = new long[600];
+        for (int i = 0; i < 300; i++) {
+            sessions[2 * i] = "b";
+            order[2 * i] = seqs.get(i);
+            sessions[2 * i + 1] = "a";
+            order[2 * i + 1] = seqs.get(299 - i);
+        }
+        String shuffled = writeCache("shuffled.jsonl", sessions, order);
+        List<String> expected = new ArrayList<>();
+        for (String session : List.of("a", "b")) {
+            for (long seq = 1; seq <= 300; seq++) {
+                expected.add(session + seq);
+            }
+        }
+        try (SortedCacheReader reader = LiveReportCacheStore.openSorted(shuffled, 4096)) {
+            assertEquals(SortedCacheReader.Strategy.EXTERNAL_MERGE, reader.getStrategy());
+            assertTrue(reader.getRunCount() > 1);
+            List<String> ids = new ArrayList<>();
+            reader.forEachRemaining(report -> ids.add(report.record().id()));
+            assertEquals(expected, ids);
+        }
+        try (var leftovers = Files.list(tempDir)) {
+            assertTrue(leftovers.noneMatch(path -> path.getFileName().toString().startsWith(".flowreplay-sort-")));
+        }
+    }
+
+    @Test
+    void skipsTruncatedTrailingLine() throws Exception {
+        String cachePath = writeCache("torn.jsonl", new String[]{"s1", "s0", "s1"}, new long[]{1, 1, 2});
+        // 模拟崩溃时写了一半的末尾行：sessionId/seq 完整，report 被截断
+        String torn = Files.readAllLines(Path.of(cachePath)).get(0);
+        Files.writeString(Path.of(cachePath), torn.substring(0, torn.length() / 2).replace("\"seq\":1", "\"seq\":3"),
+            StandardOpenOption.APPEND);
+
+        try (SortedCacheReader reader = LiveReportCacheStore.openSorted(cachePath)) {
+            List<String> ids = new ArrayList<>();
+            reader.forEachRemaining(report -> ids.add(report.record().id()));
+            assertEquals(List.of("s01", "s11", "s12"), ids);
+            assertEquals(3, reader.getRecordCount());
+            assertEquals(1, reader.getSkippedLineCount());
+        }
+        try (LiveReportCacheStore.SessionReader reader = LiveReportCacheStore.openSession(cachePath, "s1", 4)) {
+            List<String> ids = new ArrayList<>();
+            reader.forEachRemaining(report -> ids.add(report.record().id()));
+            assertEquals(List.of("s11", "s12"), ids);
+            assertEquals(1, reader.getSkippedLineCount());
+        }
+    }
+
+    @Test
+    void repairsTornTailBeforeAppendingNextSession() throws Exception {
+        String cachePath = writeCache("crash.jsonl", new String[]{"s0", "s0"}, new long[]{1, 2});
+        // 第一次运行崩溃：末尾行只写了一半，没有换行
+        String torn = Files.readAllLines(Path.of(cachePath)).get(0);
+        Files.writeString(Path.of(cachePath), torn.substring(0, torn.length() / 2), StandardOpenOption.APPEND);
+
+        // 第二、三次运行继续追加
+        try (LiveReportCacheStore store = LiveReportCacheStore.openForAppend(cachePath)) {
+            store.append("s1", 1, report("s11"));
+            store.append("s1", 2, report("s12"));
+        }
+        try (LiveReportCacheStore store = LiveReportCacheStore.openForAppend(cachePath)) {
+            store.append("s2", 1, report("s21"));
+        }
+
+        try (SortedCacheReader reader = LiveReportCacheStore.openSorted(cachePath)) {
+            List<String> ids = new ArrayList<>();
+            reader.forEachRemaining(report -> ids.add(report.record().id()));
+            assertEquals(List.of("s01", "s02", "s11", "s12", "s21"), ids);
+            assertEquals(0, reader.getSkippedLineCount());
+        }
+        try (LiveReportCacheStore.SessionReader reader = LiveReportCacheStore.openSession(cachePath, "s2", 4)) {
+            List<String> ids = new ArrayList<>();
+            reader.forEachRemaining(report -> ids.add(report.record().id()));
+            assertEquals(List.of("s21"), ids);
+            assertEquals(0, reader.getSkippedLineCount());
+        }
+    }
+
+    @Test
+    void skipsOnlyTheMalformedLineInTheMiddle() throws Exception {
+        String cachePath = writeCache("glued.jsonl", new String[]{"s0"}, new long[]{1});
+        // 旧版本续写时残行与下一行拼在一起，之后的记录仍然完整
+        String line = Files.readAllLines(Path.of(cachePath)).get(0);
+        Files.writeString(Path.of(cachePath), line.substring(0, line.length() / 2), StandardOpenOption.APPEND);
+        String appended = writeCache("next.jsonl", new String[]{"s1", "s1", "s2"}, new long[]{1, 2, 1});
+        Files.write(Path.of(cachePath), Files.readAllBytes(Path.of(appended)), StandardOpenOption.APPEND);
+
+        try (SortedCacheReader reader = LiveReportCacheStore.openSorted(cachePath)) {
+            List<String> ids = new ArrayList<>();
+            reader.forEachRemaining(report -> ids.add(report.record().id()));
+            assertEquals(List.of("s01", "s12", "s21"), ids);
+            assertEquals(1, reader.getSkippedLineCount());
+        }
+        try (LiveReportCacheStore.SessionReader reader = LiveReportCacheStore.openSession(cachePath, "s2", 4)) {
+            List<String> ids = new ArrayList<>();
+            reader.forEachRemaining(report -> ids.add(report.record().id()));
+            assertEquals(List.of("s21"), ids);
+            assertEquals(1, reader.getSkippedLineCount());
+        }
+    }
+
+    @Test
+    void parsesDurabilityIgnoringCase() {
+        assertEquals(LiveReportCacheStore.Durability.FSYNC, LiveReportCacheStore.Durability.parse("fsync"));
+        assertThrows(IllegalArgumentException.class, () -> LiveReportCacheStore.Durability.parse("never"));
+    }
+
+    private String writeCache(String name, String[] sessions, long[] seqs) {
+        String cachePath = tempDir.resolve(name).toString();
+        try (LiveReportCacheStore store = LiveReportCacheStore.openForAppend(cachePath)) {
+            for (int i = 0; i < sessions.length; i++) {
+                store.append(sessions[i], seqs[i], report(sessions[i] + seqs[i]));
+            }
+        }
+        return cachePath;
+    }
+
+    private static void assertSortedOutput(String cachePath, long chunkBytes, SortedCacheReader.Strategy strategy, List<String> expected) {
+        try (SortedCacheReader reader = LiveReportCacheStore.openSorted(cachePath, chunkBytes)) {
+            assertEquals(strategy, reader.getStrategy());
+            assertEquals(expected.size(), reader.getRecordCount());
+            List<String> ids = new ArrayList<>();
+            reader.forEachRemaining(report -> ids.add(report.record().id()));
+            assertEquals(expected, ids);
+        }
+    }
+
+    private static ComparisonReport report(String id) {
+        ResponseData response = new ResponseData(200, Map.of(), new byte[0], 1, Map.of());
+        TrafficRecord record = new TrafficRecord(
+            id,
+            "HTTP",
+            Instant.now(),
+            new RequestData("GET", "/api/" + id, Map.of(), null, Map.of()),
+            response,
+            Map.of()
+        );
+        return new ComparisonReport(record, response, ComparisonResult.success(), 1, Instant.now());
+    }
+}
@@ -0,0 +1,88 @@
+package com.flowreplay.cli;
+
+import com.flowreplay.core.model.ComparisonResult;
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import com.flowreplay.core.model.TrafficRecord;
+import com.flowreplay.core.report.ComparisonReport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplayRunCheckpointTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void resumesFromCommittedProgressAndDropsUncommittedReports() throws Exception {
+        Path runDirectory = tempDir.resolve("run-1");
+        ReplayRunCheckpoint.RunMetadata metadata = new ReplayRunCheckpoint.RunMetadata(
+            "run-1", List.of("replay", "--compare", "--run-dir", tempDir.toString()), 5, Instant.now());
+
+        try (ReplayRunCheckpoint run = ReplayRunCheckpoint.start(runDirectory, metadata, true)) {
+            // 并发完成顺序：0、2、1
+            run.recordCompared(0, report("r0", true));
+            run.recordCompared(2, report("r2", false));
+            run.recordCompared(1, report("r1", true));
+            assertEquals(3, run.committedPosition());
+        }
+        assertThrows(IllegalArgumentException.class, () -> ReplayRunCheckpoint.start(runDirectory, metadata, true));
+
+        // 模拟崩溃：比对结果已写入但进度行未写入，且进度文件末行只写了一半
+        try (LiveReportCacheStore store = LiveReportCacheStore.openForAppend(
+            runDirectory.resolve(ReplayRunCheckpoint.REPORTS_FILE).toString())) {
+            store.append("run-1", 3, report("r3", true));
+        }
+        Files.writeString(runDirectory.resolve(ReplayRunCheckpoint.PROGRESS_FILE), "{\"seq\":3,\"reco",
+            StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        assertEquals(metadata.args(), ReplayRunCheckpoint.readMetadata(runDirectory).args());
+        try (ReplayRunCheckpoint run = ReplayRunCheckpoint.resume(runDirectory, true)) {
+            assertEquals(Set.of("r0", "r1", "r2"), run.completedRecordIds());
+            assertEquals(3, run.resumedCount());
+            assertEquals(2, run.matched());
+            run.recordCompared(3, report("r3", true));
+            run.recordCompared(4, report("r4", true));
+            assertEquals(5, run.completed());
+            assertEquals(5, run.committedPosition());
+        }
+
+        List<String> ids = new ArrayList<>();
+        try (SortedCacheReader reader = LiveReportCacheStore.openSorted(runDirectory.resolve(ReplayRunCheckpoint.REPORTS_FILE).toString())) {
+            reader.forEachRemaining(report -> ids.add(report.record().id()));
+        }
+        assertEquals(List.of("r0", "r1", "r2", "r3", "r4"), ids);
+        String checkpoint = Files.readString(runDirectory.resolve(ReplayRunCheckpoint.CHECKPOINT_FILE));
+        assertTrue(checkpoint.contains("\"finished\":true"), checkpoint);
+        assertFalse(Files.readString(runDirectory.resolve(ReplayRunCheckpoint.PROGRESS_FILE)).contains("\"reco\n"));
+    }
+
+    private static ComparisonReport report(String id, boolean matched) {
+        ResponseData response = new ResponseData(200, Map.of(), new byte[0], 1, Map.of());
+        TrafficRecord record = new TrafficRecord(
+            id,
+            "HTTP",
+            Instant.now(),
+            new RequestData("GET", "/api/" + id, Map.of(), null, Map.of()),
+            response,
+            Map.of()
+        );
+        ComparisonResult result = matched ? ComparisonResult.success() : new ComparisonResult(false, List.of(), Map.of());
+        return new ComparisonReport(record, response, result, 1, Instant.now());
+    }
+}
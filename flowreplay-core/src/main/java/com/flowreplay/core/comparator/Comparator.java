@@ -1,12 +1,18 @@
 package com.flowreplay.core.comparator;
 
 import com.flowreplay.core.model.ComparisonResult;
+import com.flowreplay.core.model.Difference;
+import com.flowreplay.core.model.ReplayResult;
 import com.flowreplay.core.model.ResponseData;
 import com.flowreplay.core.model.TrafficRecord;
+import com.flowreplay.core.report.ComparisonReport;
+import com.flowreplay.core.report.MultiTargetReport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 比对器
@@ -16,6 +22,9 @@ public class Comparator {
     private static final Logger log = LoggerFactory.getLogger(Comparator.class);
     private final List<ComparisonConfig> configs;
     private final Map<String, ComparisonStrategy> strategyMap;
+    // 带配置的策略实例，按规则中的 StrategyConfig 缓存
+    private final Map<StrategyConfig, ComparisonStrategy> configuredStrategies = new ConcurrentHashMap<>();
+    private final StrategyTimings timings = new StrategyTimings();
 
     public Comparator(List<ComparisonConfig> configs) {
         this.configs = configs;
@@ -27,6 +36,8 @@ public class Comparator {
         strategyMap.put("http-status", new HttpStatusStrategy());
         strategyMap.put("exact-match", new ExactMatchStrategy());
         strategyMap.put("json-structure", new JsonStructureStrategy());
+        strategyMap.put("xml-structure", new XmlStructureStrategy());
+        strategyMap.put("latency", new LatencyStrategy());
     }
 
     public ComparisonResult compare(TrafficRecord record, ResponseData replayedResponse) {
@@ -41,13 +52,17 @@ public class Comparator {
         }
 
         List<ComparisonResult> results = new ArrayList<>();
+        Map<String, Object> metrics = new HashMap<>();
         for (StrategyConfig strategyConfig : config.getStrategies()) {
             ComparisonStrategy strategy = getStrategy(strategyConfig);
             if (strategy != null) {
+                long start = System.nanoTime();
                 ComparisonResult result = strategy.compare(record.response(), replayedResponse);
+                timings.record(strategy.getName(), System.nanoTime() - start);
                 // 只添加非跳过的结果
                 if (result.metrics() == null || !result.metrics().containsKey("skipped")) {
                     results.add(result);
+                    metrics.putAll(result.metrics());
                 }
             }
         }
@@ -56,10 +71,63 @@ public class Comparator {
         if (results.isEmpty()) {
             log.warn("All strategies skipped for record {}, using exact-match as fallback", record.id());
             ComparisonStrategy exactMatch = new ExactMatchStrategy();
+            long start = System.nanoTime();
             results.add(exactMatch.compare(record.response(), replayedResponse));
+            timings.record(exactMatch.getName(), System.nanoTime() - start);
         }
 
-        return mergeResults(results);
+        if (!metrics.isEmpty() && config.getName() != null) {
+            metrics.put("rule", config.getName());
+        }
+        return mergeResults(results, metrics);
+    }
+
+    /**
+     * 比对一条回放结果并生成报告，回放失败时生成失败报告
+     */
+    public ComparisonReport compareReplay(TrafficRecord record, ReplayResult replayResult) {
+        Instant replayTimestamp = Instant.now();
+        if (replayResult.success()) {
+            ComparisonResult comparisonResult = compare(record, replayResult.response());
+            return new ComparisonReport(record, replayResult.response(), comparisonResult, replayResult.duration(), replayTimestamp);
+        }
+        ComparisonResult failedResult = new ComparisonResult(
+            false,
+            List.of(new Difference("replay", "error", "success", "failed: " + replayResult.errorMessage())),
+            Map.of()
+        );
+        return new ComparisonReport(record, null, failedResult, replayResult.duration(), replayTimestamp);
+    }
+
+    /**
+     * 比对一条记录在多个目标上的回放结果：各目标分别与录制响应比对，
+     * 第 2 个起的目标再以第 1 个目标的响应为期望比对一次，任一方回放失败时该项为 null
+     */
+    public MultiTargetReport compareTargets(TrafficRecord record, List<ReplayResult> replayResults) {
+        List<ComparisonReport> targetReports = new ArrayList<>(replayResults.size());
+        for (ReplayResult replayResult : replayResults) {
+            targetReports.add(compareReplay(record, replayResult));
+        }
+        List<ComparisonResult> againstFirstTarget = new ArrayList<>();
+        ReplayResult first = replayResults.get(0);
+        for (int i = 1; i < replayResults.size(); i++) {
+            ReplayResult other = replayResults.get(i);
+            if (!first.success() || !other.success()) {
+                againstFirstTarget.add(null);
+                continue;
+            }
+            TrafficRecord asFirstTarget = new TrafficRecord(
+                record.id(), record.protocol(), record.timestamp(), record.request(), first.response(), record.metadata());
+            againstFirstTarget.add(compare(asFirstTarget, other.response()));
+        }
+        return new MultiTargetReport(record, targetReports, againstFirstTarget);
+    }
+
+    /**
+     * 各比对策略的累计耗时
+     */
+    public StrategyTimings getTimings() {
+        return timings;
     }
 
     private ComparisonConfig findMatchingConfig(String uri) {
@@ -72,19 +140,30 @@ public class Comparator {
     }
 
     private ComparisonStrategy getStrategy(StrategyConfig config) {
-        return strategyMap.get(config.getType());
+        if (config.getConfig() == null || config.getConfig().isEmpty()) {
+            return strategyMap.get(config.getType());
+        }
+        return configuredStrategies.computeIfAbsent(config, this::createConfiguredStrategy);
+    }
+
+    private ComparisonStrategy createConfiguredStrategy(StrategyConfig config) {
+        return switch (config.getType()) {
+            case "xml-structure" -> XmlStructureStrategy.fromConfig(config.getConfig());
+            case "latency" -> LatencyStrategy.fromConfig(config.getConfig());
+            default -> strategyMap.get(config.getType());
+        };
     }
 
-    private ComparisonResult mergeResults(List<ComparisonResult> results) {
+    private ComparisonResult mergeResults(List<ComparisonResult> results, Map<String, Object> metrics) {
         if (results.isEmpty()) {
             return ComparisonResult.success();
         }
         
         boolean allMatched = results.stream().allMatch(ComparisonResult::matched);
-        List<com.flowreplay.core.model.Difference> allDiffs = new ArrayList<>();
+        List<Difference> allDiffs = new ArrayList<>();
         results.forEach(r -> allDiffs.addAll(r.differences()));
         
-        return new ComparisonResult(allMatched, allDiffs, Map.of());
+        return new ComparisonResult(allMatched, allDiffs, metrics);
     }
 
     private ComparisonConfig getDefaultConfig() {
@@ -0,0 +1,113 @@
+package com.flowreplay.core.comparator;
+
+import com.flowreplay.core.model.ComparisonResult;
+import com.flowreplay.core.model.Difference;
+import com.flowreplay.core.model.ResponseData;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 响应耗时回归比对策略
+ * 回放耗时超过录制耗时的绝对阈值（maxDeltaMs）或相对阈值（maxDeltaPercent）时判定为不匹配，
+ * 同时将耗时差异写入 metrics，便于按规则聚合。
+ */
+public class LatencyStrategy implements ComparisonStrategy {
+
+    public static final String METRIC_RECORDED_MS = "latency.recordedMs";
+    public static final String METRIC_REPLAYED_MS = "latency.replayedMs";
+    public static final String METRIC_DELTA_MS = "latency.deltaMs";
+    public static final String METRIC_DELTA_PERCENT = "latency.deltaPercent";
+
+    private final Long maxDeltaMs;          // 允许的最大耗时增量（毫秒），null 表示不检查
+    private final Double maxDeltaPercent;   // 允许的最大耗时增幅（百分比），null 表示不检查
+    private final long minDeltaMs;          // 增量小于该值时不做相对阈值判断，避免毫秒级抖动误报
+
+    public LatencyStrategy(Long maxDeltaMs, Double maxDeltaPercent, long minDeltaMs) {
+        this.maxDeltaMs = maxDeltaMs;
+        this.maxDeltaPercent = maxDeltaPercent;
+        this.minDeltaMs = Math.max(0, minDeltaMs);
+    }
+
+    public LatencyStrategy() {
+        this(null, null, 0);
+    }
+
+    /**
+     * 从YAML策略配置创建
+     */
+    public static LatencyStrategy fromConfig(Map<String, Object> config) {
+        if (config == null) {
+            return new LatencyStrategy();
+        }
+        Number maxDeltaMs = readNumber(config, "maxDeltaMs");
+        Number maxDeltaPercent = readNumber(config, "maxDeltaPercent");
+        Number minDeltaMs = readNumber(config, "minDeltaMs");
+        return new LatencyStrategy(
+            maxDeltaMs != null ? maxDeltaMs.longValue() : null,
+            maxDeltaPercent != null ? maxDeltaPercent.doubleValue() : null,
+            minDeltaMs != null ? minDeltaMs.longValue() : 0
+        );
+    }
+
+    @Override
+    public ComparisonResult compare(ResponseData recorded, ResponseData replayed) {
+        long recordedMs = recorded.duration();
+        long replayedMs = replayed.duration();
+        long deltaMs = replayedMs - recordedMs;
+        double deltaPercent = recordedMs > 0 ? deltaMs * 100.0 / recordedMs : 0.0;
+
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put(METRIC_RECORDED_MS, recordedMs);
+        metrics.put(METRIC_REPLAYED_MS, replayedMs);
+        metrics.put(METRIC_DELTA_MS, deltaMs);
+        metrics.put(METRIC_DELTA_PERCENT, deltaPercent);
+
+        if (maxDeltaMs != null && deltaMs > maxDeltaMs) {
+            Difference diff = new Difference(
+                "latency",
+                "regression",
+                "<= " + (recordedMs + maxDeltaMs) + " ms",
+                replayedMs + " ms (+" + deltaMs + " ms)"
+            );
+            return new ComparisonResult(false, List.of(diff), metrics);
+        }
+
+        if (maxDeltaPercent != null && recordedMs > 0 && deltaMs >= minDeltaMs && deltaPercent > maxDeltaPercent) {
+            Difference diff = new Difference(
+                "latency",
+                "regression",
+                "<= +" + formatPercent(maxDeltaPercent) + " of " + recordedMs + " ms",
+                replayedMs + " ms (+" + formatPercent(deltaPercent) + ")"
+            );
+            return new ComparisonResult(false, List.of(diff), metrics);
+        }
+
+        return new ComparisonResult(true, List.of(), metrics);
+    }
+
+    private static Number readNumber(Map<String, Object> config, String key) {
+        Object value = config.get(key);
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number number) {
+            return number;
+        }
+        try {
+            return Double.parseDouble(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid latency config " + key + ": " + value, e);
+        }
+    }
+
+    private static String formatPercent(double percent) {
+        return String.format("%.1f%%", percent);
+    }
+
+    @Override
+    public String getName() {
+        return "latency";
+    }
+}
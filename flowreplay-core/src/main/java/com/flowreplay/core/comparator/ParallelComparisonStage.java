@@ -0,0 +1,167 @@
+package com.flowreplay.core.comparator;
+
+import com.flowreplay.core.model.ComparisonResult;
+import com.flowreplay.core.model.ReplayResult;
+import com.flowreplay.core.model.TrafficRecord;
+import com.flowreplay.core.report.ComparisonReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 并行比对阶段
+ * 回放结果一到达就提交到有界线程池比对，结果按提交索引保存，保证输出顺序与录制顺序一致。
+ * 队列满时由提交线程自己执行比对，形成天然的背压。比对异常时也会生成失败报告，每个提交的索引都有结果。
+ */
+public class ParallelComparisonStage implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelComparisonStage.class);
+    private static final int QUEUE_SIZE_PER_THREAD = 64;
+
+    private final Comparator comparator;
+    private final ComparedListener listener;
+    private final ThreadPoolExecutor executor;
+    private final AtomicReferenceArray<ComparisonReport> reports;
+    private final AtomicLong compared = new AtomicLong();
+    private final LongAdder busyNanos = new LongAdder();
+    private final AtomicLong firstSubmitNanos = new AtomicLong();
+    private final AtomicLong lastCompleteNanos = new AtomicLong();
+
+    /**
+     * 单条比对完成回调，在比对线程上调用
+     */
+    @FunctionalInterface
+    public interface ComparedListener {
+        void onCompared(int index, ComparisonReport report);
+    }
+
+    public ParallelComparisonStage(Comparator comparator, int parallelism, int size) {
+        this(comparator, parallelism, size, null);
+    }
+
+    public ParallelComparisonStage(Comparator comparator, int parallelism, int size, ComparedListener listener) {
+        int threads = Math.max(1, parallelism);
+        this.comparator = comparator;
+        this.listener = listener;
+        this.reports = new AtomicReferenceArray<>(size);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(threads * QUEUE_SIZE_PER_THREAD),
+            runnable -> {
+                Thread thread = new Thread(runnable, "flowreplay-compare-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
+    /**
+     * 提交一条回放结果进行比对（可由多个回放线程并发调用）
+     */
+    public void submit(int index, TrafficRecord record, ReplayResult replayResult) {
+        firstSubmitNanos.compareAndSet(0, System.nanoTime());
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            ComparisonReport report = compare(record, replayResult);
+            reports.set(index, report);
+            if (listener != null) {
+                try {
+                    listener.onCompared(index, report);
+                } catch (Exception e) {
+                    log.error("Comparison listener failed for record: {}", record.id(), e);
+                }
+            }
+            long end = System.nanoTime();
+            busyNanos.add(end - start);
+            compared.incrementAndGet();
+            lastCompleteNanos.accumulateAndGet(end, Math::max);
+        });
+    }
+
+    // 比对异常时按回放失败重新生成报告，仍然失败则直接构造错误报告
+    private ComparisonReport compare(TrafficRecord record, ReplayResult replayResult) {
+        try {
+            return comparator.compareReplay(record, replayResult);
+        } catch (Exception e) {
+            log.error("Comparison failed for record: {}", record.id(), e);
+            try {
+                return comparator.compareReplay(record,
+                    ReplayResult.failure(record.id(), replayResult.duration(), "comparison failed: " + e.getMessage()));
+            } catch (Exception fallbackError) {
+                log.error("Fallback comparison failed for record: {}", record.id(), fallbackError);
+                return new ComparisonReport(record, replayResult.response(),
+                    ComparisonResult.error("comparison failed", e), replayResult.duration(), Instant.now());
+            }
+        }
+    }
+
+    /**
+     * 等待所有比对完成，按索引顺序返回报告（未提交的索引会被跳过）
+     */
+    public List<ComparisonReport> await() throws InterruptedException {
+        executor.shutdown();
+        while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            log.debug("Waiting for comparison stage, compared={}", compared.get());
+        }
+        List<ComparisonReport> ordered = new ArrayList<>(reports.length());
+        for (int i = 0; i < reports.length(); i++) {
+            ComparisonReport report = reports.get(i);
+            if (report != null) {
+                ordered.add(report);
+            }
+        }
+        return ordered;
+    }
+
+    public long getComparedCount() {
+        return compared.get();
+    }
+
+    /**
+     * 从第一条提交到最后一条比对完成的耗时（毫秒）
+     */
+    public double getElapsedMillis() {
+        long first = firstSubmitNanos.get();
+        long last = lastCompleteNanos.get();
+        return first == 0 || last < first ? 0.0 : (last - first) / 1_000_000.0;
+    }
+
+    /**
+     * 所有比对任务累计占用的线程时间（毫秒）
+     */
+    public double getBusyMillis() {
+        return busyNanos.sum() / 1_000_000.0;
+    }
+
+    /**
+     * 比对吞吐量（条/秒）
+     */
+    public double getThroughput() {
+        double elapsedMillis = getElapsedMillis();
+        return elapsedMillis <= 0 ? 0.0 : compared.get() * 1000.0 / elapsedMillis;
+    }
+
+    public StrategyTimings getStrategyTimings() {
+        return comparator.getTimings();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,53 @@
+package com.flowreplay.core.comparator;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 比对策略耗时统计（线程安全）
+ */
+public class StrategyTimings {
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一次策略执行
+     */
+    public void record(String strategyName, long elapsedNanos) {
+        Counter counter = counters.computeIfAbsent(strategyName, name -> new Counter());
+        counter.calls.increment();
+        counter.nanos.add(elapsedNanos);
+    }
+
+    /**
+     * 按策略名排序的统计快照
+     */
+    public Map<String, Timing> snapshot() {
+        Map<String, Timing> snapshot = new TreeMap<>();
+        counters.forEach((name, counter) -> snapshot.put(name, new Timing(counter.calls.sum(), counter.nanos.sum())));
+        return snapshot;
+    }
+
+    private static final class Counter {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+    }
+
+    /**
+     * 单个策略的统计值
+     */
+    public record Timing(
+        long calls,         // 执行次数
+        long totalNanos     // 累计耗时（纳秒）
+    ) {
+        public double totalMillis() {
+            return totalNanos / 1_000_000.0;
+        }
+
+        public double avgMicros() {
+            return calls == 0 ? 0.0 : totalNanos / 1_000.0 / calls;
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package com.flowreplay.core.comparator;
+
+import com.flowreplay.core.model.ComparisonResult;
+import com.flowreplay.core.model.Difference;
+import com.flowreplay.core.model.ResponseData;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * XML结构化比对策略
+ * 基于StAX流式读取，两份文档同步推进，不构建DOM，内存占用只与文档深度相关。
+ * 支持忽略路径、命名空间归一化，属性比对与属性顺序无关。
+ */
+public class XmlStructureStrategy implements ComparisonStrategy {
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+    private static final int DEFAULT_MAX_DIFFERENCES = 50;
+
+    private final List<Pattern> ignorePatterns;
+    private final boolean ignoreNamespaces;   // true：只比对本地名；false：比对命名空间URI+本地名（忽略前缀）
+    private final boolean ignoreWhitespace;   // 忽略纯空白文本并去除首尾空白
+    private final int maxDifferences;
+
+    public XmlStructureStrategy(Collection<String> ignorePaths, boolean ignoreNamespaces, boolean ignoreWhitespace, int maxDifferences) {
+        this.ignorePatterns = compileIgnorePaths(ignorePaths);
+        this.ignoreNamespaces = ignoreNamespaces;
+        this.ignoreWhitespace = ignoreWhitespace;
+        this.maxDifferences = maxDifferences > 0 ? maxDifferences : DEFAULT_MAX_DIFFERENCES;
+    }
+
+    public XmlStructureStrategy() {
+        this(List.of(), false, true, DEFAULT_MAX_DIFFERENCES);
+    }
+
+    /**
+     * 从YAML策略配置创建
+     */
+    public static XmlStructureStrategy fromConfig(Map<String, Object> config) {
+        if (config == null) {
+            return new XmlStructureStrategy();
+        }
+        List<String> ignorePaths = new ArrayList<>();
+        if (config.get("ignorePaths") instanceof Collection<?> paths) {
+            paths.forEach(path -> ignorePaths.add(String.valueOf(path)));
+        }
+        Object maxDifferences = config.get("maxDifferences");
+        return new XmlStructureStrategy(
+            ignorePaths,
+            readBoolean(config, "ignoreNamespaces", false),
+            readBoolean(config, "ignoreWhitespace", true),
+            maxDifferences != null ? Integer.parseInt(maxDifferences.toString()) : DEFAULT_MAX_DIFFERENCES
+        );
+    }
+
+    @Override
+    public ComparisonResult compare(ResponseData recorded, ResponseData replayed) {
+        if (!isXmlContent(recorded) || !isXmlContent(replayed)) {
+            // 不是 XML 内容，跳过此策略
+            return new ComparisonResult(true, List.of(), Map.of("skipped", "not-xml-content"));
+        }
+
+        XMLStreamReader expectedReader = null;
+        XMLStreamReader actualReader = null;
+        try {
+            expectedReader = XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(recorded.body()));
+            actualReader = XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(replayed.body()));
+            List<Difference> diffs = compareDocuments(new XmlCursor(expectedReader), new XmlCursor(actualReader));
+            return new ComparisonResult(diffs.isEmpty(), diffs, Map.of());
+        } catch (XMLStreamException e) {
+            // XML 解析失败，跳过此策略
+            return new ComparisonResult(true, List.of(), Map.of("skipped", "xml-parse-failed"));
+        } finally {
+            closeQuietly(expectedReader);
+            closeQuietly(actualReader);
+        }
+    }
+
+    private List<Difference> compareDocuments(XmlCursor expected, XmlCursor actual) throws XMLStreamException {
+        List<Difference> diffs = new ArrayList<>();
+
+        while (diffs.size() < maxDifferences) {
+            XmlEvent e1 = expected.next();
+            XmlEvent e2 = actual.next();
+
+            if (e1.kind == XmlEvent.END_DOCUMENT && e2.kind == XmlEvent.END_DOCUMENT) {
+                break;
+            }
+
+            // 一侧有文本、另一侧没有：记录差异后继续，不影响结构同步
+            if (e1.kind == XmlEvent.TEXT && e2.kind != XmlEvent.TEXT) {
+                diffs.add(new Difference(expected.path(), "value", e1.text, ""));
+                actual.pushBack(e2);
+                continue;
+            }
+            if (e2.kind == XmlEvent.TEXT && e1.kind != XmlEvent.TEXT) {
+                diffs.add(new Difference(actual.path(), "value", "", e2.text));
+                expected.pushBack(e1);
+                continue;
+            }
+
+            if (e1.kind != e2.kind || !Objects.equals(e1.name, e2.name)) {
+                // 结构已经分叉，流式比对无法重新对齐，记录后结束
+                diffs.add(structuralDifference(expected, actual, e1, e2));
+                break;
+            }
+
+            if (e1.kind == XmlEvent.START_ELEMENT) {
+                compareAttributes(expected.path(), e1.attributes, e2.attributes, diffs);
+            } else if (e1.kind == XmlEvent.TEXT && !e1.text.equals(e2.text)) {
+                diffs.add(new Difference(expected.path(), "value", e1.text, e2.text));
+            }
+        }
+
+        return diffs.size() > maxDifferences ? diffs.subList(0, maxDifferences) : diffs;
+    }
+
+    private Difference structuralDifference(XmlCursor expected, XmlCursor actual, XmlEvent e1, XmlEvent e2) {
+        if (e1.kind == XmlEvent.START_ELEMENT && e2.kind == XmlEvent.START_ELEMENT) {
+            return new Difference(expected.path(), "type", e1.name, e2.name);
+        }
+        if (e1.kind == XmlEvent.START_ELEMENT) {
+            return new Difference(expected.path(), "missing", "exists", "missing");
+        }
+        if (e2.kind == XmlEvent.START_ELEMENT) {
+            return new Difference(actual.path(), "missing", "missing", "exists");
+        }
+        return new Difference(expected.path(), "type", e1.describe(), e2.describe());
+    }
+
+    private void compareAttributes(String path, Map<String, String> expected, Map<String, String> actual, List<Difference> diffs) {
+        expected.forEach((name, value) -> {
+            String attributePath = path + "/@" + name;
+            if (shouldIgnore(attributePath)) {
+                return;
+            }
+            String actualValue = actual.get(name);
+            if (actualValue == null) {
+                diffs.add(new Difference(attributePath, "missing", "exists", "missing"));
+            } else if (!actualValue.equals(value)) {
+                diffs.add(new Difference(attributePath, "value", value, actualValue));
+            }
+        });
+        actual.keySet().forEach(name -> {
+            String attributePath = path + "/@" + name;
+            if (!expected.containsKey(name) && !shouldIgnore(attributePath)) {
+                diffs.add(new Difference(attributePath, "missing", "missing", "exists"));
+            }
+        });
+    }
+
+    private boolean shouldIgnore(String path) {
+        for (Pattern pattern : ignorePatterns) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isXmlContent(ResponseData responseData) {
+        byte[] body = responseData.body();
+        if (body == null || body.length == 0) {
+            return false;
+        }
+
+        String contentType = responseData.headers().get("content-type");
+        if (contentType != null && contentType.toLowerCase().contains("xml")) {
+            return true;
+        }
+
+        // 跳过 BOM 和前导空白，检查是否以 < 开头
+        int i = 0;
+        if (body.length >= 3 && (body[0] & 0xFF) == 0xEF && (body[1] & 0xFF) == 0xBB && (body[2] & 0xFF) == 0xBF) {
+            i = 3;
+        }
+        while (i < body.length && Character.isWhitespace(body[i])) {
+            i++;
+        }
+        return i < body.length && body[i] == '<';
+    }
+
+    /**
+     * 忽略路径：/Envelope/Body/Timestamp、/a/b/@id；* 匹配单层，** 匹配任意层；
+     * 不以 / 开头的路径在任意层级匹配，如 Timestamp 匹配任意层级的 Timestamp 元素
+     */
+    private static List<Pattern> compileIgnorePaths(Collection<String> ignorePaths) {
+        List<Pattern> patterns = new ArrayList<>();
+        if (ignorePaths == null) {
+            return patterns;
+        }
+        for (String path : ignorePaths) {
+            if (path == null || path.isBlank()) {
+                continue;
+            }
+            String normalized = path.trim();
+            if (!normalized.startsWith("/")) {
+                normalized = "**/" + normalized;
+            }
+            StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < normalized.length(); i++) {
+                char c = normalized.charAt(i);
+                if (c == '*') {
+                    if (i + 1 < normalized.length() && normalized.charAt(i + 1) == '*') {
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            patterns.add(Pattern.compile(regex.toString()));
+        }
+        return patterns;
+    }
+
+    private static boolean readBoolean(Map<String, Object> config, String key, boolean defaultValue) {
+        Object value = config.get(key);
+        return value != null ? Boolean.parseBoolean(value.toString()) : defaultValue;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        // 禁用 DTD 和外部实体，防止 XXE
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private static void closeQuietly(XMLStreamReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * 对 XMLStreamReader 的包装：合并文本、跳过注释/空白、跳过忽略的子树，并维护当前路径
+     */
+    private final class XmlCursor {
+        private final XMLStreamReader reader;
+        private final Deque<String> pathStack = new ArrayDeque<>();
+        private XmlEvent pending;
+        private String currentPath = "";
+
+        XmlCursor(XMLStreamReader reader) {
+            this.reader = reader;
+        }
+
+        String path() {
+            return currentPath.isEmpty() ? "/" : currentPath;
+        }
+
+        /**
+         * 退回一个已读取的事件，同时撤销它对当前路径的影响
+         */
+        void pushBack(XmlEvent event) {
+            if (event.kind == XmlEvent.START_ELEMENT) {
+                popPath();
+            } else if (event.kind == XmlEvent.END_ELEMENT) {
+                pushPath(event.localName);
+            }
+            this.pending = event;
+        }
+
+        XmlEvent next() throws XMLStreamException {
+            if (pending != null) {
+                XmlEvent event = pending;
+                pending = null;
+                return applyPath(event);
+            }
+
+            StringBuilder text = null;
+            while (reader.hasNext()) {
+                int type = reader.next();
+                switch (type) {
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                        if (text == null) {
+                            text = new StringBuilder();
+                        }
+                        text.append(reader.getText());
+                    }
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        XmlEvent textEvent = toTextEvent(text);
+                        String localName = reader.getLocalName();
+                        if (shouldIgnore(currentPath + "/" + localName)) {
+                            skipElement();
+                            if (textEvent != null) {
+                                return textEvent;
+                            }
+                            text = null;
+                            continue;
+                        }
+                        XmlEvent startEvent = XmlEvent.start(elementName(), localName, readAttributes());
+                        if (textEvent != null) {
+                            // 文本先返回，元素开始事件留到下一次
+                            pending = startEvent;
+                            return textEvent;
+                        }
+                        return applyPath(startEvent);
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        XmlEvent textEvent = toTextEvent(text);
+                        XmlEvent endEvent = XmlEvent.end(elementName(), reader.getLocalName());
+                        if (textEvent != null) {
+                            pending = endEvent;
+                            return textEvent;
+                        }
+                        return applyPath(endEvent);
+                    }
+                    default -> {
+                        // 注释、处理指令、文档开始等不参与比对
+                    }
+                }
+            }
+            XmlEvent textEvent = toTextEvent(text);
+            return textEvent != null ? textEvent : XmlEvent.END;
+        }
+
+        private XmlEvent applyPath(XmlEvent event) {
+            if (event.kind == XmlEvent.START_ELEMENT) {
+                pushPath(event.localName);
+            } else if (event.kind == XmlEvent.END_ELEMENT) {
+                popPath();
+            }
+            return event;
+        }
+
+        private XmlEvent toTextEvent(StringBuilder text) {
+            if (text == null) {
+                return null;
+            }
+            String value = ignoreWhitespace ? text.toString().trim() : text.toString();
+            return value.isEmpty() ? null : XmlEvent.text(value);
+        }
+
+        private void pushPath(String localName) {
+            pathStack.push(currentPath);
+            currentPath = currentPath + "/" + localName;
+        }
+
+        private void popPath() {
+            currentPath = pathStack.isEmpty() ? "" : pathStack.pop();
+        }
+
+        private void skipElement() throws XMLStreamException {
+            int depth = 1;
+            while (depth > 0 && reader.hasNext()) {
+                int type = reader.next();
+                if (type == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (type == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        }
+
+        private String elementName() {
+            String namespace = reader.getNamespaceURI();
+            if (ignoreNamespaces || namespace == null || namespace.isEmpty()) {
+                return reader.getLocalName();
+            }
+            return "{" + namespace + "}" + reader.getLocalName();
+        }
+
+        private Map<String, String> readAttributes() {
+            Map<String, String> attributes = new TreeMap<>();
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                String namespace = reader.getAttributeNamespace(i);
+                String name = ignoreNamespaces || namespace == null || namespace.isEmpty()
+                    ? reader.getAttributeLocalName(i)
+                    : "{" + namespace + "}" + reader.getAttributeLocalName(i);
+                attributes.put(name, reader.getAttributeValue(i));
+            }
+            return attributes;
+        }
+    }
+
+    private static final class XmlEvent {
+        static final int START_ELEMENT = 1;
+        static final int END_ELEMENT = 2;
+        static final int TEXT = 3;
+        static final int END_DOCUMENT = 4;
+        static final XmlEvent END = new XmlEvent(END_DOCUMENT, null, null, Map.of(), null);
+
+        final int kind;
+        final String name;          // 参与比对的元素名（可能带命名空间）
+        final String localName;     // 用于路径的本地名
+        final Map<String, String> attributes;
+        final String text;
+
+        private XmlEvent(int kind, String name, String localName, Map<String, String> attributes, String text) {
+            this.kind = kind;
+            this.name = name;
+            this.localName = localName;
+            this.attributes = attributes;
+            this.text = text;
+        }
+
+        static XmlEvent start(String name, String localName, Map<String, String> attributes) {
+            return new XmlEvent(START_ELEMENT, name, localName, attributes, null);
+        }
+
+        static XmlEvent end(String name, String localName) {
+            return new XmlEvent(END_ELEMENT, name, localName, Map.of(), null);
+        }
+
+        static XmlEvent text(String text) {
+            return new XmlEvent(TEXT, null, null, Map.of(), text);
+        }
+
+        String describe() {
+            return switch (kind) {
+                case START_ELEMENT -> "<" + name + ">";
+                case END_ELEMENT -> "</" + name + ">";
+                case TEXT -> "text";
+                default -> "end-of-document";
+            };
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "xml-structure";
+    }
+}
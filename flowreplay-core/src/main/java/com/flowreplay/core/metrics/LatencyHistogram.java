@@ -0,0 +1,248 @@
+package com.flowreplay.core.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时直方图（对数-线性分桶，HdrHistogram 思路，固定内存）
+ * 以微秒记录，每个 2 的幂区间再均分为 128 个子桶，相对误差不超过 1/128。
+ * 所有操作线程安全，可跨线程并发记录，也可合并其他直方图（跨线程、跨运行）。
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;        // 256
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;        // 128
+    /** 可精确分桶的最大值约 19 小时（2^36 微秒），更大的值计入最后一个桶 */
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF + SUB_BUCKET_COUNT;
+    private static final String ENCODING_VERSION = "h1";
+
+    /** 报告中展示的耗时分布边界（微秒） */
+    private static final long[] DISTRIBUTION_BOUNDS = {
+        1_000, 2_000, 5_000, 10_000, 20_000, 50_000, 100_000, 200_000, 500_000, 1_000_000, 2_000_000, 5_000_000
+    };
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong minMicros = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * 记录一次耗时（微秒），负数按 0 处理
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.incrementAndGet();
+        totalMicros.addAndGet(value);
+        minMicros.accumulateAndGet(value, Math::min);
+        maxMicros.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * 把另一个直方图的数据合并进来
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        totalMicros.addAndGet(other.totalMicros.get());
+        minMicros.accumulateAndGet(other.minMicros.get(), Math::min);
+        maxMicros.accumulateAndGet(other.maxMicros.get(), Math::max);
+    }
+
+    /**
+     * 清空数据，调用方需保证此时没有并发写入
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalMicros.set(0);
+        minMicros.set(Long.MAX_VALUE);
+        maxMicros.set(0);
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMinMicros() {
+        long min = minMicros.get();
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    public double getMeanMicros() {
+        long count = totalCount.get();
+        return count == 0 ? 0.0 : (double) totalMicros.get() / count;
+    }
+
+    /**
+     * 百分位耗时（微秒），percentile 取值 0~100
+     * 返回所在桶的上界，且不超过记录到的最大值
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        double clamped = Math.min(100.0, Math.max(0.0, percentile));
+        long target = Math.max(1, (long) Math.ceil(clamped / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.max(getMinMicros(), Math.min(highestEquivalentValue(i), getMaxMicros()));
+            }
+        }
+        return getMaxMicros();
+    }
+
+    /**
+     * 耗时大于 micros 的样本数（按桶计：桶的下界大于 micros 才计入）
+     */
+    public long getCountAbove(long micros) {
+        long above = 0;
+        for (int i = BUCKET_COUNT - 1; i >= 0 && lowestEquivalentValue(i) > micros; i--) {
+            above += counts.get(i);
+        }
+        return above;
+    }
+
+    /**
+     * 按固定边界（&lt;1ms, 1-2ms, ... , &ge;5s）统计的耗时分布
+     */
+    public List<DistributionBucket> getDistribution() {
+        long[] bucketCounts = new long[DISTRIBUTION_BOUNDS.length + 1];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = counts.get(i);
+            if (count == 0) {
+                continue;
+            }
+            // 桶跨越边界时按桶中点归类
+            long value = (lowestEquivalentValue(i) + highestEquivalentValue(i)) / 2;
+            int slot = 0;
+            while (slot < DISTRIBUTION_BOUNDS.length && value >= DISTRIBUTION_BOUNDS[slot]) {
+                slot++;
+            }
+            bucketCounts[slot] += count;
+        }
+        List<DistributionBucket> buckets = new ArrayList<>(bucketCounts.length);
+        for (int i = 0; i < bucketCounts.length; i++) {
+            long from = i == 0 ? 0 : DISTRIBUTION_BOUNDS[i - 1];
+            long to = i < DISTRIBUTION_BOUNDS.length ? DISTRIBUTION_BOUNDS[i] : -1;
+            buckets.add(new DistributionBucket(from, to, bucketCounts[i]));
+        }
+        return buckets;
+    }
+
+    /**
+     * 紧凑文本编码（只保存非零桶），用于持久化后跨运行合并
+     */
+    public String encode() {
+        StringBuilder sb = new StringBuilder(ENCODING_VERSION)
+            .append(';').append(totalMicros.get())
+            .append(';').append(getMinMicros())
+            .append(';').append(getMaxMicros())
+            .append(';');
+        boolean first = true;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                if (!first) {
+                    sb.append(',');
+                }
+                sb.append(i).append(':').append(count);
+                first = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    public static LatencyHistogram decode(String encoded) {
+        String[] parts = encoded.split(";", -1);
+        if (parts.length != 5 || !ENCODING_VERSION.equals(parts[0])) {
+            throw new IllegalArgumentException("Unsupported histogram encoding: " + encoded);
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        long total = 0;
+        if (!parts[4].isEmpty()) {
+            for (String entry : parts[4].split(",")) {
+                int separator = entry.indexOf(':');
+                int index = Integer.parseInt(entry.substring(0, separator));
+                long count = Long.parseLong(entry.substring(separator + 1));
+                histogram.counts.set(index, count);
+                total += count;
+            }
+        }
+        histogram.totalCount.set(total);
+        histogram.totalMicros.set(Long.parseLong(parts[1]));
+        if (total > 0) {
+            histogram.minMicros.set(Long.parseLong(parts[2]));
+            histogram.maxMicros.set(Long.parseLong(parts[3]));
+        }
+        return histogram;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS + 1;
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index - (long) shift * SUB_BUCKET_HALF;
+        return subBucket << shift;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        return lowestEquivalentValue(index) + (1L << shift) - 1;
+    }
+
+    /**
+     * 耗时分布中的一段，toMicros 为 -1 表示无上界
+     */
+    public record DistributionBucket(
+        long fromMicros,
+        long toMicros,
+        long count
+    ) {
+        public String label() {
+            if (toMicros < 0) {
+                return "≥" + formatMicros(fromMicros);
+            }
+            return fromMicros == 0 ? "<" + formatMicros(toMicros) : formatMicros(fromMicros) + "-" + formatMicros(toMicros);
+        }
+
+        private static String formatMicros(long micros) {
+            return micros >= 1_000_000 ? micros / 1_000_000 + "s" : micros / 1_000 + "ms";
+        }
+    }
+}
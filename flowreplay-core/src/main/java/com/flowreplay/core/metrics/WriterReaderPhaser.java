@@ -0,0 +1,62 @@
+package com.flowreplay.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 写者-读者相位器（HdrHistogram WriterReaderPhaser 思路）
+ * 写者进出临界区只做一次原子自增（无等待）；读者切换相位后等待旧相位的写者全部退出，
+ * 从而可以安全读取被换下的数据，得到一致的时间点快照。
+ * <pre>
+ * long token = phaser.writerCriticalSectionEnter();
+ * try { active.update(...); } finally { phaser.writerCriticalSectionExit(token); }
+ *
+ * phaser.readerLock();
+ * try { swap(active, inactive); phaser.flipPhase(); read(inactive); } finally { phaser.readerUnlock(); }
+ * </pre>
+ */
+public class WriterReaderPhaser {
+
+    private final AtomicLong startEpoch = new AtomicLong(0);
+    private final AtomicLong evenEndEpoch = new AtomicLong(0);
+    private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+    private final ReentrantLock readerLock = new ReentrantLock();
+
+    /**
+     * 进入写临界区，返回值需传给 {@link #writerCriticalSectionExit(long)}
+     */
+    public long writerCriticalSectionEnter() {
+        return startEpoch.getAndIncrement();
+    }
+
+    public void writerCriticalSectionExit(long criticalValueAtEnter) {
+        (criticalValueAtEnter < 0 ? oddEndEpoch : evenEndEpoch).getAndIncrement();
+    }
+
+    public void readerLock() {
+        readerLock.lock();
+    }
+
+    public void readerUnlock() {
+        readerLock.unlock();
+    }
+
+    /**
+     * 切换相位并等待切换前进入的写者全部退出，必须在持有读锁时调用
+     */
+    public void flipPhase() {
+        if (!readerLock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("flipPhase() requires the reader lock");
+        }
+        boolean nextPhaseIsEven = startEpoch.get() < 0;
+        long initialStartValue = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+        (nextPhaseIsEven ? evenEndEpoch : oddEndEpoch).set(initialStartValue);
+
+        long startValueAtFlip = startEpoch.getAndSet(initialStartValue);
+        AtomicLong previousEndEpoch = nextPhaseIsEven ? oddEndEpoch : evenEndEpoch;
+        while (previousEndEpoch.get() != startValueAtFlip) {
+            LockSupport.parkNanos(10_000);
+        }
+    }
+}
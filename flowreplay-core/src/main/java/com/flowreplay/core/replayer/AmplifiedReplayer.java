@@ -0,0 +1,389 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.metrics.LatencyHistogram;
+import com.flowreplay.core.metrics.WriterReaderPhaser;
+import com.flowreplay.core.model.ReplayResult;
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.TrafficRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 流量放大回放（压测）
+ * 把录制流量复制 factor 份，按（记录, 副本）交错编号后轮流分配给 N 个虚拟客户端；
+ * 同一源连接上的 TCP 会话的每个副本作为一个整体分给同一个虚拟客户端，按 messageIndex 顺序发送。
+ * 每个虚拟客户端在一个虚拟线程内依次发送，设置目标 RPS 时按编号统一排期，可叠加随机抖动。
+ * 副本 k（k &gt; 0）的请求按配置改写会话号、流水号等键（值追加 -k），避免副本之间互相冲突。
+ * 运行期间按固定间隔回调区间吞吐与耗时分位，不保留逐条回放结果。
+ */
+public class AmplifiedReplayer {
+
+    private static final Logger log = LoggerFactory.getLogger(AmplifiedReplayer.class);
+
+    /**
+     * 放大参数
+     *
+     * @param factor         放大倍数，每条记录发送的份数
+     * @param virtualClients 虚拟客户端数（并发发送的虚拟线程数）
+     * @param jitterMillis   每次发送前追加的随机延迟上限（毫秒），0 表示不抖动
+     * @param targetRps      目标总 RPS，0 表示不限速
+     * @param rewriteKeys    副本需要改写的键，格式同会话键：header:&lt;name&gt;、cookie:&lt;name&gt;、esb:&lt;field&gt;、query:&lt;name&gt;
+     */
+    public record Config(
+        int factor,
+        int virtualClients,
+        long jitterMillis,
+        double targetRps,
+        List<String> rewriteKeys
+    ) {
+        public static final int DEFAULT_FACTOR = 1;
+        public static final int DEFAULT_VIRTUAL_CLIENTS = 64;
+
+        public Config {
+            if (factor < 1) {
+                throw new IllegalArgumentException("amplification factor must be >= 1");
+            }
+            if (virtualClients < 1) {
+                throw new IllegalArgumentException("virtual clients must be >= 1");
+            }
+            if (jitterMillis < 0) {
+                throw new IllegalArgumentException("jitter must be >= 0");
+            }
+            if (targetRps < 0) {
+                throw new IllegalArgumentException("target RPS must be >= 0");
+            }
+            rewriteKeys = rewriteKeys == null ? List.of() : List.copyOf(rewriteKeys);
+            rewriteKeys.forEach(KeyRewrite::parse);
+        }
+    }
+
+    /**
+     * 运行中的区间进度
+     *
+     * @param elapsedSeconds 已运行时间
+     * @param completed      已完成的请求数
+     * @param total          计划发送的请求总数
+     * @param failed         累计失败数
+     * @param intervalRps    本区间完成速率
+     * @param p50Micros      本区间耗时 P50
+     * @param p99Micros      本区间耗时 P99
+     * @param maxMicros      本区间最大耗时
+     */
+    public record Progress(
+        double elapsedSeconds,
+        long completed,
+        long total,
+        long failed,
+        double intervalRps,
+        long p50Micros,
+        long p99Micros,
+        long maxMicros
+    ) {
+    }
+
+    /**
+     * 整体结果
+     */
+    public record Summary(
+        long total,
+        long succeeded,
+        long failed,
+        double wallSeconds,
+        double achievedRps,
+        double meanMicros,
+        long p50Micros,
+        long p99Micros,
+        long maxMicros
+    ) {
+    }
+
+    private final TrafficReplayer replayer;
+    private final Config config;
+    private final List<KeyRewrite> rewrites;
+    private final WriterReaderPhaser phaser = new WriterReaderPhaser();
+    private volatile LatencyHistogram activeInterval = new LatencyHistogram();
+    private LatencyHistogram inactiveInterval = new LatencyHistogram();
+    private final LatencyHistogram overall = new LatencyHistogram();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public AmplifiedReplayer(TrafficReplayer replayer, Config config) {
+        this.replayer = replayer;
+        this.config = config;
+        this.rewrites = config.rewriteKeys().stream().map(KeyRewrite::parse).toList();
+    }
+
+    /**
+     * 放大回放，progressListener 在报告线程上按 reportInterval 回调（可为 null）
+     */
+    public Summary replay(List<TrafficRecord> records, Duration reportInterval, Consumer<Progress> progressListener) {
+        long total = (long) records.size() * config.factor();
+        log.info("Starting amplified replay: {} records x{} = {} requests over {} virtual clients (target rps={})",
+            records.size(), config.factor(), total, config.virtualClients(), config.targetRps());
+
+        long startNanos = System.nanoTime();
+        Thread reporter = progressListener == null ? null : Thread.ofVirtual().name("amplify-progress").start(
+            () -> reportProgress(startNanos, total, reportInterval, progressListener));
+        List<List<Integer>> groups = groups(records);
+        long[] firstSequences = firstSequences(groups);
+        List<Thread> clients = new ArrayList<>();
+        int unitCount = groups.size() * config.factor();
+        int clientCount = Math.min(config.virtualClients(), Math.max(1, unitCount));
+        for (int client = 0; client < clientCount; client++) {
+            final int clientIndex = client;
+            clients.add(Thread.ofVirtual().name("amplify-client-" + client).start(
+                () -> runClient(records, groups, firstSequences, clientIndex, clientCount, startNanos)));
+        }
+        try {
+            for (Thread client : clients) {
+                client.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            clients.forEach(Thread::interrupt);
+        }
+        long wallNanos = System.nanoTime() - startNanos;
+        if (reporter != null) {
+            reporter.interrupt();
+        }
+        takeInterval();
+
+        double wallSeconds = wallNanos / 1_000_000_000.0;
+        long done = completed.get();
+        log.info("Amplified replay completed: {} requests in {} s", done, wallSeconds);
+        return new Summary(
+            done,
+            done - failed.get(),
+            failed.get(),
+            wallSeconds,
+            wallSeconds == 0 ? 0.0 : done / wallSeconds,
+            overall.getMeanMicros(),
+            overall.getValueAtPercentile(50),
+            overall.getValueAtPercentile(99),
+            overall.getMaxMicros()
+        );
+    }
+
+    // 同一源连接上的 TCP 消息归为一组并按 messageIndex 排序，其余记录各自一组；组按首条记录的录制顺序排列
+    private static List<List<Integer>> groups(List<TrafficRecord> records) {
+        Map<String, List<Integer>> conversations = new LinkedHashMap<>();
+        List<List<Integer>> groups = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            String conversationKey = TcpConversationReplayer.conversationKey(records.get(i));
+            if (conversationKey == null) {
+                groups.add(List.of(i));
+            } else {
+                conversations.computeIfAbsent(conversationKey, k -> {
+                    List<Integer> conversation = new ArrayList<>();
+                    groups.add(conversation);
+                    return conversation;
+                }).add(i);
+            }
+        }
+        conversations.values().forEach(conversation -> TcpConversationReplayer.sortConversation(records, conversation));
+        return groups;
+    }
+
+    // 单元 u 对应组 u / factor 的第 u % factor 个副本，返回每个单元首条请求的全局编号（用于按 RPS 排期）
+    private long[] firstSequences(List<List<Integer>> groups) {
+        long[] firstSequences = new long[groups.size() * config.factor()];
+        long sequence = 0;
+        for (int unit = 0; unit < firstSequences.length; unit++) {
+            firstSequences[unit] = sequence;
+            sequence += groups.get(unit / config.factor()).size();
+        }
+        return firstSequences;
+    }
+
+    // 虚拟客户端依次处理单元 clientIndex, clientIndex + N, ...；一个单元内的请求按顺序发送，保证 TCP 会话副本只在一个客户端上回放
+    private void runClient(List<TrafficRecord> records, List<List<Integer>> groups, long[] firstSequences,
+                           int clientIndex, int clientCount, long startNanos) {
+        double nanosPerRequest = config.targetRps() > 0 ? 1_000_000_000.0 / config.targetRps() : 0;
+        for (int unit = clientIndex; unit < firstSequences.length && !Thread.currentThread().isInterrupted(); unit += clientCount) {
+            List<Integer> group = groups.get(unit / config.factor());
+            int copy = unit % config.factor();
+            for (int i = 0; i < group.size() && !Thread.currentThread().isInterrupted(); i++) {
+                long sequence = firstSequences[unit] + i;
+                long dueNanos = startNanos + (long) (sequence * nanosPerRequest);
+                if (config.jitterMillis() > 0) {
+                    dueNanos += ThreadLocalRandom.current().nextLong(TimeUnit.MILLISECONDS.toNanos(config.jitterMillis()) + 1);
+                }
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+
+                TrafficRecord record = records.get(group.get(i));
+                ReplayResult result = replayer.replay(copy == 0 ? record : copyOf(record, copy));
+                if (result.success()) {
+                    recordLatency(latencyMicros(result));
+                } else {
+                    failed.incrementAndGet();
+                }
+                completed.incrementAndGet();
+            }
+        }
+    }
+
+    private TrafficRecord copyOf(TrafficRecord record, int copy) {
+        RequestData request = record.request();
+        for (KeyRewrite rewrite : rewrites) {
+            request = rewrite.apply(request, "-" + copy);
+        }
+        Map<String, Object> metadata = new LinkedHashMap<>(record.metadata() != null ? record.metadata() : Map.of());
+        // TCP 副本是独立的会话，不能和原始会话共用连接
+        Object clientAddress = metadata.get(SessionKeyExtractor.CLIENT_ADDRESS_METADATA);
+        if (clientAddress != null) {
+            metadata.put(SessionKeyExtractor.CLIENT_ADDRESS_METADATA, clientAddress + "#" + copy);
+        }
+        return new TrafficRecord(record.id() + "#" + copy, record.protocol(), record.timestamp(), request, record.response(), metadata);
+    }
+
+    private static long latencyMicros(ReplayResult result) {
+        Object micros = result.response() != null ? result.response().metadata().get("durationMicros") : null;
+        return micros instanceof Number number ? number.longValue() : result.duration() * 1_000;
+    }
+
+    private void recordLatency(long micros) {
+        long token = phaser.writerCriticalSectionEnter();
+        try {
+            activeInterval.record(micros);
+        } finally {
+            phaser.writerCriticalSectionExit(token);
+        }
+    }
+
+    // 换下当前区间直方图并并入总体统计，只在报告线程和结束时调用
+    private synchronized LatencyHistogram takeInterval() {
+        phaser.readerLock();
+        try {
+            LatencyHistogram interval = activeInterval;
+            inactiveInterval.reset();
+            activeInterval = inactiveInterval;
+            phaser.flipPhase();
+            inactiveInterval = interval;
+            overall.merge(interval);
+            return interval;
+        } finally {
+            phaser.readerUnlock();
+        }
+    }
+
+    private void reportProgress(long startNanos, long total, Duration interval, Consumer<Progress> listener) {
+        long lastCompleted = 0;
+        long lastNanos = startNanos;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            long done = completed.get();
+            LatencyHistogram snapshot = takeInterval();
+            double intervalSeconds = (now - lastNanos) / 1_000_000_000.0;
+            try {
+                listener.accept(new Progress(
+                    (now - startNanos) / 1_000_000_000.0,
+                    done,
+                    total,
+                    failed.get(),
+                    intervalSeconds == 0 ? 0.0 : (done - lastCompleted) / intervalSeconds,
+                    snapshot.getValueAtPercentile(50),
+                    snapshot.getValueAtPercentile(99),
+                    snapshot.getMaxMicros()
+                ));
+            } catch (Exception e) {
+                log.error("Amplification progress listener failed", e);
+            }
+            lastCompleted = done;
+            lastNanos = now;
+        }
+    }
+
+    /**
+     * 副本键改写：在原值后追加后缀
+     */
+    static final class KeyRewrite {
+        private final String type;
+        private final String name;
+        private final Pattern pattern;
+
+        private KeyRewrite(String type, String name, Pattern pattern) {
+            this.type = type;
+            this.name = name;
+            this.pattern = pattern;
+        }
+
+        static KeyRewrite parse(String spec) {
+            int separator = spec == null ? -1 : spec.indexOf(':');
+            String type = separator > 0 ? spec.substring(0, separator).trim().toLowerCase() : "";
+            String name = separator > 0 ? spec.substring(separator + 1).trim() : "";
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Invalid rewrite key: " + spec + " (supported: header:<name>|cookie:<name>|esb:<field>|query:<name>)");
+            }
+            String quoted = Pattern.quote(name);
+            return switch (type) {
+                case "header" -> new KeyRewrite(type, name, null);
+                case "cookie" -> new KeyRewrite(type, name, Pattern.compile("((?:^|;)\\s*" + quoted + "=)([^;]*)"));
+                case "query" -> new KeyRewrite(type, name, Pattern.compile("([?&]" + quoted + "=)([^&#]*)"));
+                // XML 标签值或 JSON 字符串字段值
+                case "esb" -> new KeyRewrite(type, name, Pattern.compile(
+                    "(<" + quoted + ">)([^<]*)(?=</" + quoted + ">)|(\"" + quoted + "\"\\s*:\\s*\")([^\"]*)(?=\")"));
+                default -> throw new IllegalArgumentException("Invalid rewrite key: " + spec + " (supported: header:<name>|cookie:<name>|esb:<field>|query:<name>)");
+            };
+        }
+
+        RequestData apply(RequestData request, String suffix) {
+            return switch (type) {
+                case "header" -> {
+                    Map<String, String> headers = new LinkedHashMap<>(request.headers());
+                    headers.replaceAll((key, value) -> key.equalsIgnoreCase(name) ? value + suffix : value);
+                    yield new RequestData(request.method(), request.uri(), headers, request.body(), request.metadata());
+                }
+                case "cookie" -> {
+                    Map<String, String> headers = new LinkedHashMap<>(request.headers());
+                    headers.replaceAll((key, value) -> key.equalsIgnoreCase("Cookie") ? appendSuffix(value, suffix) : value);
+                    yield new RequestData(request.method(), request.uri(), headers, request.body(), request.metadata());
+                }
+                case "query" -> new RequestData(request.method(), appendSuffix(request.uri(), suffix), request.headers(), request.body(), request.metadata());
+                default -> {
+                    if (request.body() == null || request.body().length == 0) {
+                        yield request;
+                    }
+                    byte[] body = appendSuffix(new String(request.body(), StandardCharsets.UTF_8), suffix).getBytes(StandardCharsets.UTF_8);
+                    yield new RequestData(request.method(), request.uri(), request.headers(), body, request.metadata());
+                }
+            };
+        }
+
+        private String appendSuffix(String text, String suffix) {
+            if (text == null) {
+                return null;
+            }
+            Matcher matcher = pattern.matcher(text);
+            StringBuilder result = new StringBuilder();
+            while (matcher.find()) {
+                // esb 的 JSON 分支使用第 3、4 组
+                int group = matcher.group(1) != null ? 1 : 3;
+                matcher.appendReplacement(result, Matcher.quoteReplacement(matcher.group(group) + matcher.group(group + 1) + suffix));
+            }
+            matcher.appendTail(result);
+            return result.toString();
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.metrics.LatencyHistogram;
+import com.flowreplay.core.model.ReplayResult;
+import com.flowreplay.core.model.TrafficRecord;
+import com.flowreplay.core.parser.ServiceNameParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 容量探测回放
+ * 以开环方式循环回放录制流量，每一步按目标 RPS 持续 stepDuration，耗时从计划发送时间算起（不受协调遗漏影响）。
+ * 步骤进行中实时检查 P99 和错误率（在途已超过 P99 上限的请求也算超限），超出 SLO 立即结束该步；按 AIMD 或二分策略调整下一步的 RPS，
+ * 收敛到满足 SLO 的最大吞吐。派发结束后最多再等一个 P99 上限让在途请求完成，实际吞吐按派发时长加这段收尾时长计算。
+ * 正式探测前先以起始速率预热一步。每一步都按接口记录吞吐与耗时，形成吞吐-耗时曲线。
+ * 逐条独立派发无法保证 TCP 会话内的消息顺序，步骤提前结束时也会截断会话，因此不接受按消息切分的 TCP 会话记录。
+ */
+public class CapacitySearchReplayer {
+
+    private static final Logger log = LoggerFactory.getLogger(CapacitySearchReplayer.class);
+    // 样本数达到该值后才开始实时判断 SLO，避免个别慢请求提前结束步骤
+    private static final int MIN_SAMPLES_FOR_VERDICT = 20;
+    private static final long CHECK_INTERVAL_NANOS = 100_000_000L;
+    // 实际吞吐低于目标的该比例时，认为目标已跟不上
+    private static final double MIN_ACHIEVED_RATIO = 0.9;
+    // 相邻通过/失败速率的相对差距小于该值时认为已收敛
+    private static final double CONVERGENCE_RATIO = 0.05;
+    // 正式探测前以起始速率预热（建连、JIT），结果不计入
+    private static final Duration MAX_WARMUP = Duration.ofSeconds(2);
+
+    /**
+     * 调整策略
+     */
+    public enum Strategy {
+        /** 通过则加性增加，失败则减半，并缩小增量 */
+        AIMD,
+        /** 倍增直到失败，再在最后通过与首次失败之间二分 */
+        BINARY;
+
+        public static Strategy parse(String value) {
+            for (Strategy strategy : values()) {
+                if (strategy.name().equalsIgnoreCase(value)) {
+                    return strategy;
+                }
+            }
+            throw new IllegalArgumentException("Invalid capacity search strategy: " + value + " (supported: aimd|binary)");
+        }
+    }
+
+    /**
+     * 探测参数
+     *
+     * @param strategy     调整策略
+     * @param startRps     初始 RPS，AIMD 的加性增量也取该值
+     * @param maxRps       RPS 上限
+     * @param stepDuration 每一步的持续时间
+     * @param p99SloMicros P99 耗时上限（微秒）
+     * @param maxErrorRate 错误率上限（0~1）
+     * @param maxSteps     最多步数
+     */
+    public record Config(
+        Strategy strategy,
+        double startRps,
+        double maxRps,
+        Duration stepDuration,
+        long p99SloMicros,
+        double maxErrorRate,
+        int maxSteps
+    ) {
+        public static final double DEFAULT_START_RPS = 10;
+        public static final double DEFAULT_MAX_RPS = 100_000;
+        public static final Duration DEFAULT_STEP_DURATION = Duration.ofSeconds(10);
+        public static final long DEFAULT_P99_SLO_MICROS = 500_000;
+        public static final double DEFAULT_MAX_ERROR_RATE = 0.01;
+        public static final int DEFAULT_MAX_STEPS = 20;
+
+        public Config {
+            if (strategy == null) {
+                throw new IllegalArgumentException("capacity search strategy is required");
+            }
+            if (!(startRps > 0) || maxRps < startRps) {
+                throw new IllegalArgumentException("capacity search requires 0 < start RPS <= max RPS");
+            }
+            if (stepDuration == null || stepDuration.toMillis() < 100) {
+                throw new IllegalArgumentException("step duration must be >= 100 ms");
+            }
+            if (p99SloMicros < 1) {
+                throw new IllegalArgumentException("p99 SLO must be > 0");
+            }
+            if (maxErrorRate < 0 || maxErrorRate > 1) {
+                throw new IllegalArgumentException("max error rate must be between 0 and 1");
+            }
+            if (maxSteps < 1) {
+                throw new IllegalArgumentException("max steps must be >= 1");
+            }
+        }
+    }
+
+    /**
+     * 一个接口在某一步的吞吐与耗时
+     */
+    public record ServicePoint(
+        long requests,
+        long errors,
+        double achievedRps,
+        long p50Micros,
+        long p99Micros
+    ) {
+    }
+
+    /**
+     * 一步的结果，services 按接口名排序
+     */
+    public record Step(
+        int step,
+        double targetRps,
+        double achievedRps,
+        long requests,
+        long errors,
+        long p50Micros,
+        long p99Micros,
+        boolean aborted,
+        boolean withinSlo,
+        Map<String, ServicePoint> services
+    ) {
+        public double errorRate() {
+            return requests == 0 ? 0.0 : (double) errors / requests;
+        }
+    }
+
+    /**
+     * 探测结果
+     *
+     * @param maxSustainableRps 满足 SLO 的最大实际吞吐，没有任何一步通过时为 0
+     * @param steps             按执行顺序排列的各步结果
+     */
+    public record Result(double maxSustainableRps, List<Step> steps) {
+    }
+
+    private final TrafficReplayer replayer;
+    private final ServiceNameParser serviceNameParser;
+    private final Config config;
+
+    public CapacitySearchReplayer(TrafficReplayer replayer, ServiceNameParser serviceNameParser, Config config) {
+        this.replayer = replayer;
+        this.serviceNameParser = serviceNameParser;
+        this.config = config;
+    }
+
+    /**
+     * 执行探测，每一步结束后回调 stepListener（可为 null）
+     *
+     * @throws IllegalArgumentException 录制流量中包含 TCP 会话记录
+     */
+    public Result search(List<TrafficRecord> records, Consumer<Step> stepListener) {
+        for (TrafficRecord record : records) {
+            if (TcpConversationReplayer.conversationKey(record) != null) {
+                throw new IllegalArgumentException("Capacity search does not support TCP conversation records (record "
+                    + record.id() + "); use amplify or open-loop mode instead");
+            }
+        }
+        if (records.isEmpty()) {
+            return new Result(0.0, List.of());
+        }
+        log.info("Starting capacity search ({}) over {} records: start={} rps, p99 SLO={} us, max error rate={}",
+            config.strategy(), records.size(), config.startRps(), config.p99SloMicros(), config.maxErrorRate());
+
+        List<Step> steps = new ArrayList<>();
+        String[] serviceNames = records.stream().map(serviceNameParser::parseServiceName).toArray(String[]::new);
+        Duration warmup = config.stepDuration().compareTo(MAX_WARMUP) < 0 ? config.stepDuration() : MAX_WARMUP;
+        int cursor = (int) (runStep(0, config.startRps(), warmup, records, serviceNames, 0).requests() % records.size());
+        double rate = config.startRps();
+        double increment = config.startRps();
+        double bestPassing = 0;
+        double lowestFailing = Double.MAX_VALUE;
+        double bestAchieved = 0;
+
+        for (int stepIndex = 1; stepIndex <= config.maxSteps(); stepIndex++) {
+            Step step = runStep(stepIndex, rate, config.stepDuration(), records, serviceNames, cursor);
+            cursor = (int) ((cursor + step.requests()) % records.size());
+            steps.add(step);
+            if (stepListener != null) {
+                try {
+                    stepListener.accept(step);
+                } catch (Exception e) {
+                    log.error("Capacity step listener failed", e);
+                }
+            }
+
+            if (step.withinSlo()) {
+                bestPassing = Math.max(bestPassing, rate);
+                bestAchieved = Math.max(bestAchieved, step.achievedRps());
+            } else {
+                lowestFailing = Math.min(lowestFailing, rate);
+            }
+            if (lowestFailing != Double.MAX_VALUE && lowestFailing - bestPassing <= lowestFailing * CONVERGENCE_RATIO) {
+                break;
+            }
+            if (step.withinSlo() && rate >= config.maxRps()) {
+                // 已达上限仍满足 SLO
+                break;
+            }
+
+            double next;
+            if (config.strategy() == Strategy.BINARY) {
+                next = lowestFailing == Double.MAX_VALUE ? rate * 2 : (bestPassing + lowestFailing) / 2;
+            } else if (step.withinSlo()) {
+                next = rate + increment;
+                if (next >= lowestFailing) {
+                    // 不再越过已知的失败速率，改为逼近它
+                    next = (rate + lowestFailing) / 2;
+                }
+            } else {
+                increment = Math.max(increment / 2, config.startRps() * CONVERGENCE_RATIO);
+                next = Math.max(rate / 2, bestPassing);
+            }
+            if (next < config.startRps() && bestPassing == 0 && !step.withinSlo()) {
+                // 初始速率都无法满足 SLO
+                break;
+            }
+            rate = Math.min(Math.max(next, config.startRps() * CONVERGENCE_RATIO), config.maxRps());
+        }
+
+        log.info("Capacity search completed: max sustainable throughput {} rps after {} steps", bestAchieved, steps.size());
+        return new Result(bestAchieved, List.copyOf(steps));
+    }
+
+    // 以开环方式按 rate 回放 duration，中途超出 SLO 时提前停止派发
+    private Step runStep(int stepIndex, double rate, Duration duration, List<TrafficRecord> records, String[] serviceNames, int cursor) {
+        long plannedRequests = Math.max(1, (long) (rate * duration.toNanos() / 1_000_000_000.0));
+        double intervalNanos = 1_000_000_000.0 / rate;
+        LatencyHistogram histogram = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        Map<String, ServiceCounters> services = new ConcurrentHashMap<>();
+        // 在途请求：派发序号 -> 计划发送时间
+        Map<Long, Long> inFlight = new ConcurrentHashMap<>();
+        AtomicBoolean measured = new AtomicBoolean(false);
+        boolean aborted = false;
+
+        long startNanos = System.nanoTime();
+        long nextCheckNanos = startNanos + CHECK_INTERVAL_NANOS;
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            for (long dispatched = 0; dispatched < plannedRequests; dispatched++) {
+                long intendedNanos = startNanos + (long) (dispatched * intervalNanos);
+                parkUntil(intendedNanos);
+                long now = System.nanoTime();
+                if (now >= nextCheckNanos) {
+                    nextCheckNanos += CHECK_INTERVAL_NANOS;
+                    if (violatesSlo(histogram, errors.sum(), countStalled(inFlight, now))) {
+                        aborted = true;
+                        break;
+                    }
+                }
+                int index = (int) ((cursor + dispatched) % records.size());
+                ServiceCounters counters = services.computeIfAbsent(serviceNames[index], name -> new ServiceCounters());
+                long key = dispatched;
+                inFlight.put(key, intendedNanos);
+                executor.submit(() -> {
+                    try {
+                        ReplayResult result = replayer.replay(records.get(index));
+                        if (measured.get()) {
+                            return;
+                        }
+                        long micros = (System.nanoTime() - intendedNanos) / 1_000;
+                        histogram.record(micros);
+                        counters.histogram.record(micros);
+                        if (isError(result)) {
+                            errors.increment();
+                            counters.errors.increment();
+                        }
+                    } finally {
+                        inFlight.remove(key);
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // 收尾最多等一个 P99 上限，仍未完成的请求已超出 SLO，不计入吞吐
+        awaitDrain(executor, config.p99SloMicros());
+        measured.set(true);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long stalled = inFlight.size();
+        executor.shutdownNow();
+
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        long requests = histogram.getCount();
+        double achievedRps = requests / seconds;
+        long p99Micros = histogram.getValueAtPercentile(99);
+        boolean withinSlo = !aborted
+            && !violatesSlo(histogram, errors.sum(), stalled)
+            && p99Micros <= config.p99SloMicros()
+            && achievedRps >= rate * MIN_ACHIEVED_RATIO;
+
+        Map<String, ServicePoint> points = new TreeMap<>();
+        services.forEach((name, counters) -> points.put(name, new ServicePoint(
+            counters.histogram.getCount(),
+            counters.errors.sum(),
+            counters.histogram.getCount() / seconds,
+            counters.histogram.getValueAtPercentile(50),
+            counters.histogram.getValueAtPercentile(99)
+        )));
+        return new Step(stepIndex, rate, achievedRps, requests, errors.sum(),
+            histogram.getValueAtPercentile(50), p99Micros, aborted, withinSlo, Collections.unmodifiableMap(points));
+    }
+
+    // stalled 为在途且已超过 P99 上限的请求数，按超限样本计入
+    private boolean violatesSlo(LatencyHistogram histogram, long errors, long stalled) {
+        long completed = histogram.getCount();
+        long samples = completed + stalled;
+        if (samples < MIN_SAMPLES_FOR_VERDICT) {
+            return false;
+        }
+        return (double) errors / samples > config.maxErrorRate()
+            || histogram.getValueAtPercentile(99) > config.p99SloMicros()
+            || histogram.getCountAbove(config.p99SloMicros()) + stalled > samples * 0.01;
+    }
+
+    private long countStalled(Map<Long, Long> inFlight, long nowNanos) {
+        long deadlineNanos = nowNanos - TimeUnit.MICROSECONDS.toNanos(config.p99SloMicros());
+        long stalled = 0;
+        for (long intendedNanos : inFlight.values()) {
+            if (intendedNanos < deadlineNanos) {
+                stalled++;
+            }
+        }
+        return stalled;
+    }
+
+    private static void awaitDrain(ExecutorService executor, long timeoutMicros) {
+        try {
+            executor.awaitTermination(timeoutMicros, TimeUnit.MICROSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 回放失败或 5xx 记为错误
+    private static boolean isError(ReplayResult result) {
+        return !result.success() || (result.response() != null && result.response().statusCode() >= 500);
+    }
+
+    private static void parkUntil(long deadlineNanos) {
+        long waitNanos;
+        while ((waitNanos = deadlineNanos - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(waitNanos);
+        }
+    }
+
+    private static final class ServiceCounters {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+    }
+}
@@ -0,0 +1,24 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+
+/**
+ * HTTP 回放传输层
+ * 目标地址在创建时确定；send 可被多个回放线程并发调用，返回的 ResponseData 元数据中带有 durationMicros。
+ */
+public interface HttpReplayClient extends AutoCloseable {
+
+    ResponseData send(RequestData request) throws Exception;
+
+    /**
+     * 连接复用等运行统计，用于回放结束时输出，没有时返回 null
+     */
+    default String summary() {
+        return null;
+    }
+
+    @Override
+    default void close() {
+    }
+}
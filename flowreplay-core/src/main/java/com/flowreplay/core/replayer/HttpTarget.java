@@ -0,0 +1,37 @@
+package com.flowreplay.core.replayer;
+
+import java.net.URI;
+
+/**
+ * 回放目标地址，供基于 Netty 的客户端解析 --target 与拼接请求路径
+ *
+ * @param host      主机
+ * @param port      端口
+ * @param authority Host 请求头（或 HTTP/2 :authority）的值
+ * @param basePath  目标地址中的路径前缀，不以 / 结尾
+ */
+record HttpTarget(String host, int port, String authority, String basePath) {
+
+    /**
+     * 解析目标地址，只接受明文 http，缺省协议时按 http 处理
+     */
+    static HttpTarget parse(String targetUrl, String clientName) {
+        URI target = URI.create(targetUrl.startsWith("http://") || targetUrl.startsWith("https://") ? targetUrl : "http://" + targetUrl);
+        if (!"http".equalsIgnoreCase(target.getScheme())) {
+            throw new IllegalArgumentException(clientName + " supports http:// targets only: " + targetUrl);
+        }
+        int port = target.getPort() > 0 ? target.getPort() : 80;
+        String authority = target.getPort() > 0 ? target.getHost() + ":" + port : target.getHost();
+        String path = target.getRawPath() == null ? "" : target.getRawPath();
+        String basePath = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        return new HttpTarget(target.getHost(), port, authority, basePath);
+    }
+
+    /**
+     * 录制的 URI 拼接到目标路径前缀后的请求路径
+     */
+    String requestPath(String recordedUri) {
+        String path = TrafficReplayer.normalizeRecordedUri(recordedUri);
+        return basePath + (path.startsWith("/") ? path : "/" + path);
+    }
+}
@@ -0,0 +1,203 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.metrics.LatencyHistogram;
+import com.flowreplay.core.model.ReplayResult;
+import com.flowreplay.core.model.TrafficRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 多目标回放
+ * 每条记录只读取、解码一次，同时发往所有目标：各目标的请求在同一时刻放行，消除目标之间的时间偏差。
+ * 顺序模式下一条记录在所有目标完成后才发送下一条；并发模式下记录之间并行。
+ * 同一源连接上的 TCP 消息在每个目标上仍按录制顺序发送。
+ */
+public class MultiTargetReplayer {
+
+    private static final Logger log = LoggerFactory.getLogger(MultiTargetReplayer.class);
+
+    /**
+     * 一条记录在所有目标上都回放完成后回调，results 与目标顺序一致
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onReplayed(int index, List<ReplayResult> results);
+    }
+
+    private final List<TrafficReplayer> replayers;
+    private final boolean sequentialMode;
+    private final LatencyHistogram[] histograms;
+    private final LongAdder[] successCounts;
+    private final LongAccumulator maxStartSkewNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder totalStartSkewNanos = new LongAdder();
+    private final LongAdder fanOuts = new LongAdder();
+
+    public MultiTargetReplayer(List<TrafficReplayer> replayers, boolean sequentialMode) {
+        if (replayers.isEmpty()) {
+            throw new IllegalArgumentException("at least one replay target is required");
+        }
+        this.replayers = List.copyOf(replayers);
+        this.sequentialMode = sequentialMode;
+        this.histograms = new LatencyHistogram[replayers.size()];
+        this.successCounts = new LongAdder[replayers.size()];
+        for (int i = 0; i < replayers.size(); i++) {
+            histograms[i] = new LatencyHistogram();
+            successCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 回放并按录制索引返回每条记录在各目标上的结果，并发模式下监听器会被多个线程同时调用
+     */
+    public List<List<ReplayResult>> replay(List<TrafficRecord> records, Listener listener) {
+        log.info("Starting {} replay for {} records against {} targets",
+            sequentialMode ? "sequential" : "concurrent", records.size(), replayers.size());
+        List<List<ReplayResult>> results = new ArrayList<>(Collections.nCopies(records.size(), null));
+
+        // 各目标的发送任务使用单独的执行器；资源按声明逆序关闭，记录任务全部结束后才关闭目标执行器
+        try (var targetExecutor = Executors.newVirtualThreadPerTaskExecutor();
+             var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            if (sequentialMode) {
+                for (int i = 0; i < records.size(); i++) {
+                    replayOne(targetExecutor, records, i, results, listener);
+                }
+            } else {
+                // 同一源连接上的 TCP 消息必须在同一个任务内按录制顺序回放
+                Map<String, List<Integer>> conversations = new LinkedHashMap<>();
+                for (int i = 0; i < records.size(); i++) {
+                    final int index = i;
+                    String conversationKey = TcpConversationReplayer.conversationKey(records.get(i));
+                    if (conversationKey != null) {
+                        conversations.computeIfAbsent(conversationKey, k -> new ArrayList<>()).add(index);
+                        continue;
+                    }
+                    executor.submit(() -> replayOne(targetExecutor, records, index, results, listener));
+                }
+                for (List<Integer> conversation : conversations.values()) {
+                    executor.submit(() -> {
+                        for (int index : conversation) {
+                            replayOne(targetExecutor, records, index, results, listener);
+                        }
+                    });
+                }
+            }
+        }
+
+        log.info("Multi-target replay completed");
+        return List.copyOf(results);
+    }
+
+    // 一条记录同时发往所有目标：各目标线程就绪后由同一个闩放行，再等待全部完成
+    private void replayOne(ExecutorService executor, List<TrafficRecord> records, int index,
+                           List<List<ReplayResult>> results, Listener listener) {
+        TrafficRecord record = records.get(index);
+        CountDownLatch ready = new CountDownLatch(replayers.size());
+        CountDownLatch go = new CountDownLatch(1);
+        long[] startNanos = new long[replayers.size()];
+        List<Future<ReplayResult>> futures = new ArrayList<>(replayers.size());
+        for (int target = 0; target < replayers.size(); target++) {
+            final int targetIndex = target;
+            futures.add(executor.submit(() -> {
+                ready.countDown();
+                go.await();
+                startNanos[targetIndex] = System.nanoTime();
+                return replayers.get(targetIndex).replay(record);
+            }));
+        }
+
+        ReplayResult[] targetResults = new ReplayResult[replayers.size()];
+        try {
+            ready.await();
+            go.countDown();
+            for (int target = 0; target < futures.size(); target++) {
+                targetResults[target] = futures.get(target).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+        } catch (Exception e) {
+            log.error("Multi-target replay failed for record: {}", record.id(), e);
+        }
+        // 只有拿到结果的目标确定已开始发送（且起始时间对当前线程可见），出错或被中断的目标不计入时间差
+        long minStartNanos = Long.MAX_VALUE;
+        long maxStartNanos = Long.MIN_VALUE;
+        int started = 0;
+        for (int target = 0; target < targetResults.length; target++) {
+            if (targetResults[target] != null) {
+                minStartNanos = Math.min(minStartNanos, startNanos[target]);
+                maxStartNanos = Math.max(maxStartNanos, startNanos[target]);
+                started++;
+            }
+        }
+        if (started > 1) {
+            long skew = maxStartNanos - minStartNanos;
+            maxStartSkewNanos.accumulate(skew);
+            totalStartSkewNanos.add(skew);
+            fanOuts.increment();
+        }
+        for (int target = 0; target < targetResults.length; target++) {
+            ReplayResult result = targetResults[target];
+            if (result == null) {
+                result = ReplayResult.failure(record.id(), 0, "replay interrupted");
+                targetResults[target] = result;
+            }
+            if (result.success()) {
+                successCounts[target].increment();
+                histograms[target].record(latencyMicros(result));
+            }
+        }
+        List<ReplayResult> recordResults = List.of(targetResults);
+        results.set(index, recordResults);
+        if (listener != null) {
+            try {
+                listener.onReplayed(index, recordResults);
+            } catch (Exception e) {
+                log.error("Multi-target listener failed for record: {}", record.id(), e);
+            }
+        }
+    }
+
+    private static long latencyMicros(ReplayResult result) {
+        Object micros = result.response() != null ? result.response().metadata().get("durationMicros") : null;
+        return micros instanceof Number number ? number.longValue() : result.duration() * 1_000;
+    }
+
+    public int getTargetCount() {
+        return replayers.size();
+    }
+
+    /**
+     * 目标 target 上成功回放的耗时分布
+     */
+    public LatencyHistogram getLatencyHistogram(int target) {
+        return histograms[target];
+    }
+
+    public long getSuccessCount(int target) {
+        return successCounts[target].sum();
+    }
+
+    /**
+     * 同一条记录在各目标上实际开始发送的最大时间差（微秒）
+     */
+    public double getMaxStartSkewMicros() {
+        return maxStartSkewNanos.get() / 1_000.0;
+    }
+
+    public double getAvgStartSkewMicros() {
+        long count = fanOuts.sum();
+        return count == 0 ? 0.0 : totalStartSkewNanos.sum() / 1_000.0 / count;
+    }
+}
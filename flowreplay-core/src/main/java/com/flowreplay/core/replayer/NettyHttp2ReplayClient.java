@@ -0,0 +1,583 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpClientUpgradeHandler;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.DefaultHttp2WindowUpdateFrame;
+import io.netty.handler.codec.http2.Http2ClientUpgradeCodec;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2ConnectionHandler;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2GoAwayFrame;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2ResetFrame;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2SettingsFrame;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基于 Netty 的 HTTP/2 明文（h2c）回放客户端
+ * 每条回放请求是一个独立的流，复用在少量连接上：优先使用已有连接的空闲流额度，
+ * 所有连接都达到最大并发流数时才在池容量内新建连接。
+ * 支持 prior-knowledge（直接发送连接前言）和 HTTP/1.1 Upgrade 两种建连方式；
+ * 每个流的耗时从发送 HEADERS 到收到 END_STREAM，在 IO 线程上以纳秒计时。
+ */
+public class NettyHttp2ReplayClient implements HttpReplayClient {
+
+    public static final String STREAM_ID_METADATA = "http2StreamId";
+    private static final int MAX_CONTENT_LENGTH = 64 * 1024 * 1024;
+    private static final long RESPONSE_TIMEOUT_SECONDS = 30;
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    // HTTP/2 禁止的连接级请求头，以及由伪头部或客户端自行设置的请求头
+    private static final Set<String> RESTRICTED_HEADERS = Set.of(
+        "host", "connection", "content-length", "transfer-encoding", "expect", "upgrade", "keep-alive",
+        "proxy-connection", "http2-settings", "te"
+    );
+
+    /**
+     * h2c 建连方式
+     */
+    public enum Mode {
+        // 直接发送 HTTP/2 连接前言
+        PRIOR_KNOWLEDGE,
+        // 先发送 HTTP/1.1 Upgrade: h2c 请求，协商成功后切换
+        UPGRADE;
+
+        public static Mode parse(String value) {
+            for (Mode mode : values()) {
+                if (mode.optionName().equalsIgnoreCase(value)) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("Invalid h2c mode: " + value + " (supported: prior-knowledge|upgrade)");
+        }
+
+        public String optionName() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    /**
+     * HTTP/2 参数
+     *
+     * @param mode                 建连方式
+     * @param maxConcurrentStreams 每个连接的最大并发流数，实际取与服务端 SETTINGS 通告值的较小者
+     * @param initialWindowSize    流级流控窗口（字节），通过 SETTINGS_INITIAL_WINDOW_SIZE 通告
+     * @param connectionWindowSize 连接级流控窗口（字节），建连后通过 WINDOW_UPDATE 扩大
+     */
+    public record Settings(
+        Mode mode,
+        int maxConcurrentStreams,
+        int initialWindowSize,
+        int connectionWindowSize
+    ) {
+        public static final int DEFAULT_MAX_CONCURRENT_STREAMS = 100;
+        public static final int DEFAULT_INITIAL_WINDOW_SIZE = 1024 * 1024;
+        public static final int DEFAULT_CONNECTION_WINDOW_SIZE = 16 * 1024 * 1024;
+        // HTTP/2 规定的默认窗口，连接级窗口不能比它更小
+        private static final int PROTOCOL_DEFAULT_WINDOW_SIZE = 65_535;
+
+        public Settings {
+            if (mode == null) {
+                throw new IllegalArgumentException("h2c mode must not be null");
+            }
+            if (maxConcurrentStreams < 1) {
+                throw new IllegalArgumentException("max concurrent streams must be >= 1");
+            }
+            if (initialWindowSize < 1) {
+                throw new IllegalArgumentException("stream window size must be >= 1");
+            }
+            if (connectionWindowSize < PROTOCOL_DEFAULT_WINDOW_SIZE) {
+                throw new IllegalArgumentException("connection window size must be >= " + PROTOCOL_DEFAULT_WINDOW_SIZE);
+            }
+        }
+
+        public static Settings defaults() {
+            return new Settings(Mode.PRIOR_KNOWLEDGE, DEFAULT_MAX_CONCURRENT_STREAMS, DEFAULT_INITIAL_WINDOW_SIZE, DEFAULT_CONNECTION_WINDOW_SIZE);
+        }
+    }
+
+    private final HttpTarget target;
+    private final int poolSize;
+    private final Settings settings;
+    private final EventLoopGroup group;
+    private final Bootstrap bootstrap;
+    // 在途流总数上限 = 连接数 × 每连接最大并发流数
+    private final Semaphore slots;
+    private final Object poolLock = new Object();
+    private final List<Connection> connections = new ArrayList<>();   // 受 poolLock 保护
+    private int connecting;                                           // 受 poolLock 保护
+    private final LongAdder streams = new LongAdder();
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder streamNanos = new LongAdder();
+    private final LongAccumulator maxStreamNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final LongAccumulator peakActiveStreams = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator peerMaxStreams = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private volatile boolean closed;
+
+    public NettyHttp2ReplayClient(String targetUrl, int poolSize, Settings settings) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("pool size must be >= 1");
+        }
+        this.target = HttpTarget.parse(targetUrl, "HTTP/2 replay client");
+        this.poolSize = poolSize;
+        this.settings = settings;
+        this.slots = new Semaphore(poolSize * settings.maxConcurrentStreams());
+        this.group = new NioEventLoopGroup();
+        this.bootstrap = new Bootstrap()
+            .group(group)
+            .channel(NioSocketChannel.class)
+            .option(ChannelOption.TCP_NODELAY, true)
+            .option(ChannelOption.SO_KEEPALIVE, true)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MILLIS)
+            .handler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) {
+                    initConnectionPipeline(ch);
+                }
+            });
+    }
+
+    @Override
+    public ResponseData send(RequestData request) throws Exception {
+        if (closed) {
+            throw new IllegalStateException("Replay client already closed");
+        }
+        if (!slots.tryAcquire(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new TimeoutException("No HTTP/2 stream available within " + RESPONSE_TIMEOUT_SECONDS + "s");
+        }
+        Connection connection = null;
+        try {
+            connection = acquireConnection();
+            peakActiveStreams.accumulate(activeStreams.incrementAndGet());
+            Pending pending = new Pending();
+            Http2StreamChannel stream = openStream(connection, pending);
+            writeRequest(stream, request, pending);
+            streams.increment();
+            try {
+                ResponseData response = pending.future.get(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                streamNanos.add(pending.elapsedNanos);
+                maxStreamNanos.accumulate(pending.elapsedNanos);
+                return response;
+            } catch (TimeoutException e) {
+                // 只重置超时的流，连接上的其他流不受影响
+                stream.close();
+                throw new TimeoutException("HTTP/2 stream timed out after " + RESPONSE_TIMEOUT_SECONDS + "s");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        } finally {
+            if (connection != null) {
+                release(connection);
+                activeStreams.decrementAndGet();
+            }
+            slots.release();
+        }
+    }
+
+    @Override
+    public String summary() {
+        long total = streams.sum();
+        long peerLimit = peerMaxStreams.get();
+        return String.format(
+            "h2c client (%s): connections opened=%d, streams=%d, peak concurrent streams=%d, max streams/connection=%d%s, "
+                + "window stream=%d conn=%d, stream latency avg=%.2f ms max=%.2f ms",
+            settings.mode().optionName(),
+            connectionsOpened.sum(),
+            total,
+            peakActiveStreams.get(),
+            settings.maxConcurrentStreams(),
+            peerLimit == Long.MAX_VALUE ? "" : " (peer " + peerLimit + ")",
+            settings.initialWindowSize(),
+            settings.connectionWindowSize(),
+            total == 0 ? 0.0 : streamNanos.sum() / 1_000_000.0 / total,
+            maxStreamNanos.get() / 1_000_000.0
+        );
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        group.shutdownGracefully(0, 2, TimeUnit.SECONDS).awaitUninterruptibly();
+    }
+
+    private void initConnectionPipeline(SocketChannel ch) {
+        Http2FrameCodec frameCodec = Http2FrameCodecBuilder.forClient()
+            .initialSettings(Http2Settings.defaultSettings()
+                .pushEnabled(false)
+                .initialWindowSize(settings.initialWindowSize()))
+            // 服务端通告的并发流上限小于本地设置时，超出的流在编码器内排队而不是被拒绝
+            .encoderEnforceMaxConcurrentStreams(true)
+            .build();
+        Http2MultiplexHandler multiplexHandler = new Http2MultiplexHandler(new DiscardHandler(), new DiscardHandler());
+        ConnectionHandler connectionHandler = new ConnectionHandler(frameCodec);
+        if (settings.mode() == Mode.UPGRADE) {
+            HttpClientCodec sourceCodec = new HttpClientCodec();
+            // 使用 (Http2ConnectionHandler, Http2MultiplexHandler) 重载，升级后帧编解码器位于多路复用器之前
+            Http2ClientUpgradeCodec upgradeCodec = new Http2ClientUpgradeCodec((Http2ConnectionHandler) frameCodec, multiplexHandler);
+            ch.pipeline().addLast(sourceCodec);
+            ch.pipeline().addLast(new HttpClientUpgradeHandler(sourceCodec, upgradeCodec, MAX_CONTENT_LENGTH));
+            ch.pipeline().addLast(connectionHandler);
+        } else {
+            ch.pipeline().addLast(frameCodec);
+            ch.pipeline().addLast(multiplexHandler);
+            ch.pipeline().addLast(connectionHandler);
+        }
+    }
+
+    // 选择活跃流最少且未满的连接，都满时在池容量内新建连接
+    private Connection acquireConnection() throws IOException {
+        while (true) {
+            synchronized (poolLock) {
+                Connection best = null;
+                for (Connection connection : connections) {
+                    if (connection.isUsable() && (best == null || connection.activeStreams < best.activeStreams)) {
+                        best = connection;
+                    }
+                }
+                if (best != null) {
+                    best.activeStreams++;
+                    return best;
+                }
+                // 同一时间只建一个连接：突发请求先等正在握手的连接，满了再扩容，避免一开始就把池开满
+                if (connecting == 0 && connections.size() < poolSize) {
+                    connecting++;
+                    break;
+                }
+            }
+            // 等待握手完成、已有流结束或失效连接被移除
+            LockSupport.parkNanos(100_000);
+        }
+        return connect();
+    }
+
+    private Connection connect() throws IOException {
+        Channel channel = null;
+        try {
+            ChannelFuture future = bootstrap.connect(target.host(), target.port()).awaitUninterruptibly();
+            if (!future.isSuccess()) {
+                throw new IOException("Failed to connect to " + target.authority(), future.cause());
+            }
+            channel = future.channel();
+            ConnectionHandler handler = channel.pipeline().get(ConnectionHandler.class);
+            // 收到服务端 SETTINGS 才算握手完成
+            handler.ready.get(CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            connectionsOpened.increment();
+
+            Connection connection = new Connection(channel, handler);
+            connection.activeStreams = 1;
+            channel.closeFuture().addListener(f -> {
+                synchronized (poolLock) {
+                    connections.remove(connection);
+                }
+            });
+            synchronized (poolLock) {
+                connecting--;
+                connections.add(connection);
+            }
+            return connection;
+        } catch (IOException | RuntimeException | ExecutionException | TimeoutException | InterruptedException e) {
+            synchronized (poolLock) {
+                connecting--;
+            }
+            if (channel != null) {
+                channel.close();
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (e instanceof IOException io) {
+                throw io;
+            }
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            throw new IOException("HTTP/2 handshake with " + target.authority() + " failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private void release(Connection connection) {
+        synchronized (poolLock) {
+            connection.activeStreams--;
+        }
+    }
+
+    private Http2StreamChannel openStream(Connection connection, Pending pending) throws IOException {
+        Future<Http2StreamChannel> opened = new Http2StreamChannelBootstrap(connection.channel)
+            .handler(new StreamHandler(pending))
+            .open()
+            .awaitUninterruptibly();
+        if (!opened.isSuccess()) {
+            throw new IOException("Failed to open HTTP/2 stream", opened.cause());
+        }
+        return opened.getNow();
+    }
+
+    // 在 IO 线程上记录起始时间并写出 HEADERS（和 DATA）帧
+    private void writeRequest(Http2StreamChannel stream, RequestData requestData, Pending pending) {
+        byte[] body = requestData.body() != null ? requestData.body() : new byte[0];
+        Http2Headers headers = new DefaultHttp2Headers()
+            .method(requestData.method())
+            .path(target.requestPath(requestData.uri()))
+            .scheme("http")
+            .authority(target.authority());
+        if (requestData.headers() != null) {
+            requestData.headers().forEach((key, value) -> {
+                String name = key.toLowerCase();
+                if (!RESTRICTED_HEADERS.contains(name)) {
+                    headers.add(name, value);
+                }
+            });
+        }
+        if (body.length > 0) {
+            headers.setInt(HttpHeaderNames.CONTENT_LENGTH, body.length);
+        }
+        stream.eventLoop().execute(() -> {
+            pending.startNanos = System.nanoTime();
+            stream.write(new DefaultHttp2HeadersFrame(headers, body.length == 0));
+            if (body.length > 0) {
+                stream.write(new DefaultHttp2DataFrame(Unpooled.wrappedBuffer(body), true));
+            }
+            stream.flush();
+        });
+    }
+
+    // 单个流的等待结果
+    private static final class Pending {
+        private final CompletableFuture<ResponseData> future = new CompletableFuture<>();
+        private long startNanos;
+        private long elapsedNanos;
+    }
+
+    // 池中的一个连接，activeStreams 受 poolLock 保护
+    private static final class Connection {
+        private final Channel channel;
+        private final ConnectionHandler handler;
+        private int activeStreams;
+
+        private Connection(Channel channel, ConnectionHandler handler) {
+            this.channel = channel;
+            this.handler = handler;
+        }
+
+        private boolean isUsable() {
+            return channel.isActive() && !handler.goingAway && activeStreams < handler.streamLimit;
+        }
+    }
+
+    // 连接级处理：h2c 升级、服务端 SETTINGS（并发流上限）、GOAWAY 和连接级流控窗口
+    private final class ConnectionHandler extends ChannelInboundHandlerAdapter {
+        private final CompletableFuture<Void> ready = new CompletableFuture<>();
+        private final Http2FrameCodec frameCodec;
+        private volatile int streamLimit = settings.maxConcurrentStreams();
+        private volatile boolean goingAway;
+
+        private ConnectionHandler(Http2FrameCodec frameCodec) {
+            this.frameCodec = frameCodec;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            if (settings.mode() == Mode.UPGRADE) {
+                DefaultFullHttpRequest upgradeRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.OPTIONS, "*");
+                upgradeRequest.headers().set(HttpHeaderNames.HOST, target.authority());
+                ctx.writeAndFlush(upgradeRequest);
+            }
+            super.channelActive(ctx);
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            try {
+                if (msg instanceof Http2SettingsFrame settingsFrame) {
+                    Long peerLimit = settingsFrame.settings().maxConcurrentStreams();
+                    if (peerLimit != null) {
+                        peerMaxStreams.accumulate(peerLimit);
+                        streamLimit = (int) Math.min(settings.maxConcurrentStreams(), peerLimit);
+                    }
+                    if (!ready.isDone()) {
+                        expandConnectionWindow(ctx);
+                        ready.complete(null);
+                    }
+                } else if (msg instanceof Http2GoAwayFrame) {
+                    // 服务端不再接受新流，已有流继续完成
+                    goingAway = true;
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt == HttpClientUpgradeHandler.UpgradeEvent.UPGRADE_REJECTED) {
+                ready.completeExceptionally(new IOException("Target rejected h2c upgrade"));
+                ctx.close();
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            ready.completeExceptionally(new IOException("Connection closed during HTTP/2 handshake"));
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ready.completeExceptionally(cause);
+            ctx.close();
+        }
+
+        // Netty 只会把连接窗口扩大到流级窗口大小，单独配置的连接窗口通过连接上的 WINDOW_UPDATE 补齐
+        private void expandConnectionWindow(ChannelHandlerContext ctx) {
+            Http2Connection connection = frameCodec.connection();
+            int current = connection.local().flowController().windowSize(connection.connectionStream());
+            int increment = settings.connectionWindowSize() - current;
+            if (increment > 0) {
+                ctx.writeAndFlush(new DefaultHttp2WindowUpdateFrame(increment));
+            }
+        }
+    }
+
+    // 单个流的响应聚合：HEADERS + DATA 直到 END_STREAM
+    private static final class StreamHandler extends ChannelInboundHandlerAdapter {
+        private final Pending pending;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private Http2Headers headers;
+
+        private StreamHandler(Pending pending) {
+            this.pending = pending;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            try {
+                if (msg instanceof Http2HeadersFrame headersFrame) {
+                    CharSequence status = headersFrame.headers().status();
+                    // 忽略 1xx 中间响应，尾部 headers 只用于判断结束
+                    if (headers == null && status != null && status.charAt(0) != '1') {
+                        headers = headersFrame.headers();
+                    }
+                    if (headersFrame.isEndStream()) {
+                        complete(ctx);
+                    }
+                } else if (msg instanceof Http2DataFrame dataFrame) {
+                    ByteBuf content = dataFrame.content();
+                    if (body.size() + content.readableBytes() > MAX_CONTENT_LENGTH) {
+                        fail(ctx, new IOException("HTTP/2 response body exceeds " + MAX_CONTENT_LENGTH + " bytes"));
+                        return;
+                    }
+                    content.readBytes(body, content.readableBytes());
+                    if (dataFrame.isEndStream()) {
+                        complete(ctx);
+                    }
+                } else if (msg instanceof Http2ResetFrame resetFrame) {
+                    fail(ctx, new IOException("HTTP/2 stream reset by peer, error code " + resetFrame.errorCode()));
+                }
+            } catch (IOException e) {
+                fail(ctx, e);
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            pending.future.completeExceptionally(new IOException("HTTP/2 stream closed before response"));
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            fail(ctx, cause);
+        }
+
+        private void complete(ChannelHandlerContext ctx) {
+            long elapsedNanos = System.nanoTime() - pending.startNanos;
+            if (headers == null) {
+                fail(ctx, new IOException("HTTP/2 stream ended without response headers"));
+                return;
+            }
+            pending.elapsedNanos = elapsedNanos;
+            int streamId = ((Http2StreamChannel) ctx.channel()).stream().id();
+            pending.future.complete(toResponseData(headers, body.toByteArray(), elapsedNanos, streamId));
+            ctx.close();
+        }
+
+        private void fail(ChannelHandlerContext ctx, Throwable cause) {
+            pending.future.completeExceptionally(cause);
+            ctx.close();
+        }
+
+        private static ResponseData toResponseData(Http2Headers headers, byte[] body, long elapsedNanos, int streamId) {
+            Map<String, String> responseHeaders = new LinkedHashMap<>();
+            for (Map.Entry<CharSequence, CharSequence> header : headers) {
+                String name = header.getKey().toString();
+                if (!name.startsWith(":")) {
+                    responseHeaders.merge(name, header.getValue().toString(), (a, b) -> a + ", " + b);
+                }
+            }
+            long duration = elapsedNanos / 1_000_000;
+            return new ResponseData(
+                Integer.parseInt(headers.status().toString()),
+                responseHeaders,
+                body,
+                duration,
+                Map.of("durationMicros", elapsedNanos / 1_000, STREAM_ID_METADATA, streamId)
+            );
+        }
+    }
+
+    // 丢弃升级请求（流 1）的响应和服务端推送
+    private static final class DiscardHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基于 Netty 的 HTTP/1.1 回放客户端
+ * 每个目标一个有界连接池，连接保持 keep-alive 复用；可选 HTTP/1.1 管线化，
+ * 同一连接上最多 pipelineDepth 个请求在途，响应按发送顺序与请求匹配。
+ * 耗时从请求写出到收到完整响应，在 IO 线程上以纳秒计时，不含排队等待连接的时间。
+ */
+public class NettyHttpReplayClient implements HttpReplayClient {
+
+    public static final int DEFAULT_POOL_SIZE = 64;
+    private static final int MAX_CONTENT_LENGTH = 64 * 1024 * 1024;
+    private static final long RESPONSE_TIMEOUT_SECONDS = 30;
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    // 由客户端自己设置或与连接复用冲突的请求头
+    private static final Set<String> RESTRICTED_HEADERS = Set.of(
+        "host", "connection", "content-length", "transfer-encoding", "expect", "upgrade", "keep-alive", "proxy-connection"
+    );
+
+    private final HttpTarget target;
+    private final int poolSize;
+    private final int pipelineDepth;
+    private final EventLoopGroup group;
+    private final Bootstrap bootstrap;
+    // 在途请求总数上限 = 连接数 × 管线深度
+    private final Semaphore slots;
+    private final Object poolLock = new Object();
+    private final List<Connection> connections = new ArrayList<>();   // 受 poolLock 保护
+    private int connecting;                                           // 受 poolLock 保护
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectNanos = new LongAdder();
+    private volatile boolean closed;
+
+    public NettyHttpReplayClient(String targetUrl, int poolSize, int pipelineDepth) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("pool size must be >= 1");
+        }
+        if (pipelineDepth < 1) {
+            throw new IllegalArgumentException("pipelining depth must be >= 1");
+        }
+        this.target = HttpTarget.parse(targetUrl, "Netty replay client");
+        this.poolSize = poolSize;
+        this.pipelineDepth = pipelineDepth;
+        this.slots = new Semaphore(poolSize * pipelineDepth);
+        this.group = new NioEventLoopGroup();
+        this.bootstrap = new Bootstrap()
+            .group(group)
+            .channel(NioSocketChannel.class)
+            .option(ChannelOption.TCP_NODELAY, true)
+            .option(ChannelOption.SO_KEEPALIVE, true)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MILLIS)
+            .handler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) {
+                    ch.pipeline().addLast(new HttpClientCodec());
+                    ch.pipeline().addLast(new HttpObjectAggregator(MAX_CONTENT_LENGTH));
+                    ch.pipeline().addLast(new ResponseHandler());
+                }
+            });
+    }
+
+    @Override
+    public ResponseData send(RequestData request) throws Exception {
+        if (closed) {
+            throw new IllegalStateException("Replay client already closed");
+        }
+        if (!slots.tryAcquire(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new TimeoutException("No replay connection available within " + RESPONSE_TIMEOUT_SECONDS + "s");
+        }
+        Connection connection = null;
+        try {
+            connection = acquireConnection();
+            Pending pending = new Pending();
+            connection.write(buildRequest(request), pending);
+            requests.increment();
+            try {
+                return pending.future.get(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                // 超时后连接上的响应顺序已不可信，直接关闭
+                connection.channel.close();
+                throw new TimeoutException("Replay response timed out after " + RESPONSE_TIMEOUT_SECONDS + "s");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        } finally {
+            if (connection != null) {
+                release(connection);
+            }
+            slots.release();
+        }
+    }
+
+    @Override
+    public String summary() {
+        long opened = connectionsOpened.sum();
+        long total = requests.sum();
+        return String.format(
+            "netty client: pool=%d, pipelining=%d, connections opened=%d (avg connect %.2f ms), requests=%d, reuse=%.1f%%",
+            poolSize,
+            pipelineDepth,
+            opened,
+            opened == 0 ? 0.0 : connectNanos.sum() / 1_000_000.0 / opened,
+            total,
+            total == 0 ? 0.0 : (total - Math.min(opened, total)) * 100.0 / total
+        );
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        group.shutdownGracefully(0, 2, TimeUnit.SECONDS).awaitUninterruptibly();
+    }
+
+    // 选择在途请求最少的可用连接，都满时在池容量内新建连接
+    private Connection acquireConnection() throws IOException {
+        while (true) {
+            synchronized (poolLock) {
+                Connection best = null;
+                for (Connection connection : connections) {
+                    if (connection.channel.isActive() && connection.inFlight < pipelineDepth
+                        && (best == null || connection.inFlight < best.inFlight)) {
+                        best = connection;
+                    }
+                }
+                if (best != null) {
+                    best.inFlight++;
+                    return best;
+                }
+                if (connections.size() + connecting < poolSize) {
+                    connecting++;
+                    break;
+                }
+            }
+            // 已持有许可说明总在途数未满，等待失效连接被移除或新连接建立
+            LockSupport.parkNanos(100_000);
+        }
+        return connect();
+    }
+
+    private Connection connect() throws IOException {
+        long startNanos = System.nanoTime();
+        Channel channel;
+        try {
+            ChannelFuture future = bootstrap.connect(target.host(), target.port()).awaitUninterruptibly();
+            if (!future.isSuccess()) {
+                throw new IOException("Failed to connect to " + target.authority(), future.cause());
+            }
+            channel = future.channel();
+        } catch (IOException | RuntimeException e) {
+            synchronized (poolLock) {
+                connecting--;
+            }
+            throw e;
+        }
+        connectNanos.add(System.nanoTime() - startNanos);
+        connectionsOpened.increment();
+
+        Connection connection = new Connection(channel);
+        connection.inFlight = 1;
+        channel.closeFuture().addListener(f -> {
+            synchronized (poolLock) {
+                connections.remove(connection);
+            }
+        });
+        synchronized (poolLock) {
+            connecting--;
+            connections.add(connection);
+        }
+        return connection;
+    }
+
+    private void release(Connection connection) {
+        synchronized (poolLock) {
+            connection.inFlight--;
+        }
+    }
+
+    private FullHttpRequest buildRequest(RequestData requestData) {
+        byte[] body = requestData.body() != null ? requestData.body() : new byte[0];
+        String uri = target.requestPath(requestData.uri());
+        FullHttpRequest request = new DefaultFullHttpRequest(
+            HttpVersion.HTTP_1_1,
+            HttpMethod.valueOf(requestData.method()),
+            uri,
+            Unpooled.wrappedBuffer(body)
+        );
+        if (requestData.headers() != null) {
+            requestData.headers().forEach((key, value) -> {
+                if (!RESTRICTED_HEADERS.contains(key.toLowerCase())) {
+                    request.headers().add(key, value);
+                }
+            });
+        }
+        request.headers().set(HttpHeaderNames.HOST, target.authority());
+        request.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+        if (body.length > 0 || HttpMethod.POST.equals(request.method()) || HttpMethod.PUT.equals(request.method())) {
+            request.headers().set(HttpHeaderNames.CONTENT_LENGTH, body.length);
+        }
+        return request;
+    }
+
+    private static ResponseData toResponseData(FullHttpResponse response, long elapsedNanos) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String name : response.headers().names()) {
+            headers.put(name, String.join(", ", response.headers().getAll(name)));
+        }
+        long duration = elapsedNanos / 1_000_000;
+        return new ResponseData(
+            response.status().code(),
+            headers,
+            ByteBufUtil.getBytes(response.content()),
+            duration,
+            Map.of("durationMicros", elapsedNanos / 1_000)
+        );
+    }
+
+    // 单个请求的等待结果
+    private static final class Pending {
+        private final CompletableFuture<ResponseData> future = new CompletableFuture<>();
+        private long startNanos;
+    }
+
+    // 池中的一个连接，inFlight 受 poolLock 保护
+    private static final class Connection {
+        private final Channel channel;
+        private final ResponseHandler handler;
+        private int inFlight;
+
+        private Connection(Channel channel) {
+            this.channel = channel;
+            this.handler = channel.pipeline().get(ResponseHandler.class);
+        }
+
+        // 入队与写出都在 IO 线程上执行，保证等待队列顺序与请求写出顺序一致
+        private void write(FullHttpRequest request, Pending pending) {
+            channel.eventLoop().execute(() -> {
+                if (!channel.isActive()) {
+                    request.release();
+                    pending.future.completeExceptionally(new IOException("Replay connection closed"));
+                    return;
+                }
+                pending.startNanos = System.nanoTime();
+                handler.pending.addLast(pending);
+                channel.writeAndFlush(request).addListener(f -> {
+                    if (!f.isSuccess()) {
+                        channel.close();
+                    }
+                });
+            });
+        }
+    }
+
+    // 按发送顺序把响应交给等待中的请求（pending 只在 IO 线程访问）
+    private static final class ResponseHandler extends SimpleChannelInboundHandler<FullHttpResponse> {
+        private final Deque<Pending> pending = new ArrayDeque<>();
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse response) {
+            long endNanos = System.nanoTime();
+            Pending head = pending.pollFirst();
+            if (head == null) {
+                ctx.close();
+                return;
+            }
+            head.future.complete(toResponseData(response, endNanos - head.startNanos));
+            if (!HttpUtil.isKeepAlive(response)) {
+                ctx.close();
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            Pending head;
+            while ((head = pending.pollFirst()) != null) {
+                head.future.completeExceptionally(new IOException("Replay connection closed before response"));
+            }
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            Pending head = pending.pollFirst();
+            if (head != null) {
+                head.future.completeExceptionally(cause);
+            }
+            ctx.close();
+        }
+    }
+}
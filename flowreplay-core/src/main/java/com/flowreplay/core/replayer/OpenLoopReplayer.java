@@ -0,0 +1,184 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.metrics.LatencyHistogram;
+import com.flowreplay.core.model.ReplayResult;
+import com.flowreplay.core.model.TrafficRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 开环回放
+ * 每条记录都有计划发送时间（按录制时间间隔除以倍速，或按固定 RPS 排期），调度线程到点即派发，
+ * 不等待之前的请求完成；目标变慢时请求在客户端排队，而不是推迟后续请求的发送。
+ * 同时统计两组耗时：原始耗时只含请求本身的发送耗时，修正耗时从计划发送时间算起，
+ * 包含排队等待的时间，从而消除协调遗漏（coordinated omission）对尾延迟的低估。
+ */
+public class OpenLoopReplayer {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenLoopReplayer.class);
+
+    private final TrafficReplayer replayer;
+    private final double targetRps;
+    private final double speed;
+    private final LatencyHistogram rawHistogram = new LatencyHistogram();
+    private final LatencyHistogram correctedHistogram = new LatencyHistogram();
+    private final LongAccumulator maxDispatchLagNanos = new LongAccumulator(Math::max, 0);
+    private long scheduledNanos;
+    private long wallNanos;
+
+    /**
+     * @param targetRps 固定发送速率，大于 0 时忽略录制时间
+     * @param speed     按录制时间排期时的倍速，2 表示以两倍速度回放
+     */
+    public OpenLoopReplayer(TrafficReplayer replayer, double targetRps, double speed) {
+        if (targetRps < 0) {
+            throw new IllegalArgumentException("target RPS must be >= 0");
+        }
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be > 0");
+        }
+        this.replayer = replayer;
+        this.targetRps = targetRps;
+        this.speed = speed;
+    }
+
+    /**
+     * 按计划时间回放并按录制索引返回结果，监听器会被多个线程同时调用
+     */
+    public List<ReplayResult> replay(List<TrafficRecord> records, TrafficReplayer.ReplayListener listener) {
+        long[] offsets = scheduleOffsets(records);
+        List<List<Integer>> tasks = tasks(records, offsets);
+        scheduledNanos = Arrays.stream(offsets).max().orElse(0);
+        log.info("Starting open-loop replay for {} records over {} ms ({})",
+            records.size(), scheduledNanos / 1_000_000, targetRps > 0 ? targetRps + " rps" : "recorded pace x" + speed);
+
+        ReplayResult[] results = new ReplayResult[records.size()];
+        long startNanos = System.nanoTime();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (List<Integer> task : tasks) {
+                parkUntil(startNanos + offsets[task.get(0)]);
+                executor.submit(() -> replayTask(records, task, offsets, startNanos, results, listener));
+            }
+        }
+        wallNanos = System.nanoTime() - startNanos;
+
+        log.info("Open-loop replay completed");
+        return List.of(results);
+    }
+
+    // 计划发送时间相对回放开始的偏移（纳秒）
+    private long[] scheduleOffsets(List<TrafficRecord> records) {
+        long[] offsets = new long[records.size()];
+        if (targetRps > 0) {
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = (long) (i * 1_000_000_000.0 / targetRps);
+            }
+            return offsets;
+        }
+        Instant first = records.stream()
+            .map(TrafficRecord::timestamp)
+            .filter(Objects::nonNull)
+            .min(Comparator.naturalOrder())
+            .orElse(null);
+        for (int i = 0; i < offsets.length; i++) {
+            Instant timestamp = records.get(i).timestamp();
+            if (first != null && timestamp != null) {
+                long recordedNanos = Duration.between(first, timestamp).toNanos();
+                offsets[i] = (long) (recordedNanos / speed);
+            }
+        }
+        return offsets;
+    }
+
+    // 同一源连接上的 TCP 消息在一个任务内按录制顺序发送，其余记录各自一个任务；任务按首条计划时间排序
+    private static List<List<Integer>> tasks(List<TrafficRecord> records, long[] offsets) {
+        Map<String, List<Integer>> conversations = new LinkedHashMap<>();
+        List<List<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            String conversationKey = TcpConversationReplayer.conversationKey(records.get(i));
+            if (conversationKey == null) {
+                tasks.add(List.of(i));
+            } else {
+                conversations.computeIfAbsent(conversationKey, k -> {
+                    List<Integer> conversation = new ArrayList<>();
+                    tasks.add(conversation);
+                    return conversation;
+                }).add(i);
+            }
+        }
+        tasks.sort(Comparator.comparingLong(task -> offsets[task.get(0)]));
+        return tasks;
+    }
+
+    private void replayTask(List<TrafficRecord> records, List<Integer> task, long[] offsets, long startNanos,
+                            ReplayResult[] results, TrafficReplayer.ReplayListener listener) {
+        for (int index : task) {
+            long intendedNanos = startNanos + offsets[index];
+            parkUntil(intendedNanos);
+            long sendNanos = System.nanoTime();
+            maxDispatchLagNanos.accumulate(sendNanos - intendedNanos);
+
+            ReplayResult result = replayer.replay(records.get(index));
+            long endNanos = System.nanoTime();
+            rawHistogram.record(serviceMicros(result, endNanos - sendNanos));
+            correctedHistogram.record((endNanos - intendedNanos) / 1_000);
+            results[index] = result;
+            TrafficReplayer.notifyListener(listener, index, result);
+        }
+    }
+
+    // 原始耗时优先取传输层上报的耗时（不含客户端内部排队），否则取本次调用耗时
+    private static long serviceMicros(ReplayResult result, long elapsedNanos) {
+        Object micros = result.response() != null ? result.response().metadata().get("durationMicros") : null;
+        return micros instanceof Number number ? number.longValue() : elapsedNanos / 1_000;
+    }
+
+    private static void parkUntil(long deadlineNanos) {
+        long waitNanos;
+        while ((waitNanos = deadlineNanos - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(waitNanos);
+        }
+    }
+
+    /**
+     * 只含发送耗时的原始分布，存在协调遗漏
+     */
+    public LatencyHistogram getRawHistogram() {
+        return rawHistogram;
+    }
+
+    /**
+     * 从计划发送时间算起的修正分布
+     */
+    public LatencyHistogram getCorrectedHistogram() {
+        return correctedHistogram;
+    }
+
+    /**
+     * 实际发送时间晚于计划时间的最大值（毫秒），持续偏大说明回放端本身成了瓶颈
+     */
+    public double getMaxDispatchLagMillis() {
+        return maxDispatchLagNanos.get() / 1_000_000.0;
+    }
+
+    public double getScheduledMillis() {
+        return scheduledNanos / 1_000_000.0;
+    }
+
+    public double getWallMillis() {
+        return wallNanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,89 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.TrafficRecord;
+
+import java.net.http.HttpRequest;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 回放计划
+ * 针对一个目标地址把录制的 HTTP 请求一次性编译成请求模板：规范化 URI、拼接完整地址、过滤受限请求头并校验，
+ * 构建好的 HttpRequest 不可变，每次发送直接复用，容量探测等重复回放同一批记录时热路径上只剩发送。
+ */
+public class ReplayPlan {
+
+    private final String targetUrl;
+    // 以记录实例为键，同一份录制在多次回放间共享实例
+    private final Map<TrafficRecord, PreparedRequest> prepared;
+    private final int invalid;
+
+    /**
+     * 编译后的请求
+     * @param httpRequest 可重复发送的请求，校验失败时为 null
+     * @param error 校验失败原因
+     */
+    public record PreparedRequest(HttpRequest httpRequest, String error) {
+        public boolean valid() {
+            return error == null;
+        }
+    }
+
+    private ReplayPlan(String targetUrl, Map<TrafficRecord, PreparedRequest> prepared) {
+        this.targetUrl = targetUrl;
+        this.prepared = prepared;
+        this.invalid = (int) prepared.values().stream().filter(request -> !request.valid()).count();
+    }
+
+    /**
+     * 编译录制记录，非 HTTP 记录不在计划中
+     */
+    public static ReplayPlan compile(List<TrafficRecord> records, String targetUrl) {
+        Map<TrafficRecord, PreparedRequest> prepared = new IdentityHashMap<>(records.size());
+        for (TrafficRecord record : records) {
+            if (!"SOCKET".equals(record.protocol()) && record.request() != null) {
+                prepared.put(record, compile(record.request(), targetUrl));
+            }
+        }
+        return new ReplayPlan(targetUrl, prepared);
+    }
+
+    // 构建请求即完成方法、地址和请求头的校验
+    private static PreparedRequest compile(RequestData request, String targetUrl) {
+        try {
+            String url = TrafficReplayer.resolveUrl(targetUrl, TrafficReplayer.normalizeRecordedUri(request.uri()));
+            HttpRequest httpRequest = TrafficReplayer.buildHttpRequest(
+                url, request.method(), TrafficReplayer.filterHeaders(request.headers()), request.body());
+            return new PreparedRequest(httpRequest, null);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return new PreparedRequest(null, "Invalid request in replay plan: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 记录对应的编译结果，不在计划中（非 HTTP 记录或编译后新建的记录）时返回 null
+     */
+    public PreparedRequest get(TrafficRecord record) {
+        return prepared.get(record);
+    }
+
+    public String getTargetUrl() {
+        return targetUrl;
+    }
+
+    /**
+     * 已编译的 HTTP 请求数
+     */
+    public int size() {
+        return prepared.size();
+    }
+
+    /**
+     * 校验失败的请求数，回放时直接记为失败
+     */
+    public int getInvalidCount() {
+        return invalid;
+    }
+}
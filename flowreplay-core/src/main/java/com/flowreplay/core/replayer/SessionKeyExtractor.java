@@ -0,0 +1,123 @@
+package com.flowreplay.core.replayer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flowreplay.core.model.TrafficRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 会话键提取器，用于按会话分区回放
+ * 支持的格式：
+ * <ul>
+ *   <li>header:&lt;name&gt; 请求头（忽略大小写）</li>
+ *   <li>cookie:&lt;name&gt; Cookie 中的字段</li>
+ *   <li>esb:&lt;field&gt; 报文字段，XML 的 &lt;field&gt;值&lt;/field&gt; 或 JSON 顶层字段</li>
+ *   <li>connection 录制时的客户端连接（元数据 clientAddress）</li>
+ * </ul>
+ */
+public class SessionKeyExtractor {
+
+    public static final String CLIENT_ADDRESS_METADATA = "clientAddress";
+
+    private final String type;
+    private final String name;
+    private final Pattern xmlFieldPattern;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private SessionKeyExtractor(String type, String name) {
+        this.type = type;
+        this.name = name;
+        this.xmlFieldPattern = "esb".equals(type)
+            ? Pattern.compile("<" + Pattern.quote(name) + ">([^<]+)</" + Pattern.quote(name) + ">")
+            : null;
+    }
+
+    /**
+     * 解析会话键配置，如 header:X-Session-Id、cookie:JSESSIONID、esb:SessionId、connection
+     */
+    public static SessionKeyExtractor parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            throw new IllegalArgumentException("Session key must not be empty");
+        }
+        if ("connection".equalsIgnoreCase(spec.trim())) {
+            return new SessionKeyExtractor("connection", null);
+        }
+        int separator = spec.indexOf(':');
+        String type = separator > 0 ? spec.substring(0, separator).trim().toLowerCase() : "";
+        String name = separator > 0 ? spec.substring(separator + 1).trim() : "";
+        if (name.isEmpty() || !("header".equals(type) || "cookie".equals(type) || "esb".equals(type))) {
+            throw new IllegalArgumentException("Invalid session key: " + spec + " (supported: header:<name>|cookie:<name>|esb:<field>|connection)");
+        }
+        return new SessionKeyExtractor(type, name);
+    }
+
+    /**
+     * 提取会话键，取不到时返回 null（该记录不属于任何会话，可独立回放）
+     */
+    public String extract(TrafficRecord record) {
+        String key = switch (type) {
+            case "header" -> findHeader(record.request().headers(), name);
+            case "cookie" -> findCookie(findHeader(record.request().headers(), "Cookie"));
+            case "esb" -> findBodyField(record.request().body());
+            default -> {
+                Object clientAddress = record.metadata() != null ? record.metadata().get(CLIENT_ADDRESS_METADATA) : null;
+                yield clientAddress != null ? clientAddress.toString() : null;
+            }
+        };
+        return key == null || key.isBlank() ? null : key;
+    }
+
+    public String describe() {
+        return name == null ? type : type + ":" + name;
+    }
+
+    private static String findHeader(Map<String, String> headers, String headerName) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(headerName)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private String findCookie(String cookieHeader) {
+        if (cookieHeader == null) {
+            return null;
+        }
+        for (String cookie : cookieHeader.split(";")) {
+            int eq = cookie.indexOf('=');
+            if (eq > 0 && cookie.substring(0, eq).trim().equals(name)) {
+                return cookie.substring(eq + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    private String findBodyField(byte[] body) {
+        if (body == null || body.length == 0) {
+            return null;
+        }
+        String bodyStr = new String(body, StandardCharsets.UTF_8);
+        Matcher matcher = xmlFieldPattern.matcher(bodyStr);
+        if (matcher.find()) {
+            return matcher.group(1);
+        }
+        try {
+            JsonNode node = objectMapper.readTree(bodyStr);
+            JsonNode field = node != null ? node.get(name) : null;
+            if (field != null && !field.isNull()) {
+                return field.asText();
+            }
+        } catch (Exception e) {
+            // 不是有效的 JSON，忽略
+        }
+        return null;
+    }
+}
@@ -0,0 +1,174 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.model.ReplayResult;
+import com.flowreplay.core.model.TrafficRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按会话分区的并行回放
+ * 同一会话键的记录在一个虚拟线程内严格按录制顺序回放（上一条完成后才发送下一条），
+ * 不同会话并行执行；取不到会话键的记录互不依赖，各自独立回放。
+ * 按消息切分的 TCP 记录不论会话键配置，同一源连接的消息总在一个分区内按 messageIndex 顺序回放。
+ * 分区时检查会话内录制时间戳是否倒退：录制文件未按时间排序时，会话内的回放顺序可能与实际发生顺序不一致。
+ */
+public class SessionParallelReplayer {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionParallelReplayer.class);
+
+    private final TrafficReplayer replayer;
+    private final SessionKeyExtractor keyExtractor;
+    private final LongAdder serialNanos = new LongAdder();
+    private final LongAccumulator criticalPathNanos = new LongAccumulator(Math::max, 0);
+    private int partitionCount;
+    private int largestPartition;
+    private int unkeyedCount;
+    private int timestampInversions;
+    private long wallNanos;
+
+    public SessionParallelReplayer(TrafficReplayer replayer, SessionKeyExtractor keyExtractor) {
+        this.replayer = replayer;
+        this.keyExtractor = keyExtractor;
+    }
+
+    /**
+     * 回放并按录制索引返回结果，监听器会被多个会话线程同时调用
+     */
+    public List<ReplayResult> replay(List<TrafficRecord> records, TrafficReplayer.ReplayListener listener) {
+        List<List<Integer>> partitions = partition(records);
+        log.info("Starting session replay for {} records in {} partitions (key={})",
+            records.size(), partitions.size(), keyExtractor.describe());
+
+        ReplayResult[] results = new ReplayResult[records.size()];
+        long startNanos = System.nanoTime();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (List<Integer> partition : partitions) {
+                executor.submit(() -> replayPartition(records, partition, results, listener));
+            }
+        }
+        wallNanos = System.nanoTime() - startNanos;
+
+        log.info("Session replay completed");
+        return List.of(results);
+    }
+
+    // 按会话键分组，组内保持录制顺序
+    private List<List<Integer>> partition(List<TrafficRecord> records) {
+        Map<String, List<Integer>> sessions = new LinkedHashMap<>();
+        Map<String, List<Integer>> conversations = new LinkedHashMap<>();
+        List<List<Integer>> partitions = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            String conversationKey = TcpConversationReplayer.conversationKey(records.get(i));
+            if (conversationKey != null) {
+                conversations.computeIfAbsent(conversationKey, k -> new ArrayList<>()).add(i);
+                continue;
+            }
+            String key = keyExtractor.extract(records.get(i));
+            if (key == null) {
+                unkeyedCount++;
+                partitions.add(List.of(i));
+            } else {
+                sessions.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+        }
+        timestampInversions = 0;
+        for (List<Integer> session : sessions.values()) {
+            timestampInversions += countTimestampInversions(records, session);
+        }
+        partitions.addAll(sessions.values());
+        for (List<Integer> conversation : conversations.values()) {
+            TcpConversationReplayer.sortConversation(records, conversation);
+            partitions.add(conversation);
+        }
+        partitionCount = partitions.size();
+        largestPartition = partitions.stream().mapToInt(List::size).max().orElse(0);
+        return partitions;
+    }
+
+    private static int countTimestampInversions(List<TrafficRecord> records, List<Integer> session) {
+        int inversions = 0;
+        Instant previous = null;
+        for (int index : session) {
+            Instant timestamp = records.get(index).timestamp();
+            if (timestamp == null) {
+                continue;
+            }
+            if (previous != null && timestamp.isBefore(previous)) {
+                inversions++;
+            }
+            previous = timestamp;
+        }
+        return inversions;
+    }
+
+    private void replayPartition(List<TrafficRecord> records, List<Integer> partition, ReplayResult[] results,
+                                 TrafficReplayer.ReplayListener listener) {
+        long partitionNanos = 0;
+        for (int index : partition) {
+            long start = System.nanoTime();
+            ReplayResult result = replayer.replay(records.get(index));
+            long end = System.nanoTime();
+            partitionNanos += end - start;
+            results[index] = result;
+            TrafficReplayer.notifyListener(listener, index, result);
+        }
+        serialNanos.add(partitionNanos);
+        criticalPathNanos.accumulate(partitionNanos);
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    public int getLargestPartitionSize() {
+        return largestPartition;
+    }
+
+    /**
+     * 取不到会话键、独立回放的记录数
+     */
+    public int getUnkeyedCount() {
+        return unkeyedCount;
+    }
+
+    /**
+     * 会话内录制时间戳早于上一条的记录数，非 0 说明录制文件未按时间排序
+     */
+    public int getTimestampInversions() {
+        return timestampInversions;
+    }
+
+    public double getWallMillis() {
+        return wallNanos / 1_000_000.0;
+    }
+
+    /**
+     * 所有请求耗时之和，即顺序回放的预计耗时（毫秒）
+     */
+    public double getSerialMillis() {
+        return serialNanos.sum() / 1_000_000.0;
+    }
+
+    /**
+     * 最长会话的累计耗时，是并行回放耗时的下限（毫秒）
+     */
+    public double getCriticalPathMillis() {
+        return criticalPathNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * 相对顺序回放的加速比
+     */
+    public double getSpeedup() {
+        return wallNanos == 0 ? 0.0 : serialNanos.sum() / (double) wallNanos;
+    }
+}
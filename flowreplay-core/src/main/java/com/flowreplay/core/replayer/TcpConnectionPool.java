@@ -0,0 +1,155 @@
+package com.flowreplay.core.replayer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TCP 回放连接池
+ * 目标地址只在创建时解析一次；空闲连接按后进先出复用（最近用过的连接最不可能已被服务端关闭），
+ * 超过空闲上限的连接直接关闭。
+ */
+final class TcpConnectionPool implements AutoCloseable {
+
+    static final int DEFAULT_MAX_IDLE = 64;
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+
+    private final InetSocketAddress address;
+    private final int maxIdle;
+    private final Deque<PooledSocket> idle = new ArrayDeque<>();   // 受 this 保护
+    private boolean closed;                                        // 受 this 保护
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectNanos = new LongAdder();
+    private final LongAdder reuses = new LongAdder();
+
+    TcpConnectionPool(String target, int maxIdle) {
+        this.address = parseTarget(target);
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * 目标地址格式为 host:port（可带 tcp:// 前缀），缺省端口 80
+     */
+    static InetSocketAddress parseTarget(String target) {
+        String hostPort = target.startsWith("tcp://") ? target.substring("tcp://".length()) : target;
+        int separator = hostPort.lastIndexOf(':');
+        if (separator < 0) {
+            return InetSocketAddress.createUnresolved(hostPort, 80);
+        }
+        try {
+            return InetSocketAddress.createUnresolved(hostPort.substring(0, separator), Integer.parseInt(hostPort.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid TCP target: " + target + " (expected host:port)");
+        }
+    }
+
+    /**
+     * 优先复用空闲连接，没有时新建
+     */
+    PooledSocket acquire() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("TCP connection pool already closed");
+            }
+            PooledSocket socket;
+            while ((socket = idle.pollFirst()) != null) {
+                if (!socket.socket().isClosed()) {
+                    reuses.increment();
+                    return socket;
+                }
+            }
+        }
+        return connect();
+    }
+
+    /**
+     * 总是新建连接（用于复用的连接已失效时重试）
+     */
+    PooledSocket connect() throws IOException {
+        long startNanos = System.nanoTime();
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()), CONNECT_TIMEOUT_MILLIS);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        long elapsed = System.nanoTime() - startNanos;
+        connectionsOpened.increment();
+        connectNanos.add(elapsed);
+        return new PooledSocket(socket, elapsed);
+    }
+
+    /**
+     * 归还连接，不可复用（响应边界不确定、服务端已关闭等）时直接关闭
+     */
+    void release(PooledSocket socket, boolean reusable) {
+        synchronized (this) {
+            if (reusable && !closed && !socket.socket().isClosed() && idle.size() < maxIdle) {
+                idle.addFirst(socket);
+                return;
+            }
+        }
+        closeQuietly(socket);
+    }
+
+    long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    long getReuseCount() {
+        return reuses.sum();
+    }
+
+    double getAverageConnectMillis() {
+        long opened = connectionsOpened.sum();
+        return opened == 0 ? 0.0 : connectNanos.sum() / 1_000_000.0 / opened;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            PooledSocket socket;
+            while ((socket = idle.pollFirst()) != null) {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private static void closeQuietly(PooledSocket socket) {
+        try {
+            socket.socket().close();
+        } catch (IOException e) {
+            // 关闭失败不影响回放
+        }
+    }
+
+    /**
+     * 池中的连接，建连耗时只在第一次交互时上报
+     */
+    static final class PooledSocket {
+        private final Socket socket;
+        private long connectNanos;
+
+        private PooledSocket(Socket socket, long connectNanos) {
+            this.socket = socket;
+            this.connectNanos = connectNanos;
+        }
+
+        Socket socket() {
+            return socket;
+        }
+
+        long takeConnectNanos() {
+            long nanos = connectNanos;
+            connectNanos = 0;
+            return nanos;
+        }
+    }
+}
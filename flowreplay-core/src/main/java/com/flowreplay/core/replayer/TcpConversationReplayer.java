@@ -0,0 +1,308 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.model.ResponseData;
+import com.flowreplay.core.model.TrafficRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * TCP 会话回放
+ * 连接来自 {@link TcpConnectionPool}；录制时同一源连接上的消息（元数据带 messageIndex）
+ * 在回放时独占一个连接、按录制顺序依次发送，直到最后一条消息（lastMessage）后归还连接。
+ * 响应边界按录制的响应长度判断，长度未知时以空闲间隔判断；边界不确定的连接不再复用。
+ * 只有刚从空闲池取出的连接（独立记录，或会话的第一条消息）失效时才换新连接重试；
+ * 会话连接中途被目标关闭时该消息及会话后续消息都回放失败，不换连接。
+ * 建连耗时（connectMicros）与交互耗时（durationMicros）分开上报。
+ */
+final class TcpConversationReplayer implements AutoCloseable {
+
+    static final String MESSAGE_INDEX_METADATA = "messageIndex";
+    static final String LAST_MESSAGE_METADATA = "lastMessage";
+    // 等待首个响应字节的最长时间
+    private static final int RESPONSE_TIMEOUT_MILLIS = 30_000;
+    // 已收到部分响应后，等待后续字节的最长间隔
+    private static final int RESPONSE_GAP_MILLIS = 5_000;
+    // 录制响应为空时，等待意外响应字节的空闲间隔
+    private static final int RESPONSE_IDLE_MILLIS = 200;
+
+    private final TcpConnectionPool pool;
+    private final Map<String, Conversation> conversations = new ConcurrentHashMap<>();
+    private final LongAdder exchanges = new LongAdder();
+    private final LongAdder conversationCount = new LongAdder();
+    private final LongAdder staleRetries = new LongAdder();
+    private final AtomicLong orderingViolations = new AtomicLong();
+
+    TcpConversationReplayer(String target) {
+        this.pool = new TcpConnectionPool(target, TcpConnectionPool.DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * 会话键：录制时按消息切分的 TCP 记录取源连接地址，旧格式（整条连接一条记录）返回 null
+     */
+    static String conversationKey(TrafficRecord record) {
+        Map<String, Object> metadata = record.metadata();
+        if (!"SOCKET".equals(record.protocol()) || metadata == null || !metadata.containsKey(MESSAGE_INDEX_METADATA)) {
+            return null;
+        }
+        Object clientAddress = metadata.get(SessionKeyExtractor.CLIENT_ADDRESS_METADATA);
+        return clientAddress == null || clientAddress.toString().isBlank() ? null : clientAddress.toString();
+    }
+
+    /**
+     * 把同一会话键的记录索引按 messageIndex 排好序（原地）
+     * 同一源地址可能先后承载多个连接，先按录制顺序在 lastMessage 处切分，再在各段内排序
+     */
+    static void sortConversation(List<TrafficRecord> records, List<Integer> conversation) {
+        Comparator<Integer> byMessageIndex = Comparator.comparingInt(index -> intMetadata(records.get(index), MESSAGE_INDEX_METADATA));
+        List<Integer> sorted = new ArrayList<>(conversation.size());
+        int segmentStart = 0;
+        for (int i = 0; i < conversation.size(); i++) {
+            TrafficRecord record = records.get(conversation.get(i));
+            if (i == conversation.size() - 1 || Boolean.parseBoolean(String.valueOf(record.metadata().get(LAST_MESSAGE_METADATA)))) {
+                List<Integer> segment = new ArrayList<>(conversation.subList(segmentStart, i + 1));
+                segment.sort(byMessageIndex);
+                sorted.addAll(segment);
+                segmentStart = i + 1;
+            }
+        }
+        for (int i = 0; i < sorted.size(); i++) {
+            conversation.set(i, sorted.get(i));
+        }
+    }
+
+    ResponseData replay(TrafficRecord record) throws IOException {
+        byte[] request = record.request().body() != null ? record.request().body() : new byte[0];
+        int expectedLength = record.response() != null && record.response().body() != null ? record.response().body().length : 0;
+        exchanges.increment();
+
+        String key = conversationKey(record);
+        if (key == null) {
+            Result result = send(pool.acquire(), request, expectedLength, true);
+            pool.release(result.socket(), result.exchange().reusable());
+            return result.toResponseData();
+        }
+        while (true) {
+            Conversation conversation = conversations.computeIfAbsent(key, k -> {
+                conversationCount.increment();
+                return new Conversation();
+            });
+            conversation.lock.lock();
+            try {
+                if (conversation.retired) {
+                    // 同一源地址的上一个会话刚结束，重新取会话
+                    continue;
+                }
+                return replayInConversation(conversation, key, record, request, expectedLength);
+            } finally {
+                conversation.lock.unlock();
+            }
+        }
+    }
+
+    private ResponseData replayInConversation(Conversation conversation, String key, TrafficRecord record,
+                                              byte[] request, int expectedLength) throws IOException {
+        int messageIndex = intMetadata(record, MESSAGE_INDEX_METADATA);
+        if (messageIndex < conversation.lastMessageIndex) {
+            orderingViolations.incrementAndGet();
+        }
+        conversation.lastMessageIndex = messageIndex;
+
+        boolean lastMessage = Boolean.parseBoolean(String.valueOf(record.metadata().get(LAST_MESSAGE_METADATA)));
+        try {
+            if (conversation.connectionLost) {
+                throw new IOException("Connection lost earlier in conversation " + key);
+            }
+            boolean fromIdlePool = conversation.socket == null;
+            if (fromIdlePool) {
+                conversation.socket = pool.acquire();
+            }
+            Result result = send(conversation.socket, request, expectedLength, fromIdlePool);
+            conversation.socket = result.socket();
+            if (!fromIdlePool && result.exchange().closedWithoutResponse()) {
+                // 会话连接被目标中途关闭，与录制行为不同，不能换连接继续
+                pool.release(conversation.socket, false);
+                conversation.socket = null;
+                throw new IOException("Connection closed by target in conversation " + key + " at message " + messageIndex);
+            }
+            if (!result.exchange().reusable()) {
+                pool.release(conversation.socket, false);
+                conversation.socket = null;
+            }
+            return result.toResponseData();
+        } catch (IOException e) {
+            // 会话连接已失效，后续消息不换连接继续
+            conversation.socket = null;
+            conversation.connectionLost = true;
+            throw e;
+        } catch (RuntimeException e) {
+            conversation.socket = null;
+            throw e;
+        } finally {
+            if (lastMessage) {
+                if (conversation.socket != null) {
+                    pool.release(conversation.socket, true);
+                    conversation.socket = null;
+                }
+                conversation.retired = true;
+                conversations.remove(key, conversation);
+            }
+        }
+    }
+
+    // 空闲池中复用的连接可能已被服务端关闭：写失败或未收到任何字节就读到 EOF 时，换新连接重试一次；
+    // 会话中已在使用的连接（fromIdlePool 为 false）不重试
+    private Result send(TcpConnectionPool.PooledSocket socket, byte[] request, int expectedLength,
+                        boolean fromIdlePool) throws IOException {
+        long connectNanos = socket.takeConnectNanos();
+        boolean reused = fromIdlePool && connectNanos == 0;
+        try {
+            Exchange exchange = exchange(socket, request, expectedLength);
+            if (!reused || !exchange.closedWithoutResponse()) {
+                return new Result(socket, exchange, connectNanos);
+            }
+        } catch (IOException e) {
+            if (!reused) {
+                pool.release(socket, false);
+                throw e;
+            }
+        }
+        pool.release(socket, false);
+        staleRetries.increment();
+        TcpConnectionPool.PooledSocket fresh = pool.connect();
+        try {
+            return new Result(fresh, exchange(fresh, request, expectedLength), fresh.takeConnectNanos());
+        } catch (IOException e) {
+            pool.release(fresh, false);
+            throw e;
+        }
+    }
+
+    private static Exchange exchange(TcpConnectionPool.PooledSocket pooled, byte[] request, int expectedLength) throws IOException {
+        var socket = pooled.socket();
+        long startNanos = System.nanoTime();
+        OutputStream out = socket.getOutputStream();
+        out.write(request);
+        out.flush();
+
+        InputStream in = socket.getInputStream();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        boolean eof = false;
+        boolean complete = false;
+        socket.setSoTimeout(expectedLength > 0 ? RESPONSE_TIMEOUT_MILLIS : RESPONSE_IDLE_MILLIS);
+        try {
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                response.write(buffer, 0, bytesRead);
+                if (expectedLength > 0 && response.size() >= expectedLength) {
+                    // 已达到录制的响应长度，顺带取走已到达的多余字节，避免混入下一条消息
+                    while (in.available() > 0 && (bytesRead = in.read(buffer, 0, Math.min(buffer.length, in.available()))) > 0) {
+                        response.write(buffer, 0, bytesRead);
+                    }
+                    complete = true;
+                    break;
+                }
+                socket.setSoTimeout(expectedLength > 0 ? RESPONSE_GAP_MILLIS : RESPONSE_IDLE_MILLIS);
+            }
+            eof = !complete;
+        } catch (SocketTimeoutException e) {
+            // 读取超时，认为响应已完成
+        }
+        long exchangeNanos = System.nanoTime() - startNanos;
+        // 只有响应边界确定（达到录制长度，或本就没有响应）且连接未关闭时才能复用
+        boolean reusable = !eof && (complete || expectedLength == 0);
+        return new Exchange(response.toByteArray(), exchangeNanos, reusable, eof && response.size() == 0);
+    }
+
+    private static int intMetadata(TrafficRecord record, String key) {
+        Object value = record.metadata().get(key);
+        if (value instanceof Number number) {
+            return number.intValue();
+        }
+        try {
+            return value != null ? Integer.parseInt(value.toString()) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    String summary() {
+        return String.format(
+            "tcp pool: connections opened=%d (avg connect %.2f ms), exchanges=%d, reused=%d, conversations=%d, stale retries=%d, ordering violations=%d",
+            pool.getConnectionsOpened(),
+            pool.getAverageConnectMillis(),
+            exchanges.sum(),
+            pool.getReuseCount(),
+            conversationCount.sum(),
+            staleRetries.sum(),
+            orderingViolations.get()
+        );
+    }
+
+    long getExchangeCount() {
+        return exchanges.sum();
+    }
+
+    /**
+     * 关闭池和所有未收到最后一条消息的会话连接
+     */
+    @Override
+    public void close() {
+        for (Conversation conversation : conversations.values()) {
+            conversation.lock.lock();
+            try {
+                if (conversation.socket != null) {
+                    pool.release(conversation.socket, false);
+                    conversation.socket = null;
+                }
+                conversation.retired = true;
+            } finally {
+                conversation.lock.unlock();
+            }
+        }
+        conversations.clear();
+        pool.close();
+    }
+
+    // 一个源连接对应的回放会话，字段受 lock 保护
+    private static final class Conversation {
+        private final ReentrantLock lock = new ReentrantLock();
+        private TcpConnectionPool.PooledSocket socket;
+        private int lastMessageIndex = -1;
+        private boolean retired;
+        private boolean connectionLost;  // 会话连接失效（如被目标中途关闭），后续消息直接失败
+    }
+
+    private record Exchange(byte[] response, long exchangeNanos, boolean reusable, boolean closedWithoutResponse) {
+    }
+
+    private record Result(TcpConnectionPool.PooledSocket socket, Exchange exchange, long connectNanos) {
+
+        ResponseData toResponseData() {
+            long duration = exchange.exchangeNanos() / 1_000_000;
+            return new ResponseData(
+                0,
+                Map.of(),
+                exchange.response(),
+                duration,
+                Map.of(
+                    "durationMicros", exchange.exchangeNanos() / 1_000,
+                    "connectMicros", connectNanos / 1_000,
+                    "connectionReused", connectNanos == 0
+                )
+            );
+        }
+    }
+}
@@ -13,6 +13,7 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -22,12 +23,15 @@ import java.util.concurrent.Executors;
 /**
  * 流量回放引擎
  */
-public class TrafficReplayer {
+public class TrafficReplayer implements AutoCloseable {
 
     private static final Logger log = LoggerFactory.getLogger(TrafficReplayer.class);
     private final HttpClient httpClient;
     private final String targetUrl;
     private final boolean sequentialMode;  // 是否顺序回放
+    private final HttpReplayClient httpReplayClient;  // 自定义 HTTP 传输，为空时使用 JDK HttpClient
+    private volatile TcpConversationReplayer tcpReplayer;  // TCP 连接池与会话，首次回放 TCP 记录时创建
+    private volatile ReplayPlan plan;  // 预编译的请求模板，为空或记录不在计划中时逐条构建请求
 
     // Java HttpClient受限的header列表
     private static final Set<String> RESTRICTED_HEADERS = Set.of(
@@ -39,23 +43,65 @@ public class TrafficReplayer {
     }
 
     public TrafficReplayer(String targetUrl, boolean sequentialMode) {
+        this(targetUrl, sequentialMode, null);
+    }
+
+    /**
+     * 使用指定的 HTTP 传输回放，客户端的生命周期由调用方管理
+     */
+    public TrafficReplayer(String targetUrl, boolean sequentialMode, HttpReplayClient httpReplayClient) {
         this.targetUrl = targetUrl;
         this.sequentialMode = sequentialMode;
+        this.httpReplayClient = httpReplayClient;
         this.httpClient = HttpClient.newBuilder()
             .version(HttpClient.Version.HTTP_1_1)
             .connectTimeout(Duration.ofSeconds(10))
             .build();
     }
 
+    /**
+     * 使用预编译的回放计划，计划中的记录不再逐条规范化 URI、过滤请求头和构建请求
+     * （自定义 HTTP 传输只使用计划的校验结果，请求由传输层构建）
+     */
+    public void usePlan(ReplayPlan plan) {
+        if (plan != null && !plan.getTargetUrl().equals(targetUrl)) {
+            throw new IllegalArgumentException("Replay plan compiled for " + plan.getTargetUrl() + ", not " + targetUrl);
+        }
+        this.plan = plan;
+    }
+
     /**
      * 回放流量
      * 支持顺序回放和并发回放两种模式
      */
     public List<ReplayResult> replay(List<TrafficRecord> records) {
+        return replay(records, null);
+    }
+
+    /**
+     * 回放流量，每条记录回放完成后立即回调监听器（可用于流水线式比对）
+     * 并发模式下监听器会被多个线程同时调用
+     */
+    public List<ReplayResult> replay(List<TrafficRecord> records, ReplayListener listener) {
         if (sequentialMode) {
-            return replaySequential(records);
+            return replaySequential(records, listener);
         } else {
-            return replayConcurrent(records);
+            return replayConcurrent(records, listener);
+        }
+    }
+
+    /**
+     * 回放单条记录，异常会被转换为失败结果
+     */
+    public ReplayResult replay(TrafficRecord record) {
+        try {
+            if ("SOCKET".equals(record.protocol())) {
+                return replayTcp(record);
+            }
+            return replayHttp(record);
+        } catch (Exception e) {
+            log.error("Replay failed for record: {}", record.id(), e);
+            return ReplayResult.failure(record.id(), 0, e.getMessage());
         }
     }
 
@@ -63,7 +109,7 @@ public class TrafficReplayer {
      * 顺序回放：按照录制顺序依次执行
      * 保证请求的执行顺序与录制时一致
      */
-    private List<ReplayResult> replaySequential(List<TrafficRecord> records) {
+    private List<ReplayResult> replaySequential(List<TrafficRecord> records, ReplayListener listener) {
         log.info("Starting sequential replay for {} records", records.size());
         List<ReplayResult> results = new java.util.ArrayList<>();
 
@@ -71,18 +117,9 @@ public class TrafficReplayer {
             TrafficRecord record = records.get(i);
             log.info("Replaying record {}/{}: {}", i + 1, records.size(), record.id());
 
-            try {
-                ReplayResult result;
-                if ("SOCKET".equals(record.protocol())) {
-                    result = replayTcp(record);
-                } else {
-                    result = replayHttp(record);
-                }
-                results.add(result);
-            } catch (Exception e) {
-                log.error("Replay failed for record: {}", record.id(), e);
-                results.add(ReplayResult.failure(record.id(), 0, e.getMessage()));
-            }
+            ReplayResult result = replay(record);
+            results.add(result);
+            notifyListener(listener, i, result);
         }
 
         log.info("Sequential replay completed");
@@ -93,28 +130,35 @@ public class TrafficReplayer {
      * 并发回放：使用Virtual Threads并发执行
      * 注意：不保证执行顺序，但保证结果顺序与请求顺序一致
      */
-    private List<ReplayResult> replayConcurrent(List<TrafficRecord> records) {
+    private List<ReplayResult> replayConcurrent(List<TrafficRecord> records, ReplayListener listener) {
         log.info("Starting concurrent replay for {} records", records.size());
         // 使用数组来保证索引对应关系
         ReplayResult[] resultsArray = new ReplayResult[records.size()];
 
+        // 同一源连接上的 TCP 消息必须在同一个任务内按录制顺序回放
+        Map<String, List<Integer>> conversations = new LinkedHashMap<>();
         try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
             for (int i = 0; i < records.size(); i++) {
                 final int index = i;
                 final TrafficRecord record = records.get(i);
 
+                String conversationKey = TcpConversationReplayer.conversationKey(record);
+                if (conversationKey != null) {
+                    conversations.computeIfAbsent(conversationKey, k -> new java.util.ArrayList<>()).add(index);
+                    continue;
+                }
+                executor.submit(() -> {
+                    ReplayResult result = replay(record);
+                    resultsArray[index] = result;
+                    notifyListener(listener, index, result);
+                });
+            }
+            for (List<Integer> conversation : conversations.values()) {
                 executor.submit(() -> {
-                    try {
-                        ReplayResult result;
-                        if ("SOCKET".equals(record.protocol())) {
-                            result = replayTcp(record);
-                        } else {
-                            result = replayHttp(record);
-                        }
+                    for (int index : conversation) {
+                        ReplayResult result = replay(records.get(index));
                         resultsArray[index] = result;
-                    } catch (Exception e) {
-                        log.error("Replay failed for record: {}", record.id(), e);
-                        resultsArray[index] = ReplayResult.failure(record.id(), 0, e.getMessage());
+                        notifyListener(listener, index, result);
                     }
                 });
             }
@@ -125,13 +169,44 @@ public class TrafficReplayer {
         return List.of(resultsArray);
     }
 
+    /**
+     * TCP 会话键：录制时按消息切分的 TCP 记录返回源连接地址，同一会话键的记录必须在一个任务内按录制顺序回放；
+     * 其他记录返回 null
+     */
+    public static String tcpConversationKey(TrafficRecord record) {
+        return TcpConversationReplayer.conversationKey(record);
+    }
+
+    static void notifyListener(ReplayListener listener, int index, ReplayResult result) {
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onReplayed(index, result);
+        } catch (Exception e) {
+            log.error("Replay listener failed for record: {}", result.recordId(), e);
+        }
+    }
+
     private ReplayResult replayHttp(TrafficRecord record) throws Exception {
-        long startTime = System.currentTimeMillis();
+        ReplayPlan currentPlan = plan;
+        ReplayPlan.PreparedRequest prepared = currentPlan != null ? currentPlan.get(record) : null;
+        if (prepared != null && !prepared.valid()) {
+            // 编译计划时已校验失败，不再发送
+            return ReplayResult.failure(record.id(), 0, prepared.error());
+        }
+        if (httpReplayClient != null) {
+            ResponseData responseData = httpReplayClient.send(record.request());
+            return ReplayResult.success(record.id(), responseData, responseData.duration());
+        }
+
+        long startNanos = System.nanoTime();
 
-        HttpRequest request = buildHttpRequest(record.request());
+        HttpRequest request = prepared != null ? prepared.httpRequest() : buildHttpRequest(record.request());
         HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
 
-        long duration = System.currentTimeMillis() - startTime;
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long duration = elapsedNanos / 1_000_000;
 
         // 转换headers: Map<String, List<String>> -> Map<String, String>
         Map<String, String> headers = new HashMap<>();
@@ -146,100 +221,113 @@ public class TrafficReplayer {
             headers,
             response.body(),
             duration,
-            Map.of()
+            Map.of("durationMicros", elapsedNanos / 1_000)
         );
 
         return ReplayResult.success(record.id(), responseData, duration);
     }
 
     private ReplayResult replayTcp(TrafficRecord record) throws Exception {
-        long startTime = System.currentTimeMillis();
-
-        // 解析目标地址
-        String[] parts = targetUrl.split(":");
-        String host = parts[0];
-        int port = parts.length > 1 ? Integer.parseInt(parts[1]) : 80;
-
-        try (java.net.Socket socket = new java.net.Socket(host, port)) {
-            socket.setSoTimeout(30000);
-
-            // 获取请求数据
-            byte[] requestBody = record.request().body();
-
-            // 发送请求数据
-            socket.getOutputStream().write(requestBody);
-            socket.getOutputStream().flush();
-
-            // 读取响应数据
-            byte[] buffer = new byte[8192];
-            java.io.ByteArrayOutputStream responseStream = new java.io.ByteArrayOutputStream();
-            int bytesRead;
-
-            socket.setSoTimeout(5000); // 设置读取超时
-            try {
-                while ((bytesRead = socket.getInputStream().read(buffer)) != -1) {
-                    responseStream.write(buffer, 0, bytesRead);
-                }
-            } catch (java.net.SocketTimeoutException e) {
-                // 读取超时，认为响应已完成
-            }
-
-            long duration = System.currentTimeMillis() - startTime;
-
-            ResponseData responseData = new ResponseData(
-                0,
-                Map.of(),
-                responseStream.toByteArray(),
-                duration,
-                Map.of()
-            );
-
-            return ReplayResult.success(record.id(), responseData, duration);
+        long startNanos = System.nanoTime();
+        try {
+            ResponseData responseData = tcpReplayer().replay(record);
+            return ReplayResult.success(record.id(), responseData, responseData.duration());
         } catch (Exception e) {
-            long duration = System.currentTimeMillis() - startTime;
+            long duration = (System.nanoTime() - startNanos) / 1_000_000;
             log.error("TCP replay failed", e);
             return ReplayResult.failure(record.id(), duration, e.getMessage());
         }
     }
 
-    private HttpRequest buildHttpRequest(RequestData requestData) {
-        // 构建完整URL
-        String fullUrl = targetUrl;
-        if (!fullUrl.startsWith("http://") && !fullUrl.startsWith("https://")) {
-            fullUrl = "http://" + fullUrl;
+    // 首条 TCP 记录时才解析目标地址并创建连接池
+    private TcpConversationReplayer tcpReplayer() {
+        TcpConversationReplayer current = tcpReplayer;
+        if (current == null) {
+            synchronized (this) {
+                current = tcpReplayer;
+                if (current == null) {
+                    current = new TcpConversationReplayer(targetUrl);
+                    tcpReplayer = current;
+                }
+            }
         }
+        return current;
+    }
 
-        // 规范化URL拼接
-        String uri = normalizeRecordedUri(requestData.uri());
-        if (!fullUrl.endsWith("/") && !uri.startsWith("/")) {
-            fullUrl = fullUrl + "/" + uri;
-        } else if (fullUrl.endsWith("/") && uri.startsWith("/")) {
-            fullUrl = fullUrl + uri.substring(1);
-        } else {
-            fullUrl = fullUrl + uri;
+    /**
+     * TCP 回放的连接池统计，没有回放过 TCP 记录时返回 null
+     */
+    public String tcpSummary() {
+        TcpConversationReplayer current = tcpReplayer;
+        return current != null ? current.summary() : null;
+    }
+
+    /**
+     * 关闭 TCP 连接池（HTTP 客户端由调用方管理）
+     */
+    @Override
+    public void close() {
+        TcpConversationReplayer current = tcpReplayer;
+        if (current != null) {
+            current.close();
         }
+    }
 
+    private HttpRequest buildHttpRequest(RequestData requestData) {
+        String fullUrl = resolveUrl(targetUrl, normalizeRecordedUri(requestData.uri()));
+        return buildHttpRequest(fullUrl, requestData.method(), filterHeaders(requestData.headers()), requestData.body());
+    }
+
+    /**
+     * 构建 JDK HttpRequest，请求头需已过滤；HttpRequest 不可变，可以重复发送
+     */
+    static HttpRequest buildHttpRequest(String fullUrl, String method, Map<String, String> headers, byte[] body) {
         HttpRequest.Builder builder = HttpRequest.newBuilder()
             .uri(URI.create(fullUrl))
             .timeout(Duration.ofSeconds(30));
-
-        // 添加请求头，过滤受限的header
-        requestData.headers().forEach((key, value) -> {
-            if (!RESTRICTED_HEADERS.contains(key.toLowerCase())) {
-                builder.header(key, value);
-            }
-        });
+        headers.forEach(builder::header);
 
         // 设置请求方法和Body
-        HttpRequest.BodyPublisher bodyPublisher = requestData.body() != null
-            ? HttpRequest.BodyPublishers.ofByteArray(requestData.body())
+        HttpRequest.BodyPublisher bodyPublisher = body != null
+            ? HttpRequest.BodyPublishers.ofByteArray(body)
             : HttpRequest.BodyPublishers.noBody();
 
-        builder.method(requestData.method(), bodyPublisher);
+        builder.method(method, bodyPublisher);
 
         return builder.build();
     }
 
+    /**
+     * 拼接目标地址和规范化后的录制 URI
+     */
+    static String resolveUrl(String targetUrl, String uri) {
+        String fullUrl = targetUrl;
+        if (!fullUrl.startsWith("http://") && !fullUrl.startsWith("https://")) {
+            fullUrl = "http://" + fullUrl;
+        }
+        if (!fullUrl.endsWith("/") && !uri.startsWith("/")) {
+            return fullUrl + "/" + uri;
+        } else if (fullUrl.endsWith("/") && uri.startsWith("/")) {
+            return fullUrl + uri.substring(1);
+        }
+        return fullUrl + uri;
+    }
+
+    /**
+     * 过滤 Java HttpClient 不允许设置的请求头，保持原有顺序
+     */
+    static Map<String, String> filterHeaders(Map<String, String> headers) {
+        Map<String, String> filtered = new LinkedHashMap<>();
+        if (headers != null) {
+            headers.forEach((key, value) -> {
+                if (!RESTRICTED_HEADERS.contains(key.toLowerCase())) {
+                    filtered.put(key, value);
+                }
+            });
+        }
+        return filtered;
+    }
+
     static String normalizeRecordedUri(String uri) {
         if (uri == null || uri.isBlank() || "*".equals(uri)) {
             return "/";
@@ -261,4 +349,12 @@ public class TrafficReplayer {
         }
         return "/" + uri;
     }
+
+    /**
+     * 单条记录回放完成回调
+     */
+    @FunctionalInterface
+    public interface ReplayListener {
+        void onReplayed(int index, ReplayResult result);
+    }
 }
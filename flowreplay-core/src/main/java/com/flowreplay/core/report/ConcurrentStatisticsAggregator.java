@@ -0,0 +1,167 @@
+package com.flowreplay.core.report;
+
+import com.flowreplay.core.metrics.LatencyHistogram;
+import com.flowreplay.core.metrics.WriterReaderPhaser;
+import com.flowreplay.core.parser.ServiceNameParser;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 并发接口统计聚合器
+ * 回放线程在结果到达时直接累加（LongAdder 分段计数，无锁），不再需要保留完整的比对报告。
+ * 快照通过相位切换实现：写入始终落在活动区间，快照时换下活动区间、等待在途写入完成后合并，
+ * 因此快照内各计数（总数、匹配数、各接口统计）互相一致。
+ */
+public class ConcurrentStatisticsAggregator {
+
+    private final ServiceNameParser serviceNameParser;
+    private final WriterReaderPhaser phaser = new WriterReaderPhaser();
+    private volatile Interval active = new Interval();
+    private Interval inactive = new Interval();
+    // 以下字段只在持有读锁时访问
+    private final Map<String, ServiceStatistics> accumulated = new LinkedHashMap<>();
+    private long accumulatedTotal;
+    private long accumulatedMatched;
+
+    public ConcurrentStatisticsAggregator(ServiceNameParser serviceNameParser) {
+        this.serviceNameParser = serviceNameParser;
+    }
+
+    /**
+     * 记录一条比对结果（可被任意线程并发调用）
+     */
+    public void record(ComparisonReport report) {
+        String serviceName = serviceNameParser.parseServiceName(report.record());
+        long originalDuration = HtmlReportGenerator.getOriginalDuration(report.record());
+        long originalMicros = HtmlReportGenerator.getOriginalDurationMicros(report.record());
+        long replayMicros = HtmlReportGenerator.getReplayDurationMicros(report);
+
+        long token = phaser.writerCriticalSectionEnter();
+        try {
+            active.service(serviceName).record(
+                report.result().matched(),
+                originalDuration,
+                report.replayDuration(),
+                originalMicros,
+                replayMicros
+            );
+        } finally {
+            phaser.writerCriticalSectionExit(token);
+        }
+    }
+
+    /**
+     * 一致的时间点快照（返回的统计对象为副本，可自由读取）
+     */
+    public Snapshot snapshot() {
+        phaser.readerLock();
+        try {
+            Interval drained = active;
+            active = inactive;
+            inactive = drained;
+            phaser.flipPhase();
+
+            // drained 已无写者，可安全读取并重置
+            drained.services.forEach((serviceName, counters) -> {
+                ServiceStatistics stats = accumulated.computeIfAbsent(serviceName, ServiceStatistics::new);
+                accumulatedTotal += counters.total.sum();
+                accumulatedMatched += counters.matched.sum();
+                counters.drainInto(stats);
+            });
+
+            Map<String, ServiceStatistics> services = new LinkedHashMap<>();
+            accumulated.forEach((serviceName, stats) -> {
+                ServiceStatistics copy = new ServiceStatistics(serviceName);
+                copy.merge(stats);
+                services.put(serviceName, copy);
+            });
+            return new Snapshot(accumulatedTotal, accumulatedMatched, Collections.unmodifiableMap(services));
+        } finally {
+            phaser.readerUnlock();
+        }
+    }
+
+    /**
+     * 统计快照
+     */
+    public record Snapshot(
+        long totalCount,
+        long matchedCount,
+        Map<String, ServiceStatistics> services    // 按首次出现顺序
+    ) {
+        public long mismatchedCount() {
+            return totalCount - matchedCount;
+        }
+
+        public double successRate() {
+            return totalCount == 0 ? 0.0 : matchedCount * 100.0 / totalCount;
+        }
+    }
+
+    // 一个相位内的写入区间
+    private static final class Interval {
+        private final Map<String, ServiceCounters> services = new ConcurrentHashMap<>();
+
+        private ServiceCounters service(String serviceName) {
+            ServiceCounters counters = services.get(serviceName);
+            return counters != null ? counters : services.computeIfAbsent(serviceName, name -> new ServiceCounters());
+        }
+    }
+
+    // 单个接口的分段计数
+    private static final class ServiceCounters {
+        private final LongAdder total = new LongAdder();
+        private final LongAdder matched = new LongAdder();
+        private final LongAdder originalTotal = new LongAdder();
+        private final LongAdder replayTotal = new LongAdder();
+        private final LongAccumulator originalMin = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        private final LongAccumulator originalMax = new LongAccumulator(Math::max, 0);
+        private final LongAccumulator replayMin = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        private final LongAccumulator replayMax = new LongAccumulator(Math::max, 0);
+        private final LatencyHistogram originalLatency = new LatencyHistogram();
+        private final LatencyHistogram replayLatency = new LatencyHistogram();
+
+        private void record(boolean isMatched, long originalDuration, long replayDuration, long originalMicros, long replayMicros) {
+            total.increment();
+            if (isMatched) {
+                matched.increment();
+            }
+            originalTotal.add(originalDuration);
+            replayTotal.add(replayDuration);
+            originalMin.accumulate(originalDuration);
+            originalMax.accumulate(originalDuration);
+            replayMin.accumulate(replayDuration);
+            replayMax.accumulate(replayDuration);
+            originalLatency.record(originalMicros);
+            replayLatency.record(replayMicros);
+        }
+
+        private void drainInto(ServiceStatistics stats) {
+            int totalCount = (int) total.sumThenReset();
+            int matchedCount = (int) matched.sumThenReset();
+            if (totalCount == 0) {
+                return;
+            }
+            stats.merge(
+                totalCount,
+                matchedCount,
+                totalCount - matchedCount,
+                originalTotal.sumThenReset(),
+                originalMin.getThenReset(),
+                originalMax.getThenReset(),
+                replayTotal.sumThenReset(),
+                replayMin.getThenReset(),
+                replayMax.getThenReset(),
+                originalLatency,
+                replayLatency
+            );
+            originalLatency.reset();
+            replayLatency.reset();
+        }
+    }
+}
@@ -1,58 +1,130 @@
 package com.flowreplay.core.report;
 
+import com.flowreplay.core.metrics.LatencyHistogram;
 import com.flowreplay.core.model.ComparisonResult;
 import com.flowreplay.core.model.Difference;
 import com.flowreplay.core.model.TrafficRecord;
 import com.flowreplay.core.parser.ServiceNameParser;
 import com.flowreplay.core.parser.ServiceNameParserFactory;
 
-import java.io.FileWriter;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * HTML差异报告生成器 - IDEA风格
+ * 报告以流式方式写出：逐条写入详细列表的同时累计统计，内存占用与单条记录相当。
  */
 public class HtmlReportGenerator {
 
+    private static final int SHARD_PAGE_SIZE = 200;
+
+    private final LineDiff lineDiff;
+    private final int lineDiffMaxEditDistance;
     private ServiceNameParser serviceNameParser;
 
+    public HtmlReportGenerator() {
+        this(LineDiff.DEFAULT_CONTEXT_LINES, LineDiff.DEFAULT_MAX_EDIT_DISTANCE);
+    }
+
+    /**
+     * @param diffContextLines     差异块前后保留的未变化行数
+     * @param diffMaxEditDistance  逐行对比的编辑距离上限，超过时只输出摘要
+     */
+    public HtmlReportGenerator(int diffContextLines, int diffMaxEditDistance) {
+        this.lineDiff = new LineDiff(diffContextLines, diffMaxEditDistance);
+        this.lineDiffMaxEditDistance = diffMaxEditDistance;
+    }
+
     public void generateReport(List<ComparisonReport> reports, String outputPath) throws IOException {
         generateReport(reports, outputPath, null);
     }
 
     public void generateReport(List<ComparisonReport> reports, String outputPath, String parserName) throws IOException {
+        generateReport(reports.iterator(), outputPath, parserName);
+    }
+
+    public void generateReport(Stream<ComparisonReport> reports, String outputPath, String parserName) throws IOException {
+        generateReport(reports.iterator(), outputPath, parserName);
+    }
+
+    /**
+     * 流式生成报告，报告只会被遍历一次
+     * 详细列表先写入临时文件，同时累计统计信息；最后按 头部 → 统计 → 详细列表 的顺序拼接成最终文件
+     */
+    public void generateReport(Iterator<ComparisonReport> reports, String outputPath, String parserName) throws IOException {
         this.serviceNameParser = ServiceNameParserFactory.getParser(parserName);
 
-        StringBuilder html = new StringBuilder();
+        Path output = Paths.get(outputPath).toAbsolutePath();
+        Path parent = output.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path detailsFile = Files.createTempFile(parent, ".flowreplay-report-", ".part");
+        try {
+            ReportTotals totals = new ReportTotals();
+            try (Writer details = Files.newBufferedWriter(detailsFile, StandardCharsets.UTF_8)) {
+                appendDetailedReports(details, reports, totals);
+            }
 
-        html.append("<!DOCTYPE html>\n");
-        html.append("<html lang=\"zh-CN\">\n");
-        html.append("<head>\n");
-        html.append("    <meta charset=\"UTF-8\">\n");
-        html.append("    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n");
-        html.append("    <title>FlowReplay 差异报告</title>\n");
-        appendStyles(html);
-        appendScripts(html);
-        html.append("</head>\n");
-        html.append("<body>\n");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+                Writer html = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                html.append("<!DOCTYPE html>\n");
+                html.append("<html lang=\"zh-CN\">\n");
+                html.append("<head>\n");
+                html.append("    <meta charset=\"UTF-8\">\n");
+                html.append("    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n");
+                html.append("    <title>FlowReplay 差异报告</title>\n");
+                appendStyles(html);
+                appendScripts(html);
+                html.append("</head>\n");
+                html.append("<body>\n");
+
+                appendHeader(html);
+                appendSummary(html, totals);
+                html.flush();
+
+                Files.copy(detailsFile, out);
+
+                html.append("</body>\n");
+                html.append("</html>\n");
+                html.flush();
+            }
+        } finally {
+            Files.deleteIfExists(detailsFile);
+        }
+    }
 
-        appendHeader(html, reports);
-        appendSummary(html, reports);
-        appendDetailedReports(html, reports);
+    public void generateShardedReport(List<ComparisonReport> reports, String outputDir, String parserName) throws IOException {
+        generateShardedReport(reports.iterator(), outputDir, parserName);
+    }
 
-        html.append("</body>\n");
-        html.append("</html>\n");
+    public void generateShardedReport(Stream<ComparisonReport> reports, String outputDir, String parserName) throws IOException {
+        generateShardedReport(reports.iterator(), outputDir, parserName);
+    }
 
-        try (FileWriter writer = new FileWriter(outputPath)) {
-            writer.write(html.toString());
-        }
+    /**
+     * 生成分片报告目录（index.html + 按需加载的数据分片），适用于大规模回放
+     * 报告只会被遍历一次，内存占用与在途分页数相当
+     */
+    public void generateShardedReport(Iterator<ComparisonReport> reports, String outputDir, String parserName) throws IOException {
+        ServiceNameParser parser = ServiceNameParserFactory.getParser(parserName);
+        int parallelism = Math.min(4, Runtime.getRuntime().availableProcessors());
+        new ShardedReportWriter(Paths.get(outputDir).toAbsolutePath(), parser, SHARD_PAGE_SIZE, parallelism).write(reports);
     }
 
-    private void appendStyles(StringBuilder html) {
+    static void appendStyles(Writer html) throws IOException {
         html.append("    <style>\n");
         html.append("        body { font-family: Arial, sans-serif; margin: 20px; background: #f5f5f5; }\n");
         html.append("        .header { background: #2196F3; color: white; padding: 20px; border-radius: 5px; }\n");
@@ -98,6 +170,8 @@ public class HtmlReportGenerator {
         html.append("        .idea-diff-line.added { background: #ddfbe6; }\n");
         html.append("        .idea-diff-line.removed { background: #ffebe9; }\n");
         html.append("        .idea-diff-line.empty { background: #f5f5f5; }\n");
+        html.append("        .idea-diff-line.skipped { background: #f1f8ff; color: #586069; font-style: italic; }\n");
+        html.append("        .idea-diff-summary { padding: 8px 12px; margin: 10px 0; background: #fffbdd; border: 1px solid #d9d0a5; border-radius: 3px; }\n");
 
         // 接口统计表格样式
         html.append("        .service-stats-table { width: 100%; border-collapse: collapse; margin-top: 15px; }\n");
@@ -109,7 +183,7 @@ public class HtmlReportGenerator {
         html.append("    </style>\n");
     }
 
-    private void appendScripts(StringBuilder html) {
+    static void appendScripts(Writer html) throws IOException {
         html.append("    <script>\n");
         html.append("        function toggleContent(id) {\n");
         html.append("            const title = document.getElementById('title-' + id);\n");
@@ -128,31 +202,31 @@ public class HtmlReportGenerator {
         html.append("    </script>\n");
     }
 
-    private void appendHeader(StringBuilder html, List<ComparisonReport> reports) {
+    private void appendHeader(Writer html) throws IOException {
         html.append("    <div class=\"header\">\n");
         html.append("        <h1>FlowReplay 差异报告</h1>\n");
         html.append("        <p>生成时间: ").append(DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(Instant.now().atZone(java.time.ZoneId.systemDefault()))).append("</p>\n");
         html.append("    </div>\n");
     }
 
-    private void appendSummary(StringBuilder html, List<ComparisonReport> reports) {
-        long totalCount = reports.size();
-        long matchedCount = reports.stream().filter(r -> r.result().matched()).count();
+    private void appendSummary(Writer html, ReportTotals totals) throws IOException {
+        long totalCount = totals.totalCount;
+        long matchedCount = totals.matchedCount;
         long mismatchedCount = totalCount - matchedCount;
         double successRate = totalCount > 0 ? (matchedCount * 100.0 / totalCount) : 0;
 
         html.append("    <div class=\"summary\">\n");
         html.append("        <h2>总体统计</h2>\n");
         html.append("        <div class=\"stat\">\n");
-        html.append("            <div class=\"stat-value\">").append(totalCount).append("</div>\n");
+        html.append("            <div class=\"stat-value\">").append(String.valueOf(totalCount)).append("</div>\n");
         html.append("            <div class=\"stat-label\">总请求数</div>\n");
         html.append("        </div>\n");
         html.append("        <div class=\"stat\">\n");
-        html.append("            <div class=\"stat-value success\">").append(matchedCount).append("</div>\n");
+        html.append("            <div class=\"stat-value success\">").append(String.valueOf(matchedCount)).append("</div>\n");
         html.append("            <div class=\"stat-label\">匹配成功</div>\n");
         html.append("        </div>\n");
         html.append("        <div class=\"stat\">\n");
-        html.append("            <div class=\"stat-value failed\">").append(mismatchedCount).append("</div>\n");
+        html.append("            <div class=\"stat-value failed\">").append(String.valueOf(mismatchedCount)).append("</div>\n");
         html.append("            <div class=\"stat-label\">匹配失败</div>\n");
         html.append("        </div>\n");
         html.append("        <div class=\"stat\">\n");
@@ -162,30 +236,10 @@ public class HtmlReportGenerator {
         html.append("    </div>\n");
 
         // 按接口统计
-        appendServiceStatistics(html, reports);
+        appendServiceStatistics(html, totals.statsMap);
     }
 
-    private void appendServiceStatistics(StringBuilder html, List<ComparisonReport> reports) {
-        // 统计每个接口的数据
-        Map<String, ServiceStatistics> statsMap = new LinkedHashMap<>();
-
-        for (ComparisonReport report : reports) {
-            String serviceName = serviceNameParser.parseServiceName(report.record());
-            ServiceStatistics stats = statsMap.computeIfAbsent(serviceName, ServiceStatistics::new);
-
-            stats.incrementTotal();
-            if (report.result().matched()) {
-                stats.incrementMatched();
-            } else {
-                stats.incrementMismatched();
-            }
-
-            // 添加耗时统计
-            long originalDuration = getOriginalDuration(report.record());
-            long replayDuration = report.replayDuration();
-            stats.addDuration(originalDuration, replayDuration);
-        }
-
+    private void appendServiceStatistics(Writer html, Map<String, ServiceStatistics> statsMap) throws IOException {
         // 生成HTML表格
         html.append("    <div class=\"summary\">\n");
         html.append("        <h2>接口统计</h2>\n");
@@ -197,16 +251,18 @@ public class HtmlReportGenerator {
         html.append("                    <th rowspan=\"2\">匹配成功</th>\n");
         html.append("                    <th rowspan=\"2\">匹配失败</th>\n");
         html.append("                    <th rowspan=\"2\">成功率</th>\n");
-        html.append("                    <th colspan=\"3\">原始耗时(ms)</th>\n");
-        html.append("                    <th colspan=\"3\">回放耗时(ms)</th>\n");
+        html.append("                    <th colspan=\"6\">原始耗时(ms)</th>\n");
+        html.append("                    <th colspan=\"6\">回放耗时(ms)</th>\n");
         html.append("                </tr>\n");
         html.append("                <tr>\n");
-        html.append("                    <th>平均</th>\n");
-        html.append("                    <th>最小</th>\n");
-        html.append("                    <th>最大</th>\n");
-        html.append("                    <th>平均</th>\n");
-        html.append("                    <th>最小</th>\n");
-        html.append("                    <th>最大</th>\n");
+        for (int i = 0; i < 2; i++) {
+            html.append("                    <th>平均</th>\n");
+            html.append("                    <th>最小</th>\n");
+            html.append("                    <th>最大</th>\n");
+            html.append("                    <th>P50</th>\n");
+            html.append("                    <th>P95</th>\n");
+            html.append("                    <th>P99</th>\n");
+        }
         html.append("                </tr>\n");
         html.append("            </thead>\n");
         html.append("            <tbody>\n");
@@ -214,27 +270,79 @@ public class HtmlReportGenerator {
         for (ServiceStatistics stats : statsMap.values()) {
             html.append("                <tr>\n");
             html.append("                    <td>").append(escapeHtml(stats.getServiceName())).append("</td>\n");
-            html.append("                    <td>").append(stats.getTotalCount()).append("</td>\n");
-            html.append("                    <td class=\"success\">").append(stats.getMatchedCount()).append("</td>\n");
-            html.append("                    <td class=\"failed\">").append(stats.getMismatchedCount()).append("</td>\n");
+            html.append("                    <td>").append(String.valueOf(stats.getTotalCount())).append("</td>\n");
+            html.append("                    <td class=\"success\">").append(String.valueOf(stats.getMatchedCount())).append("</td>\n");
+            html.append("                    <td class=\"failed\">").append(String.valueOf(stats.getMismatchedCount())).append("</td>\n");
             html.append("                    <td>").append(String.format("%.2f%%", stats.getSuccessRate())).append("</td>\n");
             // 原始耗时
             html.append("                    <td>").append(String.format("%.2f", stats.getOriginalAvgDuration())).append("</td>\n");
-            html.append("                    <td>").append(stats.getOriginalMinDuration()).append("</td>\n");
-            html.append("                    <td>").append(stats.getOriginalMaxDuration()).append("</td>\n");
+            html.append("                    <td>").append(String.valueOf(stats.getOriginalMinDuration())).append("</td>\n");
+            html.append("                    <td>").append(String.valueOf(stats.getOriginalMaxDuration())).append("</td>\n");
+            appendPercentiles(html, stats.getOriginalHistogram());
             // 回放耗时
             html.append("                    <td>").append(String.format("%.2f", stats.getReplayAvgDuration())).append("</td>\n");
-            html.append("                    <td>").append(stats.getReplayMinDuration()).append("</td>\n");
-            html.append("                    <td>").append(stats.getReplayMaxDuration()).append("</td>\n");
+            html.append("                    <td>").append(String.valueOf(stats.getReplayMinDuration())).append("</td>\n");
+            html.append("                    <td>").append(String.valueOf(stats.getReplayMaxDuration())).append("</td>\n");
+            appendPercentiles(html, stats.getReplayHistogram());
             html.append("                </tr>\n");
         }
 
         html.append("            </tbody>\n");
         html.append("        </table>\n");
         html.append("    </div>\n");
+
+        appendLatencyDistribution(html, statsMap);
+    }
+
+    private void appendPercentiles(Writer html, LatencyHistogram histogram) throws IOException {
+        for (double percentile : new double[]{50, 95, 99}) {
+            html.append("                    <td>").append(String.format("%.2f", histogram.getValueAtPercentile(percentile) / 1000.0)).append("</td>\n");
+        }
+    }
+
+    /**
+     * 每个接口原始/回放耗时的分布（按固定区间计数）
+     */
+    private void appendLatencyDistribution(Writer html, Map<String, ServiceStatistics> statsMap) throws IOException {
+        html.append("    <div class=\"summary\">\n");
+        html.append("        <h2>耗时分布</h2>\n");
+        html.append("        <table class=\"service-stats-table\">\n");
+        html.append("            <thead>\n");
+        html.append("                <tr>\n");
+        html.append("                    <th>接口名称</th>\n");
+        html.append("                    <th>类型</th>\n");
+        for (LatencyHistogram.DistributionBucket bucket : new LatencyHistogram().getDistribution()) {
+            html.append("                    <th>").append(escapeHtml(bucket.label())).append("</th>\n");
+        }
+        html.append("                </tr>\n");
+        html.append("            </thead>\n");
+        html.append("            <tbody>\n");
+        for (ServiceStatistics stats : statsMap.values()) {
+            appendDistributionRow(html, stats.getServiceName(), "原始", stats.getOriginalHistogram());
+            appendDistributionRow(html, stats.getServiceName(), "回放", stats.getReplayHistogram());
+        }
+        html.append("            </tbody>\n");
+        html.append("        </table>\n");
+        html.append("    </div>\n");
+    }
+
+    private void appendDistributionRow(Writer html, String serviceName, String type, LatencyHistogram histogram) throws IOException {
+        long total = histogram.getCount();
+        html.append("                <tr>\n");
+        html.append("                    <td>").append(escapeHtml(serviceName)).append("</td>\n");
+        html.append("                    <td>").append(type).append("</td>\n");
+        for (LatencyHistogram.DistributionBucket bucket : histogram.getDistribution()) {
+            html.append("                    <td>");
+            if (bucket.count() > 0) {
+                html.append(String.valueOf(bucket.count()))
+                    .append(String.format(" (%.1f%%)", bucket.count() * 100.0 / total));
+            }
+            html.append("</td>\n");
+        }
+        html.append("                </tr>\n");
     }
 
-    private void appendDetailedReports(StringBuilder html, List<ComparisonReport> reports) {
+    private void appendDetailedReports(Writer html, Iterator<ComparisonReport> reports, ReportTotals totals) throws IOException {
         html.append("    <div class=\"details\">\n");
         html.append("        <h2>详细差异列表</h2>\n");
         html.append("        <div class=\"toggle-all\">\n");
@@ -242,21 +350,23 @@ public class HtmlReportGenerator {
         html.append("            <button onclick=\"collapseAll()\">折叠全部</button>\n");
         html.append("        </div>\n");
 
-        for (int i = 0; i < reports.size(); i++) {
-            ComparisonReport report = reports.get(i);
-            appendSingleReport(html, report, i);
+        int index = 0;
+        while (reports.hasNext()) {
+            ComparisonReport report = reports.next();
+            String serviceName = serviceNameParser.parseServiceName(report.record());
+            totals.add(report, serviceName, getOriginalDuration(report.record()));
+            appendSingleReport(html, report, serviceName, index++);
         }
 
         html.append("    </div>\n");
     }
 
-    private void appendSingleReport(StringBuilder html, ComparisonReport report, int index) {
+    private void appendSingleReport(Writer html, ComparisonReport report, String serviceName, int index) throws IOException {
         String cssClass = report.result().matched() ? "matched" : "mismatched";
         TrafficRecord record = report.record();
-        String serviceName = serviceNameParser.parseServiceName(record);
 
         html.append("        <div class=\"report-item ").append(cssClass).append("\">\n");
-        html.append("            <h3>请求 #").append(index + 1).append(" - ").append(escapeHtml(record.id())).append("</h3>\n");
+        html.append("            <h3>请求 #").append(String.valueOf(index + 1)).append(" - ").append(escapeHtml(record.id())).append("</h3>\n");
         html.append("            <p><strong>协议:</strong> ").append(record.protocol()).append("</p>\n");
         html.append("            <p><strong>URI:</strong> ").append(escapeHtml(record.request().uri())).append("</p>\n");
         html.append("            <p><strong>方法:</strong> ").append(record.request().method()).append("</p>\n");
@@ -271,9 +381,9 @@ public class HtmlReportGenerator {
         String replayTime = formatTimestamp(report.replayTimestamp());
 
         html.append("            <p><strong>原始请求时间:</strong> ").append(originalTime).append("</p>\n");
-        html.append("            <p><strong>原始耗时:</strong> ").append(originalDuration).append(" ms</p>\n");
+        html.append("            <p><strong>原始耗时:</strong> ").append(String.valueOf(originalDuration)).append(" ms</p>\n");
         html.append("            <p><strong>回放请求时间:</strong> ").append(replayTime).append("</p>\n");
-        html.append("            <p><strong>回放耗时:</strong> ").append(replayDuration).append(" ms</p>\n");
+        html.append("            <p><strong>回放耗时:</strong> ").append(String.valueOf(replayDuration)).append(" ms</p>\n");
 
         // 显示原始请求
         appendRequestDetails(html, record, index);
@@ -289,7 +399,7 @@ public class HtmlReportGenerator {
         html.append("        </div>\n");
     }
 
-    private void appendRequestDetails(StringBuilder html, TrafficRecord record, int index) {
+    private void appendRequestDetails(Writer html, TrafficRecord record, int index) throws IOException {
         String id = "req-" + index;
         html.append("            <div class=\"content-section\">\n");
         html.append("                <div class=\"content-title collapsed\" id=\"title-").append(id).append("\" onclick=\"toggleContent('").append(id).append("')\">\n");
@@ -298,9 +408,9 @@ public class HtmlReportGenerator {
         html.append("                <div class=\"content-box collapsed\" id=\"content-").append(id).append("\">\n");
 
         html.append("<strong>Headers:</strong>\n");
-        record.request().headers().forEach((key, value) ->
-            html.append(escapeHtml(key)).append(": ").append(escapeHtml(value)).append("\n")
-        );
+        for (Map.Entry<String, String> header : record.request().headers().entrySet()) {
+            html.append(escapeHtml(header.getKey())).append(": ").append(escapeHtml(header.getValue())).append("\n");
+        }
 
         if (record.request().body() != null && record.request().body().length > 0) {
             html.append("\n<strong>Body:</strong>\n");
@@ -311,7 +421,7 @@ public class HtmlReportGenerator {
         html.append("            </div>\n");
     }
 
-    private void appendResponseComparison(StringBuilder html, ComparisonReport report, int index) {
+    private void appendResponseComparison(Writer html, ComparisonReport report, int index) throws IOException {
         String id = "resp-" + index;
         html.append("            <div class=\"content-section\">\n");
         html.append("                <div class=\"content-title collapsed\" id=\"title-").append(id).append("\" onclick=\"toggleContent('").append(id).append("')\">\n");
@@ -345,19 +455,19 @@ public class HtmlReportGenerator {
         html.append("            </div>\n");
     }
 
-    private void appendResponseContent(StringBuilder html, com.flowreplay.core.model.ResponseData response) {
-        html.append("<strong>Status:</strong> ").append(response.statusCode()).append("\n\n");
+    private void appendResponseContent(Writer html, com.flowreplay.core.model.ResponseData response) throws IOException {
+        html.append("<strong>Status:</strong> ").append(String.valueOf(response.statusCode())).append("\n\n");
         html.append("<strong>Headers:</strong>\n");
-        response.headers().forEach((key, value) ->
-            html.append(escapeHtml(key)).append(": ").append(escapeHtml(value)).append("\n")
-        );
+        for (Map.Entry<String, String> header : response.headers().entrySet()) {
+            html.append(escapeHtml(header.getKey())).append(": ").append(escapeHtml(header.getValue())).append("\n");
+        }
         if (response.body() != null && response.body().length > 0) {
             html.append("\n<strong>Body:</strong>\n");
             html.append(escapeHtml(bytesToString(response.body())));
         }
     }
 
-    private void appendIdeaDiffComparison(StringBuilder html, ComparisonReport report, int index) {
+    private void appendIdeaDiffComparison(Writer html, ComparisonReport report, int index) throws IOException {
         String id = "diff-" + index;
         html.append("            <div class=\"content-section\">\n");
         html.append("                <div class=\"content-title collapsed\" id=\"title-").append(id).append("\" onclick=\"toggleContent('").append(id).append("')\">\n");
@@ -368,8 +478,12 @@ public class HtmlReportGenerator {
         String expected = formatResponse(report.record().response());
         String actual = formatResponse(report.replayedResponse());
 
-        List<DiffLine> diffLines = generateDiff(expected, actual);
-        appendIdeaDiffView(html, diffLines);
+        LineDiff.Result diff = lineDiff.diff(expected, actual);
+        if (diff.exceeded()) {
+            appendDiffSummary(html, diff, expected, actual);
+        } else {
+            appendIdeaDiffView(html, diff.rows());
+        }
 
         html.append("                </div>\n");
         html.append("            </div>\n");
@@ -391,72 +505,92 @@ public class HtmlReportGenerator {
         return sb.toString();
     }
 
-    private List<DiffLine> generateDiff(String expected, String actual) {
-        List<DiffLine> diffLines = new ArrayList<>();
-        String[] expectedLines = expected.split("\n", -1);
-        String[] actualLines = actual.split("\n", -1);
-
-        int maxLen = Math.max(expectedLines.length, actualLines.length);
-        for (int i = 0; i < maxLen; i++) {
-            String expectedLine = i < expectedLines.length ? expectedLines[i] : null;
-            String actualLine = i < actualLines.length ? actualLines[i] : null;
-
-            if (expectedLine != null && actualLine != null) {
-                if (expectedLine.equals(actualLine)) {
-                    diffLines.add(new DiffLine(DiffType.UNCHANGED, i + 1, i + 1, expectedLine, actualLine));
-                } else {
-                    diffLines.add(new DiffLine(DiffType.CHANGED, i + 1, i + 1, expectedLine, actualLine));
-                }
-            } else if (expectedLine != null) {
-                diffLines.add(new DiffLine(DiffType.REMOVED, i + 1, -1, expectedLine, ""));
-            } else if (actualLine != null) {
-                diffLines.add(new DiffLine(DiffType.ADDED, -1, i + 1, "", actualLine));
-            }
-        }
-
-        return diffLines;
-    }
-
-    private void appendIdeaDiffView(StringBuilder html, List<DiffLine> diffLines) {
+    private void appendIdeaDiffView(Writer html, List<LineDiff.Row> rows) throws IOException {
         html.append("                    <div class=\"idea-diff-container\">\n");
 
         // 左侧：期望响应
         html.append("                        <div class=\"idea-diff-side left\">\n");
         html.append("                            <div class=\"idea-diff-header expected\">期望响应</div>\n");
-        for (DiffLine line : diffLines) {
-            String cssClass = switch (line.type) {
+        for (LineDiff.Row row : rows) {
+            String cssClass = switch (row.type()) {
                 case REMOVED -> "removed";
                 case CHANGED -> "changed";
                 case UNCHANGED -> "unchanged";
                 case ADDED -> "empty";
+                case SKIPPED -> "skipped";
             };
-            html.append("                            <div class=\"idea-diff-line ").append(cssClass).append("\">\n");
-            html.append("                                <div class=\"idea-diff-line-number\">").append(line.oldLineNum > 0 ? line.oldLineNum : "").append("</div>\n");
-            html.append("                                <div class=\"idea-diff-line-content\">").append(escapeHtml(line.expectedContent)).append("</div>\n");
-            html.append("                            </div>\n");
+            appendDiffLine(html, cssClass, row, row.oldLineNum(), row.expectedContent());
         }
         html.append("                        </div>\n");
 
         // 右侧：实际响应
         html.append("                        <div class=\"idea-diff-side right\">\n");
         html.append("                            <div class=\"idea-diff-header actual\">实际响应</div>\n");
-        for (DiffLine line : diffLines) {
-            String cssClass = switch (line.type) {
+        for (LineDiff.Row row : rows) {
+            String cssClass = switch (row.type()) {
                 case ADDED -> "added";
                 case CHANGED -> "changed";
                 case UNCHANGED -> "unchanged";
                 case REMOVED -> "empty";
+                case SKIPPED -> "skipped";
             };
-            html.append("                            <div class=\"idea-diff-line ").append(cssClass).append("\">\n");
-            html.append("                                <div class=\"idea-diff-line-number\">").append(line.newLineNum > 0 ? line.newLineNum : "").append("</div>\n");
-            html.append("                                <div class=\"idea-diff-line-content\">").append(escapeHtml(line.actualContent)).append("</div>\n");
-            html.append("                            </div>\n");
+            appendDiffLine(html, cssClass, row, row.newLineNum(), row.actualContent());
         }
         html.append("                        </div>\n");
 
         html.append("                    </div>\n");
     }
 
+    private void appendDiffLine(Writer html, String cssClass, LineDiff.Row row, int lineNum, String content) throws IOException {
+        if (row.type() == LineDiff.RowType.SKIPPED) {
+            // 折叠的未变化区域，两侧各占一行保持对齐
+            appendDiffLine(html, cssClass, "⋯", "省略 " + row.skippedLines() + " 行未变化内容");
+        } else {
+            appendDiffLine(html, cssClass, lineNum > 0 ? String.valueOf(lineNum) : "", escapeHtml(content));
+        }
+    }
+
+    private void appendDiffLine(Writer html, String cssClass, String lineNumber, String escapedContent) throws IOException {
+        html.append("                            <div class=\"idea-diff-line ").append(cssClass).append("\">\n");
+        html.append("                                <div class=\"idea-diff-line-number\">").append(lineNumber).append("</div>\n");
+        html.append("                                <div class=\"idea-diff-line-content\">").append(escapedContent).append("</div>\n");
+        html.append("                            </div>\n");
+    }
+
+    /**
+     * 编辑距离超过上限时只输出摘要和第一处差异
+     */
+    private void appendDiffSummary(Writer html, LineDiff.Result diff, String expected, String actual) throws IOException {
+        html.append("                    <div class=\"idea-diff-summary\">\n");
+        html.append("                        差异过大（编辑距离超过 ").append(String.valueOf(lineDiffMaxEditDistance))
+            .append(" 行），已省略逐行对比：期望 ").append(String.valueOf(diff.expectedLineCount()))
+            .append(" 行，实际 ").append(String.valueOf(diff.actualLineCount()))
+            .append(" 行，首个差异位于第 ").append(String.valueOf(diff.firstDifferentLine())).append(" 行\n");
+        html.append("                    </div>\n");
+        html.append("                    <div class=\"idea-diff-container\">\n");
+        html.append("                        <div class=\"idea-diff-side left\">\n");
+        html.append("                            <div class=\"idea-diff-header expected\">期望响应（第 ").append(String.valueOf(diff.firstDifferentLine())).append(" 行）</div>\n");
+        appendDiffLine(html, "changed", String.valueOf(diff.firstDifferentLine()), escapeHtml(lineAt(expected, diff.firstDifferentLine())));
+        html.append("                        </div>\n");
+        html.append("                        <div class=\"idea-diff-side right\">\n");
+        html.append("                            <div class=\"idea-diff-header actual\">实际响应（第 ").append(String.valueOf(diff.firstDifferentLine())).append(" 行）</div>\n");
+        appendDiffLine(html, "changed", String.valueOf(diff.firstDifferentLine()), escapeHtml(lineAt(actual, diff.firstDifferentLine())));
+        html.append("                        </div>\n");
+        html.append("                    </div>\n");
+    }
+
+    private static String lineAt(String text, int lineNum) {
+        int start = 0;
+        for (int i = 1; i < lineNum; i++) {
+            start = text.indexOf('\n', start) + 1;
+            if (start == 0) {
+                return "";
+            }
+        }
+        int end = text.indexOf('\n', start);
+        return end < 0 ? text.substring(start) : text.substring(start, end);
+    }
+
     private String bytesToString(byte[] bytes) {
         if (bytes == null) return "";
         try {
@@ -466,7 +600,7 @@ public class HtmlReportGenerator {
         }
     }
 
-    private String escapeHtml(String text) {
+    static String escapeHtml(String text) {
         if (text == null) return "";
         return text.replace("&", "&amp;")
                    .replace("<", "&lt;")
@@ -478,7 +612,7 @@ public class HtmlReportGenerator {
     /**
      * 获取原始请求的耗时（从metadata中读取）
      */
-    private long getOriginalDuration(TrafficRecord record) {
+    static long getOriginalDuration(TrafficRecord record) {
         Object duration = record.metadata().get("duration");
         if (duration instanceof Long) {
             return (Long) duration;
@@ -488,10 +622,31 @@ public class HtmlReportGenerator {
         return 0L;
     }
 
+    /**
+     * 获取原始请求的微秒耗时，旧录制文件没有微秒值时按毫秒换算
+     */
+    static long getOriginalDurationMicros(TrafficRecord record) {
+        if (record.metadata().get("durationMicros") instanceof Number micros) {
+            return micros.longValue();
+        }
+        return getOriginalDuration(record) * 1000;
+    }
+
+    /**
+     * 获取回放的微秒耗时（从回放响应的metadata中读取），缺失时按毫秒换算
+     */
+    static long getReplayDurationMicros(ComparisonReport report) {
+        com.flowreplay.core.model.ResponseData response = report.replayedResponse();
+        if (response != null && response.metadata().get("durationMicros") instanceof Number micros) {
+            return micros.longValue();
+        }
+        return report.replayDuration() * 1000;
+    }
+
     /**
      * 格式化时间戳
      */
-    private String formatTimestamp(java.time.Instant timestamp) {
+    static String formatTimestamp(java.time.Instant timestamp) {
         if (timestamp == null) {
             return "N/A";
         }
@@ -499,28 +654,28 @@ public class HtmlReportGenerator {
             .format(timestamp.atZone(java.time.ZoneId.systemDefault()));
     }
 
-    // 内部类：差异行
-    private static class DiffLine {
-        DiffType type;
-        int oldLineNum;
-        int newLineNum;
-        String expectedContent;
-        String actualContent;
-
-        DiffLine(DiffType type, int oldLineNum, int newLineNum, String expectedContent, String actualContent) {
-            this.type = type;
-            this.oldLineNum = oldLineNum;
-            this.newLineNum = newLineNum;
-            this.expectedContent = expectedContent;
-            this.actualContent = actualContent;
-        }
-    }
+    // 内部类：流式写出过程中累计的统计信息
+    private static class ReportTotals {
+        long totalCount;
+        long matchedCount;
+        final Map<String, ServiceStatistics> statsMap = new LinkedHashMap<>();
 
-    // 内部枚举：差异类型
-    private enum DiffType {
-        ADDED,      // 新增行
-        REMOVED,    // 删除行
-        CHANGED,    // 修改行
-        UNCHANGED   // 未改变行
+        void add(ComparisonReport report, String serviceName, long originalDuration) {
+            totalCount++;
+            ServiceStatistics stats = statsMap.computeIfAbsent(serviceName, ServiceStatistics::new);
+            stats.incrementTotal();
+            if (report.result().matched()) {
+                matchedCount++;
+                stats.incrementMatched();
+            } else {
+                stats.incrementMismatched();
+            }
+            stats.addDuration(
+                originalDuration,
+                report.replayDuration(),
+                getOriginalDurationMicros(report.record()),
+                getReplayDurationMicros(report)
+            );
+        }
     }
 }
@@ -0,0 +1,327 @@
+package com.flowreplay.core.report;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 行级差异计算（线性空间 Myers 算法）
+ * 先裁掉公共前缀/后缀，再用"中间蛇"分治求最短编辑脚本；结果按上下文行数合并成块，未变化的大段内容折叠。
+ * 编辑距离超过上限时放弃逐行对比，只返回摘要，避免病态输入耗尽 CPU。
+ */
+public class LineDiff {
+
+    public static final int DEFAULT_CONTEXT_LINES = 3;
+    public static final int DEFAULT_MAX_EDIT_DISTANCE = 2000;
+
+    private final int contextLines;
+    private final int maxEditDistance;
+
+    public LineDiff() {
+        this(DEFAULT_CONTEXT_LINES, DEFAULT_MAX_EDIT_DISTANCE);
+    }
+
+    public LineDiff(int contextLines, int maxEditDistance) {
+        if (contextLines < 0) {
+            throw new IllegalArgumentException("contextLines must be >= 0");
+        }
+        if (maxEditDistance < 1) {
+            throw new IllegalArgumentException("maxEditDistance must be >= 1");
+        }
+        this.contextLines = contextLines;
+        this.maxEditDistance = maxEditDistance;
+    }
+
+    public Result diff(String expected, String actual) {
+        String[] expectedLines = expected.split("\n", -1);
+        String[] actualLines = actual.split("\n", -1);
+
+        // 行内容映射为整数，比较时只比较 id
+        Map<String, Integer> ids = new HashMap<>();
+        int[] a = toIds(expectedLines, ids);
+        int[] b = toIds(actualLines, ids);
+
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix] == b[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix
+            && a[a.length - 1 - suffix] == b[b.length - 1 - suffix]) {
+            suffix++;
+        }
+
+        int n = a.length - prefix - suffix;
+        int m = b.length - prefix - suffix;
+        // 编辑距离至少为两侧行数之差，一侧为空时就是另一侧的行数
+        int lowerBound = Math.min(n, m) == 0 ? n + m : Math.abs(n - m);
+        if (lowerBound > maxEditDistance) {
+            return Result.exceeded(expectedLines, actualLines, prefix, lowerBound);
+        }
+
+        byte[] ops = new byte[a.length + b.length];
+        Myers myers = new Myers(a, b, ops, Math.min((n + m + 1) / 2, maxEditDistance / 2 + 1));
+        int opCount = 0;
+        for (int i = 0; i < prefix; i++) {
+            ops[opCount++] = EQUAL;
+        }
+        myers.count = opCount;
+        if (!myers.diff(prefix, a.length - suffix, prefix, b.length - suffix, maxEditDistance)) {
+            return Result.exceeded(expectedLines, actualLines, prefix, maxEditDistance + 1);
+        }
+        opCount = myers.count;
+        for (int i = 0; i < suffix; i++) {
+            ops[opCount++] = EQUAL;
+        }
+
+        return new Result(toRows(ops, opCount, expectedLines, actualLines), false, expectedLines.length, actualLines.length, myers.edits, prefix + 1);
+    }
+
+    private static int[] toIds(String[] lines, Map<String, Integer> ids) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            result[i] = ids.computeIfAbsent(lines[i], key -> ids.size());
+        }
+        return result;
+    }
+
+    /**
+     * 编辑脚本转换为并排显示的行：相邻的删除/新增配对为修改行，超出上下文的未变化行折叠
+     */
+    private List<Row> toRows(byte[] ops, int opCount, String[] expectedLines, String[] actualLines) {
+        List<Row> rows = new ArrayList<>();
+        int i = 0;
+        int oldLine = 0;
+        int newLine = 0;
+        while (i < opCount) {
+            if (ops[i] == EQUAL) {
+                int start = i;
+                while (i < opCount && ops[i] == EQUAL) {
+                    i++;
+                }
+                int length = i - start;
+                boolean leading = start == 0;
+                boolean trailing = i == opCount;
+                int head = leading ? 0 : Math.min(contextLines, length);
+                int tail = trailing ? 0 : Math.min(contextLines, length - head);
+                if (leading && trailing) {
+                    // 两侧完全相同时只保留开头的上下文
+                    head = Math.min(contextLines, length);
+                }
+                int skipped = length - head - tail;
+                for (int k = 0; k < head; k++) {
+                    rows.add(new Row(RowType.UNCHANGED, oldLine + 1, newLine + 1, expectedLines[oldLine], actualLines[newLine], 0));
+                    oldLine++;
+                    newLine++;
+                }
+                if (skipped > 0) {
+                    rows.add(new Row(RowType.SKIPPED, oldLine + 1, newLine + 1, "", "", skipped));
+                    oldLine += skipped;
+                    newLine += skipped;
+                }
+                for (int k = 0; k < tail; k++) {
+                    rows.add(new Row(RowType.UNCHANGED, oldLine + 1, newLine + 1, expectedLines[oldLine], actualLines[newLine], 0));
+                    oldLine++;
+                    newLine++;
+                }
+            } else {
+                int deleteStart = oldLine;
+                int insertStart = newLine;
+                while (i < opCount && ops[i] != EQUAL) {
+                    if (ops[i] == DELETE) {
+                        oldLine++;
+                    } else {
+                        newLine++;
+                    }
+                    i++;
+                }
+                int deletes = oldLine - deleteStart;
+                int inserts = newLine - insertStart;
+                int paired = Math.min(deletes, inserts);
+                for (int k = 0; k < paired; k++) {
+                    rows.add(new Row(RowType.CHANGED, deleteStart + k + 1, insertStart + k + 1,
+                        expectedLines[deleteStart + k], actualLines[insertStart + k], 0));
+                }
+                for (int k = paired; k < deletes; k++) {
+                    rows.add(new Row(RowType.REMOVED, deleteStart + k + 1, -1, expectedLines[deleteStart + k], "", 0));
+                }
+                for (int k = paired; k < inserts; k++) {
+                    rows.add(new Row(RowType.ADDED, -1, insertStart + k + 1, "", actualLines[insertStart + k], 0));
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static final byte EQUAL = 0;
+    private static final byte DELETE = 1;
+    private static final byte INSERT = 2;
+
+    /**
+     * 线性空间 Myers 分治，V 数组在递归间复用（子问题的编辑距离不超过顶层）
+     */
+    private static final class Myers {
+        private final int[] a;
+        private final int[] b;
+        private final byte[] ops;
+        private final int[] forward;
+        private final int[] backward;
+        private final int offset;
+        private int count;
+        private int edits;
+
+        private Myers(int[] a, int[] b, byte[] ops, int maxD) {
+            this.a = a;
+            this.b = b;
+            this.ops = ops;
+            this.offset = maxD + 1;
+            this.forward = new int[2 * maxD + 3];
+            this.backward = new int[2 * maxD + 3];
+        }
+
+        /**
+         * 计算 a[aLo, aHi) 到 b[bLo, bHi) 的编辑脚本，limit >= 0 时编辑距离超过 limit 返回 false
+         */
+        private boolean diff(int aLo, int aHi, int bLo, int bHi, int limit) {
+            while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+                ops[count++] = EQUAL;
+                aLo++;
+                bLo++;
+            }
+            int suffix = 0;
+            while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+                aHi--;
+                bHi--;
+                suffix++;
+            }
+
+            if (aLo == aHi || bLo == bHi) {
+                int d = (aHi - aLo) + (bHi - bLo);
+                if (limit >= 0 && d > limit) {
+                    return false;
+                }
+                for (int i = aLo; i < aHi; i++) {
+                    ops[count++] = DELETE;
+                }
+                for (int i = bLo; i < bHi; i++) {
+                    ops[count++] = INSERT;
+                }
+                edits += d;
+            } else {
+                int[] snake = middleSnake(aLo, aHi, bLo, bHi, limit);
+                if (snake == null) {
+                    return false;
+                }
+                diff(aLo, snake[0], bLo, snake[1], -1);
+                for (int i = snake[0]; i < snake[2]; i++) {
+                    ops[count++] = EQUAL;
+                }
+                diff(snake[2], aHi, snake[3], bHi, -1);
+            }
+
+            for (int i = 0; i < suffix; i++) {
+                ops[count++] = EQUAL;
+            }
+            return true;
+        }
+
+        /**
+         * 同时从两端搜索，返回重叠处的蛇 {x起点, y起点, x终点, y终点}（绝对坐标）
+         */
+        private int[] middleSnake(int aLo, int aHi, int bLo, int bHi, int limit) {
+            int n = aHi - aLo;
+            int m = bHi - bLo;
+            int delta = n - m;
+            boolean odd = (delta & 1) != 0;
+            int maxD = Math.min((n + m + 1) / 2, offset - 1);
+            forward[offset + 1] = 0;
+            backward[offset + 1] = 0;
+
+            for (int d = 0; d <= maxD; d++) {
+                if (limit >= 0 && 2 * d - 1 > limit) {
+                    return null;
+                }
+                for (int k = -d; k <= d; k += 2) {
+                    int x = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])
+                        ? forward[offset + k + 1]
+                        : forward[offset + k - 1] + 1;
+                    int y = x - k;
+                    int startX = x;
+                    int startY = y;
+                    while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                        x++;
+                        y++;
+                    }
+                    forward[offset + k] = x;
+                    int reverseK = delta - k;
+                    if (odd && reverseK >= -(d - 1) && reverseK <= d - 1 && x + backward[offset + reverseK] >= n) {
+                        return new int[]{aLo + startX, bLo + startY, aLo + x, bLo + y};
+                    }
+                }
+                for (int k = -d; k <= d; k += 2) {
+                    int x = k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])
+                        ? backward[offset + k + 1]
+                        : backward[offset + k - 1] + 1;
+                    int y = x - k;
+                    int startX = x;
+                    int startY = y;
+                    while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                        x++;
+                        y++;
+                    }
+                    backward[offset + k] = x;
+                    int forwardK = delta - k;
+                    if (!odd && forwardK >= -d && forwardK <= d && x + forward[offset + forwardK] >= n) {
+                        if (limit >= 0 && 2 * d > limit) {
+                            return null;
+                        }
+                        return new int[]{aHi - x, bHi - y, aHi - startX, bHi - startY};
+                    }
+                }
+            }
+            // 超出复用数组能覆盖的编辑距离，只会在超过上限时发生
+            return null;
+        }
+    }
+
+    /**
+     * 并排显示的行类型
+     */
+    public enum RowType {
+        ADDED,      // 新增行
+        REMOVED,    // 删除行
+        CHANGED,    // 修改行
+        UNCHANGED,  // 未改变行
+        SKIPPED     // 折叠的未改变行
+    }
+
+    /**
+     * 并排显示的一行（行号从 1 开始，-1 表示该侧无对应行）
+     */
+    public record Row(
+        RowType type,
+        int oldLineNum,
+        int newLineNum,
+        String expectedContent,
+        String actualContent,
+        int skippedLines    // 折叠行数，仅 SKIPPED 有效
+    ) {
+    }
+
+    /**
+     * 差异结果，exceeded 为 true 时 rows 为空，只提供摘要
+     */
+    public record Result(
+        List<Row> rows,
+        boolean exceeded,
+        int expectedLineCount,
+        int actualLineCount,
+        int editDistance,       // 编辑距离（超限时为下界）
+        int firstDifferentLine  // 第一处差异的行号
+    ) {
+        private static Result exceeded(String[] expectedLines, String[] actualLines, int prefix, int editDistance) {
+            return new Result(List.of(), true, expectedLines.length, actualLines.length, editDistance, prefix + 1);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.flowreplay.core.report;
+
+import com.flowreplay.core.model.ComparisonResult;
+import com.flowreplay.core.model.TrafficRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 多目标比对报告
+ */
+public record MultiTargetReport(
+    TrafficRecord record,
+    List<ComparisonReport> targetReports,        // 各目标与录制响应的比对，与目标顺序一致
+    List<ComparisonResult> againstFirstTarget    // 第 2 个起各目标与第 1 个目标响应的比对，回放失败时为 null
+) {
+    public MultiTargetReport {
+        targetReports = List.copyOf(targetReports);
+        againstFirstTarget = againstFirstTarget == null ? List.of() : Collections.unmodifiableList(new ArrayList<>(againstFirstTarget));
+    }
+
+    /**
+     * 所有目标都与录制响应匹配
+     */
+    public boolean allMatched() {
+        return targetReports.stream().allMatch(report -> report.result().matched());
+    }
+
+    /**
+     * 所有目标的响应彼此一致
+     */
+    public boolean targetsConsistent() {
+        return againstFirstTarget.stream().allMatch(result -> result != null && result.matched());
+    }
+}
@@ -0,0 +1,369 @@
+package com.flowreplay.core.report;
+
+import com.flowreplay.core.metrics.LatencyHistogram;
+import com.flowreplay.core.model.ComparisonResult;
+import com.flowreplay.core.model.Difference;
+import com.flowreplay.core.model.ResponseData;
+import com.flowreplay.core.model.TrafficRecord;
+import com.flowreplay.core.parser.ServiceNameParser;
+import com.flowreplay.core.parser.ServiceNameParserFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多目标对比报告生成器
+ * 录制响应与各目标的响应、耗时并排展示，并给出目标之间的一致性。
+ * 与 {@link HtmlReportGenerator} 一样流式写出：详细列表先写入临时文件，同时累计统计。
+ */
+public class MultiTargetReportGenerator {
+
+    // 每个目标在详细列表中最多展示的差异条数
+    private static final int MAX_DIFFERENCES_SHOWN = 5;
+
+    private ServiceNameParser serviceNameParser;
+
+    public void generateReport(List<String> targets, List<MultiTargetReport> reports, String outputPath, String parserName) throws IOException {
+        generateReport(targets, reports.iterator(), outputPath, parserName);
+    }
+
+    /**
+     * 流式生成报告，报告只会被遍历一次
+     */
+    public void generateReport(List<String> targets, Iterator<MultiTargetReport> reports, String outputPath, String parserName) throws IOException {
+        this.serviceNameParser = ServiceNameParserFactory.getParser(parserName);
+
+        Path output = Paths.get(outputPath).toAbsolutePath();
+        Path parent = output.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path detailsFile = Files.createTempFile(parent, ".flowreplay-report-", ".part");
+        try {
+            Totals totals = new Totals(targets.size());
+            try (Writer details = Files.newBufferedWriter(detailsFile, StandardCharsets.UTF_8)) {
+                appendDetailedReports(details, targets, reports, totals);
+            }
+
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+                Writer html = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                html.append("<!DOCTYPE html>\n");
+                html.append("<html lang=\"zh-CN\">\n");
+                html.append("<head>\n");
+                html.append("    <meta charset=\"UTF-8\">\n");
+                html.append("    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n");
+                html.append("    <title>FlowReplay 多目标对比报告</title>\n");
+                HtmlReportGenerator.appendStyles(html);
+                HtmlReportGenerator.appendScripts(html);
+                html.append("</head>\n");
+                html.append("<body>\n");
+
+                appendHeader(html, targets);
+                appendSummary(html, targets, totals);
+                appendServiceLatency(html, targets, totals);
+                html.flush();
+
+                Files.copy(detailsFile, out);
+
+                html.append("</body>\n");
+                html.append("</html>\n");
+                html.flush();
+            }
+        } finally {
+            Files.deleteIfExists(detailsFile);
+        }
+    }
+
+    private void appendHeader(Writer html, List<String> targets) throws IOException {
+        html.append("    <div class=\"header\">\n");
+        html.append("        <h1>FlowReplay 多目标对比报告</h1>\n");
+        for (int i = 0; i < targets.size(); i++) {
+            html.append("        <p>目标 ").append(label(i)).append(": ").append(HtmlReportGenerator.escapeHtml(targets.get(i))).append("</p>\n");
+        }
+        html.append("        <p>生成时间: ").append(DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(Instant.now().atZone(ZoneId.systemDefault()))).append("</p>\n");
+        html.append("    </div>\n");
+    }
+
+    private void appendSummary(Writer html, List<String> targets, Totals totals) throws IOException {
+        html.append("    <div class=\"summary\">\n");
+        html.append("        <h2>目标对比（共 ").append(String.valueOf(totals.totalCount)).append(" 条记录）</h2>\n");
+        html.append("        <table class=\"service-stats-table\">\n");
+        html.append("            <thead>\n");
+        html.append("                <tr>\n");
+        html.append("                    <th>目标</th>\n");
+        html.append("                    <th>匹配录制</th>\n");
+        html.append("                    <th>匹配率</th>\n");
+        html.append("                    <th>回放失败</th>\n");
+        html.append("                    <th>与目标 A 一致</th>\n");
+        html.append("                    <th>平均(ms)</th>\n");
+        html.append("                    <th>P50(ms)</th>\n");
+        html.append("                    <th>P95(ms)</th>\n");
+        html.append("                    <th>P99(ms)</th>\n");
+        html.append("                </tr>\n");
+        html.append("            </thead>\n");
+        html.append("            <tbody>\n");
+        for (int i = 0; i < targets.size(); i++) {
+            LatencyHistogram histogram = totals.latency[i];
+            html.append("                <tr>\n");
+            html.append("                    <td>").append(label(i)).append(" ").append(HtmlReportGenerator.escapeHtml(targets.get(i))).append("</td>\n");
+            html.append("                    <td class=\"success\">").append(String.valueOf(totals.matched[i])).append("</td>\n");
+            html.append("                    <td>").append(String.format("%.2f%%", percent(totals.matched[i], totals.totalCount))).append("</td>\n");
+            html.append("                    <td class=\"failed\">").append(String.valueOf(totals.failed[i])).append("</td>\n");
+            html.append("                    <td>").append(i == 0 ? "-" : String.valueOf(totals.consistent[i])).append("</td>\n");
+            html.append("                    <td>").append(String.format("%.2f", histogram.getMeanMicros() / 1000.0)).append("</td>\n");
+            for (double percentile : new double[]{50, 95, 99}) {
+                html.append("                    <td>").append(String.format("%.2f", histogram.getValueAtPercentile(percentile) / 1000.0)).append("</td>\n");
+            }
+            html.append("                </tr>\n");
+        }
+        html.append("            </tbody>\n");
+        html.append("        </table>\n");
+        html.append("    </div>\n");
+    }
+
+    private void appendServiceLatency(Writer html, List<String> targets, Totals totals) throws IOException {
+        html.append("    <div class=\"summary\">\n");
+        html.append("        <h2>接口耗时对比</h2>\n");
+        html.append("        <table class=\"service-stats-table\">\n");
+        html.append("            <thead>\n");
+        html.append("                <tr>\n");
+        html.append("                    <th rowspan=\"2\">接口名称</th>\n");
+        html.append("                    <th rowspan=\"2\">请求数</th>\n");
+        html.append("                    <th colspan=\"2\">录制(ms)</th>\n");
+        for (int i = 0; i < targets.size(); i++) {
+            html.append("                    <th colspan=\"3\">目标 ").append(label(i)).append("</th>\n");
+        }
+        html.append("                </tr>\n");
+        html.append("                <tr>\n");
+        html.append("                    <th>P50</th>\n");
+        html.append("                    <th>P99</th>\n");
+        for (int i = 0; i < targets.size(); i++) {
+            html.append("                    <th>匹配</th>\n");
+            html.append("                    <th>P50</th>\n");
+            html.append("                    <th>P99</th>\n");
+        }
+        html.append("                </tr>\n");
+        html.append("            </thead>\n");
+        html.append("            <tbody>\n");
+        for (Map.Entry<String, ServiceTotals> entry : totals.services.entrySet()) {
+            ServiceTotals service = entry.getValue();
+            html.append("                <tr>\n");
+            html.append("                    <td>").append(HtmlReportGenerator.escapeHtml(entry.getKey())).append("</td>\n");
+            html.append("                    <td>").append(String.valueOf(service.count)).append("</td>\n");
+            appendMillis(html, service.recorded.getValueAtPercentile(50));
+            appendMillis(html, service.recorded.getValueAtPercentile(99));
+            for (int i = 0; i < targets.size(); i++) {
+                html.append("                    <td>").append(String.valueOf(service.matched[i])).append("</td>\n");
+                appendMillis(html, service.latency[i].getValueAtPercentile(50));
+                appendMillis(html, service.latency[i].getValueAtPercentile(99));
+            }
+            html.append("                </tr>\n");
+        }
+        html.append("            </tbody>\n");
+        html.append("        </table>\n");
+        html.append("    </div>\n");
+    }
+
+    private void appendDetailedReports(Writer html, List<String> targets, Iterator<MultiTargetReport> reports, Totals totals) throws IOException {
+        html.append("    <div class=\"details\">\n");
+        html.append("        <h2>详细列表</h2>\n");
+        html.append("        <div class=\"toggle-all\">\n");
+        html.append("            <button onclick=\"expandAll()\">展开全部</button>\n");
+        html.append("            <button onclick=\"collapseAll()\">折叠全部</button>\n");
+        html.append("        </div>\n");
+
+        int index = 0;
+        while (reports.hasNext()) {
+            MultiTargetReport report = reports.next();
+            String serviceName = serviceNameParser.parseServiceName(report.record());
+            totals.add(report, serviceName);
+            appendSingleReport(html, targets, report, serviceName, index++);
+        }
+
+        html.append("    </div>\n");
+    }
+
+    private void appendSingleReport(Writer html, List<String> targets, MultiTargetReport report, String serviceName, int index) throws IOException {
+        String cssClass = report.allMatched() ? "matched" : "mismatched";
+        TrafficRecord record = report.record();
+
+        html.append("        <div class=\"report-item ").append(cssClass).append("\">\n");
+        html.append("            <h3>请求 #").append(String.valueOf(index + 1)).append(" - ").append(HtmlReportGenerator.escapeHtml(record.id())).append("</h3>\n");
+        html.append("            <p><strong>URI:</strong> ").append(HtmlReportGenerator.escapeHtml(record.request().uri()))
+            .append(" &nbsp; <strong>接口名:</strong> ").append(HtmlReportGenerator.escapeHtml(serviceName)).append("</p>\n");
+        html.append("            <p><strong>录制耗时:</strong> ").append(formatMillis(HtmlReportGenerator.getOriginalDurationMicros(record))).append(" ms");
+        for (int i = 0; i < targets.size(); i++) {
+            ComparisonReport targetReport = report.targetReports().get(i);
+            boolean matched = targetReport.result().matched();
+            html.append(" &nbsp; <strong>").append(label(i)).append(":</strong> ")
+                .append(formatMillis(HtmlReportGenerator.getReplayDurationMicros(targetReport))).append(" ms ")
+                .append("<span class=\"").append(matched ? "success" : "failed").append("\">").append(matched ? "✓" : "✗").append("</span>");
+        }
+        html.append("</p>\n");
+        if (targets.size() > 1) {
+            html.append("            <p><strong>目标一致:</strong> <span class=\"").append(report.targetsConsistent() ? "success" : "failed").append("\">")
+                .append(report.targetsConsistent() ? "✓ 一致" : "✗ 不一致").append("</span></p>\n");
+        }
+
+        String id = "multi-" + index;
+        html.append("            <div class=\"content-section\">\n");
+        html.append("                <div class=\"content-title collapsed\" id=\"title-").append(id).append("\" onclick=\"toggleContent('").append(id).append("')\">\n");
+        html.append("                    响应对比\n");
+        html.append("                </div>\n");
+        html.append("                <div class=\"content-box collapsed\" id=\"content-").append(id).append("\">\n");
+        html.append("                    <div class=\"diff-container\">\n");
+        html.append("                        <div class=\"diff-side\">\n");
+        html.append("                            <div class=\"diff-side-title expected\">录制的响应</div>\n");
+        html.append("                            <div class=\"content-box\">\n");
+        appendResponseContent(html, record.response());
+        html.append("                            </div>\n");
+        html.append("                        </div>\n");
+        for (int i = 0; i < targets.size(); i++) {
+            ComparisonReport targetReport = report.targetReports().get(i);
+            html.append("                        <div class=\"diff-side\">\n");
+            html.append("                            <div class=\"diff-side-title ").append(targetReport.result().matched() ? "expected" : "actual").append("\">目标 ")
+                .append(label(i)).append(" 的响应</div>\n");
+            html.append("                            <div class=\"content-box\">\n");
+            if (targetReport.replayedResponse() != null) {
+                appendResponseContent(html, targetReport.replayedResponse());
+            } else {
+                html.append("回放失败，无响应数据");
+            }
+            appendDifferences(html, "与录制", targetReport.result());
+            if (i > 0) {
+                appendDifferences(html, "与目标 A ", report.againstFirstTarget().get(i - 1));
+            }
+            html.append("                            </div>\n");
+            html.append("                        </div>\n");
+        }
+        html.append("                    </div>\n");
+        html.append("                </div>\n");
+        html.append("            </div>\n");
+        html.append("        </div>\n");
+    }
+
+    private void appendResponseContent(Writer html, ResponseData response) throws IOException {
+        if (response == null) {
+            html.append("无响应数据");
+            return;
+        }
+        html.append("<strong>Status:</strong> ").append(String.valueOf(response.statusCode())).append("\n");
+        if (response.body() != null && response.body().length > 0) {
+            html.append("\n<strong>Body:</strong>\n");
+            html.append(HtmlReportGenerator.escapeHtml(new String(response.body(), StandardCharsets.UTF_8)));
+        }
+    }
+
+    private void appendDifferences(Writer html, String title, ComparisonResult result) throws IOException {
+        if (result == null || result.matched()) {
+            return;
+        }
+        html.append("\n\n<strong>").append(title).append("的差异:</strong>\n");
+        List<Difference> differences = result.differences();
+        for (int i = 0; i < Math.min(differences.size(), MAX_DIFFERENCES_SHOWN); i++) {
+            Difference difference = differences.get(i);
+            html.append(HtmlReportGenerator.escapeHtml(difference.path())).append(" [").append(HtmlReportGenerator.escapeHtml(difference.type())).append("]\n");
+        }
+        if (differences.size() > MAX_DIFFERENCES_SHOWN) {
+            html.append("... 共 ").append(String.valueOf(differences.size())).append(" 处差异\n");
+        }
+    }
+
+    private static void appendMillis(Writer html, long micros) throws IOException {
+        html.append("                    <td>").append(formatMillis(micros)).append("</td>\n");
+    }
+
+    private static String formatMillis(long micros) {
+        return String.format("%.2f", micros / 1000.0);
+    }
+
+    private static double percent(long count, long total) {
+        return total > 0 ? count * 100.0 / total : 0;
+    }
+
+    /**
+     * 目标标签：A、B、C ...
+     */
+    static String label(int target) {
+        return target < 26 ? String.valueOf((char) ('A' + target)) : "T" + (target + 1);
+    }
+
+    // 流式写出过程中累计的统计信息
+    private static final class Totals {
+        private final int targetCount;
+        private long totalCount;
+        private final long[] matched;
+        private final long[] failed;
+        private final long[] consistent;
+        private final LatencyHistogram[] latency;
+        private final Map<String, ServiceTotals> services = new LinkedHashMap<>();
+
+        private Totals(int targetCount) {
+            this.targetCount = targetCount;
+            this.matched = new long[targetCount];
+            this.failed = new long[targetCount];
+            this.consistent = new long[targetCount];
+            this.latency = new LatencyHistogram[targetCount];
+            for (int i = 0; i < targetCount; i++) {
+                latency[i] = new LatencyHistogram();
+            }
+        }
+
+        private void add(MultiTargetReport report, String serviceName) {
+            totalCount++;
+            ServiceTotals service = services.computeIfAbsent(serviceName, name -> new ServiceTotals(targetCount));
+            service.count++;
+            service.recorded.record(HtmlReportGenerator.getOriginalDurationMicros(report.record()));
+            for (int i = 0; i < targetCount; i++) {
+                ComparisonReport targetReport = report.targetReports().get(i);
+                if (targetReport.result().matched()) {
+                    matched[i]++;
+                    service.matched[i]++;
+                }
+                if (targetReport.replayedResponse() == null) {
+                    failed[i]++;
+                    continue;
+                }
+                long micros = HtmlReportGenerator.getReplayDurationMicros(targetReport);
+                latency[i].record(micros);
+                service.latency[i].record(micros);
+                if (i > 0) {
+                    ComparisonResult againstFirst = report.againstFirstTarget().get(i - 1);
+                    if (againstFirst != null && againstFirst.matched()) {
+                        consistent[i]++;
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class ServiceTotals {
+        private long count;
+        private final LatencyHistogram recorded = new LatencyHistogram();
+        private final long[] matched;
+        private final LatencyHistogram[] latency;
+
+        private ServiceTotals(int targetCount) {
+            this.matched = new long[targetCount];
+            this.latency = new LatencyHistogram[targetCount];
+            for (int i = 0; i < targetCount; i++) {
+                latency[i] = new LatencyHistogram();
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.flowreplay.core.report;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.flowreplay.core.storage.RunStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 性能门禁
+ * 按阈值检查一次运行：各接口 P99 相对基线的增幅、不匹配率、错误率，以及整体吞吐量下限。
+ * 基线可以是录制时的耗时，也可以是运行结果库中保存的一次运行。
+ */
+public class PerformanceGate {
+
+    public static final String CHECK_P99_INCREASE = "p99-increase";
+    public static final String CHECK_MISMATCH_RATE = "mismatch-rate";
+    public static final String CHECK_ERROR_RATE = "error-rate";
+    public static final String CHECK_THROUGHPUT = "throughput";
+    // 接口级检查的最少请求数，样本过少时 P99 和比例波动太大
+    public static final long MIN_SERVICE_SAMPLES = 20;
+
+    /**
+     * 门禁阈值，为 null 的项不检查
+     * @param maxP99IncreasePercent P99 相对基线的最大增幅（%）
+     * @param maxMismatchPercent 最大不匹配率（%），只在比对时检查
+     * @param maxErrorPercent 最大错误率（%，回放失败或 5xx）
+     * @param minThroughputRps 最低吞吐量（请求/秒）
+     */
+    public record Thresholds(
+        Double maxP99IncreasePercent,
+        Double maxMismatchPercent,
+        Double maxErrorPercent,
+        Double minThroughputRps
+    ) {
+        public Thresholds {
+            requireNonNegative(maxP99IncreasePercent, "max p99 increase");
+            requireNonNegative(maxMismatchPercent, "max mismatch rate");
+            requireNonNegative(maxErrorPercent, "max error rate");
+            requireNonNegative(minThroughputRps, "min throughput");
+        }
+
+        @JsonIgnore
+        public boolean isEmpty() {
+            return maxP99IncreasePercent == null && maxMismatchPercent == null
+                && maxErrorPercent == null && minThroughputRps == null;
+        }
+
+        private static void requireNonNegative(Double value, String name) {
+            if (value != null && (value.isNaN() || value < 0)) {
+                throw new IllegalArgumentException(name + " must be >= 0");
+            }
+        }
+    }
+
+    /**
+     * 一项未通过的检查
+     * @param service 接口名，整体为 {@link RunStore#ALL_SERVICES}
+     * @param actual 实际值（P99 为微秒，比例为 %，吞吐量为请求/秒）
+     * @param baseline 基线值，只有 P99 检查有
+     */
+    public record Violation(
+        String check,
+        String service,
+        double actual,
+        double threshold,
+        Double baseline
+    ) {
+    }
+
+    /**
+     * 门禁结果
+     * @param skippedServices 请求数不足 {@link #MIN_SERVICE_SAMPLES}、只参与整体检查的接口
+     */
+    public record Result(
+        boolean passed,
+        String runId,
+        String baseline,
+        Thresholds thresholds,
+        long requests,
+        double throughputRps,
+        List<Violation> violations,
+        List<String> skippedServices
+    ) {
+    }
+
+    private PerformanceGate() {
+    }
+
+    /**
+     * 检查一次运行
+     * @param baseline 基线运行，不检查 P99 时可以为 null
+     * @param baselineName 基线名称（recorded 或运行 ID），写入结果
+     */
+    public static Result evaluate(RunStore.RunSummary current, RunStore.RunSummary baseline, String baselineName,
+                                  double throughputRps, Thresholds thresholds) {
+        List<Violation> violations = new ArrayList<>();
+        List<String> skippedServices = new ArrayList<>();
+
+        check(RunStore.ALL_SERVICES, current.overall(), baseline != null ? baseline.overall() : null, thresholds, violations);
+        for (Map.Entry<String, RunStore.ServiceSummary> entry : current.byService().entrySet()) {
+            if (entry.getValue().requests() < MIN_SERVICE_SAMPLES) {
+                skippedServices.add(entry.getKey());
+                continue;
+            }
+            RunStore.ServiceSummary before = baseline != null ? baseline.byService().get(entry.getKey()) : null;
+            check(entry.getKey(), entry.getValue(), before, thresholds, violations);
+        }
+
+        if (thresholds.minThroughputRps() != null && throughputRps < thresholds.minThroughputRps()) {
+            violations.add(new Violation(CHECK_THROUGHPUT, RunStore.ALL_SERVICES, throughputRps, thresholds.minThroughputRps(), null));
+        }
+        return new Result(violations.isEmpty(), current.runId(), baselineName, thresholds, current.overall().requests(),
+            throughputRps, List.copyOf(violations), List.copyOf(skippedServices));
+    }
+
+    private static void check(String service, RunStore.ServiceSummary summary, RunStore.ServiceSummary baseline,
+                              Thresholds thresholds, List<Violation> violations) {
+        // 基线样本不足时跳过 P99 检查（整体除外）
+        boolean comparable = baseline != null && baseline.p99Micros() > 0
+            && (RunStore.ALL_SERVICES.equals(service) || baseline.requests() >= MIN_SERVICE_SAMPLES);
+        if (thresholds.maxP99IncreasePercent() != null && comparable) {
+            double increase = (summary.p99Micros() - baseline.p99Micros()) * 100.0 / baseline.p99Micros();
+            if (increase > thresholds.maxP99IncreasePercent()) {
+                violations.add(new Violation(CHECK_P99_INCREASE, service, summary.p99Micros(),
+                    thresholds.maxP99IncreasePercent(), (double) baseline.p99Micros()));
+            }
+        }
+        double matchRate = summary.matchRate();
+        if (thresholds.maxMismatchPercent() != null && !Double.isNaN(matchRate)) {
+            double mismatch = (1 - matchRate) * 100;
+            if (mismatch > thresholds.maxMismatchPercent()) {
+                violations.add(new Violation(CHECK_MISMATCH_RATE, service, mismatch, thresholds.maxMismatchPercent(), null));
+            }
+        }
+        if (thresholds.maxErrorPercent() != null && summary.requests() > 0) {
+            double errors = summary.errorRate() * 100;
+            if (errors > thresholds.maxErrorPercent()) {
+                violations.add(new Violation(CHECK_ERROR_RATE, service, errors, thresholds.maxErrorPercent(), null));
+            }
+        }
+    }
+}
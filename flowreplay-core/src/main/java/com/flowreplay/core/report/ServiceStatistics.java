@@ -1,5 +1,7 @@
 package com.flowreplay.core.report;
 
+import com.flowreplay.core.metrics.LatencyHistogram;
+
 /**
  * 接口统计信息
  */
@@ -19,6 +21,10 @@ public class ServiceStatistics {
     private long replayMinDuration;      // 回放最小耗时
     private long replayMaxDuration;      // 回放最大耗时
 
+    // 耗时分布（微秒精度，用于百分位）
+    private final LatencyHistogram originalHistogram = new LatencyHistogram();
+    private final LatencyHistogram replayHistogram = new LatencyHistogram();
+
     public ServiceStatistics(String serviceName) {
         this.serviceName = serviceName;
         this.totalCount = 0;
@@ -45,6 +51,16 @@ public class ServiceStatistics {
     }
 
     public void addDuration(long originalDuration, long replayDuration) {
+        addDuration(originalDuration, replayDuration, originalDuration * 1000, replayDuration * 1000);
+    }
+
+    /**
+     * 记录一次耗时，毫秒值用于平均/最小/最大，微秒值计入直方图
+     */
+    public void addDuration(long originalDuration, long replayDuration, long originalMicros, long replayMicros) {
+        originalHistogram.record(originalMicros);
+        replayHistogram.record(replayMicros);
+
         // 更新原始耗时统计
         this.originalTotalDuration += originalDuration;
         this.originalMinDuration = Math.min(this.originalMinDuration, originalDuration);
@@ -114,4 +130,52 @@ public class ServiceStatistics {
     public long getReplayMaxDuration() {
         return replayMaxDuration;
     }
+
+    // 原始耗时百分位（毫秒）
+    public double getOriginalPercentile(double percentile) {
+        return originalHistogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    // 回放耗时百分位（毫秒）
+    public double getReplayPercentile(double percentile) {
+        return replayHistogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    public LatencyHistogram getOriginalHistogram() {
+        return originalHistogram;
+    }
+
+    public LatencyHistogram getReplayHistogram() {
+        return replayHistogram;
+    }
+
+    /**
+     * 合并一段时间内的原始计数（供并发聚合器使用）
+     */
+    void merge(int total, int matched, int mismatched,
+               long originalTotal, long originalMin, long originalMax,
+               long replayTotal, long replayMin, long replayMax,
+               LatencyHistogram originalLatency, LatencyHistogram replayLatency) {
+        this.totalCount += total;
+        this.matchedCount += matched;
+        this.mismatchedCount += mismatched;
+        this.originalTotalDuration += originalTotal;
+        this.originalMinDuration = Math.min(this.originalMinDuration, originalMin);
+        this.originalMaxDuration = Math.max(this.originalMaxDuration, originalMax);
+        this.replayTotalDuration += replayTotal;
+        this.replayMinDuration = Math.min(this.replayMinDuration, replayMin);
+        this.replayMaxDuration = Math.max(this.replayMaxDuration, replayMax);
+        this.originalHistogram.merge(originalLatency);
+        this.replayHistogram.merge(replayLatency);
+    }
+
+    /**
+     * 合并另一份同名接口的统计（如多个线程或多次运行的结果）
+     */
+    public void merge(ServiceStatistics other) {
+        merge(other.totalCount, other.matchedCount, other.mismatchedCount,
+            other.originalTotalDuration, other.originalMinDuration, other.originalMaxDuration,
+            other.replayTotalDuration, other.replayMinDuration, other.replayMaxDuration,
+            other.originalHistogram, other.replayHistogram);
+    }
 }
@@ -0,0 +1,541 @@
+package com.flowreplay.core.report;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flowreplay.core.metrics.LatencyHistogram;
+import com.flowreplay.core.model.Difference;
+import com.flowreplay.core.model.ResponseData;
+import com.flowreplay.core.model.TrafficRecord;
+import com.flowreplay.core.parser.ServiceNameParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 分片报告写出器
+ * 输出一个报告目录：index.html 只加载汇总数据，分页数据、按接口的数据和压缩后的报文按需加载。
+ * 数据文件采用 JS 回调（JSONP）格式，直接用浏览器打开本地文件即可查看。
+ * <pre>
+ * report/index.html
+ * report/data/summary.js       汇总统计 + 接口列表
+ * report/data/service-N.js     单个接口的统计和失败记录索引
+ * report/data/page-NNNNN.js    一页记录的元数据和差异
+ * report/blobs/page-NNNNN.js   该页记录的报文（逐条 gzip + base64）
+ * </pre>
+ */
+class ShardedReportWriter {
+
+    private static final int MAX_DIFFERENCES_PER_RECORD = 50;
+    private static final int MAX_DIFF_VALUE_LENGTH = 2000;
+    private static final int MAX_SERVICE_FAILURE_REFS = 1000;
+
+    private final Path outputDir;
+    private final ServiceNameParser serviceNameParser;
+    private final int pageSize;
+    private final int parallelism;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    ShardedReportWriter(Path outputDir, ServiceNameParser serviceNameParser, int pageSize, int parallelism) {
+        this.outputDir = outputDir;
+        this.serviceNameParser = serviceNameParser;
+        this.pageSize = Math.max(1, pageSize);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    void write(Iterator<ComparisonReport> reports) throws IOException {
+        Path dataDir = outputDir.resolve("data");
+        Path blobDir = outputDir.resolve("blobs");
+        Files.createDirectories(dataDir);
+        Files.createDirectories(blobDir);
+        deleteStaleShards(dataDir);
+        deleteStaleShards(blobDir);
+
+        Map<String, ServiceShard> services = new LinkedHashMap<>();
+        long totalCount = 0;
+        long matchedCount = 0;
+        int pageCount = 0;
+
+        // 分页序列化和压缩并行执行，同时在途的页数受限，保证内存有界
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            List<PageEntry> page = new ArrayList<>(pageSize);
+            while (reports.hasNext()) {
+                ComparisonReport report = reports.next();
+                TrafficRecord record = report.record();
+                String serviceName = serviceNameParser.parseServiceName(record);
+                ServiceShard service = services.computeIfAbsent(serviceName, name -> new ServiceShard(services.size() + 1, name));
+                long originalDuration = HtmlReportGenerator.getOriginalDuration(record);
+
+                service.stats.incrementTotal();
+                service.stats.addDuration(
+                    originalDuration,
+                    report.replayDuration(),
+                    HtmlReportGenerator.getOriginalDurationMicros(record),
+                    HtmlReportGenerator.getReplayDurationMicros(report)
+                );
+                if (report.result().matched()) {
+                    matchedCount++;
+                    service.stats.incrementMatched();
+                } else {
+                    service.stats.incrementMismatched();
+                    if (service.failureRefs.size() < MAX_SERVICE_FAILURE_REFS) {
+                        service.failureRefs.add(List.of(pageCount + 1, page.size(), record.id()));
+                    }
+                }
+
+                page.add(new PageEntry(totalCount, report, serviceName, originalDuration));
+                totalCount++;
+                if (page.size() == pageSize) {
+                    pageCount++;
+                    futures.add(submitPage(executor, inFlight, dataDir, blobDir, pageCount, page));
+                    page = new ArrayList<>(pageSize);
+                }
+            }
+            if (!page.isEmpty()) {
+                pageCount++;
+                futures.add(submitPage(executor, inFlight, dataDir, blobDir, pageCount, page));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing report shards", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException("Failed to write report shard", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (ServiceShard service : services.values()) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("stats", statsToMap(service));
+            data.put("failures", service.failureRefs);
+            data.put("failuresTruncated", service.stats.getMismatchedCount() > service.failureRefs.size());
+            writeJsonp(dataDir.resolve("service-" + service.index + ".js"), "service", service.index, data);
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("generatedAt", DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(Instant.now().atZone(java.time.ZoneId.systemDefault())));
+        summary.put("total", totalCount);
+        summary.put("matched", matchedCount);
+        summary.put("mismatched", totalCount - matchedCount);
+        summary.put("pageSize", pageSize);
+        summary.put("pages", pageCount);
+        summary.put("services", services.values().stream().map(this::statsToMap).toList());
+        writeJsonp(dataDir.resolve("summary.js"), "summary", null, summary);
+
+        writeIndex(outputDir.resolve("index.html"));
+    }
+
+    private Future<?> submitPage(ExecutorService executor, Semaphore inFlight, Path dataDir, Path blobDir,
+                                 int pageNumber, List<PageEntry> entries) throws InterruptedException {
+        inFlight.acquire();
+        return executor.submit(() -> {
+            try {
+                writePage(dataDir, blobDir, pageNumber, entries);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private void writePage(Path dataDir, Path blobDir, int pageNumber, List<PageEntry> entries) throws IOException {
+        List<Map<String, Object>> records = new ArrayList<>(entries.size());
+        Map<String, String> blobs = new LinkedHashMap<>();
+
+        for (PageEntry entry : entries) {
+            ComparisonReport report = entry.report;
+            TrafficRecord record = report.record();
+            String blobPrefix = "b" + entry.index;
+
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("index", entry.index + 1);
+            item.put("id", record.id());
+            item.put("protocol", record.protocol());
+            item.put("uri", record.request().uri());
+            item.put("method", record.request().method());
+            item.put("service", entry.serviceName);
+            item.put("matched", report.result().matched());
+            item.put("originalTime", HtmlReportGenerator.formatTimestamp(record.timestamp()));
+            item.put("originalMs", entry.originalDuration);
+            item.put("replayTime", HtmlReportGenerator.formatTimestamp(report.replayTimestamp()));
+            item.put("replayMs", report.replayDuration());
+            item.put("differences", differencesToList(report.result().differences()));
+
+            Map<String, Object> request = new LinkedHashMap<>();
+            request.put("headers", record.request().headers());
+            request.put("body", addBlob(blobs, blobPrefix + "q", record.request().body()));
+            item.put("request", request);
+            item.put("expected", responseToMap(record.response(), blobs, blobPrefix + "e"));
+            item.put("actual", report.replayedResponse() != null
+                ? responseToMap(report.replayedResponse(), blobs, blobPrefix + "a")
+                : null);
+            records.add(item);
+        }
+
+        String shardName = String.format("page-%05d.js", pageNumber);
+        writeJsonp(blobDir.resolve(shardName), "blobs", pageNumber, blobs);
+        writeJsonp(dataDir.resolve(shardName), "page", pageNumber, records);
+    }
+
+    private Map<String, Object> responseToMap(ResponseData response, Map<String, String> blobs, String blobId) throws IOException {
+        if (response == null) {
+            return null;
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("status", response.statusCode());
+        map.put("headers", response.headers());
+        map.put("body", addBlob(blobs, blobId, response.body()));
+        return map;
+    }
+
+    /**
+     * 报文单独 gzip 压缩后以 base64 存入 blob 分片，返回引用 id
+     */
+    private String addBlob(Map<String, String> blobs, String blobId, byte[] body) throws IOException {
+        if (body == null || body.length == 0) {
+            return null;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body);
+        }
+        blobs.put(blobId, Base64.getEncoder().encodeToString(compressed.toByteArray()));
+        return blobId;
+    }
+
+    private List<Map<String, String>> differencesToList(List<Difference> differences) {
+        List<Map<String, String>> list = new ArrayList<>();
+        for (Difference difference : differences) {
+            if (list.size() >= MAX_DIFFERENCES_PER_RECORD) {
+                break;
+            }
+            Map<String, String> map = new LinkedHashMap<>();
+            map.put("path", difference.path());
+            map.put("type", difference.type());
+            map.put("expected", truncate(difference.expected()));
+            map.put("actual", truncate(difference.actual()));
+            list.add(map);
+        }
+        return list;
+    }
+
+    private Map<String, Object> statsToMap(ServiceShard service) {
+        ServiceStatistics stats = service.stats;
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", service.index);
+        map.put("name", stats.getServiceName());
+        map.put("total", stats.getTotalCount());
+        map.put("matched", stats.getMatchedCount());
+        map.put("mismatched", stats.getMismatchedCount());
+        map.put("successRate", stats.getSuccessRate());
+        map.put("originalAvg", stats.getOriginalAvgDuration());
+        map.put("originalMin", stats.getOriginalMinDuration());
+        map.put("originalMax", stats.getOriginalMaxDuration());
+        map.put("replayAvg", stats.getReplayAvgDuration());
+        map.put("replayMin", stats.getReplayMinDuration());
+        map.put("replayMax", stats.getReplayMaxDuration());
+        map.put("originalPercentiles", percentiles(stats.getOriginalHistogram()));
+        map.put("replayPercentiles", percentiles(stats.getReplayHistogram()));
+        map.put("originalDistribution", distribution(stats.getOriginalHistogram()));
+        map.put("replayDistribution", distribution(stats.getReplayHistogram()));
+        return map;
+    }
+
+    private static List<Double> percentiles(LatencyHistogram histogram) {
+        return List.of(
+            histogram.getValueAtPercentile(50) / 1000.0,
+            histogram.getValueAtPercentile(95) / 1000.0,
+            histogram.getValueAtPercentile(99) / 1000.0
+        );
+    }
+
+    private static List<List<Object>> distribution(LatencyHistogram histogram) {
+        return histogram.getDistribution().stream()
+            .map(bucket -> List.<Object>of(bucket.label(), bucket.count()))
+            .toList();
+    }
+
+    private static String truncate(String value) {
+        if (value == null || value.length() <= MAX_DIFF_VALUE_LENGTH) {
+            return value;
+        }
+        return value.substring(0, MAX_DIFF_VALUE_LENGTH) + "...[truncated " + (value.length() - MAX_DIFF_VALUE_LENGTH) + " chars]";
+    }
+
+    private void writeJsonp(Path file, String callback, Integer shardNumber, Object data) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("FlowReplayReport." + callback + "(");
+            if (shardNumber != null) {
+                writer.write(shardNumber + ",");
+            }
+            objectMapper.writeValue(new NonClosingWriter(writer), data);
+            writer.write(");\n");
+        }
+    }
+
+    private static void deleteStaleShards(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "{page-*,service-*,summary}.js")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private void writeIndex(Path indexFile) throws IOException {
+        try (Writer html = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8)) {
+            html.append("<!DOCTYPE html>\n");
+            html.append("<html lang=\"zh-CN\">\n");
+            html.append("<head>\n");
+            html.append("    <meta charset=\"UTF-8\">\n");
+            html.append("    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n");
+            html.append("    <title>FlowReplay 差异报告</title>\n");
+            HtmlReportGenerator.appendStyles(html);
+            html.append("    <style>\n");
+            html.append("        .pager { margin: 10px 0; }\n");
+            html.append("        .pager button, .pager input { padding: 6px 12px; margin-right: 6px; }\n");
+            html.append("        .pager button { cursor: pointer; border: none; border-radius: 3px; background: #2196F3; color: white; }\n");
+            html.append("        .service-stats-table tbody tr { cursor: pointer; }\n");
+            html.append("        .diff-table { width: 100%; border-collapse: collapse; font-family: monospace; font-size: 12px; }\n");
+            html.append("        .diff-table td, .diff-table th { border: 1px solid #ddd; padding: 4px 8px; text-align: left; vertical-align: top; white-space: pre-wrap; word-break: break-all; }\n");
+            html.append("        .report-item.highlight { box-shadow: 0 0 0 2px #2196F3; }\n");
+            html.append("    </style>\n");
+            html.append("    <script>\n");
+            html.append(VIEWER_SCRIPT);
+            html.append("    </script>\n");
+            html.append("</head>\n");
+            html.append("<body>\n");
+            html.append("    <div class=\"header\">\n");
+            html.append("        <h1>FlowReplay 差异报告</h1>\n");
+            html.append("        <p id=\"generated-at\"></p>\n");
+            html.append("    </div>\n");
+            html.append("    <div class=\"summary\" id=\"totals\"></div>\n");
+            html.append("    <div class=\"summary\">\n");
+            html.append("        <h2>接口统计</h2>\n");
+            html.append("        <table class=\"service-stats-table\" id=\"services\"></table>\n");
+            html.append("    </div>\n");
+            html.append("    <div class=\"summary\" id=\"service-detail\" style=\"display: none;\"></div>\n");
+            html.append("    <div class=\"details\">\n");
+            html.append("        <h2>详细差异列表</h2>\n");
+            html.append("        <div class=\"pager\">\n");
+            html.append("            <button onclick=\"FlowReplayReport.showPage(FlowReplayReport.currentPage() - 1)\">上一页</button>\n");
+            html.append("            <span id=\"page-info\"></span>\n");
+            html.append("            <button onclick=\"FlowReplayReport.showPage(FlowReplayReport.currentPage() + 1)\">下一页</button>\n");
+            html.append("            <input type=\"number\" id=\"page-input\" min=\"1\" style=\"width: 80px;\">\n");
+            html.append("            <button onclick=\"FlowReplayReport.showPage(+document.getElementById('page-input').value)\">跳转</button>\n");
+            html.append("            <label><input type=\"checkbox\" id=\"only-mismatched\" onchange=\"FlowReplayReport.showPage(FlowReplayReport.currentPage())\"> 仅显示不匹配</label>\n");
+            html.append("        </div>\n");
+            html.append("        <div id=\"records\"></div>\n");
+            html.append("    </div>\n");
+            html.append("    <script src=\"data/summary.js\"></script>\n");
+            html.append("    <script>FlowReplayReport.init();</script>\n");
+            html.append("</body>\n");
+            html.append("</html>\n");
+        }
+    }
+
+    private static final String VIEWER_SCRIPT = """
+        window.FlowReplayReport = (function () {
+            const pages = {}, blobs = {}, services = {}, loading = {};
+            let summary = null, current = 1;
+            function load(src) {
+                if (!loading[src]) {
+                    loading[src] = new Promise((resolve, reject) => {
+                        const script = document.createElement('script');
+                        script.src = src;
+                        script.onload = resolve;
+                        script.onerror = () => { delete loading[src]; reject(new Error('Failed to load ' + src)); };
+                        document.head.appendChild(script);
+                    });
+                }
+                return loading[src];
+            }
+            function shard(n) { return 'page-' + String(n).padStart(5, '0') + '.js'; }
+            function esc(text) {
+                return text == null ? '' : String(text).replace(/[&<>"']/g,
+                    c => ({'&': '&amp;', '<': '&lt;', '>': '&gt;', '"': '&quot;', "'": '&#39;'}[c]));
+            }
+            async function inflate(base64) {
+                const bytes = Uint8Array.from(atob(base64), c => c.charCodeAt(0));
+                const stream = new Blob([bytes]).stream().pipeThrough(new DecompressionStream('gzip'));
+                return await new Response(stream).text();
+            }
+            function headers(map) {
+                return Object.entries(map || {}).map(([k, v]) => esc(k) + ': ' + esc(v)).join('\\n');
+            }
+            function pct(values) { return values.map(v => '<td>' + v.toFixed(2) + '</td>').join(''); }
+            function distribution(label, buckets, total) {
+                return '<tr><td>' + label + '</td>' + buckets.map(([, count]) => '<td>'
+                    + (count > 0 ? count + ' (' + (count * 100 / total).toFixed(1) + '%)' : '') + '</td>').join('') + '</tr>';
+            }
+            function stat(value, label, css) {
+                return '<div class="stat"><div class="stat-value ' + (css || '') + '">' + value + '</div><div class="stat-label">' + label + '</div></div>';
+            }
+            function renderSummary() {
+                document.getElementById('generated-at').textContent = '生成时间: ' + summary.generatedAt;
+                const rate = summary.total > 0 ? (summary.matched * 100 / summary.total).toFixed(2) + '%' : '0.00%';
+                document.getElementById('totals').innerHTML = '<h2>总体统计</h2>'
+                    + stat(summary.total, '总请求数') + stat(summary.matched, '匹配成功', 'success')
+                    + stat(summary.mismatched, '匹配失败', 'failed') + stat(rate, '成功率');
+                let rows = '<thead><tr><th rowspan="2">接口名称</th><th rowspan="2">总请求数</th><th rowspan="2">匹配成功</th>'
+                    + '<th rowspan="2">匹配失败</th><th rowspan="2">成功率</th><th colspan="6">原始耗时(ms)</th><th colspan="6">回放耗时(ms)</th></tr>'
+                    + '<tr>' + '<th>平均</th><th>最小</th><th>最大</th><th>P50</th><th>P95</th><th>P99</th>'.repeat(2) + '</tr></thead><tbody>';
+                for (const s of summary.services) {
+                    rows += '<tr onclick="FlowReplayReport.showService(' + s.id + ')"><td>' + esc(s.name) + '</td><td>' + s.total
+                        + '</td><td class="success">' + s.matched + '</td><td class="failed">' + s.mismatched
+                        + '</td><td>' + s.successRate.toFixed(2) + '%</td><td>' + s.originalAvg.toFixed(2) + '</td><td>' + s.originalMin
+                        + '</td><td>' + s.originalMax + '</td>' + pct(s.originalPercentiles) + '<td>' + s.replayAvg.toFixed(2) + '</td><td>' + s.replayMin
+                        + '</td><td>' + s.replayMax + '</td>' + pct(s.replayPercentiles) + '</tr>';
+                }
+                document.getElementById('services').innerHTML = rows + '</tbody>';
+            }
+            function renderRecord(page, pos, r) {
+                const css = r.matched ? 'matched' : 'mismatched';
+                let html = '<div class="report-item ' + css + '" id="rec-' + page + '-' + pos + '">'
+                    + '<h3>请求 #' + r.index + ' - ' + esc(r.id) + '</h3>'
+                    + '<p><strong>协议:</strong> ' + esc(r.protocol) + ' &nbsp; <strong>方法:</strong> ' + esc(r.method)
+                    + ' &nbsp; <strong>URI:</strong> ' + esc(r.uri) + '</p>'
+                    + '<p><strong>接口名:</strong> ' + esc(r.service) + ' &nbsp; <strong>状态:</strong> <span class="' + css + '">'
+                    + (r.matched ? '✓ 匹配' : '✗ 不匹配') + '</span></p>'
+                    + '<p><strong>原始请求时间:</strong> ' + esc(r.originalTime) + ' &nbsp; <strong>原始耗时:</strong> ' + r.originalMs + ' ms'
+                    + ' &nbsp; <strong>回放请求时间:</strong> ' + esc(r.replayTime) + ' &nbsp; <strong>回放耗时:</strong> ' + r.replayMs + ' ms</p>';
+                if (r.differences.length > 0) {
+                    html += '<table class="diff-table"><tr><th>路径</th><th>类型</th><th>期望</th><th>实际</th></tr>';
+                    for (const d of r.differences) {
+                        html += '<tr><td>' + esc(d.path) + '</td><td>' + esc(d.type) + '</td><td>' + esc(d.expected) + '</td><td>' + esc(d.actual) + '</td></tr>';
+                    }
+                    html += '</table>';
+                }
+                html += '<div class="content-section"><div class="content-title collapsed" onclick="FlowReplayReport.toggleBodies(' + page + ',' + pos + ', this)">请求与响应报文</div>'
+                    + '<div class="content-box collapsed" id="bodies-' + page + '-' + pos + '"></div></div>';
+                return html + '</div>';
+            }
+            async function fillBodies(page, pos) {
+                const r = pages[page][pos];
+                await load('blobs/' + shard(page));
+                const text = async id => id ? esc(await inflate(blobs[page][id])) : '';
+                const response = async resp => resp == null ? '回放失败，无响应数据'
+                    : '<strong>Status:</strong> ' + resp.status + '\\n\\n<strong>Headers:</strong>\\n' + headers(resp.headers)
+                    + '\\n\\n<strong>Body:</strong>\\n' + await text(resp.body);
+                document.getElementById('bodies-' + page + '-' + pos).innerHTML =
+                    '<strong>原始请求 Headers:</strong>\\n' + headers(r.request.headers) + '\\n\\n<strong>Body:</strong>\\n' + await text(r.request.body)
+                    + '<div class="diff-container"><div class="diff-side"><div class="diff-side-title expected">录制的响应（期望）</div>'
+                    + '<div class="content-box">' + await response(r.expected) + '</div></div>'
+                    + '<div class="diff-side"><div class="diff-side-title actual">回放的响应（实际）</div>'
+                    + '<div class="content-box">' + await response(r.actual) + '</div></div></div>';
+            }
+            return {
+                summary(data) { summary = data; },
+                page(n, records) { pages[n] = records; },
+                blobs(n, map) { blobs[n] = map; },
+                service(id, data) { services[id] = data; },
+                currentPage() { return current; },
+                init() {
+                    renderSummary();
+                    if (summary.pages > 0) { this.showPage(1); }
+                },
+                async showPage(n, highlight) {
+                    if (!summary || summary.pages === 0) { return; }
+                    n = Math.min(Math.max(1, n || 1), summary.pages);
+                    current = n;
+                    document.getElementById('page-info').textContent = '第 ' + n + ' / ' + summary.pages + ' 页';
+                    document.getElementById('page-input').value = n;
+                    await load('data/' + shard(n));
+                    const onlyMismatched = document.getElementById('only-mismatched').checked;
+                    let html = '';
+                    pages[n].forEach((r, pos) => {
+                        if (!onlyMismatched || !r.matched || pos === highlight) { html += renderRecord(n, pos, r); }
+                    });
+                    document.getElementById('records').innerHTML = html;
+                    if (highlight != null) {
+                        const el = document.getElementById('rec-' + n + '-' + highlight);
+                        if (el) { el.classList.add('highlight'); el.scrollIntoView(); }
+                    }
+                },
+                async showService(id) {
+                    await load('data/service-' + id + '.js');
+                    const s = services[id];
+                    let html = '<h2>' + esc(s.stats.name) + ' - 耗时分布</h2><table class="service-stats-table"><thead><tr><th>类型</th>'
+                        + s.stats.replayDistribution.map(([label]) => '<th>' + esc(label) + '</th>').join('') + '</tr></thead><tbody>'
+                        + distribution('原始', s.stats.originalDistribution, s.stats.total)
+                        + distribution('回放', s.stats.replayDistribution, s.stats.total) + '</tbody></table>';
+                    html += '<h2>' + esc(s.stats.name) + ' - 失败记录</h2>';
+                    if (s.failures.length === 0) { html += '<p>无失败记录</p>'; }
+                    html += s.failures.map(([page, pos, recordId]) =>
+                        '<a href="javascript:void(0)" onclick="FlowReplayReport.showPage(' + page + ',' + pos + ')">' + esc(recordId) + '</a>').join('<br>');
+                    if (s.failuresTruncated) { html += '<p>仅显示前 ' + s.failures.length + ' 条</p>'; }
+                    const detail = document.getElementById('service-detail');
+                    detail.innerHTML = html;
+                    detail.style.display = 'block';
+                    detail.scrollIntoView();
+                },
+                async toggleBodies(page, pos, title) {
+                    const box = document.getElementById('bodies-' + page + '-' + pos);
+                    title.classList.toggle('collapsed');
+                    box.classList.toggle('collapsed');
+                    if (!box.dataset.loaded) {
+                        box.dataset.loaded = 'true';
+                        box.textContent = '加载中...';
+                        try { await fillBodies(page, pos); } catch (e) { box.textContent = e.message; }
+                    }
+                }
+            };
+        })();
+        """;
+
+    private record PageEntry(long index, ComparisonReport report, String serviceName, long originalDuration) {
+    }
+
+    private static final class ServiceShard {
+        private final int index;
+        private final ServiceStatistics stats;
+        private final List<List<Object>> failureRefs = new ArrayList<>();
+
+        private ServiceShard(int index, String serviceName) {
+            this.index = index;
+            this.stats = new ServiceStatistics(serviceName);
+        }
+    }
+
+    /**
+     * Jackson 写完会关闭 Writer，这里屏蔽 close 以便继续写入回调结尾
+     */
+    private static final class NonClosingWriter extends java.io.FilterWriter {
+        private NonClosingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.flowreplay.core.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import com.flowreplay.core.model.TrafficRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * 回放结果缓存（JSONL，每行一条 {@link Entry}）
+ * 以（请求指纹, 目标版本号）为键记录回放比对的结论，增量回放时跳过在相同版本上已验证通过的安全方法请求。
+ * 每个指纹最多保留 {@value #MAX_BUILDS_PER_FINGERPRINT} 个版本的结论，超出时淘汰验证时间最早的。
+ * 指纹覆盖协议、方法、URI、请求头（忽略追踪类易变头）、请求体以及录制响应的状态码和响应体，录制响应变化时指纹随之变化。
+ */
+public class ReplayResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplayResultCache.class);
+
+    // 可以安全跳过的 HTTP 安全方法；PUT/DELETE 虽然幂等但会修改目标状态，跳过后后续请求看到的状态与录制时不同
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+    static final int MAX_BUILDS_PER_FINGERPRINT = 8;
+    // 每次请求都会变化、不影响响应的请求头（小写）
+    private static final Set<String> VOLATILE_HEADERS = Set.of(
+        "date", "connection", "keep-alive", "content-length", "transfer-encoding",
+        "traceparent", "tracestate", "x-request-id", "x-trace-id", "x-amzn-trace-id",
+        "x-b3-traceid", "x-b3-spanid", "x-b3-parentspanid", "x-b3-sampled"
+    );
+
+    private final Path path;
+    private final ObjectMapper objectMapper;
+    // 指纹 -> 版本号 -> 结论
+    private final Map<String, Map<String, Entry>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 缓存条目
+     */
+    public record Entry(
+        String fingerprint,
+        String buildId,         // 验证时的目标版本号
+        boolean matched,        // 比对是否通过
+        long durationMillis,    // 回放耗时（毫秒），跳过时计入节省时间
+        String service,         // 接口名
+        Instant verifiedAt
+    ) {
+    }
+
+    /**
+     * 增量策略
+     * @param buildId 当前目标版本号，与缓存中版本号相同且已通过的记录直接跳过
+     * @param changedServices 本次变更的接口；非空时，未变更接口上已通过的记录即使版本号不同也跳过
+     * @param samplePercent 命中缓存的记录中仍然抽样回放的百分比
+     */
+    public record Policy(String buildId, Set<String> changedServices, double samplePercent) {
+        public Policy {
+            if (buildId == null || buildId.isBlank()) {
+                throw new IllegalArgumentException("build id is required for incremental replay");
+            }
+            if (samplePercent < 0 || samplePercent > 100) {
+                throw new IllegalArgumentException("sample percent must be between 0 and 100");
+            }
+            changedServices = changedServices == null ? Set.of() : Set.copyOf(changedServices);
+        }
+    }
+
+    /**
+     * 增量筛选结果
+     * @param toReplay 需要回放的记录（保持录制顺序）
+     * @param skipped 命中缓存而跳过的记录数
+     * @param sampled 命中缓存但被抽样回放的记录数
+     * @param uncached 缓存中没有的记录数
+     * @param previouslyFailed 上次比对未通过的记录数
+     * @param changed 已通过但目标版本或接口发生变更的记录数
+     * @param ineligible 非安全方法请求数（总是回放）
+     * @param savedMillis 跳过记录上次的回放耗时之和
+     */
+    public record Selection(
+        List<TrafficRecord> toReplay,
+        int skipped,
+        int sampled,
+        int uncached,
+        int previouslyFailed,
+        int changed,
+        int ineligible,
+        long savedMillis
+    ) {
+        public int total() {
+            return toReplay.size() + skipped;
+        }
+
+        /**
+         * 命中率：找到已验证通过且可跳过的条目（含抽样回放）占全部记录的比例
+         */
+        public double hitRate() {
+            int total = total();
+            return total == 0 ? 0.0 : (double) (skipped + sampled) / total;
+        }
+    }
+
+    private ReplayResultCache(Path path, ObjectMapper objectMapper) {
+        this.path = path;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 打开缓存文件，不存在时为空缓存；同一指纹和版本号出现多次时以最后一行为准
+     */
+    public static ReplayResultCache open(Path path) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        ReplayResultCache cache = new ReplayResultCache(path, objectMapper);
+        if (!Files.exists(path)) {
+            return cache;
+        }
+        int malformed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    Entry entry = objectMapper.readValue(line, Entry.class);
+                    if (entry.fingerprint() == null || entry.buildId() == null) {
+                        malformed++;
+                    } else {
+                        cache.add(entry);
+                    }
+                } catch (IOException e) {
+                    malformed++;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read replay result cache: " + path, e);
+        }
+        if (malformed > 0) {
+            log.warn("Skipped {} malformed lines in replay result cache: {}", malformed, path);
+        }
+        return cache;
+    }
+
+    /**
+     * 计算请求指纹（SHA-256 十六进制）
+     */
+    public static String fingerprint(TrafficRecord record) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        RequestData request = record.request();
+        update(digest, record.protocol());
+        if (request != null) {
+            update(digest, request.method());
+            update(digest, request.uri());
+            // 请求头按名称排序，忽略大小写差异和易变头
+            Map<String, String> headers = new TreeMap<>();
+            request.headers().forEach((name, value) -> {
+                String key = name.toLowerCase();
+                if (!VOLATILE_HEADERS.contains(key)) {
+                    headers.put(key, value);
+                }
+            });
+            headers.forEach((name, value) -> {
+                update(digest, name);
+                update(digest, value);
+            });
+            update(digest, request.body());
+        }
+        ResponseData response = record.response();
+        if (response != null) {
+            update(digest, Integer.toString(response.statusCode()));
+            update(digest, response.body());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // 每个字段前写入长度，避免相邻字段拼接产生歧义
+    private static void update(MessageDigest digest, String value) {
+        update(digest, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void update(MessageDigest digest, byte[] value) {
+        int length = value == null ? -1 : value.length;
+        digest.update(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+        if (value != null) {
+            digest.update(value);
+        }
+    }
+
+    /**
+     * 只有 HTTP 安全方法（GET/HEAD/OPTIONS）的请求可以跳过，TCP/ESB 报文无法判断是否有副作用
+     */
+    public static boolean isEligible(TrafficRecord record) {
+        return "HTTP".equalsIgnoreCase(record.protocol())
+            && record.request() != null
+            && record.request().method() != null
+            && SAFE_METHODS.contains(record.request().method().toUpperCase());
+    }
+
+    /**
+     * 按增量策略筛选需要回放的记录
+     */
+    public Selection select(List<TrafficRecord> records, Policy policy, Function<TrafficRecord, String> serviceName) {
+        List<TrafficRecord> toReplay = new ArrayList<>();
+        int skipped = 0;
+        int sampled = 0;
+        int uncached = 0;
+        int previouslyFailed = 0;
+        int changed = 0;
+        int ineligible = 0;
+        long savedMillis = 0;
+        for (TrafficRecord record : records) {
+            if (!isEligible(record)) {
+                ineligible++;
+                toReplay.add(record);
+                continue;
+            }
+            Map<String, Entry> verdicts = entries.get(fingerprint(record));
+            // 优先使用当前版本上的结论，没有时参考其他版本上最近一次的结论
+            Entry entry = verdicts == null ? null : verdicts.getOrDefault(policy.buildId(), latest(verdicts));
+            if (entry == null) {
+                uncached++;
+                toReplay.add(record);
+            } else if (!entry.matched()) {
+                previouslyFailed++;
+                toReplay.add(record);
+            } else if (!isVerified(entry, record, policy, serviceName)) {
+                changed++;
+                toReplay.add(record);
+            } else if (policy.samplePercent() > 0 && ThreadLocalRandom.current().nextDouble(100) < policy.samplePercent()) {
+                sampled++;
+                toReplay.add(record);
+            } else {
+                skipped++;
+                savedMillis += entry.durationMillis();
+            }
+        }
+        return new Selection(List.copyOf(toReplay), skipped, sampled, uncached, previouslyFailed, changed, ineligible, savedMillis);
+    }
+
+    // 相同版本上已验证，或指定了变更接口且该记录的接口未变更
+    private static boolean isVerified(Entry entry, TrafficRecord record, Policy policy, Function<TrafficRecord, String> serviceName) {
+        if (policy.buildId().equals(entry.buildId())) {
+            return true;
+        }
+        return !policy.changedServices().isEmpty() && !policy.changedServices().contains(serviceName.apply(record));
+    }
+
+    /**
+     * 记录一次回放比对的结论，覆盖同一版本上的旧结论；非安全方法请求不写入缓存
+     */
+    public void put(TrafficRecord record, String buildId, boolean matched, long durationMillis, String service) {
+        if (!isEligible(record)) {
+            return;
+        }
+        add(new Entry(fingerprint(record), buildId, matched, durationMillis, service, Instant.now()));
+    }
+
+    /**
+     * 查询记录在某个版本上的结论，没有时返回 null
+     */
+    public Entry get(TrafficRecord record, String buildId) {
+        Map<String, Entry> verdicts = entries.get(fingerprint(record));
+        return verdicts == null ? null : verdicts.get(buildId);
+    }
+
+    /**
+     * 条目数（指纹与版本号的组合数）
+     */
+    public int size() {
+        return entries.values().stream().mapToInt(Map::size).sum();
+    }
+
+    private void add(Entry entry) {
+        entries.compute(entry.fingerprint(), (fingerprint, verdicts) -> {
+            Map<String, Entry> updated = verdicts == null ? new ConcurrentHashMap<>() : verdicts;
+            updated.put(entry.buildId(), entry);
+            if (updated.size() > MAX_BUILDS_PER_FINGERPRINT) {
+                updated.values().stream()
+                    .min(Comparator.comparing(Entry::verifiedAt, Comparator.nullsFirst(Comparator.naturalOrder())))
+                    .ifPresent(oldest -> updated.remove(oldest.buildId()));
+            }
+            return updated;
+        });
+    }
+
+    private static Entry latest(Map<String, Entry> verdicts) {
+        return verdicts.values().stream()
+            .max(Comparator.comparing(Entry::verifiedAt, Comparator.nullsFirst(Comparator.naturalOrder())))
+            .orElse(null);
+    }
+
+    /**
+     * 写入临时文件后原子替换，中途失败不会损坏已有缓存
+     */
+    public void save() {
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map<String, Entry> verdicts : entries.values()) {
+                    for (Entry entry : verdicts.values()) {
+                        writer.write(objectMapper.writeValueAsString(entry));
+                        writer.newLine();
+                    }
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Saved {} entries to replay result cache: {}", size(), path);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save replay result cache: " + path, e);
+        }
+    }
+}
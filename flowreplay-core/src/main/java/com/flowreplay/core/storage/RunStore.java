@@ -0,0 +1,465 @@
+package com.flowreplay.core.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.flowreplay.core.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * 回放运行结果库
+ * runs.jsonl 为索引，每次运行追加一行 {@link RunSummary}（含各接口的耗时分位、错误率和匹配率），趋势查询只读索引；
+ * 每次运行的目录下保存逐条记录（records.bin，定长 12 字节：接口序号、耗时微秒、状态码、结果标志）
+ * 和各接口的耗时直方图（histograms.jsonl），只在做显著性检验时按需读取。
+ */
+public class RunStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RunStore.class);
+
+    static final String INDEX_FILE = "runs.jsonl";
+    static final String RECORDS_FILE = "records.bin";
+    static final String HISTOGRAMS_FILE = "histograms.jsonl";
+    // 整体统计使用的接口名
+    public static final String ALL_SERVICES = "*";
+    // 单侧显著性水平 0.001 对应的 z 值；接口多时降低误报
+    static final double Z_CRITICAL = 3.09;
+    // 分位耗时至少增加 5% 才视为回归，过滤统计显著但无实际意义的变化
+    static final double MIN_RELATIVE_INCREASE = 0.05;
+    // 正态近似要求的最少期望超限样本数
+    static final double MIN_EXPECTED_EXCEEDANCES = 5;
+
+    private static final byte FLAG_SUCCESS = 1;
+    private static final byte FLAG_COMPARED = 1 << 1;
+    private static final byte FLAG_MATCHED = 1 << 2;
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 一个接口（或整体）在一次运行中的统计
+     */
+    public record ServiceSummary(
+        long requests,
+        long errors,            // 回放失败或 5xx
+        long compared,
+        long matched,
+        double meanMicros,
+        long p50Micros,
+        long p95Micros,
+        long p99Micros,
+        long maxMicros
+    ) {
+        public double errorRate() {
+            return requests == 0 ? 0.0 : (double) errors / requests;
+        }
+
+        /**
+         * 匹配率，未比对时为 NaN
+         */
+        public double matchRate() {
+            return compared == 0 ? Double.NaN : (double) matched / compared;
+        }
+    }
+
+    /**
+     * 索引中的一次运行
+     */
+    public record RunSummary(
+        String runId,
+        Instant startedAt,
+        long wallMillis,
+        String buildId,
+        String target,
+        String mode,
+        List<String> services,                  // records.bin 中接口序号对应的接口名
+        ServiceSummary overall,
+        Map<String, ServiceSummary> byService
+    ) {
+    }
+
+    /**
+     * 统计显著的分位耗时回归
+     * @param exceedances 候选运行中超过基线分位值的样本数
+     */
+    public record Regression(
+        String service,
+        double percentile,
+        long baselineMicros,
+        long candidateMicros,
+        double baselineExceedRate,
+        double candidateExceedRate,
+        long exceedances,
+        long samples,
+        double zScore
+    ) {
+    }
+
+    private RunStore(Path directory) {
+        this.directory = directory;
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.registerModule(new JavaTimeModule());
+    }
+
+    public static RunStore open(Path directory) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create run store: " + directory, e);
+        }
+        return new RunStore(directory);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 开始写入一次运行，逐条记录写入 records.bin，提交时写直方图并追加索引
+     */
+    public Recorder newRun(String runId, Instant startedAt, String buildId, String target, String mode) {
+        Path runDirectory = directory.resolve(runId);
+        if (Files.exists(runDirectory.resolve(HISTOGRAMS_FILE))) {
+            throw new IllegalArgumentException("Run already stored: " + runId);
+        }
+        try {
+            Files.createDirectories(runDirectory);
+            DataOutputStream records = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(runDirectory.resolve(RECORDS_FILE)), 64 * 1024));
+            return new Recorder(runId, startedAt, buildId, target, mode, runDirectory, records);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create run: " + runDirectory, e);
+        }
+    }
+
+    /**
+     * 最近 last 次运行（按写入顺序），只解析索引末尾的行
+     */
+    public List<RunSummary> list(int last) {
+        Path index = directory.resolve(INDEX_FILE);
+        if (!Files.exists(index)) {
+            return List.of();
+        }
+        Deque<String> tail = new ArrayDeque<>(Math.min(Math.max(1, last), 1024));
+        try (BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (tail.size() == last) {
+                    tail.removeFirst();
+                }
+                tail.addLast(line);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read run index: " + index, e);
+        }
+        List<RunSummary> runs = new ArrayList<>(tail.size());
+        for (String line : tail) {
+            try {
+                runs.add(objectMapper.readValue(line, RunSummary.class));
+            } catch (IOException e) {
+                log.warn("Skipping malformed run index entry: {}", e.getMessage());
+            }
+        }
+        return runs;
+    }
+
+    public Optional<RunSummary> find(String runId) {
+        return list(Integer.MAX_VALUE).stream().filter(run -> run.runId().equals(runId)).findFirst();
+    }
+
+    /**
+     * 读取一次运行各接口的耗时直方图（含整体 {@link #ALL_SERVICES}）
+     */
+    public Map<String, LatencyHistogram> loadHistograms(String runId) {
+        Path path = directory.resolve(runId).resolve(HISTOGRAMS_FILE);
+        Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    StoredHistogram stored = objectMapper.readValue(line, StoredHistogram.class);
+                    histograms.put(stored.service(), LatencyHistogram.decode(stored.histogram()));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read run histograms: " + path, e);
+        }
+        return histograms;
+    }
+
+    /**
+     * 对比两次运行各接口的 P95/P99：以基线的分位值为阈值，统计两次运行超过阈值的样本比例，
+     * 用双比例 z 检验判断候选运行的超限比例是否显著更高（同时考虑两次运行的抽样误差）
+     */
+    public List<Regression> findRegressions(String baselineRunId, String candidateRunId) {
+        Map<String, LatencyHistogram> baseline = loadHistograms(baselineRunId);
+        Map<String, LatencyHistogram> candidate = loadHistograms(candidateRunId);
+        List<Regression> regressions = new ArrayList<>();
+        for (Map.Entry<String, LatencyHistogram> entry : candidate.entrySet()) {
+            LatencyHistogram before = baseline.get(entry.getKey());
+            if (before == null) {
+                continue;
+            }
+            for (double percentile : new double[]{95, 99}) {
+                Regression regression = testPercentile(entry.getKey(), percentile, before, entry.getValue());
+                if (regression != null) {
+                    regressions.add(regression);
+                }
+            }
+        }
+        return regressions;
+    }
+
+    static Regression testPercentile(String service, double percentile, LatencyHistogram baseline, LatencyHistogram candidate) {
+        long baselineSamples = baseline.getCount();
+        long candidateSamples = candidate.getCount();
+        double tail = 1 - percentile / 100;
+        if (baselineSamples * tail < MIN_EXPECTED_EXCEEDANCES || candidateSamples * tail < MIN_EXPECTED_EXCEEDANCES) {
+            return null;
+        }
+        long baselineValue = baseline.getValueAtPercentile(percentile);
+        long candidateValue = candidate.getValueAtPercentile(percentile);
+        if (candidateValue < baselineValue * (1 + MIN_RELATIVE_INCREASE)) {
+            return null;
+        }
+        long baselineAbove = baseline.getCountAbove(baselineValue);
+        long candidateAbove = candidate.getCountAbove(baselineValue);
+        double baselineRate = (double) baselineAbove / baselineSamples;
+        double candidateRate = (double) candidateAbove / candidateSamples;
+        double pooled = (double) (baselineAbove + candidateAbove) / (baselineSamples + candidateSamples);
+        double standardError = Math.sqrt(pooled * (1 - pooled) * (1.0 / baselineSamples + 1.0 / candidateSamples));
+        if (standardError == 0) {
+            return null;
+        }
+        double z = (candidateRate - baselineRate) / standardError;
+        if (z < Z_CRITICAL) {
+            return null;
+        }
+        return new Regression(service, percentile, baselineValue, candidateValue, baselineRate, candidateRate,
+            candidateAbove, candidateSamples, z);
+    }
+
+    private void append(RunSummary summary, Map<String, LatencyHistogram> histograms, Path runDirectory) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(runDirectory.resolve(HISTOGRAMS_FILE), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+                writer.write(objectMapper.writeValueAsString(new StoredHistogram(entry.getKey(), entry.getValue().encode())));
+                writer.newLine();
+            }
+        }
+        // 索引最后追加，运行数据不完整时不会出现在索引中；文件锁保证多个进程同时写入时行不交错
+        ByteBuffer line = ByteBuffer.wrap((objectMapper.writeValueAsString(summary) + "\n").getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(directory.resolve(INDEX_FILE),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            FileLock lock = channel.lock();
+            try {
+                while (line.hasRemaining()) {
+                    channel.write(line);
+                }
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * 逐条回放结果的接收方
+     */
+    public interface RecordSink {
+        /**
+         * @param status 回放响应状态码，失败时为 0
+         * @param matched 比对结果，未比对时为 null
+         */
+        void add(String service, long durationMicros, int status, boolean success, Boolean matched);
+    }
+
+    private static ServiceSummary summarize(ServiceCounters counters, LatencyHistogram histogram) {
+        return new ServiceSummary(
+            counters.requests,
+            counters.errors,
+            counters.compared,
+            counters.matched,
+            histogram.getMeanMicros(),
+            histogram.getValueAtPercentile(50),
+            histogram.getValueAtPercentile(95),
+            histogram.getValueAtPercentile(99),
+            histogram.getMaxMicros()
+        );
+    }
+
+    record StoredHistogram(String service, String histogram) {
+    }
+
+    private static final class ServiceCounters {
+        private long requests;
+        private long errors;
+        private long compared;
+        private long matched;
+
+        private void add(boolean error, Boolean matchedResult) {
+            requests++;
+            if (error) {
+                errors++;
+            }
+            if (matchedResult != null) {
+                compared++;
+                if (matchedResult) {
+                    matched++;
+                }
+            }
+        }
+    }
+
+    /**
+     * 内存中的运行统计：按接口累计计数和耗时直方图，不写文件（非线程安全）
+     */
+    public static final class Summarizer implements RecordSink {
+        private final Map<String, LatencyHistogram> histograms = new TreeMap<>();
+        private final Map<String, ServiceCounters> counters = new TreeMap<>();
+        private final List<String> services = new ArrayList<>();
+        private final LatencyHistogram overallHistogram = new LatencyHistogram();
+        private final ServiceCounters overallCounters = new ServiceCounters();
+
+        @Override
+        public void add(String service, long durationMicros, int status, boolean success, Boolean matched) {
+            String name = service == null ? "unknown" : service;
+            boolean error = !success || status >= 500;
+            counters.computeIfAbsent(name, key -> {
+                services.add(key);
+                return new ServiceCounters();
+            }).add(error, matched);
+            overallCounters.add(error, matched);
+            // 失败请求的耗时不计入分布
+            if (success) {
+                histograms.computeIfAbsent(name, key -> new LatencyHistogram()).record(durationMicros);
+                overallHistogram.record(durationMicros);
+            }
+        }
+
+        public RunSummary summarize(String runId, Instant startedAt, long wallMillis, String buildId, String target, String mode) {
+            Map<String, ServiceSummary> byService = new TreeMap<>();
+            counters.forEach((service, serviceCounters) ->
+                byService.put(service, RunStore.summarize(serviceCounters, histogram(service))));
+            return new RunSummary(runId, startedAt, wallMillis, buildId, target, mode,
+                List.copyOf(services), RunStore.summarize(overallCounters, overallHistogram), byService);
+        }
+
+        /**
+         * 各接口的耗时直方图，整体 {@link #ALL_SERVICES} 在最前
+         */
+        public Map<String, LatencyHistogram> histograms() {
+            Map<String, LatencyHistogram> all = new LinkedHashMap<>();
+            all.put(ALL_SERVICES, overallHistogram);
+            counters.keySet().forEach(service -> all.put(service, histogram(service)));
+            return all;
+        }
+
+        // 全部失败的接口没有耗时样本
+        private LatencyHistogram histogram(String service) {
+            return histograms.getOrDefault(service, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * 一次运行的写入器（非线程安全，在回放结束后按顺序写入）
+     */
+    public final class Recorder implements RecordSink, AutoCloseable {
+        private final String runId;
+        private final Instant startedAt;
+        private final String buildId;
+        private final String target;
+        private final String mode;
+        private final Path runDirectory;
+        private final DataOutputStream records;
+        private final Map<String, Integer> serviceIndexes = new LinkedHashMap<>();
+        private final Summarizer summarizer = new Summarizer();
+        private boolean committed;
+
+        private Recorder(String runId, Instant startedAt, String buildId, String target, String mode,
+                         Path runDirectory, DataOutputStream records) {
+            this.runId = runId;
+            this.startedAt = startedAt;
+            this.buildId = buildId;
+            this.target = target;
+            this.mode = mode;
+            this.runDirectory = runDirectory;
+            this.records = records;
+        }
+
+        @Override
+        public void add(String service, long durationMicros, int status, boolean success, Boolean matched) {
+            String name = service == null ? "unknown" : service;
+            int serviceIndex = serviceIndexes.computeIfAbsent(name, key -> serviceIndexes.size());
+            byte flags = 0;
+            if (success) {
+                flags |= FLAG_SUCCESS;
+            }
+            if (matched != null) {
+                flags |= FLAG_COMPARED;
+                if (matched) {
+                    flags |= FLAG_MATCHED;
+                }
+            }
+            try {
+                records.writeInt(serviceIndex);
+                records.writeInt((int) Math.min(Integer.MAX_VALUE, Math.max(0, durationMicros)));
+                records.writeShort(status);
+                records.writeByte(flags);
+                records.writeByte(0);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to write run records: " + runDirectory, e);
+            }
+            summarizer.add(name, durationMicros, status, success, matched);
+        }
+
+        /**
+         * 写入直方图并追加索引，返回本次运行的汇总
+         */
+        public RunSummary commit(long wallMillis) {
+            RunSummary summary = summarizer.summarize(runId, startedAt, wallMillis, buildId, target, mode);
+            try {
+                records.close();
+                append(summary, summarizer.histograms(), runDirectory);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to store run: " + runId, e);
+            }
+            committed = true;
+            log.info("Stored run {} ({} records) in {}", runId, summary.overall().requests(), directory);
+            return summary;
+        }
+
+        @Override
+        public void close() {
+            if (!committed) {
+                try {
+                    records.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close run records: {}", runDirectory, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.flowreplay.core.comparator;
+
+import com.flowreplay.core.model.ComparisonResult;
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import com.flowreplay.core.model.TrafficRecord;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyStrategyTest {
+
+    @Test
+    void flagsReplayExceedingAbsoluteThreshold() {
+        LatencyStrategy strategy = LatencyStrategy.fromConfig(Map.of("maxDeltaMs", 50));
+
+        ComparisonResult result = strategy.compare(response(100), response(180));
+
+        assertFalse(result.matched());
+        assertEquals("latency", result.differences().get(0).path());
+        assertEquals(80L, result.metrics().get(LatencyStrategy.METRIC_DELTA_MS));
+    }
+
+    @Test
+    void relativeThresholdIgnoresDeltasBelowNoiseFloor() {
+        LatencyStrategy strategy = LatencyStrategy.fromConfig(Map.of("maxDeltaPercent", 50, "minDeltaMs", 10));
+
+        assertTrue(strategy.compare(response(2), response(8)).matched());
+        assertFalse(strategy.compare(response(100), response(200)).matched());
+        assertTrue(strategy.compare(response(100), response(140)).matched());
+    }
+
+    @Test
+    void comparatorAppliesPerRuleConfigAndEmitsRuleMetrics() {
+        List<ComparisonConfig> configs = List.of(new ComparisonConfig(
+            "api",
+            "/api/.*",
+            List.of(
+                new StrategyConfig("http-status", null),
+                new StrategyConfig("latency", Map.of("maxDeltaMs", 20))
+            )
+        ));
+        Comparator comparator = new Comparator(configs);
+        TrafficRecord record = new TrafficRecord(
+            "r1",
+            "HTTP",
+            Instant.now(),
+            new RequestData("GET", "/api/test", Map.of(), null, Map.of()),
+            response(30),
+            Map.of()
+        );
+
+        ComparisonResult result = comparator.compare(record, response(90));
+
+        assertFalse(result.matched());
+        assertEquals("api", result.metrics().get("rule"));
+        assertEquals(60L, result.metrics().get(LatencyStrategy.METRIC_DELTA_MS));
+    }
+
+    private static ResponseData response(long durationMs) {
+        return new ResponseData(200, Map.of(), "ok".getBytes(StandardCharsets.UTF_8), durationMs, Map.of());
+    }
+}
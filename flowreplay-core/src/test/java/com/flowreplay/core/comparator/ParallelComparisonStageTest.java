@@ -0,0 +1,147 @@
+package com.flowreplay.core.comparator;
+
+import com.flowreplay.core.model.ComparisonResult;
+import com.flowreplay.core.model.ReplayResult;
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import com.flowreplay.core.model.TrafficRecord;
+import com.flowreplay.core.report.ComparisonReport;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelComparisonStageTest {
+
+    @Test
+    void keepsIndexOrderUnderConcurrentSubmit() throws Exception {
+        int size = 500;
+        Comparator comparator = comparator(record -> {
+            // 随机耗时打乱完成顺序
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextInt(200_000));
+            return null;
+        });
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            indexes.add(i);
+        }
+        Collections.shuffle(indexes);
+
+        try (ParallelComparisonStage stage = new ParallelComparisonStage(comparator, 4, size)) {
+            try (var submitters = Executors.newFixedThreadPool(8)) {
+                for (int index : indexes) {
+                    submitters.submit(() -> stage.submit(index, record("r" + index), success(index)));
+                }
+            }
+            List<ComparisonReport> reports = stage.await();
+
+            assertEquals(size, reports.size());
+            for (int i = 0; i < size; i++) {
+                assertEquals("r" + i, reports.get(i).record().id());
+            }
+            assertEquals(size, stage.getComparedCount());
+        }
+    }
+
+    @Test
+    void runsComparisonOnSubmittingThreadWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Map<String, String> comparedOn = new ConcurrentHashMap<>();
+        Comparator comparator = comparator(record -> {
+            String thread = Thread.currentThread().getName();
+            comparedOn.put(record.id(), thread);
+            if (thread.startsWith("flowreplay-compare-")) {
+                awaitQuietly(release);
+            }
+            return null;
+        });
+        // 1 个比对线程 + 64 个排队，第 66 条由提交线程自己比对
+        int size = 66;
+        try (ParallelComparisonStage stage = new ParallelComparisonStage(comparator, 1, size)) {
+            for (int i = 0; i < size; i++) {
+                stage.submit(i, record("r" + i), success(i));
+            }
+            assertEquals(Thread.currentThread().getName(), comparedOn.get("r65"));
+            assertEquals(1, stage.getComparedCount());
+
+            release.countDown();
+            assertEquals(size, stage.await().size());
+            assertEquals(size, stage.getComparedCount());
+        }
+    }
+
+    @Test
+    void fillsSlotWhenComparisonAndFallbackThrow() throws Exception {
+        Comparator comparator = new Comparator(List.of()) {
+            @Override
+            public ComparisonReport compareReplay(TrafficRecord record, ReplayResult replayResult) {
+                if (record.id().equals("broken") && replayResult.success()) {
+                    throw new IllegalStateException("strategy bug");
+                }
+                if (record.id().equals("always-broken")) {
+                    throw new IllegalStateException("comparator unavailable");
+                }
+                return super.compareReplay(record, replayResult.success()
+                    ? ReplayResult.failure(record.id(), replayResult.duration(), "not compared") : replayResult);
+            }
+        };
+
+        try (ParallelComparisonStage stage = new ParallelComparisonStage(comparator, 2, 3)) {
+            stage.submit(0, record("ok"), success(0));
+            stage.submit(1, record("broken"), success(1));
+            stage.submit(2, record("always-broken"), success(2));
+            List<ComparisonReport> reports = stage.await();
+
+            assertEquals(3, reports.size());
+            assertEquals(3, stage.getComparedCount());
+            assertTrue(reports.get(0).result().differences().get(0).actual().contains("not compared"));
+            // 第一次比对失败：按回放失败重新比对
+            assertFalse(reports.get(1).result().matched());
+            assertTrue(reports.get(1).result().differences().get(0).actual().contains("strategy bug"));
+            // 兜底比对也失败：直接生成错误报告
+            assertEquals("always-broken", reports.get(2).record().id());
+            assertFalse(reports.get(2).result().matched());
+        }
+    }
+
+    // compare 返回 null 时视为匹配
+    private static Comparator comparator(Function<TrafficRecord, ComparisonResult> compare) {
+        return new Comparator(List.of()) {
+            @Override
+            public ComparisonReport compareReplay(TrafficRecord record, ReplayResult replayResult) {
+                ComparisonResult result = compare.apply(record);
+                return new ComparisonReport(record, replayResult.response(),
+                    result != null ? result : ComparisonResult.success(), replayResult.duration(), Instant.now());
+            }
+        };
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ReplayResult success(int index) {
+        return ReplayResult.success("r" + index, new ResponseData(200, Map.of(), new byte[0], 1, Map.of()), 1);
+    }
+
+    private static TrafficRecord record(String id) {
+        return new TrafficRecord(id, "HTTP", Instant.now(), new RequestData("GET", "/" + id, Map.of(), null, Map.of()),
+            new ResponseData(200, Map.of(), new byte[0], 1, Map.of()), Map.of());
+    }
+}
@@ -0,0 +1,76 @@
+package com.flowreplay.core.comparator;
+
+import com.flowreplay.core.model.ComparisonResult;
+import com.flowreplay.core.model.ResponseData;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class XmlStructureStrategyTest {
+
+    @Test
+    void ignoresAttributeOrderWhitespaceAndPrefixes() {
+        XmlStructureStrategy strategy = new XmlStructureStrategy();
+
+        ComparisonResult result = strategy.compare(
+            xml("<a:Resp xmlns:a=\"urn:esb\" x=\"1\" y=\"2\">\n  <a:Code>S1</a:Code>\n</a:Resp>"),
+            xml("<b:Resp xmlns:b=\"urn:esb\" y=\"2\" x=\"1\"><b:Code>S1</b:Code></b:Resp>")
+        );
+
+        assertTrue(result.matched(), () -> result.differences().toString());
+    }
+
+    @Test
+    void reportsValueAndAttributeDifferencesWithPaths() {
+        XmlStructureStrategy strategy = new XmlStructureStrategy();
+
+        ComparisonResult result = strategy.compare(
+            xml("<Resp status=\"ok\"><Body><Amount>10</Amount></Body></Resp>"),
+            xml("<Resp status=\"fail\"><Body><Amount>12</Amount></Body></Resp>")
+        );
+
+        assertFalse(result.matched());
+        assertEquals("/Resp/@status", result.differences().get(0).path());
+        assertEquals("/Resp/Body/Amount", result.differences().get(1).path());
+        assertEquals("12", result.differences().get(1).actual());
+    }
+
+    @Test
+    void skipsIgnoredSubtreesAndOptionallyNamespaces() {
+        XmlStructureStrategy strategy = XmlStructureStrategy.fromConfig(Map.of(
+            "ignorePaths", List.of("Timestamp", "/Resp/Head/@seq"),
+            "ignoreNamespaces", true
+        ));
+
+        ComparisonResult result = strategy.compare(
+            xml("<Resp xmlns=\"urn:v1\"><Head seq=\"1\"><Timestamp><t>1</t></Timestamp></Head><Code>S1</Code></Resp>"),
+            xml("<Resp xmlns=\"urn:v2\"><Head seq=\"9\"/><Code>S1</Code></Resp>")
+        );
+
+        assertTrue(result.matched(), () -> result.differences().toString());
+    }
+
+    @Test
+    void stopsAtStructuralDivergenceAndSkipsNonXml() {
+        XmlStructureStrategy strategy = new XmlStructureStrategy();
+
+        ComparisonResult diverged = strategy.compare(
+            xml("<Resp><A>1</A><B>2</B></Resp>"),
+            xml("<Resp><A>1</A></Resp>")
+        );
+        assertFalse(diverged.matched());
+        assertEquals("missing", diverged.differences().get(0).type());
+        assertEquals("/Resp/B", diverged.differences().get(0).path());
+
+        ResponseData json = new ResponseData(200, Map.of(), "{}".getBytes(StandardCharsets.UTF_8), 0, Map.of());
+        assertTrue(strategy.compare(json, json).metrics().containsKey("skipped"));
+    }
+
+    private static ResponseData xml(String body) {
+        return new ResponseData(200, Map.of("content-type", "application/xml"), body.getBytes(StandardCharsets.UTF_8), 0, Map.of());
+    }
+}
@@ -0,0 +1,73 @@
+package com.flowreplay.core.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentilesStayWithinRelativeErrorBound() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100_000; micros++) {
+            histogram.record(micros);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(1, histogram.getMinMicros());
+        assertEquals(100_000, histogram.getMaxMicros());
+        assertEquals(50_000.5, histogram.getMeanMicros(), 0.001);
+        assertWithinOnePercent(50_000, histogram.getValueAtPercentile(50));
+        assertWithinOnePercent(95_000, histogram.getValueAtPercentile(95));
+        assertWithinOnePercent(99_000, histogram.getValueAtPercentile(99));
+        assertEquals(100_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void bucketBoundariesAreContiguous() {
+        for (long value = 0; value < 1L << 20; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(LatencyHistogram.lowestEquivalentValue(index) <= value);
+            assertTrue(LatencyHistogram.highestEquivalentValue(index) >= value);
+        }
+        assertDoesNotThrow(() -> new LatencyHistogram().record(Long.MAX_VALUE));
+    }
+
+    @Test
+    void mergesConcurrentRecordersAndSurvivesEncoding() throws Exception {
+        LatencyHistogram shared = new LatencyHistogram();
+        List<Thread> threads = IntStream.range(0, 4)
+            .mapToObj(t -> new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    shared.record(1_000 + i);
+                }
+            }))
+            .toList();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        LatencyHistogram other = new LatencyHistogram();
+        other.record(2_000_000);
+        LatencyHistogram merged = LatencyHistogram.decode(shared.encode());
+        merged.merge(LatencyHistogram.decode(other.encode()));
+
+        assertEquals(40_001, merged.getCount());
+        assertEquals(1_000, merged.getMinMicros());
+        assertEquals(2_000_000, merged.getMaxMicros());
+        assertEquals(shared.getValueAtPercentile(99), merged.getValueAtPercentile(99));
+        List<LatencyHistogram.DistributionBucket> distribution = merged.getDistribution();
+        assertEquals("1ms-2ms", distribution.get(1).label());
+        assertEquals(4_000, distribution.get(1).count());
+        assertEquals("2s-5s", distribution.get(distribution.size() - 2).label());
+        assertEquals(1, distribution.get(distribution.size() - 2).count());
+    }
+
+    private static void assertWithinOnePercent(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / 100, "expected ~" + expected + " but was " + actual);
+    }
+}
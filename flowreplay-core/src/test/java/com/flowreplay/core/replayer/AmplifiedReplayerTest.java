@@ -0,0 +1,84 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.TrafficRecord;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AmplifiedReplayerTest {
+
+    @Test
+    void sendsEveryCopyWithRewrittenKeysAtTargetRate() throws Exception {
+        Set<String> requestIds = ConcurrentHashMap.newKeySet();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", exchange -> {
+            requestIds.add(exchange.getRequestHeaders().getFirst("X-Request-Id"));
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        try {
+            List<TrafficRecord> records = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                records.add(new TrafficRecord("r" + i, "HTTP", Instant.now(),
+                    new RequestData("GET", "/item", Map.of("X-Request-Id", "id" + i), null, Map.of()), null, Map.of()));
+            }
+
+            TrafficReplayer replayer = new TrafficReplayer("http://127.0.0.1:" + server.getAddress().getPort(), false);
+            AmplifiedReplayer amplified = new AmplifiedReplayer(replayer,
+                new AmplifiedReplayer.Config(4, 8, 2, 200, List.of("header:x-request-id")));
+            List<AmplifiedReplayer.Progress> progress = new CopyOnWriteArrayList<>();
+            AmplifiedReplayer.Summary summary = amplified.replay(records, Duration.ofMillis(50), progress::add);
+
+            assertEquals(40, summary.total());
+            assertEquals(40, summary.succeeded());
+            assertEquals(0, summary.failed());
+            // 40 个请求按 200 RPS 排期，最后一个不早于 195ms 发出
+            assertTrue(summary.wallSeconds() >= 0.19, "wall " + summary.wallSeconds());
+            assertTrue(summary.achievedRps() <= 220, "rps " + summary.achievedRps());
+            assertTrue(summary.p99Micros() >= summary.p50Micros());
+            assertEquals(40, requestIds.size());
+            assertTrue(requestIds.contains("id3") && requestIds.contains("id3-1") && requestIds.contains("id3-3"));
+            assertFalse(progress.isEmpty());
+            assertTrue(progress.stream().allMatch(p -> p.total() == 40 && p.completed() <= 40));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void rewritesCookieQueryAndEsbKeys() {
+        RequestData request = new RequestData("POST", "/order?orderId=42&x=1", Map.of("Cookie", "a=1; SID=abc"),
+            "<Req><SerialNo>S-9</SerialNo></Req>".getBytes(StandardCharsets.UTF_8), Map.of());
+
+        RequestData rewritten = AmplifiedReplayer.KeyRewrite.parse("cookie:SID").apply(request, "-2");
+        rewritten = AmplifiedReplayer.KeyRewrite.parse("query:orderId").apply(rewritten, "-2");
+        rewritten = AmplifiedReplayer.KeyRewrite.parse("esb:SerialNo").apply(rewritten, "-2");
+        RequestData json = AmplifiedReplayer.KeyRewrite.parse("esb:serialNo")
+            .apply(new RequestData("POST", "/", Map.of(), "{\"serialNo\": \"S-9\"}".getBytes(StandardCharsets.UTF_8), Map.of()), "-1");
+
+        assertEquals("a=1; SID=abc-2", rewritten.headers().get("Cookie"));
+        assertEquals("/order?orderId=42-2&x=1", rewritten.uri());
+        assertEquals("<Req><SerialNo>S-9-2</SerialNo></Req>", new String(rewritten.body(), StandardCharsets.UTF_8));
+        assertEquals("{\"serialNo\": \"S-9-1\"}", new String(json.body(), StandardCharsets.UTF_8));
+        assertThrows(IllegalArgumentException.class, () -> AmplifiedReplayer.KeyRewrite.parse("body:x"));
+        assertThrows(IllegalArgumentException.class, () -> new AmplifiedReplayer.Config(0, 1, 0, 0, List.of()));
+    }
+}
@@ -0,0 +1,130 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.TrafficRecord;
+import com.flowreplay.core.parser.ServiceNameParserFactory;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CapacitySearchReplayerTest {
+
+    @Test
+    void convergesBelowTargetCapacityAndReportsCurvePerService() throws Exception {
+        // 目标最多同时处理 2 个请求，每个 10ms，容量约 200 rps
+        Semaphore workers = new Semaphore(2);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", exchange -> {
+            try {
+                workers.acquire();
+                try {
+                    Thread.sleep(10);
+                } finally {
+                    workers.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        try (TrafficReplayer replayer = new TrafficReplayer("http://127.0.0.1:" + server.getAddress().getPort(), false)) {
+            List<TrafficRecord> records = List.of(record("/a"), record("/b"));
+            CapacitySearchReplayer.Config config = new CapacitySearchReplayer.Config(
+                CapacitySearchReplayer.Strategy.BINARY, 20, 5_000, Duration.ofMillis(500), 100_000, 0.01, 12);
+
+            CapacitySearchReplayer.Result result = new CapacitySearchReplayer(
+                replayer, ServiceNameParserFactory.getParser("uri"), config).search(records, null);
+
+            assertTrue(result.maxSustainableRps() > 60 && result.maxSustainableRps() < 220,
+                "max sustainable " + result.maxSustainableRps());
+            assertTrue(result.steps().get(0).withinSlo());
+            assertTrue(result.steps().stream().anyMatch(step -> !step.withinSlo()));
+            CapacitySearchReplayer.Step first = result.steps().get(0);
+            assertEquals(List.of("/a", "/b"), List.copyOf(first.services().keySet()));
+            assertEquals(first.requests(), first.services().values().stream().mapToLong(CapacitySearchReplayer.ServicePoint::requests).sum());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void abortsStepWhenTargetStallsWithoutCompletingRequests() throws Exception {
+        // 目标收到请求后长时间不响应：实时检查只能靠在途请求发现超限
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        try (TrafficReplayer replayer = new TrafficReplayer("http://127.0.0.1:" + server.getAddress().getPort(), false)) {
+            CapacitySearchReplayer.Config config = new CapacitySearchReplayer.Config(
+                CapacitySearchReplayer.Strategy.AIMD, 100, 100, Duration.ofSeconds(5), 50_000, 0.01, 1);
+
+            long startNanos = System.nanoTime();
+            CapacitySearchReplayer.Result result = new CapacitySearchReplayer(
+                replayer, ServiceNameParserFactory.getParser("uri"), config).search(List.of(record("/slow")), null);
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+            CapacitySearchReplayer.Step step = result.steps().get(0);
+            assertTrue(step.aborted());
+            assertFalse(step.withinSlo());
+            assertEquals(0, step.requests());
+            assertEquals(0.0, result.maxSustainableRps());
+            // 预热与正式步骤都提前结束，收尾只等一个 P99 上限
+            assertTrue(elapsedMillis < 3_000, "elapsed " + elapsedMillis + " ms");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void rejectsInvalidConfig() {
+        assertThrows(IllegalArgumentException.class, () -> new CapacitySearchReplayer.Config(
+            CapacitySearchReplayer.Strategy.AIMD, 0, 10, Duration.ofSeconds(1), 1000, 0.01, 5));
+        assertThrows(IllegalArgumentException.class, () -> new CapacitySearchReplayer.Config(
+            CapacitySearchReplayer.Strategy.AIMD, 10, 100, Duration.ofSeconds(1), 1000, 2, 5));
+        assertEquals(CapacitySearchReplayer.Strategy.AIMD, CapacitySearchReplayer.Strategy.parse("aimd"));
+        assertThrows(IllegalArgumentException.class, () -> CapacitySearchReplayer.Strategy.parse("linear"));
+    }
+
+    @Test
+    void rejectsTcpConversationRecords() {
+        TrafficRecord message = new TrafficRecord("m0", "SOCKET", Instant.now(),
+            new RequestData("raw", "upstream", Map.of(), "hello".getBytes(StandardCharsets.UTF_8), Map.of()), null,
+            Map.of("clientAddress", "10.0.0.1:5001", "messageIndex", 0, "lastMessage", true));
+        CapacitySearchReplayer.Config config = new CapacitySearchReplayer.Config(
+            CapacitySearchReplayer.Strategy.BINARY, 10, 100, Duration.ofMillis(100), 1000, 0.01, 1);
+
+        try (TrafficReplayer replayer = new TrafficReplayer("http://127.0.0.1:1", false)) {
+            CapacitySearchReplayer capacity = new CapacitySearchReplayer(replayer, ServiceNameParserFactory.getParser("uri"), config);
+            IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> capacity.search(List.of(record("/a"), message), null));
+            assertTrue(error.getMessage().contains("TCP conversation"), error.getMessage());
+        }
+    }
+
+    private static TrafficRecord record(String uri) {
+        return new TrafficRecord(uri, "HTTP", Instant.now(), new RequestData("GET", uri, Map.of(), null, Map.of()), null, Map.of());
+    }
+}
@@ -0,0 +1,124 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.comparator.ComparisonConfigLoader;
+import com.flowreplay.core.comparator.Comparator;
+import com.flowreplay.core.model.ReplayResult;
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import com.flowreplay.core.model.TrafficRecord;
+import com.flowreplay.core.report.MultiTargetReport;
+import com.flowreplay.core.report.MultiTargetReportGenerator;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiTargetReplayerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void fansEachRecordOutToAllTargetsAndComparesSideBySide() throws Exception {
+        Set<String> seenByOld = ConcurrentHashMap.newKeySet();
+        Set<String> seenByNew = ConcurrentHashMap.newKeySet();
+        HttpServer oldServer = server(seenByOld, "v1");
+        HttpServer newServer = server(seenByNew, "v2");
+        List<String> targets = List.of(url(oldServer), url(newServer));
+        try (TrafficReplayer oldReplayer = new TrafficReplayer(targets.get(0), false);
+             TrafficReplayer newReplayer = new TrafficReplayer(targets.get(1), false)) {
+            List<TrafficRecord> records = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                records.add(new TrafficRecord("r" + i, "HTTP", Instant.now(),
+                    new RequestData("GET", "/item/" + i, Map.of(), null, Map.of()),
+                    new ResponseData(200, Map.of(), ("{\"version\":\"v1\",\"path\":\"/item/" + i + "\"}").getBytes(StandardCharsets.UTF_8), 5, Map.of()),
+                    Map.of()));
+            }
+
+            Comparator comparator = new Comparator(ComparisonConfigLoader.loadDefault());
+            MultiTargetReport[] reports = new MultiTargetReport[records.size()];
+            MultiTargetReplayer replayer = new MultiTargetReplayer(List.of(oldReplayer, newReplayer), false);
+            List<List<ReplayResult>> results = replayer.replay(records,
+                (index, targetResults) -> reports[index] = comparator.compareTargets(records.get(index), targetResults));
+
+            assertEquals(12, results.size());
+            assertTrue(results.stream().allMatch(r -> r.size() == 2 && r.stream().allMatch(ReplayResult::success)));
+            assertEquals(12, seenByOld.size());
+            assertEquals(seenByOld, seenByNew);
+            assertEquals(12, replayer.getSuccessCount(0));
+            assertEquals(12, replayer.getLatencyHistogram(1).getCount());
+            assertTrue(replayer.getMaxStartSkewMicros() < 1_000_000, "skew " + replayer.getMaxStartSkewMicros());
+            for (MultiTargetReport report : reports) {
+                assertTrue(report.targetReports().get(0).result().matched());
+                assertFalse(report.targetReports().get(1).result().matched());
+                assertFalse(report.targetsConsistent());
+            }
+
+            Path output = tempDir.resolve("ab.html");
+            new MultiTargetReportGenerator().generateReport(targets, List.of(reports), output.toString(), null);
+            String html = Files.readString(output, StandardCharsets.UTF_8);
+            assertTrue(html.contains("目标 B 的响应"));
+            assertTrue(html.contains(targets.get(1)));
+            assertTrue(html.contains("/item/11"));
+            assertTrue(html.trim().endsWith("</html>"));
+        } finally {
+            oldServer.stop(0);
+            newServer.stop(0);
+        }
+    }
+
+    @Test
+    void skipsStartSkewWhenTargetsFailToReplay() {
+        TrafficRecord record = new TrafficRecord("r0", "HTTP", Instant.now(),
+            new RequestData("GET", "/item/0", Map.of(), null, Map.of()), null, Map.of());
+        try (TrafficReplayer failing = new TrafficReplayer("http://127.0.0.1:1", false) {
+                 @Override
+                 public ReplayResult replay(TrafficRecord ignored) {
+                     throw new IllegalStateException("target down");
+                 }
+             };
+             TrafficReplayer other = new TrafficReplayer("http://127.0.0.1:1", false)) {
+            MultiTargetReplayer replayer = new MultiTargetReplayer(List.of(failing, other), true);
+            List<List<ReplayResult>> results = replayer.replay(List.of(record), null);
+
+            // 第一个目标出错后不再等待其他目标的结果，没有可比较的起始时间
+            assertEquals(1, results.size());
+            assertTrue(results.get(0).stream().noneMatch(ReplayResult::success));
+            assertEquals(0.0, replayer.getMaxStartSkewMicros());
+            assertEquals(0.0, replayer.getAvgStartSkewMicros());
+        }
+    }
+
+    private static HttpServer server(Set<String> seen, String version) throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", exchange -> {
+            seen.add(exchange.getRequestURI().getPath());
+            byte[] body = ("{\"version\":\"" + version + "\",\"path\":\"" + exchange.getRequestURI().getPath() + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        return server;
+    }
+
+    private static String url(HttpServer server) {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+}
@@ -0,0 +1,211 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.util.AsciiString;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NettyHttp2ReplayClientTest {
+
+    private final Set<Channel> serverConnections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final AtomicInteger peakStreams = new AtomicInteger();
+    private EventLoopGroup serverGroup;
+
+    @AfterEach
+    void stopServer() {
+        if (serverGroup != null) {
+            serverGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).awaitUninterruptibly();
+        }
+    }
+
+    @Test
+    void multiplexesConcurrentStreamsOverFewConnections() throws Exception {
+        String target = startServer(1000);
+        NettyHttp2ReplayClient.Settings settings = new NettyHttp2ReplayClient.Settings(
+            NettyHttp2ReplayClient.Mode.PRIOR_KNOWLEDGE, 50, 256 * 1024, 4 * 1024 * 1024);
+        try (NettyHttp2ReplayClient client = new NettyHttp2ReplayClient(target, 8, settings)) {
+            List<ResponseData> responses = sendConcurrently(client, 100);
+
+            for (int i = 0; i < responses.size(); i++) {
+                assertEquals(200, responses.get(i).statusCode());
+                assertEquals("POST /item/" + i, new String(responses.get(i).body(), StandardCharsets.UTF_8));
+                assertTrue(responses.get(i).metadata().get("durationMicros") instanceof Long);
+                assertTrue(responses.get(i).metadata().containsKey(NettyHttp2ReplayClient.STREAM_ID_METADATA));
+            }
+            assertTrue(serverConnections.size() <= 3, "connections: " + serverConnections.size());
+            assertTrue(peakStreams.get() > 10, "streams should overlap, peak " + peakStreams.get());
+        }
+    }
+
+    @Test
+    void respectsServerAdvertisedStreamLimit() throws Exception {
+        String target = startServer(8);
+        NettyHttp2ReplayClient.Settings settings = new NettyHttp2ReplayClient.Settings(
+            NettyHttp2ReplayClient.Mode.PRIOR_KNOWLEDGE, 100, 65_535, 65_535);
+        try (NettyHttp2ReplayClient client = new NettyHttp2ReplayClient(target, 1, settings)) {
+            List<ResponseData> responses = sendConcurrently(client, 40);
+
+            assertTrue(responses.stream().allMatch(r -> r.statusCode() == 200));
+            assertTrue(peakStreams.get() <= 8, "peak " + peakStreams.get());
+            assertTrue(client.summary().contains("(peer 8)"), client.summary());
+        }
+    }
+
+    @Test
+    void negotiatesH2cViaUpgrade() throws Exception {
+        String target = startServer(100);
+        NettyHttp2ReplayClient.Settings settings = new NettyHttp2ReplayClient.Settings(
+            NettyHttp2ReplayClient.Mode.UPGRADE, 10, 65_535, 1024 * 1024);
+        try (NettyHttp2ReplayClient client = new NettyHttp2ReplayClient(target, 2, settings)) {
+            for (int i = 0; i < 5; i++) {
+                ResponseData response = client.send(new RequestData("GET", "/up/" + i, Map.of("Connection", "keep-alive"), null, null));
+                assertEquals("GET /up/" + i, new String(response.body(), StandardCharsets.UTF_8));
+            }
+            assertEquals(1, serverConnections.size());
+        }
+    }
+
+    @Test
+    void validatesSettings() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new NettyHttp2ReplayClient.Settings(NettyHttp2ReplayClient.Mode.UPGRADE, 0, 65_535, 65_535));
+        assertThrows(IllegalArgumentException.class,
+            () -> new NettyHttp2ReplayClient.Settings(NettyHttp2ReplayClient.Mode.UPGRADE, 10, 65_535, 1024));
+        assertEquals(NettyHttp2ReplayClient.Mode.PRIOR_KNOWLEDGE, NettyHttp2ReplayClient.Mode.parse("prior-knowledge"));
+    }
+
+    private static List<ResponseData> sendConcurrently(NettyHttp2ReplayClient client, int count) throws Exception {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<Future<ResponseData>> futures = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                RequestData request = new RequestData("POST", "/item/" + i, Map.of(), ("body-" + i).getBytes(StandardCharsets.UTF_8), null);
+                futures.add(executor.submit(() -> client.send(request)));
+            }
+            List<ResponseData> responses = new ArrayList<>();
+            for (Future<ResponseData> future : futures) {
+                responses.add(future.get());
+            }
+            return responses;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // 同时支持 prior-knowledge 与 Upgrade 的 h2c 回显服务，每个流延迟 30ms 响应以制造并发
+    private String startServer(int maxConcurrentStreams) throws Exception {
+        serverGroup = new NioEventLoopGroup(2);
+        Channel serverChannel = new ServerBootstrap()
+            .group(serverGroup)
+            .channel(NioServerSocketChannel.class)
+            .childHandler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) {
+                    serverConnections.add(ch);
+                    HttpServerCodec sourceCodec = new HttpServerCodec();
+                    HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(sourceCodec, protocol ->
+                        AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)
+                            ? new Http2ServerUpgradeCodec(serverCodec(maxConcurrentStreams), new Http2MultiplexHandler(new EchoInitializer()))
+                            : null);
+                    ChannelHandler priorKnowledge = new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel channel) {
+                            channel.pipeline().addLast(serverCodec(maxConcurrentStreams), new Http2MultiplexHandler(new EchoInitializer()));
+                        }
+                    };
+                    ch.pipeline().addLast(new CleartextHttp2ServerUpgradeHandler(sourceCodec, upgradeHandler, priorKnowledge));
+                }
+            })
+            .bind("127.0.0.1", 0)
+            .sync()
+            .channel();
+        return "http://127.0.0.1:" + ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+
+    private static Http2FrameCodec serverCodec(int maxConcurrentStreams) {
+        return Http2FrameCodecBuilder.forServer()
+            .initialSettings(Http2Settings.defaultSettings().maxConcurrentStreams(maxConcurrentStreams))
+            .build();
+    }
+
+    private final class EchoInitializer extends ChannelInitializer<Channel> {
+        @Override
+        protected void initChannel(Channel channel) {
+            channel.pipeline().addLast(new EchoHandler());
+        }
+    }
+
+    private final class EchoHandler extends ChannelInboundHandlerAdapter {
+        private Http2Headers requestHeaders;
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            try {
+                boolean endStream = false;
+                if (msg instanceof Http2HeadersFrame headersFrame) {
+                    requestHeaders = headersFrame.headers();
+                    peakStreams.accumulateAndGet(activeStreams.incrementAndGet(), Math::max);
+                    endStream = headersFrame.isEndStream();
+                } else if (msg instanceof Http2DataFrame dataFrame) {
+                    endStream = dataFrame.isEndStream();
+                }
+                if (endStream) {
+                    ctx.executor().schedule(() -> respond(ctx), 30, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        private void respond(ChannelHandlerContext ctx) {
+            activeStreams.decrementAndGet();
+            byte[] body = (requestHeaders.method() + " " + requestHeaders.path()).getBytes(StandardCharsets.UTF_8);
+            ctx.write(new DefaultHttp2HeadersFrame(new DefaultHttp2Headers().status("200")));
+            ctx.writeAndFlush(new DefaultHttp2DataFrame(Unpooled.wrappedBuffer(body), true));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NettyHttpReplayClientTest {
+
+    private final Set<String> remoteAddresses = ConcurrentHashMap.newKeySet();
+    private HttpServer server;
+    private String target;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        // 回显请求路径，便于校验管线化时响应与请求的匹配
+        server.createContext("/", exchange -> {
+            remoteAddresses.add(exchange.getRemoteAddress().toString());
+            byte[] body = (exchange.getRequestMethod() + " " + exchange.getRequestURI()).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        target = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void reusesKeepAliveConnectionAcrossRequests() throws Exception {
+        try (NettyHttpReplayClient client = new NettyHttpReplayClient(target, 4, 1)) {
+            for (int i = 0; i < 20; i++) {
+                ResponseData response = client.send(request("GET", "/item/" + i, null));
+                assertEquals(200, response.statusCode());
+                assertEquals("GET /item/" + i, new String(response.body(), StandardCharsets.UTF_8));
+                assertTrue(response.metadata().get("durationMicros") instanceof Long);
+            }
+            assertEquals(1, remoteAddresses.size(), "sequential requests should share one connection");
+            assertTrue(client.summary().contains("connections opened=1"), client.summary());
+        }
+    }
+
+    @Test
+    void matchesPipelinedResponsesToRequestsInOrder() throws Exception {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try (NettyHttpReplayClient client = new NettyHttpReplayClient(target, 1, 4)) {
+            List<Future<ResponseData>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                RequestData request = request("POST", "/order/" + i, "payload-" + i);
+                futures.add(executor.submit(() -> client.send(request)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals("POST /order/" + i, new String(futures.get(i).get().body(), StandardCharsets.UTF_8));
+            }
+            assertEquals(1, remoteAddresses.size(), "pool size 1 should use a single connection");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectsHttpsTargets() {
+        assertThrows(IllegalArgumentException.class, () -> new NettyHttpReplayClient("https://example.com", 4, 1));
+    }
+
+    private static RequestData request(String method, String uri, String body) {
+        return new RequestData(
+            method,
+            uri,
+            Map.of("X-Trace", "t"),
+            body == null ? null : body.getBytes(StandardCharsets.UTF_8),
+            null
+        );
+    }
+}
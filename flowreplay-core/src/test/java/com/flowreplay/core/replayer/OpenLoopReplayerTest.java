@@ -0,0 +1,85 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.model.ReplayResult;
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.TrafficRecord;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpenLoopReplayerTest {
+
+    @Test
+    void correctedLatencyIncludesTimeQueuedBehindStalledRequest() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        // 第一个请求卡住 300ms，其余立即返回
+        server.createContext("/", exchange -> {
+            if (exchange.getRequestURI().getPath().equals("/0")) {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        String target = "http://127.0.0.1:" + server.getAddress().getPort();
+        // 单连接客户端：后续请求在客户端排队，传输层上报的耗时不含排队时间
+        try (NettyHttpReplayClient client = new NettyHttpReplayClient(target, 1, 1);
+             TrafficReplayer replayer = new TrafficReplayer(target, false, client)) {
+            List<TrafficRecord> records = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                records.add(new TrafficRecord("r" + i, "HTTP", Instant.now(),
+                    new RequestData("GET", "/" + i, Map.of(), null, Map.of()), null, Map.of()));
+            }
+
+            OpenLoopReplayer openLoop = new OpenLoopReplayer(replayer, 100, 1.0);
+            List<ReplayResult> results = openLoop.replay(records, null);
+
+            assertEquals(30, results.size());
+            assertTrue(results.stream().allMatch(ReplayResult::success));
+            assertEquals(30, openLoop.getRawHistogram().getCount());
+            assertEquals(30, openLoop.getCorrectedHistogram().getCount());
+            assertEquals(290.0, openLoop.getScheduledMillis(), 1.0);
+            assertTrue(openLoop.getRawHistogram().getValueAtPercentile(50) < 50_000,
+                "raw p50 " + openLoop.getRawHistogram().getValueAtPercentile(50));
+            assertTrue(openLoop.getCorrectedHistogram().getValueAtPercentile(50) > 100_000,
+                "corrected p50 " + openLoop.getCorrectedHistogram().getValueAtPercentile(50));
+            assertTrue(openLoop.getCorrectedHistogram().getMaxMicros() >= 290_000);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void schedulesByRecordedTimestampsScaledBySpeed() {
+        Instant base = Instant.parse("2026-01-01T00:00:00Z");
+        List<TrafficRecord> records = List.of(
+            new TrafficRecord("a", "HTTP", base, new RequestData("GET", "/", Map.of(), null, Map.of()), null, Map.of()),
+            new TrafficRecord("b", "HTTP", base.plusMillis(400), new RequestData("GET", "/", Map.of(), null, Map.of()), null, Map.of())
+        );
+        // 目标不可达，只校验排期
+        try (TrafficReplayer replayer = new TrafficReplayer("http://127.0.0.1:1", false)) {
+            OpenLoopReplayer openLoop = new OpenLoopReplayer(replayer, 0, 4.0);
+            openLoop.replay(records, null);
+
+            assertEquals(100.0, openLoop.getScheduledMillis(), 0.5);
+            assertTrue(openLoop.getWallMillis() >= 100.0);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new OpenLoopReplayer(null, 0, 0));
+    }
+}
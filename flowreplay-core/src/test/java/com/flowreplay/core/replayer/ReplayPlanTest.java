@@ -0,0 +1,66 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.model.ReplayResult;
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import com.flowreplay.core.model.TrafficRecord;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayPlanTest {
+
+    @Test
+    void replaysPreparedRequestsRepeatedlyAndRejectsInvalidOnesUpFront() throws Exception {
+        List<String> seen = new CopyOnWriteArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            seen.add(exchange.getRequestMethod() + " " + exchange.getRequestURI() + " "
+                + new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        String target = "http://127.0.0.1:" + server.getAddress().getPort();
+        try (TrafficReplayer replayer = new TrafficReplayer(target)) {
+            TrafficRecord get = record("r1", "HTTP", "GET", "http://recorded-host:8081/item/1?x=1", Map.of("Host", "recorded-host"), null);
+            TrafficRecord post = record("r2", "HTTP", "POST", "order", Map.of("Connection", "close", "Content-Type", "text/plain"), "hello");
+            TrafficRecord invalid = record("r3", "HTTP", "BAD METHOD", "/item/3", Map.of(), null);
+            TrafficRecord tcp = record("r4", "SOCKET", "SEND", "127.0.0.1:1", Map.of(), "ping");
+            ReplayPlan plan = ReplayPlan.compile(List.of(get, post, invalid, tcp), target);
+
+            assertEquals(3, plan.size());
+            assertEquals(1, plan.getInvalidCount());
+            assertNull(plan.get(tcp));
+            assertEquals(URI.create(target + "/item/1?x=1"), plan.get(get).httpRequest().uri());
+            assertThrows(IllegalArgumentException.class, () -> replayer.usePlan(ReplayPlan.compile(List.of(get), "http://other:1")));
+
+            replayer.usePlan(plan);
+            for (int round = 0; round < 2; round++) {
+                assertTrue(replayer.replay(get).success());
+                assertTrue(replayer.replay(post).success());
+                ReplayResult rejected = replayer.replay(invalid);
+                assertFalse(rejected.success());
+            }
+            assertEquals(List.of("GET /item/1?x=1 ", "POST /order hello", "GET /item/1?x=1 ", "POST /order hello"), seen);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static TrafficRecord record(String id, String protocol, String method, String uri, Map<String, String> headers, String body) {
+        return new TrafficRecord(id, protocol, Instant.now(),
+            new RequestData(method, uri, headers, body != null ? body.getBytes(StandardCharsets.UTF_8) : null, Map.of()),
+            new ResponseData(200, Map.of(), new byte[0], 1, Map.of()),
+            Map.of());
+    }
+}
@@ -0,0 +1,137 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.model.ReplayResult;
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.TrafficRecord;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionParallelReplayerTest {
+
+    @Test
+    void keepsRecordedOrderWithinSessionsWhileSessionsRunInParallel() throws Exception {
+        Map<String, List<Integer>> arrivals = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> inFlightBySession = new ConcurrentHashMap<>();
+        AtomicInteger overlapping = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        AtomicInteger concurrent = new AtomicInteger();
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", exchange -> {
+            String session = exchange.getRequestHeaders().getFirst("X-Session-Id");
+            int step = Integer.parseInt(exchange.getRequestURI().getPath().substring(1));
+            if (inFlightBySession.computeIfAbsent(session, k -> new AtomicInteger()).incrementAndGet() > 1) {
+                overlapping.incrementAndGet();
+            }
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            arrivals.computeIfAbsent(session, k -> Collections.synchronizedList(new ArrayList<>())).add(step);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            concurrent.decrementAndGet();
+            inFlightBySession.get(session).decrementAndGet();
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        try {
+            List<TrafficRecord> records = new ArrayList<>();
+            for (int step = 0; step < 5; step++) {
+                for (int session = 0; session < 4; session++) {
+                    records.add(record("s" + session, step));
+                }
+            }
+            records.add(record(null, 99));
+
+            TrafficReplayer replayer = new TrafficReplayer("http://127.0.0.1:" + server.getAddress().getPort(), false);
+            SessionParallelReplayer sessionReplayer = new SessionParallelReplayer(replayer, SessionKeyExtractor.parse("header:x-session-id"));
+            List<ReplayResult> results = sessionReplayer.replay(records, null);
+
+            assertEquals(records.size(), results.size());
+            assertTrue(results.stream().allMatch(ReplayResult::success));
+            for (int session = 0; session < 4; session++) {
+                assertEquals(List.of(0, 1, 2, 3, 4), arrivals.get("s" + session));
+            }
+            assertEquals(0, overlapping.get());
+            assertTrue(maxConcurrent.get() > 1, "sessions should overlap");
+            assertEquals(5, sessionReplayer.getPartitionCount());
+            assertEquals(5, sessionReplayer.getLargestPartitionSize());
+            assertEquals(1, sessionReplayer.getUnkeyedCount());
+            assertEquals(0, sessionReplayer.getTimestampInversions());
+            assertTrue(sessionReplayer.getSpeedup() > 1.5, "speedup " + sessionReplayer.getSpeedup());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void countsRecordedTimestampInversionsWithinSessions() {
+        Instant base = Instant.parse("2024-01-01T00:00:00Z");
+        List<TrafficRecord> records = List.of(
+            record("s0", 0, base.plusSeconds(2)),
+            record("s1", 0, base),
+            record("s0", 1, base.plusSeconds(1)),  // 会话 s0 内时间倒退
+            record("s1", 1, base.plusSeconds(3)),
+            record(null, 99, base)                 // 无会话键，不参与检查
+        );
+
+        TrafficReplayer replayer = new TrafficReplayer("http://127.0.0.1:1", false);
+        SessionParallelReplayer sessionReplayer = new SessionParallelReplayer(replayer, SessionKeyExtractor.parse("header:x-session-id"));
+        sessionReplayer.replay(records, null);
+
+        assertEquals(1, sessionReplayer.getTimestampInversions());
+    }
+
+    @Test
+    void extractsCookieEsbAndConnectionKeys() {
+        TrafficRecord record = new TrafficRecord(
+            "r",
+            "HTTP",
+            Instant.now(),
+            new RequestData("POST", "/esb", Map.of("Cookie", "a=1; JSESSIONID=abc"),
+                "<Req><SessionId>S-9</SessionId></Req>".getBytes(StandardCharsets.UTF_8), Map.of()),
+            null,
+            Map.of(SessionKeyExtractor.CLIENT_ADDRESS_METADATA, "10.0.0.1:5000")
+        );
+
+        assertEquals("abc", SessionKeyExtractor.parse("cookie:JSESSIONID").extract(record));
+        assertEquals("S-9", SessionKeyExtractor.parse("esb:SessionId").extract(record));
+        assertEquals("10.0.0.1:5000", SessionKeyExtractor.parse("connection").extract(record));
+        assertNull(SessionKeyExtractor.parse("header:X-Missing").extract(record));
+        assertThrows(IllegalArgumentException.class, () -> SessionKeyExtractor.parse("query:x"));
+    }
+
+    private static TrafficRecord record(String session, int step) {
+        return record(session, step, Instant.now());
+    }
+
+    private static TrafficRecord record(String session, int step, Instant timestamp) {
+        Map<String, String> headers = session != null ? Map.of("X-Session-Id", session) : Map.of("X-Session-Id", "");
+        return new TrafficRecord(
+            session + "-" + step,
+            "HTTP",
+            timestamp,
+            new RequestData("GET", "/" + step, headers, null, Map.of()),
+            null,
+            Map.of()
+        );
+    }
+}
@@ -0,0 +1,245 @@
+package com.flowreplay.core.replayer;
+
+import com.flowreplay.core.model.ReplayResult;
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import com.flowreplay.core.model.TrafficRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TcpConversationReplayerTest {
+
+    private final AtomicInteger accepted = new AtomicInteger();
+    private final List<List<String>> messagesByConnection = new CopyOnWriteArrayList<>();
+    private ServerSocket server;
+
+    @AfterEach
+    void stopServer() throws Exception {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void replaysConversationInOrderOverOneConnection() throws Exception {
+        String target = startServer(false);
+        List<TrafficRecord> records = new ArrayList<>();
+        for (int message = 0; message < 3; message++) {
+            for (String client : List.of("10.0.0.1:5001", "10.0.0.2:5002")) {
+                records.add(record(client + "#" + message, client, message, message == 2));
+            }
+        }
+
+        try (TrafficReplayer replayer = new TrafficReplayer(target, false)) {
+            List<ReplayResult> results = replayer.replay(records);
+
+            for (int i = 0; i < records.size(); i++) {
+                assertTrue(results.get(i).success());
+                String sent = new String(records.get(i).request().body(), StandardCharsets.UTF_8);
+                assertEquals("ack:" + sent, new String(results.get(i).response().body(), StandardCharsets.UTF_8));
+            }
+            // 每个会话的消息都在同一个连接上按录制顺序到达
+            assertEquals(2, accepted.get());
+            for (List<String> messages : messagesByConnection) {
+                String client = messages.get(0).substring(0, messages.get(0).indexOf('#'));
+                assertEquals(List.of(client + "#0", client + "#1", client + "#2"), messages);
+            }
+            ResponseData first = results.get(0).response();
+            ResponseData second = results.get(2).response();
+            assertEquals(false, first.metadata().get("connectionReused"));
+            assertEquals(true, second.metadata().get("connectionReused"));
+            assertEquals(0L, second.metadata().get("connectMicros"));
+            assertTrue(replayer.tcpSummary().contains("ordering violations=0"), replayer.tcpSummary());
+        }
+    }
+
+    @Test
+    void keepsConversationOnOneConnectionInSessionMode() throws Exception {
+        String target = startServer(false);
+        List<TrafficRecord> records = new ArrayList<>();
+        for (String client : List.of("10.0.0.1:5001", "10.0.0.2:5002")) {
+            // 录制文件中第 1 条消息排在第 0 条之前，回放时按 messageIndex 排序
+            records.add(record(client + "#1", client, 1, false));
+            records.add(record(client + "#0", client, 0, false));
+            records.add(record(client + "#2", client, 2, true));
+        }
+
+        try (TrafficReplayer replayer = new TrafficReplayer(target, false)) {
+            // 会话键取不到 TCP 记录的值，仍按源连接分区
+            SessionParallelReplayer sessionReplayer = new SessionParallelReplayer(replayer, SessionKeyExtractor.parse("header:X-Session-Id"));
+            List<ReplayResult> results = sessionReplayer.replay(records, null);
+
+            assertTrue(results.stream().allMatch(ReplayResult::success));
+            assertEquals(2, sessionReplayer.getPartitionCount());
+            assertEquals(0, sessionReplayer.getUnkeyedCount());
+            // 会话结束后连接可被另一个会话复用：每个连接上依次是完整、有序的会话
+            int received = 0;
+            for (List<String> messages : messagesByConnection) {
+                for (int start = 0; start < messages.size(); start += 3) {
+                    String client = messages.get(start).substring(0, messages.get(start).indexOf('#'));
+                    assertEquals(List.of(client + "#0", client + "#1", client + "#2"), messages.subList(start, start + 3));
+                }
+                received += messages.size();
+            }
+            assertEquals(6, received);
+            assertTrue(replayer.tcpSummary().contains("ordering violations=0"), replayer.tcpSummary());
+        }
+    }
+
+    @Test
+    void replaysEachConversationCopyOnOneVirtualClient() throws Exception {
+        String target = startServer(false);
+        List<TrafficRecord> records = new ArrayList<>();
+        for (String client : List.of("10.0.0.1:5001", "10.0.0.2:5002")) {
+            // 录制文件中第 1 条消息排在第 0 条之前，放大回放时按 messageIndex 排序
+            records.add(record(client + "#1", client, 1, false));
+            records.add(record(client + "#0", client, 0, false));
+            records.add(record(client + "#2", client, 2, true));
+        }
+
+        try (TrafficReplayer replayer = new TrafficReplayer(target, false)) {
+            AmplifiedReplayer amplified = new AmplifiedReplayer(replayer, new AmplifiedReplayer.Config(3, 8, 0, 0, List.of()));
+            AmplifiedReplayer.Summary summary = amplified.replay(records, null, null);
+
+            assertEquals(18, summary.succeeded());
+            // 每个会话副本都在一个连接上完整、有序地回放
+            int received = 0;
+            for (List<String> messages : messagesByConnection) {
+                for (int start = 0; start < messages.size(); start += 3) {
+                    String client = messages.get(start).substring(0, messages.get(start).indexOf('#'));
+                    assertEquals(List.of(client + "#0", client + "#1", client + "#2"), messages.subList(start, start + 3));
+                }
+                received += messages.size();
+            }
+            assertEquals(18, received);
+            assertTrue(replayer.tcpSummary().contains("ordering violations=0"), replayer.tcpSummary());
+        }
+    }
+
+    @Test
+    void reusesPooledConnectionAcrossStandaloneRecords() throws Exception {
+        String target = startServer(false);
+        try (TrafficReplayer replayer = new TrafficReplayer(target, true)) {
+            List<TrafficRecord> records = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                records.add(record("m" + i, null, -1, false));
+            }
+            List<ReplayResult> results = replayer.replay(records);
+
+            assertTrue(results.stream().allMatch(ReplayResult::success));
+            assertEquals(1, accepted.get());
+            assertTrue(replayer.tcpSummary().contains("connections opened=1"), replayer.tcpSummary());
+        }
+    }
+
+    @Test
+    void retriesOnFreshConnectionWhenPooledConnectionWasClosed() throws Exception {
+        String target = startServer(true);
+        try (TrafficReplayer replayer = new TrafficReplayer(target, true)) {
+            List<ReplayResult> results = replayer.replay(List.of(
+                record("a", null, -1, false),
+                record("b", null, -1, false),
+                record("c", null, -1, false)
+            ));
+
+            for (ReplayResult result : results) {
+                assertTrue(result.success());
+                assertTrue(new String(result.response().body(), StandardCharsets.UTF_8).startsWith("ack:"));
+            }
+            assertEquals(3, accepted.get());
+        }
+    }
+
+    @Test
+    void failsConversationMessagesWhenTargetClosesConnectionMidStream() throws Exception {
+        String target = startServer(true);
+        String client = "10.0.0.1:5001";
+        try (TrafficReplayer replayer = new TrafficReplayer(target, true)) {
+            List<ReplayResult> results = replayer.replay(List.of(
+                record(client + "#0", client, 0, false),
+                record(client + "#1", client, 1, false),
+                record(client + "#2", client, 2, true)
+            ));
+
+            assertTrue(results.get(0).success());
+            // 目标在第一条响应后关闭了连接：不换新连接重发
+            assertFalse(results.get(1).success());
+            assertFalse(results.get(2).success());
+            assertEquals(1, accepted.get());
+            assertEquals(List.of(client + "#0"), messagesByConnection.get(0));
+            assertTrue(replayer.tcpSummary().contains("stale retries=0"), replayer.tcpSummary());
+        }
+    }
+
+    private static TrafficRecord record(String message, String clientAddress, int messageIndex, boolean lastMessage) {
+        Map<String, Object> metadata = new HashMap<>();
+        if (clientAddress != null) {
+            metadata.put("clientAddress", clientAddress);
+            metadata.put(TcpConversationReplayer.MESSAGE_INDEX_METADATA, messageIndex);
+            metadata.put(TcpConversationReplayer.LAST_MESSAGE_METADATA, lastMessage);
+        }
+        return new TrafficRecord(
+            message,
+            "SOCKET",
+            Instant.now(),
+            new RequestData("raw", "upstream", Map.of(), message.getBytes(StandardCharsets.UTF_8), Map.of()),
+            new ResponseData(0, Map.of(), ("ack:" + message).getBytes(StandardCharsets.UTF_8), 0, Map.of()),
+            metadata
+        );
+    }
+
+    // 每读到一条消息回复 ack:<消息>；closeAfterResponse 时每次回复后关闭连接
+    private String startServer(boolean closeAfterResponse) throws Exception {
+        server = new ServerSocket(0);
+        Thread.ofVirtual().start(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    accepted.incrementAndGet();
+                    List<String> messages = Collections.synchronizedList(new ArrayList<>());
+                    messagesByConnection.add(messages);
+                    Thread.ofVirtual().start(() -> serve(socket, messages, closeAfterResponse));
+                } catch (Exception e) {
+                    return;
+                }
+            }
+        });
+        return "127.0.0.1:" + server.getLocalPort();
+    }
+
+    private static void serve(Socket socket, List<String> messages, boolean closeAfterResponse) {
+        try (socket) {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            byte[] buffer = new byte[1024];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                String message = new String(buffer, 0, bytesRead, StandardCharsets.UTF_8);
+                messages.add(message);
+                out.write(("ack:" + message).getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                if (closeAfterResponse) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            // 客户端断开
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.flowreplay.core.report;
+
+import com.flowreplay.core.model.ComparisonResult;
+import com.flowreplay.core.model.Difference;
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import com.flowreplay.core.model.TrafficRecord;
+import com.flowreplay.core.parser.ServiceNameParserFactory;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentStatisticsAggregatorTest {
+
+    @Test
+    void snapshotsStayConsistentWhileWritersAreActive() throws Exception {
+        ConcurrentStatisticsAggregator aggregator = new ConcurrentStatisticsAggregator(ServiceNameParserFactory.getParser(null));
+        int writers = 4;
+        int perWriter = 20_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            Thread thread = new Thread(() -> {
+                ComparisonReport matched = report("/api/a" + writer, true, 5);
+                ComparisonReport mismatched = report("/api/b", false, 50);
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perWriter; i++) {
+                    aggregator.record(i % 4 == 0 ? mismatched : matched);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        long previousTotal = 0;
+        while (threads.stream().anyMatch(Thread::isAlive)) {
+            ConcurrentStatisticsAggregator.Snapshot snapshot = aggregator.snapshot();
+            assertConsistent(snapshot);
+            assertTrue(snapshot.totalCount() >= previousTotal);
+            previousTotal = snapshot.totalCount();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        ConcurrentStatisticsAggregator.Snapshot finalSnapshot = aggregator.snapshot();
+        assertConsistent(finalSnapshot);
+        assertEquals((long) writers * perWriter, finalSnapshot.totalCount());
+        assertEquals(writers * perWriter / 4, finalSnapshot.mismatchedCount());
+        ServiceStatistics slow = finalSnapshot.services().get("/api/b");
+        assertEquals(writers * perWriter / 4, slow.getMismatchedCount());
+        assertEquals(50.0, slow.getReplayPercentile(99), 0.5);
+        assertEquals(50, slow.getReplayMaxDuration());
+    }
+
+    private static void assertConsistent(ConcurrentStatisticsAggregator.Snapshot snapshot) {
+        long total = 0;
+        long matched = 0;
+        for (ServiceStatistics stats : snapshot.services().values()) {
+            total += stats.getTotalCount();
+            matched += stats.getMatchedCount();
+            assertEquals(stats.getTotalCount(), stats.getMatchedCount() + stats.getMismatchedCount());
+            assertEquals(stats.getTotalCount(), stats.getReplayHistogram().getCount());
+        }
+        assertEquals(snapshot.totalCount(), total);
+        assertEquals(snapshot.matchedCount(), matched);
+    }
+
+    private static ComparisonReport report(String uri, boolean matched, long replayMs) {
+        ResponseData response = new ResponseData(200, Map.of(), new byte[0], replayMs, Map.of("durationMicros", replayMs * 1000));
+        TrafficRecord record = new TrafficRecord(
+            "r",
+            "HTTP",
+            Instant.now(),
+            new RequestData("GET", uri, Map.of(), null, Map.of()),
+            response,
+            Map.of("duration", 3L)
+        );
+        ComparisonResult result = matched
+            ? ComparisonResult.success()
+            : new ComparisonResult(false, List.of(new Difference("$", "value", "1", "2")), Map.of());
+        return new ComparisonReport(record, response, result, replayMs, Instant.now());
+    }
+}
@@ -0,0 +1,91 @@
+package com.flowreplay.core.report;
+
+import com.flowreplay.core.model.ComparisonResult;
+import com.flowreplay.core.model.Difference;
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import com.flowreplay.core.model.TrafficRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HtmlReportGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void streamsReportFromSinglePassIteratorAsUtf8() throws Exception {
+        Iterator<ComparisonReport> reports = IntStream.range(0, 3)
+            .mapToObj(i -> report("r" + i, "/api/订单/" + (i % 2), i != 1))
+            .iterator();
+        Path output = tempDir.resolve("report.html");
+
+        new HtmlReportGenerator().generateReport(reports, output.toString(), null);
+
+        String html = Files.readString(output, StandardCharsets.UTF_8);
+        assertTrue(html.contains("/api/订单/0"));
+        assertTrue(html.indexOf("总体统计") < html.indexOf("详细差异列表"));
+        assertTrue(html.contains("<div class=\"stat-value\">3</div>"));
+        assertTrue(html.contains("<div class=\"stat-value failed\">1</div>"));
+        assertTrue(html.trim().endsWith("</html>"));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(List.of(output), files.toList());
+        }
+    }
+
+    @Test
+    void writesShardedReportDirectoryWithCompressedBodies() throws Exception {
+        Path outputDir = tempDir.resolve("report-dir");
+        Files.createDirectories(outputDir.resolve("data"));
+        Files.writeString(outputDir.resolve("data/page-09999.js"), "stale");
+        List<ComparisonReport> reports = IntStream.range(0, 450)
+            .mapToObj(i -> report("r" + i, "/api/svc" + (i % 3), i % 10 != 0))
+            .toList();
+
+        new HtmlReportGenerator().generateShardedReport(reports, outputDir.toString(), null);
+
+        assertTrue(Files.exists(outputDir.resolve("index.html")));
+        String summary = Files.readString(outputDir.resolve("data/summary.js"), StandardCharsets.UTF_8);
+        assertTrue(summary.startsWith("FlowReplayReport.summary("));
+        assertTrue(summary.contains("\"total\":450"));
+        assertTrue(summary.contains("\"mismatched\":45"));
+        assertTrue(summary.contains("\"pages\":3"));
+        assertTrue(Files.exists(outputDir.resolve("data/page-00003.js")));
+        assertTrue(Files.exists(outputDir.resolve("data/service-3.js")));
+        assertFalse(Files.exists(outputDir.resolve("data/page-09999.js")));
+
+        String page = Files.readString(outputDir.resolve("data/page-00001.js"), StandardCharsets.UTF_8);
+        assertTrue(page.startsWith("FlowReplayReport.page(1,"));
+        assertFalse(page.contains("{\\\"v\\\":1}"));
+        String blobs = Files.readString(outputDir.resolve("blobs/page-00001.js"), StandardCharsets.UTF_8);
+        assertTrue(blobs.startsWith("FlowReplayReport.blobs(1,"));
+        assertTrue(blobs.contains("\"b0e\""));
+    }
+
+    private static ComparisonReport report(String id, String uri, boolean matched) {
+        ResponseData response = new ResponseData(200, Map.of(), "{\"v\":1}".getBytes(StandardCharsets.UTF_8), 5, Map.of());
+        TrafficRecord record = new TrafficRecord(
+            id,
+            "HTTP",
+            Instant.now(),
+            new RequestData("GET", uri, Map.of(), null, Map.of()),
+            response,
+            Map.of("duration", 5L)
+        );
+        ComparisonResult result = matched
+            ? ComparisonResult.success()
+            : new ComparisonResult(false, List.of(new Difference("$.v", "value", "1", "2")), Map.of());
+        return new ComparisonReport(record, response, result, 7, Instant.now());
+    }
+}
@@ -0,0 +1,113 @@
+package com.flowreplay.core.report;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineDiffTest {
+
+    @Test
+    void insertedLineAtTopDoesNotShiftLaterLines() {
+        String expected = lines(1, 20);
+        String actual = "new\n" + expected;
+
+        LineDiff.Result result = new LineDiff(2, 100).diff(expected, actual);
+
+        assertFalse(result.exceeded());
+        assertEquals(1, result.editDistance());
+        List<LineDiff.Row> rows = result.rows();
+        assertEquals(LineDiff.RowType.ADDED, rows.get(0).type());
+        assertEquals("new", rows.get(0).actualContent());
+        assertEquals(LineDiff.RowType.UNCHANGED, rows.get(1).type());
+        assertEquals(LineDiff.RowType.UNCHANGED, rows.get(2).type());
+        assertEquals(LineDiff.RowType.SKIPPED, rows.get(3).type());
+        assertEquals(19, rows.get(3).skippedLines());
+        assertEquals(4, rows.size());
+    }
+
+    @Test
+    void collapsesUnchangedRegionsBetweenHunks() {
+        String expected = lines(1, 30);
+        String actual = expected.replace("line5\n", "changed5\n").replace("line25\n", "changed25\n");
+
+        List<LineDiff.Row> rows = new LineDiff(1, 100).diff(expected, actual).rows();
+
+        List<LineDiff.RowType> types = rows.stream().map(LineDiff.Row::type).toList();
+        assertEquals(List.of(
+            LineDiff.RowType.SKIPPED, LineDiff.RowType.UNCHANGED, LineDiff.RowType.CHANGED, LineDiff.RowType.UNCHANGED,
+            LineDiff.RowType.SKIPPED, LineDiff.RowType.UNCHANGED, LineDiff.RowType.CHANGED, LineDiff.RowType.UNCHANGED,
+            LineDiff.RowType.SKIPPED
+        ), types);
+        assertEquals(5, rows.get(2).oldLineNum());
+        assertEquals(17, rows.get(4).skippedLines());
+    }
+
+    @Test
+    void fallsBackToSummaryWhenEditDistanceExceedsCap() {
+        String expected = lines(1, 200);
+        String actual = IntStream.rangeClosed(1, 200).mapToObj(i -> "other" + i).collect(Collectors.joining("\n"));
+
+        LineDiff.Result result = new LineDiff(3, 50).diff("same\n" + expected, "same\n" + actual);
+
+        assertTrue(result.exceeded());
+        assertTrue(result.rows().isEmpty());
+        assertEquals(2, result.firstDifferentLine());
+        assertTrue(result.editDistance() > 50);
+    }
+
+    @Test
+    void producesMinimalScriptForRandomInputs() {
+        Random random = new Random(42);
+        for (int round = 0; round < 300; round++) {
+            List<String> a = randomLines(random);
+            List<String> b = randomLines(random);
+
+            LineDiff.Result result = new LineDiff(Integer.MAX_VALUE, 1000).diff(String.join("\n", a), String.join("\n", b));
+
+            List<String> left = new ArrayList<>();
+            List<String> right = new ArrayList<>();
+            for (LineDiff.Row row : result.rows()) {
+                if (row.oldLineNum() > 0) {
+                    left.add(row.expectedContent());
+                }
+                if (row.newLineNum() > 0) {
+                    right.add(row.actualContent());
+                }
+            }
+            assertEquals(a, left);
+            assertEquals(b, right);
+            assertEquals(a.size() + b.size() - 2 * lcs(a, b), result.editDistance());
+        }
+    }
+
+    private static List<String> randomLines(Random random) {
+        int size = 1 + random.nextInt(25);
+        List<String> lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            lines.add(String.valueOf((char) ('a' + random.nextInt(4))));
+        }
+        return lines;
+    }
+
+    private static int lcs(List<String> a, List<String> b) {
+        int[][] table = new int[a.size() + 1][b.size() + 1];
+        for (int i = 1; i <= a.size(); i++) {
+            for (int j = 1; j <= b.size(); j++) {
+                table[i][j] = a.get(i - 1).equals(b.get(j - 1))
+                    ? table[i - 1][j - 1] + 1
+                    : Math.max(table[i - 1][j], table[i][j - 1]);
+            }
+        }
+        return table[a.size()][b.size()];
+    }
+
+    private static String lines(int from, int to) {
+        return IntStream.rangeClosed(from, to).mapToObj(i -> "line" + i).collect(Collectors.joining("\n", "", "\n"));
+    }
+}
@@ -0,0 +1,48 @@
+package com.flowreplay.core.report;
+
+import com.flowreplay.core.storage.RunStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerformanceGateTest {
+
+    @Test
+    void reportsEachViolatedThreshold() {
+        RunStore.RunSummary baseline = summary("baseline", 0, 0, 0);
+        // /order 变慢并出现错误，/user 不匹配率超限，/tiny 样本不足
+        RunStore.RunSummary current = summary("current", 5_000, 3, 4);
+
+        PerformanceGate.Result result = PerformanceGate.evaluate(current, baseline, "baseline", 80,
+            new PerformanceGate.Thresholds(20.0, 5.0, 2.0, 100.0));
+
+        assertFalse(result.passed());
+        assertEquals(List.of("/tiny"), result.skippedServices());
+        assertEquals(List.of(
+            "p99-increase:*", "p99-increase:/order", "error-rate:/order", "mismatch-rate:/user", "throughput:*"
+        ), result.violations().stream().map(violation -> violation.check() + ":" + violation.service()).toList());
+        PerformanceGate.Violation p99 = result.violations().get(1);
+        assertEquals(10_900, p99.baseline(), 300);
+        assertTrue(p99.actual() > 14_000);
+
+        PerformanceGate.Result passed = PerformanceGate.evaluate(current, baseline, "baseline", 120,
+            new PerformanceGate.Thresholds(null, 50.0, 10.0, 100.0));
+        assertTrue(passed.passed());
+        assertThrows(IllegalArgumentException.class, () -> new PerformanceGate.Thresholds(-1.0, null, null, null));
+    }
+
+    private static RunStore.RunSummary summary(String runId, long slowTailMicros, int orderErrors, int userMismatches) {
+        RunStore.Summarizer summarizer = new RunStore.Summarizer();
+        for (int i = 0; i < 100; i++) {
+            long duration = 1_000 + i * 100L;
+            boolean failed = i < orderErrors;
+            summarizer.add("/order", i >= 95 ? duration + slowTailMicros : duration, failed ? 503 : 200, true, true);
+            summarizer.add("/user", duration, 200, true, i >= userMismatches * 2);
+        }
+        summarizer.add("/tiny", 50_000, 500, true, false);
+        return summarizer.summarize(runId, Instant.now(), 1_000, null, null, null);
+    }
+}
@@ -0,0 +1,125 @@
+package com.flowreplay.core.storage;
+
+import com.flowreplay.core.model.RequestData;
+import com.flowreplay.core.model.ResponseData;
+import com.flowreplay.core.model.TrafficRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayResultCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void skipsRecordsVerifiedOnSameBuildAndReplaysTheRest() {
+        Path cachePath = tempDir.resolve("replay-result-cache.jsonl");
+        TrafficRecord verified = record("GET", "/order/1", Map.of("X-Request-Id", "a"), "order-1");
+        TrafficRecord failing = record("GET", "/order/2", Map.of(), "order-2");
+        TrafficRecord otherService = record("GET", "/user/1", Map.of(), "user-1");
+        TrafficRecord fresh = record("GET", "/order/3", Map.of(), "order-3");
+        TrafficRecord post = record("POST", "/order", Map.of(), "created");
+
+        ReplayResultCache cache = ReplayResultCache.open(cachePath);
+        cache.put(verified, "b1", true, 40, "/order");
+        cache.put(failing, "b1", false, 10, "/order");
+        cache.put(otherService, "b1", true, 25, "/user");
+        cache.put(post, "b1", true, 5, "/order");
+        cache.save();
+
+        // 重新打开后，追踪头不同的同一请求仍命中
+        ReplayResultCache reopened = ReplayResultCache.open(cachePath);
+        assertEquals(3, reopened.size());
+        TrafficRecord verifiedRetry = record("GET", "/order/1", Map.of("X-Request-Id", "b"), "order-1");
+        List<TrafficRecord> records = List.of(verifiedRetry, failing, otherService, fresh, post);
+
+        ReplayResultCache.Selection sameBuild = reopened.select(records,
+            new ReplayResultCache.Policy("b1", Set.of(), 0), ReplayResultCacheTest::service);
+        assertEquals(List.of(failing, fresh, post), sameBuild.toReplay());
+        assertEquals(2, sameBuild.skipped());
+        assertEquals(1, sameBuild.previouslyFailed());
+        assertEquals(1, sameBuild.uncached());
+        assertEquals(1, sameBuild.ineligible());
+        assertEquals(65, sameBuild.savedMillis());
+        assertEquals(0.4, sameBuild.hitRate(), 1e-9);
+
+        // 新版本只改了 /order：/user 上已通过的记录继续跳过
+        ReplayResultCache.Selection newBuild = reopened.select(records,
+            new ReplayResultCache.Policy("b2", Set.of("/order"), 0), ReplayResultCacheTest::service);
+        assertEquals(List.of(verifiedRetry, failing, fresh, post), newBuild.toReplay());
+        assertEquals(1, newBuild.changed());
+        assertEquals(1, newBuild.skipped());
+
+        ReplayResultCache.Selection sampled = reopened.select(records,
+            new ReplayResultCache.Policy("b1", Set.of(), 100), ReplayResultCacheTest::service);
+        assertEquals(records, sampled.toReplay());
+        assertEquals(2, sampled.sampled());
+        assertEquals(0.4, sampled.hitRate(), 1e-9);
+    }
+
+    @Test
+    void keepsVerdictPerBuildAndOnlySkipsSafeMethods() {
+        Path cachePath = tempDir.resolve("replay-result-cache.jsonl");
+        TrafficRecord order = record("GET", "/order/1", Map.of(), "order-1");
+        TrafficRecord put = record("PUT", "/order/1", Map.of(), "updated");
+        TrafficRecord delete = record("DELETE", "/order/1", Map.of(), "deleted");
+
+        ReplayResultCache cache = ReplayResultCache.open(cachePath);
+        cache.put(order, "b1", true, 40, "/order");
+        cache.put(order, "b2", false, 40, "/order");
+        cache.put(put, "b1", true, 5, "/order");
+        cache.put(delete, "b1", true, 5, "/order");
+        cache.save();
+
+        // b2 上的失败结论不覆盖 b1 上的通过结论
+        ReplayResultCache reopened = ReplayResultCache.open(cachePath);
+        assertEquals(2, reopened.size());
+        assertTrue(reopened.get(order, "b1").matched());
+        assertFalse(reopened.get(order, "b2").matched());
+        assertNull(reopened.get(put, "b1"));
+        assertFalse(ReplayResultCache.isEligible(put));
+        assertFalse(ReplayResultCache.isEligible(delete));
+
+        List<TrafficRecord> records = List.of(order, put, delete);
+        ReplayResultCache.Selection build1 = reopened.select(records,
+            new ReplayResultCache.Policy("b1", Set.of(), 0), ReplayResultCacheTest::service);
+        assertEquals(List.of(put, delete), build1.toReplay());
+        assertEquals(1, build1.skipped());
+        assertEquals(2, build1.ineligible());
+
+        ReplayResultCache.Selection build2 = reopened.select(records,
+            new ReplayResultCache.Policy("b2", Set.of(), 0), ReplayResultCacheTest::service);
+        assertEquals(records, build2.toReplay());
+        assertEquals(1, build2.previouslyFailed());
+    }
+
+    @Test
+    void fingerprintChangesWithRecordedResponse() {
+        TrafficRecord original = record("GET", "/order/1", Map.of(), "order-1");
+        TrafficRecord rerecorded = record("GET", "/order/1", Map.of(), "order-1-v2");
+        assertNotEquals(ReplayResultCache.fingerprint(original), ReplayResultCache.fingerprint(rerecorded));
+        assertEquals(ReplayResultCache.fingerprint(original),
+            ReplayResultCache.fingerprint(record("GET", "/order/1", Map.of("Date", "today"), "order-1")));
+        assertThrows(IllegalArgumentException.class, () -> new ReplayResultCache.Policy(" ", Set.of(), 0));
+    }
+
+    private static String service(TrafficRecord record) {
+        return "/" + record.request().uri().split("/")[1];
+    }
+
+    private static TrafficRecord record(String method, String uri, Map<String, String> headers, String responseBody) {
+        return new TrafficRecord(uri + "-" + method, "HTTP", Instant.now(),
+            new RequestData(method, uri, headers, null, Map.of()),
+            new ResponseData(200, Map.of(), responseBody.getBytes(StandardCharsets.UTF_8), 5, Map.of()),
+            Map.of());
+    }
+}
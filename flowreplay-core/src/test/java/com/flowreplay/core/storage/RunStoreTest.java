@@ -0,0 +1,75 @@
+package com.flowreplay.core.storage;
+
+import com.flowreplay.core.metrics.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void storesRunsAndDetectsTailLatencyRegression() throws Exception {
+        RunStore store = RunStore.open(tempDir);
+        storeRun(store, "run-1", "b1", 0);
+        storeRun(store, "run-2", "b1", 0);
+        // /order 最慢的 5% 请求变慢，/user 不变
+        storeRun(store, "run-3", "b2", 40_000);
+
+        List<RunStore.RunSummary> last = store.list(2);
+        assertEquals(List.of("run-2", "run-3"), last.stream().map(RunStore.RunSummary::runId).toList());
+        assertEquals(3, store.list(10).size());
+        assertEquals(12 * 2000L, Files.size(tempDir.resolve("run-1").resolve(RunStore.RECORDS_FILE)));
+
+        RunStore.RunSummary first = store.find("run-1").orElseThrow();
+        assertEquals("b1", first.buildId());
+        assertEquals(List.of("/order", "/user"), first.services());
+        RunStore.ServiceSummary order = first.byService().get("/order");
+        assertEquals(1000, order.requests());
+        assertEquals(10, order.errors());
+        assertEquals(0.99, order.matchRate(), 1e-9);
+        assertEquals(2000, first.overall().requests());
+
+        assertTrue(store.findRegressions("run-1", "run-2").isEmpty());
+        List<RunStore.Regression> regressions = store.findRegressions("run-2", "run-3");
+        assertFalse(regressions.isEmpty());
+        assertTrue(regressions.stream().noneMatch(regression -> regression.service().equals("/user")));
+        assertTrue(regressions.stream().anyMatch(regression -> regression.service().equals("/order") && regression.percentile() == 99));
+
+        assertThrows(IllegalArgumentException.class, () -> store.newRun("run-1", Instant.now(), null, null, null));
+    }
+
+    @Test
+    void smallSamplesAreNotFlagged() {
+        LatencyHistogram baseline = new LatencyHistogram();
+        LatencyHistogram candidate = new LatencyHistogram();
+        for (int i = 0; i < 200; i++) {
+            baseline.record(1_000 + i);
+            candidate.record(2_000 + i);
+        }
+        // 200 个样本的 P99 期望超限数不足 5，P95 足够
+        assertNull(RunStore.testPercentile("/order", 99, baseline, candidate));
+        assertNotNull(RunStore.testPercentile("/order", 95, baseline, candidate));
+    }
+
+    private static void storeRun(RunStore store, String runId, String buildId, long slowTailMicros) {
+        try (RunStore.Recorder recorder = store.newRun(runId, Instant.now(), buildId, "http://localhost:9090", "sequential")) {
+            for (int i = 0; i < 1000; i++) {
+                long base = 1_000 + (i % 100) * 100;
+                long order = i % 100 >= 95 ? base + slowTailMicros : base;
+                boolean failed = i % 100 == 0;
+                recorder.add("/order", order, failed ? 0 : 200, !failed, i % 100 != 99);
+                recorder.add("/user", base, 200, true, true);
+            }
+            recorder.commit(1_000);
+        }
+    }
+}
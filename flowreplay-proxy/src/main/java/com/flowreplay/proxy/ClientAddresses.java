@@ -0,0 +1,21 @@
+package com.flowreplay.proxy;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * 客户端地址格式化（host:port），录制为元数据 clientAddress，用于按连接分区回放
+ */
+final class ClientAddresses {
+
+    private ClientAddresses() {
+    }
+
+    static String format(SocketAddress address) {
+        if (address instanceof InetSocketAddress inet) {
+            String host = inet.getAddress() != null ? inet.getAddress().getHostAddress() : inet.getHostString();
+            return host + ":" + inet.getPort();
+        }
+        return address != null ? address.toString() : "";
+    }
+}
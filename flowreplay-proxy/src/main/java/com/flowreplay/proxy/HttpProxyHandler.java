@@ -58,6 +58,7 @@ public class HttpProxyHandler extends ChannelInboundHandlerAdapter {
         FullHttpRequest request = (FullHttpRequest) msg;
         try {
             long startTime = System.currentTimeMillis();
+            long startNanos = System.nanoTime();
             String recordId = UUID.randomUUID().toString();
             boolean keepAlive = HttpUtil.isKeepAlive(request);
 
@@ -66,12 +67,15 @@ public class HttpProxyHandler extends ChannelInboundHandlerAdapter {
 
             // 转发请求到目标服务器
             ResponseData responseData = forwardRequest(request, startTime);
+            long durationMicros = (System.nanoTime() - startNanos) / 1_000;
 
             // 录制流量
             Map<String, Object> metadata = new HashMap<>();
             metadata.put("targetHost", targetHost);
             metadata.put("targetPort", targetPort);
             metadata.put("duration", responseData.duration());
+            metadata.put("durationMicros", durationMicros);
+            metadata.put("clientAddress", ClientAddresses.format(ctx.channel().remoteAddress()));
 
             TrafficRecord record = new TrafficRecord(
                 recordId,
@@ -18,6 +18,8 @@ import java.util.function.Consumer;
 
 /**
  * TCP代理处理器
+ * 按请求/响应轮次切分录制：客户端在收到响应后再次发送数据时，上一轮交互作为一条记录，
+ * 同一连接上的记录带 messageIndex，连接关闭时的最后一条带 lastMessage，回放时据此在一个连接上按序重放。
  */
 public class TcpProxyHandler extends ChannelInboundHandlerAdapter {
 
@@ -31,7 +33,10 @@ public class TcpProxyHandler extends ChannelInboundHandlerAdapter {
     private Channel outboundChannel;
     private ByteBuf requestBuffer;
     private ByteBuf responseBuffer;
-    private long startTime;
+    private long startNanos;
+    private long lastResponseNanos;
+    private int messageIndex;
+    private String clientAddress = "";
 
     public TcpProxyHandler(String targetHost, int targetPort,
                            TrafficRecorder recorder, String protocolParser) {
@@ -50,7 +55,8 @@ public class TcpProxyHandler extends ChannelInboundHandlerAdapter {
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) {
-        startTime = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+        clientAddress = ClientAddresses.format(ctx.channel().remoteAddress());
         requestBuffer = Unpooled.buffer();
         responseBuffer = Unpooled.buffer();
 
@@ -84,6 +90,13 @@ public class TcpProxyHandler extends ChannelInboundHandlerAdapter {
 
         if (outboundChannel != null && outboundChannel.isActive()) {
             if (requestBuffer != null) {
+                // 已收到响应后客户端再次发送，说明上一轮交互结束
+                if (responseBuffer.isReadable()) {
+                    recordTraffic(false);
+                }
+                if (!requestBuffer.isReadable()) {
+                    startNanos = System.nanoTime();
+                }
                 requestBuffer.writeBytes(data, data.readerIndex(), data.readableBytes());
             }
             outboundChannel.writeAndFlush(data).addListener((ChannelFutureListener) future -> {
@@ -105,8 +118,11 @@ public class TcpProxyHandler extends ChannelInboundHandlerAdapter {
         if (outboundChannel != null) {
             closeOnFlush(outboundChannel);
         }
-        // 录制流量
-        recordTraffic();
+        // 录制最后一轮交互（连接上没有任何数据时也保留一条记录）
+        if (requestBuffer != null && (requestBuffer.isReadable() || responseBuffer.isReadable() || messageIndex == 0)) {
+            recordTraffic(true);
+        }
+        releaseBuffers();
     }
 
     @Override
@@ -121,7 +137,7 @@ public class TcpProxyHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
-    private void recordTraffic() {
+    private void recordTraffic(boolean lastMessage) {
         try {
             byte[] requestBytes = new byte[requestBuffer != null ? requestBuffer.readableBytes() : 0];
             if (requestBuffer != null) {
@@ -141,7 +157,10 @@ public class TcpProxyHandler extends ChannelInboundHandlerAdapter {
                 Map.of()
             );
 
-            long duration = System.currentTimeMillis() - startTime;
+            // 耗时从本轮第一个请求字节到最后一个响应字节
+            long endNanos = responseBytes.length > 0 ? lastResponseNanos : System.nanoTime();
+            long durationMicros = Math.max(0, endNanos - startNanos) / 1_000;
+            long duration = durationMicros / 1_000;
             ResponseData responseData = new ResponseData(
                 0,
                 Map.of(),
@@ -154,7 +173,11 @@ public class TcpProxyHandler extends ChannelInboundHandlerAdapter {
                 "targetHost", targetHost,
                 "targetPort", targetPort,
                 "protocol", protocolParser,
-                "duration", duration
+                "duration", duration,
+                "durationMicros", durationMicros,
+                "clientAddress", clientAddress,
+                "messageIndex", messageIndex++,
+                "lastMessage", lastMessage
             );
 
             TrafficRecord record = new TrafficRecord(
@@ -172,14 +195,25 @@ public class TcpProxyHandler extends ChannelInboundHandlerAdapter {
             log.error("Failed to record TCP traffic", e);
         } finally {
             if (requestBuffer != null) {
-                requestBuffer.release();
+                requestBuffer.clear();
             }
             if (responseBuffer != null) {
-                responseBuffer.release();
+                responseBuffer.clear();
             }
         }
     }
 
+    private void releaseBuffers() {
+        if (requestBuffer != null) {
+            requestBuffer.release();
+            requestBuffer = null;
+        }
+        if (responseBuffer != null) {
+            responseBuffer.release();
+            responseBuffer = null;
+        }
+    }
+
     private void submitForLiveReplay(TrafficRecord record) {
         if (replayConsumer == null) {
             return;
@@ -209,6 +243,7 @@ public class TcpProxyHandler extends ChannelInboundHandlerAdapter {
 
             if (responseBuffer != null) {
                 responseBuffer.writeBytes(data, data.readerIndex(), data.readableBytes());
+                lastResponseNanos = System.nanoTime();
             }
             inboundChannel.writeAndFlush(data).addListener((ChannelFutureListener) future -> {
                 if (future.isSuccess()) {
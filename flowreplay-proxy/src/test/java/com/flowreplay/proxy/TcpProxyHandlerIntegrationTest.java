@@ -17,6 +17,8 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -79,6 +81,82 @@ class TcpProxyHandlerIntegrationTest {
         }
     }
 
+    @Test
+    void recordsEachRequestResponseTurnAsSeparateMessage() throws Exception {
+        List<TrafficRecord> records = new CopyOnWriteArrayList<>();
+        try (ServerSocket upstream = new ServerSocket(0)) {
+            int upstreamPort = upstream.getLocalPort();
+            Thread upstreamThread = new Thread(() -> {
+                try (Socket s = upstream.accept()) {
+                    byte[] buf = new byte[64];
+                    int n;
+                    while ((n = s.getInputStream().read(buf)) != -1) {
+                        s.getOutputStream().write(("ack:" + new String(buf, 0, n, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8));
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            upstreamThread.setDaemon(true);
+            upstreamThread.start();
+
+            EventLoopGroup boss = new NioEventLoopGroup(1);
+            EventLoopGroup worker = new NioEventLoopGroup();
+            try {
+                Channel serverChannel = new ServerBootstrap()
+                    .group(boss, worker)
+                    .channel(NioServerSocketChannel.class)
+                    .childOption(ChannelOption.AUTO_READ, false)
+                    .childHandler(new io.netty.channel.ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline().addLast(new TcpProxyHandler("localhost", upstreamPort, collectingRecorder(records), "raw"));
+                        }
+                    })
+                    .bind(new InetSocketAddress("localhost", 0)).sync().channel();
+                int proxyPort = ((InetSocketAddress) serverChannel.localAddress()).getPort();
+
+                try (Socket client = new Socket("localhost", proxyPort)) {
+                    for (String message : List.of("one", "two")) {
+                        client.getOutputStream().write(message.getBytes(StandardCharsets.UTF_8));
+                        byte[] expected = ("ack:" + message).getBytes(StandardCharsets.UTF_8);
+                        assertArrayEquals(expected, client.getInputStream().readNBytes(expected.length));
+                    }
+                }
+                for (int i = 0; i < 50 && records.size() < 2; i++) {
+                    Thread.sleep(20);
+                }
+                serverChannel.close().sync();
+            } finally {
+                boss.shutdownGracefully();
+                worker.shutdownGracefully();
+            }
+        }
+
+        assertEquals(2, records.size());
+        assertEquals("one", new String(records.get(0).request().body(), StandardCharsets.UTF_8));
+        assertEquals("ack:one", new String(records.get(0).response().body(), StandardCharsets.UTF_8));
+        assertEquals(0, records.get(0).metadata().get("messageIndex"));
+        assertEquals(false, records.get(0).metadata().get("lastMessage"));
+        assertEquals("ack:two", new String(records.get(1).response().body(), StandardCharsets.UTF_8));
+        assertEquals(1, records.get(1).metadata().get("messageIndex"));
+        assertEquals(true, records.get(1).metadata().get("lastMessage"));
+        assertEquals(records.get(0).metadata().get("clientAddress"), records.get(1).metadata().get("clientAddress"));
+    }
+
+    private static TrafficRecorder collectingRecorder(List<TrafficRecord> records) {
+        return new TrafficRecorder() {
+            @Override
+            public void record(TrafficRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
     private static TrafficRecorder noopRecorder() {
         return new TrafficRecorder() {
             @Override